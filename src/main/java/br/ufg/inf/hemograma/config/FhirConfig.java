@@ -0,0 +1,36 @@
+package br.ufg.inf.hemograma.config;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.context.FhirVersionEnum;
+import ca.uhn.fhir.context.PerformanceOptionsEnum;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.List;
+
+/**
+ * Configuração do contexto HAPI-FHIR compartilhado pela aplicação.
+ *
+ * O FhirContext é caro de criar e thread-safe, por isso existe uma única
+ * instância. Com a varredura adiada do modelo, apenas os tipos de recurso
+ * usados pelo sistema (Observation, Patient e Bundle) são varridos na
+ * inicialização; os demais só seriam varridos se aparecessem em um payload.
+ */
+@Configuration
+public class FhirConfig {
+
+    @Bean
+    public FhirContext fhirContext() {
+        FhirContext fhirContext = new FhirContext(FhirVersionEnum.R4);
+        fhirContext.setPerformanceOptions(PerformanceOptionsEnum.DEFERRED_MODEL_SCANNING);
+
+        for (Class<? extends IBaseResource> tipo : List.of(Observation.class, Patient.class, Bundle.class)) {
+            fhirContext.getResourceDefinition(tipo);
+        }
+        return fhirContext;
+    }
+}
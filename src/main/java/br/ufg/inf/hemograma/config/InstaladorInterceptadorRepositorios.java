@@ -0,0 +1,84 @@
+package br.ufg.inf.hemograma.config;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+
+import java.lang.reflect.Method;
+
+/**
+ * Instala um interceptador em cada repositório Spring Data, delimitando as
+ * chamadas aos seus métodos (ex: {@code HemogramaRepository.save}) para o
+ * serviço {@code S}.
+ *
+ * O serviço só é obtido depois de todos os singletons criados: os
+ * pós-processadores são instanciados antes dos demais beans, e as chamadas
+ * anteriores seguem direto. Só atua habilitado; do contrário, os
+ * repositórios ficam intactos.
+ */
+abstract class InstaladorInterceptadorRepositorios<S>
+        implements BeanPostProcessor, BeanFactoryAware, SmartInitializingSingleton {
+
+    private final Class<S> tipoServico;
+    protected final boolean habilitado;
+    private BeanFactory beanFactory;
+    private volatile S servico;
+
+    protected InstaladorInterceptadorRepositorios(Class<S> tipoServico, boolean habilitado) {
+        this.tipoServico = tipoServico;
+        this.habilitado = habilitado;
+    }
+
+    /**
+     * Executa a chamada ao repositório, delimitada para o serviço.
+     *
+     * @param servico Serviço que recebe a chamada
+     * @param chamada Nome da chamada (ex: "HemogramaRepository.save")
+     * @param invocacao Invocação a prosseguir
+     */
+    protected abstract Object interceptar(S servico, String chamada, MethodInvocation invocacao) throws Throwable;
+
+    /**
+     * Serviço instrumentado, ou null antes de todos os singletons criados.
+     */
+    protected S servico() {
+        return servico;
+    }
+
+    @Override
+    public void setBeanFactory(BeanFactory beanFactory) {
+        this.beanFactory = beanFactory;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (habilitado) {
+            servico = beanFactory.getBean(tipoServico);
+        }
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        if (habilitado && bean instanceof RepositoryFactoryBeanSupport<?, ?, ?> repositorio) {
+            // Antes de afterPropertiesSet, que cria o proxy do repositório
+            repositorio.addRepositoryFactoryCustomizer(fabrica -> fabrica.addRepositoryProxyPostProcessor(
+                    (proxyFactory, informacao) -> {
+                        String nome = informacao.getRepositoryInterface().getSimpleName();
+                        proxyFactory.addAdvice((MethodInterceptor) invocacao -> {
+                            S servicoAtual = servico;
+                            Method metodo = invocacao.getMethod();
+                            if (servicoAtual == null || metodo.getDeclaringClass() == Object.class) {
+                                return invocacao.proceed();
+                            }
+                            return interceptar(servicoAtual, nome + "." + metodo.getName(), invocacao);
+                        });
+                    }));
+        }
+        return bean;
+    }
+}
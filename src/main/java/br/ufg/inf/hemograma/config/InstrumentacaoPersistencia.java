@@ -0,0 +1,145 @@
+package br.ufg.inf.hemograma.config;
+
+import br.ufg.inf.hemograma.service.PerfilPersistenciaService;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.beans.BeansException;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Set;
+
+/**
+ * Instala a instrumentação do {@link PerfilPersistenciaService}:
+ * <ul>
+ *   <li>o DataSource é envolvido por proxies JDBC (Connection, Statement,
+ *       ResultSet) que medem as execuções e contam as linhas lidas;</li>
+ *   <li>cada repositório Spring Data recebe um interceptador que delimita as
+ *       chamadas aos seus métodos ({@link InstaladorInterceptadorRepositorios}).</li>
+ * </ul>
+ *
+ * Só atua com o perfil habilitado; do contrário, DataSource e repositórios
+ * ficam intactos. As instruções executadas antes de todos os beans estarem
+ * criados (migrações, DDL) não são registradas.
+ *
+ * O proxy do DataSource também implementa {@link Closeable} quando o alvo
+ * pode ser fechado (Hikari), repassando o {@code close}: o Spring infere o
+ * método de destruição pela instância final do bean, e sem isso o pool não
+ * seria encerrado no desligamento.
+ */
+class InstrumentacaoPersistencia extends InstaladorInterceptadorRepositorios<PerfilPersistenciaService> {
+
+    private static final Set<String> METODOS_EXECUCAO = Set.of(
+            "execute", "executeQuery", "executeUpdate", "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+
+    InstrumentacaoPersistencia(boolean habilitado) {
+        super(PerfilPersistenciaService.class, habilitado);
+    }
+
+    @Override
+    protected Object interceptar(PerfilPersistenciaService perfil, String chamada, MethodInvocation invocacao)
+            throws Throwable {
+        perfil.iniciarChamada(chamada);
+        long inicio = System.nanoTime();
+        try {
+            return invocacao.proceed();
+        } finally {
+            perfil.encerrarChamada(System.nanoTime() - inicio);
+        }
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        if (habilitado && bean instanceof DataSource dataSource && !Proxy.isProxyClass(bean.getClass())) {
+            if (dataSource instanceof AutoCloseable) {
+                return criarProxy(dataSource, null, DataSource.class, Closeable.class);
+            }
+            return proxy(DataSource.class, dataSource, null);
+        }
+        return bean;
+    }
+
+    /**
+     * Proxy JDBC. {@code sql} é o texto da instrução preparada, se houver.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(Class<T> tipo, T alvo, String sql) {
+        return (T) criarProxy(alvo, sql, tipo);
+    }
+
+    private Object criarProxy(Object alvo, String sql, Class<?>... interfaces) {
+        InvocationHandler handler = (instancia, metodo, argumentos) -> invocar(alvo, sql, metodo, argumentos);
+        return Proxy.newProxyInstance(InstrumentacaoPersistencia.class.getClassLoader(), interfaces, handler);
+    }
+
+    private Object invocar(Object alvo, String sql, Method metodo, Object[] argumentos) throws Throwable {
+        String nome = metodo.getName();
+        PerfilPersistenciaService perfilAtual = servico();
+
+        if (alvo instanceof DataSource && metodo.getDeclaringClass() == Closeable.class) {
+            // Closeable.close não é método do alvo; repassa pelo AutoCloseable
+            ((AutoCloseable) alvo).close();
+            return null;
+        }
+
+        if (alvo instanceof Statement && METODOS_EXECUCAO.contains(nome) && perfilAtual != null) {
+            String instrucao = sql != null ? sql
+                    : argumentos != null && argumentos.length > 0 && argumentos[0] instanceof String texto ? texto : null;
+            long inicio = System.nanoTime();
+            try {
+                return envolverResultado(chamar(alvo, metodo, argumentos));
+            } finally {
+                perfilAtual.registrarInstrucao(instrucao, System.nanoTime() - inicio);
+            }
+        }
+
+        if (alvo instanceof ResultSet && "next".equals(nome) && perfilAtual != null) {
+            Object existe = chamar(alvo, metodo, argumentos);
+            if (Boolean.TRUE.equals(existe)) {
+                perfilAtual.registrarLinha();
+            }
+            return existe;
+        }
+
+        Object resultado = chamar(alvo, metodo, argumentos);
+        if (alvo instanceof DataSource && resultado instanceof Connection conexao) {
+            return proxy(Connection.class, conexao, null);
+        }
+        if (alvo instanceof Connection) {
+            String instrucao = argumentos != null && argumentos.length > 0 && argumentos[0] instanceof String texto ? texto : null;
+            if (resultado instanceof CallableStatement chamada) {
+                return proxy(CallableStatement.class, chamada, instrucao);
+            }
+            if (resultado instanceof PreparedStatement preparada) {
+                return proxy(PreparedStatement.class, preparada, instrucao);
+            }
+            if (resultado instanceof Statement instrucaoSimples) {
+                return proxy(Statement.class, instrucaoSimples, null);
+            }
+        }
+        if (alvo instanceof Statement && "getResultSet".equals(nome)) {
+            return envolverResultado(resultado);
+        }
+        return resultado;
+    }
+
+    private Object envolverResultado(Object resultado) {
+        return resultado instanceof ResultSet resultSet ? proxy(ResultSet.class, resultSet, null) : resultado;
+    }
+
+    private static Object chamar(Object alvo, Method metodo, Object[] argumentos) throws Throwable {
+        try {
+            return metodo.invoke(alvo, argumentos);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
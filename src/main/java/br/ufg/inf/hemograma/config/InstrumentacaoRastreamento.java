@@ -0,0 +1,30 @@
+package br.ufg.inf.hemograma.config;
+
+import br.ufg.inf.hemograma.service.RastreamentoService;
+import org.aopalliance.intercept.MethodInvocation;
+
+/**
+ * Abre um trecho do {@link RastreamentoService} em cada chamada a um
+ * repositório Spring Data feita dentro de um rastro (ex:
+ * {@code HemogramaRepository.save}). Fora de um rastro, a chamada segue
+ * direto. Só atua com o rastreamento habilitado.
+ */
+class InstrumentacaoRastreamento extends InstaladorInterceptadorRepositorios<RastreamentoService> {
+
+    InstrumentacaoRastreamento(boolean habilitado) {
+        super(RastreamentoService.class, habilitado);
+    }
+
+    @Override
+    protected Object interceptar(RastreamentoService rastreamento, String chamada, MethodInvocation invocacao)
+            throws Throwable {
+        try (RastreamentoService.Trecho trecho = rastreamento.iniciar(chamada)) {
+            try {
+                return invocacao.proceed();
+            } catch (Throwable t) {
+                trecho.erro(t);
+                throw t;
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package br.ufg.inf.hemograma.config;
+
+import br.ufg.inf.hemograma.jfr.ContadorInstrucoes;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuração dos eventos JFR do pipeline (pacote {@code br.ufg.inf.hemograma.jfr}).
+ */
+@Configuration
+public class JfrConfig {
+
+    /**
+     * Contagem de instruções SQL por thread, para o evento de persistência.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer contadorInstrucoes() {
+        return propriedades -> propriedades.put(AvailableSettings.STATEMENT_INSPECTOR, new ContadorInstrucoes());
+    }
+}
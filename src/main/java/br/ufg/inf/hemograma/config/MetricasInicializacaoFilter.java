@@ -0,0 +1,131 @@
+package br.ufg.inf.hemograma.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Mede o comportamento da aplicação logo após a inicialização:
+ * - tempo desde o início da JVM até a primeira requisição atendida;
+ * - p99 da latência das requisições no primeiro minuto após ficar pronta.
+ *
+ * Os valores são publicados como métricas (hemograma.inicializacao.*) e
+ * registrados no log ao fim do primeiro minuto, permitindo comparar
+ * execuções com e sem o perfil de inicialização rápida.
+ */
+@Component
+public class MetricasInicializacaoFilter extends OncePerRequestFilter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricasInicializacaoFilter.class);
+
+    private static final String PREFIXO_ACTUATOR = "/actuator";
+
+    @Value("${app.hemograma.metricas-inicializacao.janela-segundos:60}")
+    private long janelaSegundos;
+
+    @Value("${app.hemograma.metricas-inicializacao.maximo-amostras:100000}")
+    private int maximoAmostras;
+
+    private final AtomicBoolean primeiraRequisicao = new AtomicBoolean(true);
+    private final AtomicBoolean relatado = new AtomicBoolean(false);
+    private final AtomicInteger totalAmostras = new AtomicInteger();
+
+    private volatile long[] latenciasNanos;
+    private volatile long inicioJanelaNanos;
+    private volatile double tempoPrimeiraRequisicaoMs = Double.NaN;
+    private volatile double p99Ms = Double.NaN;
+
+    public MetricasInicializacaoFilter(MeterRegistry meterRegistry) {
+        Gauge.builder("hemograma.inicializacao.primeira.requisicao", this, f -> f.tempoPrimeiraRequisicaoMs)
+                .description("Tempo desde o início da JVM até a primeira requisição atendida")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        Gauge.builder("hemograma.inicializacao.latencia.p99", this, f -> f.p99Ms)
+                .description("p99 da latência das requisições no primeiro minuto após a inicialização")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciarJanela() {
+        latenciasNanos = new long[maximoAmostras];
+        inicioJanelaNanos = System.nanoTime();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getServletPath().startsWith(PREFIXO_ACTUATOR);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long inicio = System.nanoTime();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            long fim = System.nanoTime();
+
+            if (primeiraRequisicao.compareAndSet(true, false)) {
+                long inicioJvm = ManagementFactory.getRuntimeMXBean().getStartTime();
+                tempoPrimeiraRequisicaoMs = System.currentTimeMillis() - inicioJvm;
+                logger.info("⏱️ Primeira requisição atendida {} ms após o início da JVM",
+                        (long) tempoPrimeiraRequisicaoMs);
+            }
+
+            long[] amostras = latenciasNanos;
+            if (amostras != null && fim - inicioJanelaNanos <= TimeUnit.SECONDS.toNanos(janelaSegundos)) {
+                int indice = totalAmostras.getAndIncrement();
+                if (indice < amostras.length) {
+                    amostras[indice] = fim - inicio;
+                }
+            }
+        }
+    }
+
+    /**
+     * Calcula e registra o p99 assim que a janela inicial termina.
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void relatarJanelaInicial() {
+        long[] latencias = latenciasNanos;
+        if (latencias == null || System.nanoTime() - inicioJanelaNanos < TimeUnit.SECONDS.toNanos(janelaSegundos)
+                || !relatado.compareAndSet(false, true)) {
+            return;
+        }
+        latenciasNanos = null;
+
+        int quantidade = Math.min(totalAmostras.get(), latencias.length);
+        if (quantidade == 0) {
+            logger.info("⏱️ Nenhuma requisição no primeiro {} s após a inicialização", janelaSegundos);
+            return;
+        }
+
+        long[] amostras = Arrays.copyOf(latencias, quantidade);
+        Arrays.sort(amostras);
+        int posicao = (int) Math.ceil(0.99 * quantidade) - 1;
+        p99Ms = amostras[posicao] / 1_000_000.0;
+
+        logger.info("⏱️ Primeiro {} s após a inicialização: {} requisição(ões), p99 = {} ms, máximo = {} ms",
+                janelaSegundos, quantidade, String.format("%.1f", p99Ms),
+                String.format("%.1f", amostras[quantidade - 1] / 1_000_000.0));
+    }
+}
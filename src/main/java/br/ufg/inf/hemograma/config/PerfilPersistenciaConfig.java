@@ -0,0 +1,37 @@
+package br.ufg.inf.hemograma.config;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+/**
+ * Configuração do perfil de persistência
+ * ({@link br.ufg.inf.hemograma.service.PerfilPersistenciaService}).
+ *
+ * Os beans existem sempre e consultam a propriedade na inicialização (e não
+ * por condição de registro), para que o perfil possa ser ligado também nos
+ * builds com processamento AOT, em que as condições são fixadas no build.
+ */
+@Configuration
+public class PerfilPersistenciaConfig {
+
+    private static final String PROPRIEDADE_HABILITADO = "app.hemograma.perfil-persistencia.habilitado";
+
+    @Bean
+    static InstrumentacaoPersistencia instrumentacaoPersistencia(Environment environment) {
+        return new InstrumentacaoPersistencia(environment.getProperty(PROPRIEDADE_HABILITADO, Boolean.class, false));
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer estatisticasHibernate(
+            @Value("${" + PROPRIEDADE_HABILITADO + ":false}") boolean habilitado) {
+        return propriedades -> {
+            if (habilitado) {
+                propriedades.put(AvailableSettings.GENERATE_STATISTICS, true);
+            }
+        };
+    }
+}
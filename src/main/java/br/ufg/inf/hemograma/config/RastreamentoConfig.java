@@ -0,0 +1,29 @@
+package br.ufg.inf.hemograma.config;
+
+import br.ufg.inf.hemograma.service.RastreamentoService;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Configuração do rastreamento ({@link RastreamentoService}): trechos nos
+ * repositórios e propagação do rastro para o executor assíncrono.
+ */
+@Configuration
+public class RastreamentoConfig {
+
+    @Bean
+    static InstrumentacaoRastreamento instrumentacaoRastreamento(Environment environment) {
+        return new InstrumentacaoRastreamento(
+                environment.getProperty("app.hemograma.rastreamento.habilitado", Boolean.class, false));
+    }
+
+    /**
+     * Aplicado pelo Spring Boot ao executor de tarefas {@code @Async}.
+     */
+    @Bean
+    public TaskDecorator propagacaoRastreamento(RastreamentoService rastreamentoService) {
+        return rastreamentoService::propagar;
+    }
+}
@@ -0,0 +1,59 @@
+package br.ufg.inf.hemograma.config;
+
+import br.ufg.inf.hemograma.service.RastreamentoService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+/**
+ * Abre o trecho raiz de cada requisição HTTP (ex: o recebimento de uma
+ * notificação do rest-hook). O rastro continua nas filas de processamento e
+ * só termina quando a notificação é gravada.
+ */
+@Component
+public class RastreamentoFilter extends OncePerRequestFilter {
+
+    private static final String PREFIXO_ACTUATOR = "/actuator";
+
+    @Autowired
+    private RastreamentoService rastreamentoService;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !rastreamentoService.isHabilitado() || request.getServletPath().startsWith(PREFIXO_ACTUATOR);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        try (RastreamentoService.Trecho trecho = rastreamentoService
+                .iniciarRastro(request.getMethod() + " " + request.getServletPath())) {
+            trecho.tipo(RastreamentoService.TIPO_SERVIDOR)
+                    .atributo("http.request.method", request.getMethod())
+                    .atributo("url.path", request.getRequestURI());
+            try {
+                filterChain.doFilter(request, response);
+            } catch (Exception e) {
+                trecho.erro(e);
+                throw e;
+            } finally {
+                // Rota do mapeamento (ex: /hemogramas/receber/{resourceType}/{id}), sem os IDs
+                Object rota = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                if (rota != null) {
+                    trecho.nome(request.getMethod() + " " + rota).atributo("http.route", rota);
+                }
+                trecho.atributo("http.response.status_code", response.getStatus());
+                if (response.getStatus() >= 500) {
+                    trecho.erro("HTTP " + response.getStatus());
+                }
+            }
+        }
+    }
+}
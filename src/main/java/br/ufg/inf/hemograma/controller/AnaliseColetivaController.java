@@ -0,0 +1,149 @@
+package br.ufg.inf.hemograma.controller;
+
+import br.ufg.inf.hemograma.model.enums.FaixaEtaria;
+import br.ufg.inf.hemograma.model.enums.FormatoExportacao;
+import br.ufg.inf.hemograma.model.enums.GranularidadeTemporal;
+import br.ufg.inf.hemograma.model.enums.NivelRegional;
+import br.ufg.inf.hemograma.model.enums.SeveridadeDesvio;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import br.ufg.inf.hemograma.service.AgregadorRegionalService;
+import br.ufg.inf.hemograma.service.DeteccaoMudancaService;
+import br.ufg.inf.hemograma.service.ExportacaoDesviosService;
+import br.ufg.inf.hemograma.service.QuantisPopulacionaisService;
+import br.ufg.inf.hemograma.service.RollupDesvioService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/analise-coletiva")
+public class AnaliseColetivaController {
+
+    @Autowired
+    private AgregadorRegionalService agregadorRegionalService;
+
+    @Autowired
+    private RollupDesvioService rollupDesvioService;
+
+    @Autowired
+    private ExportacaoDesviosService exportacaoDesviosService;
+
+    @Autowired
+    private QuantisPopulacionaisService quantisPopulacionaisService;
+
+    @Autowired
+    private DeteccaoMudancaService deteccaoMudancaService;
+
+    @GetMapping("/mapa-calor")
+    public ResponseEntity<Map<String, Object>> mapaCalor(
+            @RequestParam(defaultValue = "CIDADE") NivelRegional nivel,
+            @RequestParam(defaultValue = "false") boolean apenasAlertas) {
+
+        List<Map<String, Object>> regioes = agregadorRegionalService.mapaCalor(nivel, apenasAlertas);
+        return ResponseEntity.ok(Map.of(
+                "nivel", nivel,
+                "total", regioes.size(),
+                "regioes", regioes
+        ));
+    }
+
+    @GetMapping("/tendencia")
+    public ResponseEntity<Map<String, Object>> tendencia(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime inicio,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fim,
+            @RequestParam(defaultValue = "DIA") GranularidadeTemporal granularidade,
+            @RequestParam(required = false) TipoParametro tipoParametro,
+            @RequestParam(required = false) SeveridadeDesvio severidade,
+            @RequestParam(required = false) String regiao) {
+
+        List<Map<String, Object>> serie = rollupDesvioService.consultar(
+                inicio, fim, granularidade, tipoParametro, severidade, regiao);
+
+        // Map.of não aceita nulos (filtros opcionais)
+        Map<String, Object> resposta = new HashMap<>();
+        resposta.put("granularidade", granularidade);
+        resposta.put("tipoParametro", tipoParametro);
+        resposta.put("severidade", severidade);
+        resposta.put("regiao", regiao);
+        resposta.put("serie", serie);
+        return ResponseEntity.ok(resposta);
+    }
+
+    /**
+     * Exporta os desvios do período [inicio, fim) em CSV ou NDJSON, lidos de
+     * um cursor e enviados à medida que são lidos (sem carregar a lista).
+     */
+    @GetMapping("/desvios/exportacao")
+    public ResponseEntity<StreamingResponseBody> exportarDesvios(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime inicio,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fim,
+            @RequestParam(defaultValue = "CSV") FormatoExportacao formato,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            @RequestParam(required = false) TipoParametro tipoParametro,
+            @RequestParam(required = false) SeveridadeDesvio severidade,
+            @RequestParam(required = false) String regiao) {
+
+        String arquivo = "desvios." + formato.getExtensao() + (gzip ? ".gz" : "");
+        StreamingResponseBody corpo = saida -> exportacaoDesviosService.exportar(
+                saida, formato, gzip, inicio, fim, tipoParametro, severidade, regiao);
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(gzip ? "application/gzip" : formato.getTipoConteudo() + ";charset=UTF-8"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment().filename(arquivo).build().toString())
+                .body(corpo);
+    }
+
+    /**
+     * Percentis populacionais (p1, p5, p50, p95, p99) de um parâmetro.
+     * Filtros omitidos agregam todos os sexos, faixas etárias e estados.
+     */
+    @GetMapping("/quantis")
+    public ResponseEntity<Map<String, Object>> quantis(
+            @RequestParam TipoParametro tipoParametro,
+            @RequestParam(required = false) String sexo,
+            @RequestParam(required = false) FaixaEtaria faixaEtaria,
+            @RequestParam(required = false) String regiao) {
+
+        return ResponseEntity.ok(quantisPopulacionaisService.consultar(tipoParametro, sexo, faixaEtaria, regiao));
+    }
+
+    /**
+     * Estado dos detectores de mudança (EWMA/CUSUM) e alertas coletivos recentes.
+     */
+    @GetMapping("/mudancas")
+    public ResponseEntity<Map<String, Object>> mudancas(
+            @RequestParam(required = false) String regiao,
+            @RequestParam(required = false) TipoParametro tipoParametro,
+            @RequestParam(defaultValue = "false") boolean apenasAlarmes) {
+
+        List<Map<String, Object>> detectores = deteccaoMudancaService.consultar(regiao, tipoParametro, apenasAlarmes);
+        return ResponseEntity.ok(Map.of(
+                "total", detectores.size(),
+                "detectores", detectores,
+                "alertasRecentes", deteccaoMudancaService.alertasRecentes()
+        ));
+    }
+
+    @PostMapping("/rollups/reconstruir")
+    public ResponseEntity<Map<String, Object>> reconstruirRollups(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime inicio,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fim) {
+
+        long desvios = rollupDesvioService.reconstruir(inicio, fim);
+        return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "message", "Rollups reconstruídos com sucesso",
+                "desviosContabilizados", desvios
+        ));
+    }
+}
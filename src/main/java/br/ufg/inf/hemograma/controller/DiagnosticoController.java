@@ -0,0 +1,48 @@
+package br.ufg.inf.hemograma.controller;
+
+import br.ufg.inf.hemograma.service.PerfilPersistenciaService;
+import br.ufg.inf.hemograma.service.RastreamentoService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+@RestController
+@RequestMapping("/diagnostico")
+public class DiagnosticoController {
+
+    @Autowired
+    private PerfilPersistenciaService perfilPersistenciaService;
+
+    @Autowired
+    private RastreamentoService rastreamentoService;
+
+    /**
+     * Perfil da persistência: chamadas, instruções, linhas e latências por
+     * método de repositório, estatísticas do Hibernate e sinalizações de N+1
+     * e de instruções lentas.
+     */
+    @GetMapping("/persistencia")
+    public ResponseEntity<Map<String, Object>> perfilPersistencia() {
+        return ResponseEntity.ok(perfilPersistenciaService.relatorio());
+    }
+
+    @PostMapping("/persistencia/reinicio")
+    public ResponseEntity<Map<String, Object>> reiniciarPerfilPersistencia() {
+        perfilPersistenciaService.reiniciar();
+        return ResponseEntity.ok(Map.of(
+                "status", "success",
+                "message", "Perfil de persistência reiniciado"
+        ));
+    }
+
+    /**
+     * Rastros mais recentes mantidos pela amostragem (lentos ou com erro),
+     * com os trechos de cada um em ordem de início.
+     */
+    @GetMapping("/rastros")
+    public ResponseEntity<Map<String, Object>> rastros() {
+        return ResponseEntity.ok(rastreamentoService.relatorio());
+    }
+}
@@ -1,13 +1,23 @@
 package br.ufg.inf.hemograma.controller;
 
-import br.ufg.inf.hemograma.service.HemogramaProcessingService;
+import br.ufg.inf.hemograma.jfr.NotificacaoRecebidaEvent;
+import br.ufg.inf.hemograma.service.FilaDistribuidaService;
+import br.ufg.inf.hemograma.service.FilasPorPacienteService;
+import br.ufg.inf.hemograma.service.JournalNotificacaoService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 @RestController
 @RequestMapping("/hemogramas")
@@ -15,18 +25,94 @@ public class FhirSubscriptionController {
 
     private static final Logger logger = LoggerFactory.getLogger(FhirSubscriptionController.class);
 
+    private static final int TAMANHO_BUFFER_GZIP = 8192;
+
+    @Autowired
+    private FilasPorPacienteService filasPorPacienteService;
+
+    @Autowired
+    private JournalNotificacaoService journalNotificacaoService;
+
     @Autowired
-    private HemogramaProcessingService hemogramaProcessingService;
+    private FilaDistribuidaService filaDistribuidaService;
 
+    @Value("${app.hemograma.receptor.tamanho-maximo-bytes:10485760}")
+    private int tamanhoMaximoBytes;
+
+    /**
+     * Recebe a notificação rest-hook lendo o corpo direto do InputStream da
+     * requisição (com suporte a {@code Content-Encoding: gzip}), sem convertê-lo
+     * em String. Payloads acima do tamanho máximo configurado recebem 413.
+     */
     @PutMapping("/receber/{resourceType}/{id}")
     public ResponseEntity<Map<String, String>> receberNotificacao(
             @PathVariable String resourceType,
             @PathVariable String id,
-            @RequestBody(required = false) String payload,
-            @RequestHeader Map<String, String> headers) {
+            @RequestHeader Map<String, String> headers,
+            HttpServletRequest request) {
 
         logger.info("📥 Notificação recebida: {}/{}", resourceType, id);
-        hemogramaProcessingService.processarNotificacaoFhirAsync(payload, headers);
+
+        NotificacaoRecebidaEvent evento = new NotificacaoRecebidaEvent();
+        evento.begin();
+
+        byte[] payload;
+        try {
+            payload = lerCorpo(request);
+        } catch (IOException e) {
+            logger.warn("Erro ao ler corpo da notificação {}/{}: {}", resourceType, id, e.getMessage());
+            return ResponseEntity.badRequest().body(Map.of(
+                "status", "error",
+                "message", "Corpo da requisição inválido"
+            ));
+        }
+
+        if (payload == null) {
+            logger.warn("Notificação {}/{} excede {} bytes", resourceType, id, tamanhoMaximoBytes);
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).body(Map.of(
+                "status", "error",
+                "message", "Payload excede o tamanho máximo de " + tamanhoMaximoBytes + " bytes"
+            ));
+        }
+
+        if (filaDistribuidaService.isHabilitada()) {
+            if (payload.length > 0) {
+                try {
+                    // Confirmada no banco antes do "accepted", como no journal
+                    filaDistribuidaService.enfileirar(payload);
+                } catch (Exception e) {
+                    logger.error("Erro ao gravar notificação na fila distribuída: {}", e.getMessage());
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
+                        "status", "error",
+                        "message", "Falha ao registrar notificação"
+                    ));
+                }
+            }
+        } else {
+            long sequenciaJournal = -1;
+            if (payload.length > 0) {
+                try {
+                    // Persistido antes do "accepted": o servidor FHIR não reenvia notificações
+                    sequenciaJournal = journalNotificacaoService.registrar(payload);
+                } catch (Exception e) {
+                    logger.error("Erro ao gravar notificação no journal: {}", e.getMessage());
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of(
+                        "status", "error",
+                        "message", "Falha ao registrar notificação"
+                    ));
+                }
+            }
+
+            filasPorPacienteService.submeter(payload, headers, sequenciaJournal);
+        }
+
+        if (evento.shouldCommit()) {
+            evento.recurso = resourceType + "/" + id;
+            evento.tamanho = payload.length;
+            evento.tamanhoMaximo = tamanhoMaximoBytes;
+            evento.destino = filaDistribuidaService.isHabilitada() ? "fila-distribuida" : "journal";
+            evento.commit();
+        }
 
         return ResponseEntity.ok(Map.of(
             "status", "accepted",
@@ -34,4 +120,33 @@ public class FhirSubscriptionController {
             "resourceId", id
         ));
     }
+
+    /**
+     * Lê o corpo da requisição (descompactando gzip) em um único array de bytes,
+     * limitado ao tamanho máximo configurado.
+     *
+     * @return Bytes do payload (vazio se não houver corpo), ou null se exceder o limite
+     */
+    private byte[] lerCorpo(HttpServletRequest request) throws IOException {
+        boolean gzip = "gzip".equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING));
+        long tamanhoDeclarado = request.getContentLengthLong();
+
+        if (!gzip && tamanhoDeclarado > tamanhoMaximoBytes) {
+            return null;
+        }
+
+        try (InputStream entrada = gzip
+                ? new GZIPInputStream(request.getInputStream(), TAMANHO_BUFFER_GZIP)
+                : request.getInputStream()) {
+
+            if (!gzip && tamanhoDeclarado >= 0) {
+                // Tamanho conhecido: um único array do tamanho exato
+                return entrada.readNBytes((int) tamanhoDeclarado);
+            }
+
+            // Lê um byte além do limite para detectar excesso (inclusive gzip bomb)
+            byte[] payload = entrada.readNBytes(tamanhoMaximoBytes + 1);
+            return payload.length > tamanhoMaximoBytes ? null : payload;
+        }
+    }
 }
@@ -0,0 +1,94 @@
+package br.ufg.inf.hemograma.controller;
+
+import br.ufg.inf.hemograma.dto.HemogramaDTO;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import br.ufg.inf.hemograma.service.ArquivamentoService;
+import br.ufg.inf.hemograma.service.HemogramaConsultaService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.data.domain.Page;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/hemogramas")
+public class HemogramaController {
+
+    @Autowired
+    private HemogramaConsultaService hemogramaConsultaService;
+
+    @Autowired
+    private ArquivamentoService arquivamentoService;
+
+    @GetMapping("/paciente/{pacienteId}")
+    public ResponseEntity<Map<String, Object>> listarPorPaciente(
+            @PathVariable String pacienteId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime inicio,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fim,
+            @RequestParam(defaultValue = "0") int pagina,
+            @RequestParam(defaultValue = "20") int tamanho) {
+
+        LocalDateTime dataInicio = inicio != null ? inicio : LocalDateTime.of(1900, 1, 1, 0, 0);
+        LocalDateTime dataFim = fim != null ? fim : LocalDateTime.now().plusDays(1);
+
+        Page<HemogramaDTO> resultado = hemogramaConsultaService.listarPorPaciente(
+                "Patient/" + pacienteId, dataInicio, dataFim, pagina, tamanho);
+
+        return ResponseEntity.ok(Map.of(
+                "pagina", resultado.getNumber(),
+                "tamanho", resultado.getSize(),
+                "totalElementos", resultado.getTotalElements(),
+                "totalPaginas", resultado.getTotalPages(),
+                "hemogramas", resultado.getContent()
+        ));
+    }
+
+    /**
+     * Hemogramas com um parâmetro dentro da faixa de valores, incluindo os arquivados.
+     */
+    @GetMapping("/faixa")
+    public ResponseEntity<Map<String, Object>> listarPorFaixaDeValor(
+            @RequestParam TipoParametro tipo,
+            @RequestParam double minimo,
+            @RequestParam double maximo,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime inicio,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime fim,
+            @RequestParam(defaultValue = "20") int limite) {
+
+        List<HemogramaDTO> hemogramas = hemogramaConsultaService.listarPorFaixaDeValor(
+                tipo, minimo, maximo, inicio, fim, limite);
+
+        return ResponseEntity.ok(Map.of(
+                "tipoParametro", tipo,
+                "minimo", minimo,
+                "maximo", maximo,
+                "total", hemogramas.size(),
+                "hemogramas", hemogramas
+        ));
+    }
+
+    /**
+     * Arquiva imediatamente os hemogramas mais antigos que a retenção informada.
+     */
+    @PostMapping("/arquivamento")
+    public ResponseEntity<Map<String, Object>> arquivar(@RequestParam int diasRetencao) {
+        try {
+            int arquivados = arquivamentoService.arquivar(LocalDateTime.now().minusDays(diasRetencao));
+
+            Map<String, Object> resposta = new HashMap<>();
+            resposta.put("arquivados", arquivados);
+            resposta.put("segmentos", arquivamentoService.getQuantidadeSegmentos());
+            resposta.put("horizonte", arquivamentoService.getHorizonte());
+            return ResponseEntity.ok(resposta);
+
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(Map.of("erro", e.getMessage()));
+        }
+    }
+}
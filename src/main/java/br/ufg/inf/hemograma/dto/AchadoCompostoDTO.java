@@ -0,0 +1,27 @@
+package br.ufg.inf.hemograma.dto;
+
+import br.ufg.inf.hemograma.model.AchadoComposto;
+import br.ufg.inf.hemograma.model.enums.SeveridadeDesvio;
+
+import java.time.LocalDateTime;
+
+/**
+ * Achado composto (combinação de parâmetros) exposto pela API REST.
+ */
+public record AchadoCompostoDTO(Long id,
+                                String codigo,
+                                String nome,
+                                SeveridadeDesvio severidade,
+                                String descricao,
+                                LocalDateTime dataDeteccao) {
+
+    public static AchadoCompostoDTO de(AchadoComposto achado) {
+        return new AchadoCompostoDTO(
+                achado.getId(),
+                achado.getCodigo(),
+                achado.getNome(),
+                achado.getSeveridade(),
+                achado.getDescricao(),
+                achado.getDataDeteccao());
+    }
+}
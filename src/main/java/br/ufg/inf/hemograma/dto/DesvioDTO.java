@@ -0,0 +1,34 @@
+package br.ufg.inf.hemograma.dto;
+
+import br.ufg.inf.hemograma.model.Desvio;
+import br.ufg.inf.hemograma.model.enums.SeveridadeDesvio;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+
+import java.time.LocalDateTime;
+
+/**
+ * Desvio detectado em um hemograma exposto pela API REST.
+ */
+public record DesvioDTO(Long id,
+                        TipoParametro tipoParametro,
+                        Double valorEncontrado,
+                        Double valorReferenciaMinimo,
+                        Double valorReferenciaMaximo,
+                        Double percentualDesvio,
+                        SeveridadeDesvio severidade,
+                        String descricao,
+                        LocalDateTime dataDeteccao) {
+
+    public static DesvioDTO de(Desvio desvio) {
+        return new DesvioDTO(
+                desvio.getId(),
+                desvio.getTipoParametro(),
+                desvio.getValorEncontrado(),
+                desvio.getValorReferenciaMinimo(),
+                desvio.getValorReferenciaMaximo(),
+                desvio.getPercentualDesvio(),
+                desvio.getSeveridade(),
+                desvio.getDescricao(),
+                desvio.getDataDeteccao());
+    }
+}
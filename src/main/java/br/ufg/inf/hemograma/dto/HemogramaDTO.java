@@ -0,0 +1,18 @@
+package br.ufg.inf.hemograma.dto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Hemograma com seus parâmetros, desvios e achados compostos, montado sem
+ * carregamento lazy (ver {@link br.ufg.inf.hemograma.service.HemogramaConsultaService}).
+ */
+public record HemogramaDTO(Long id,
+                           String fhirObservationId,
+                           String pacienteFhirId,
+                           LocalDateTime dataColeta,
+                           String status,
+                           List<ParametroDTO> parametros,
+                           List<DesvioDTO> desvios,
+                           List<AchadoCompostoDTO> achados) {
+}
@@ -0,0 +1,14 @@
+package br.ufg.inf.hemograma.dto;
+
+import br.ufg.inf.hemograma.model.ParametroHemograma;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+
+/**
+ * Valor de um parâmetro do hemograma exposto pela API REST.
+ */
+public record ParametroDTO(TipoParametro tipoParametro, Double valor, String unidade) {
+
+    public static ParametroDTO de(ParametroHemograma parametro) {
+        return new ParametroDTO(parametro.getTipoParametro(), parametro.getValor(), parametro.getUnidade());
+    }
+}
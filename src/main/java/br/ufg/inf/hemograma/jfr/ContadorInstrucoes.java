@@ -0,0 +1,26 @@
+package br.ufg.inf.hemograma.jfr;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Conta, por thread, as instruções SQL preparadas pelo Hibernate. O evento
+ * {@link HemogramaPersistidoEvent} usa a diferença da contagem antes e
+ * depois da transação.
+ */
+public final class ContadorInstrucoes implements StatementInspector {
+
+    private static final ThreadLocal<long[]> CONTAGEM = ThreadLocal.withInitial(() -> new long[1]);
+
+    @Override
+    public String inspect(String sql) {
+        CONTAGEM.get()[0]++;
+        return sql;
+    }
+
+    /**
+     * Instruções preparadas pela thread corrente desde o seu início.
+     */
+    public static long atual() {
+        return CONTAGEM.get()[0];
+    }
+}
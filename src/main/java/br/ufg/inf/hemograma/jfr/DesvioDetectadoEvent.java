@@ -0,0 +1,34 @@
+package br.ufg.inf.hemograma.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Valor fora da faixa de referência. A duração é a da análise do parâmetro,
+ * incluindo a resolução da faixa.
+ */
+@Name("br.ufg.inf.hemograma.DesvioDetectado")
+@Label("Desvio Detectado")
+@Category({"Hemograma", "Análise"})
+@Description("Parâmetro do hemograma fora da faixa de referência")
+@StackTrace(false)
+@Threshold("0 ms")
+public class DesvioDetectadoEvent extends Event {
+
+    @Label("Parâmetro")
+    public String parametro;
+
+    @Label("Valor")
+    public double valor;
+
+    @Label("Limite Inferior")
+    public double limiteInferior;
+
+    @Label("Limite Superior")
+    public double limiteSuperior;
+
+    @Label("Percentual de Desvio")
+    public double percentualDesvio;
+
+    @Label("Severidade")
+    public String severidade;
+}
@@ -0,0 +1,34 @@
+package br.ufg.inf.hemograma.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Resolução da faixa de referência de um parâmetro para o sexo e a idade do paciente.
+ */
+@Name("br.ufg.inf.hemograma.FaixaReferenciaResolvida")
+@Label("Faixa de Referência Resolvida")
+@Category({"Hemograma", "Análise"})
+@Description("Faixa de referência de um parâmetro, por sexo e idade")
+@StackTrace(false)
+@Threshold("0 ms")
+public class FaixaReferenciaResolvidaEvent extends Event {
+
+    @Label("Parâmetro")
+    public String parametro;
+
+    @Label("Gênero")
+    public String genero;
+
+    @Label("Idade")
+    @Description("Idade em anos; -1 se desconhecida")
+    public int idade;
+
+    @Label("Limite Inferior")
+    public double minimo;
+
+    @Label("Limite Superior")
+    public double maximo;
+
+    @Label("Unidade")
+    public String unidade;
+}
@@ -0,0 +1,29 @@
+package br.ufg.inf.hemograma.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Gravação de hemogramas (com parâmetros, desvios e rollups) até o commit.
+ * No modo em lote, um evento por lote.
+ */
+@Name("br.ufg.inf.hemograma.HemogramaPersistido")
+@Label("Hemograma Persistido")
+@Category({"Hemograma", "Persistência"})
+@Description("Transação de gravação de hemogramas, do início ao commit")
+@StackTrace(false)
+@Threshold("0 ms")
+public class HemogramaPersistidoEvent extends Event {
+
+    @Label("Hemogramas")
+    public int hemogramas;
+
+    @Label("Desvios")
+    public int desvios;
+
+    @Label("Instruções SQL")
+    @Description("Instruções preparadas pelo Hibernate na transação; um lote JDBC conta uma vez")
+    public long instrucoes;
+
+    @Label("Em Lote")
+    public boolean emLote;
+}
@@ -0,0 +1,32 @@
+package br.ufg.inf.hemograma.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Recebimento de uma notificação do rest-hook, da leitura do corpo até o
+ * registro no journal (com fsync) ou na fila distribuída.
+ */
+@Name("br.ufg.inf.hemograma.NotificacaoRecebida")
+@Label("Notificação Recebida")
+@Category({"Hemograma", "Ingestão"})
+@Description("Recebimento de uma notificação FHIR até o registro durável")
+@StackTrace(false)
+@Threshold("0 ms")
+public class NotificacaoRecebidaEvent extends Event {
+
+    @Label("Recurso")
+    public String recurso;
+
+    @Label("Tamanho")
+    @DataAmount
+    public long tamanho;
+
+    @Label("Tamanho Máximo")
+    @Description("Limite configurado para o corpo da notificação")
+    @DataAmount
+    public long tamanhoMaximo;
+
+    @Label("Destino")
+    @Description("journal ou fila-distribuida")
+    public String destino;
+}
@@ -0,0 +1,29 @@
+package br.ufg.inf.hemograma.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Parse do payload de uma notificação em um recurso FHIR.
+ */
+@Name("br.ufg.inf.hemograma.ObservacaoParseada")
+@Label("Observação Parseada")
+@Category({"Hemograma", "Processamento"})
+@Description("Parse do JSON de uma notificação (Observation, Bundle ou Patient)")
+@StackTrace(false)
+@Threshold("0 ms")
+public class ObservacaoParseadaEvent extends Event {
+
+    @Label("Tipo do Recurso")
+    public String tipoRecurso;
+
+    @Label("Tamanho do Payload")
+    @DataAmount
+    public long tamanhoPayload;
+
+    @Label("Observations")
+    public int observacoes;
+
+    @Label("Componentes")
+    @Description("Total de componentes das Observations do recurso")
+    public int componentes;
+}
@@ -0,0 +1,137 @@
+package br.ufg.inf.hemograma.model;
+
+import br.ufg.inf.hemograma.model.enums.SeveridadeDesvio;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Entidade que representa um achado hematológico composto, detectado pela
+ * combinação de vários parâmetros do hemograma (ex: pancitopenia).
+ *
+ * Os achados são gerados pelas regras de {@link br.ufg.inf.hemograma.service.MotorRegrasService}
+ * e gravados junto com os desvios do hemograma.
+ */
+@Entity
+@Table(name = "achados_compostos")
+public class AchadoComposto {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "achados_compostos_seq")
+    @SequenceGenerator(name = "achados_compostos_seq", sequenceName = "achados_compostos_seq", allocationSize = 50)
+    private Long id;
+    
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "hemograma_id", nullable = false)
+    private Hemograma hemograma;
+
+    /**
+     * data_cadastro do hemograma, coluna de partição desta tabela no PostgreSQL
+     * (as partições de um mês são removidas junto com as do hemograma).
+     */
+    @Column(name = "data_cadastro_hemograma", nullable = false, updatable = false)
+    private LocalDateTime dataCadastroHemograma;
+    
+    @Column(name = "codigo", length = 100, nullable = false)
+    private String codigo;
+    
+    @Column(name = "nome", nullable = false)
+    private String nome;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "severidade", nullable = false)
+    private SeveridadeDesvio severidade;
+    
+    @Column(name = "descricao", length = 500)
+    private String descricao;
+    
+    @Column(name = "data_deteccao", nullable = false)
+    private LocalDateTime dataDeteccao;
+    
+    public AchadoComposto() {
+        this.dataDeteccao = LocalDateTime.now();
+    }
+    
+    public AchadoComposto(String codigo, String nome, SeveridadeDesvio severidade, String descricao) {
+        this();
+        this.codigo = codigo;
+        this.nome = nome;
+        this.severidade = severidade;
+        this.descricao = descricao;
+    }
+    
+    @PrePersist
+    protected void onCreate() {
+        this.dataCadastroHemograma = hemograma.getDataCadastro();
+    }
+    
+    // Getters e Setters
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public Hemograma getHemograma() {
+        return hemograma;
+    }
+    
+    public void setHemograma(Hemograma hemograma) {
+        this.hemograma = hemograma;
+    }
+    
+    public LocalDateTime getDataCadastroHemograma() {
+        return dataCadastroHemograma;
+    }
+    
+    public String getCodigo() {
+        return codigo;
+    }
+    
+    public void setCodigo(String codigo) {
+        this.codigo = codigo;
+    }
+    
+    public String getNome() {
+        return nome;
+    }
+    
+    public void setNome(String nome) {
+        this.nome = nome;
+    }
+    
+    public SeveridadeDesvio getSeveridade() {
+        return severidade;
+    }
+    
+    public void setSeveridade(SeveridadeDesvio severidade) {
+        this.severidade = severidade;
+    }
+    
+    public String getDescricao() {
+        return descricao;
+    }
+    
+    public void setDescricao(String descricao) {
+        this.descricao = descricao;
+    }
+    
+    public LocalDateTime getDataDeteccao() {
+        return dataDeteccao;
+    }
+    
+    public void setDataDeteccao(LocalDateTime dataDeteccao) {
+        this.dataDeteccao = dataDeteccao;
+    }
+    
+    @Override
+    public String toString() {
+        return "AchadoComposto{" +
+                "id=" + id +
+                ", codigo='" + codigo + '\'' +
+                ", severidade=" + severidade +
+                '}';
+    }
+}
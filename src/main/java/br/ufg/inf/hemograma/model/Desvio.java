@@ -15,12 +15,20 @@ import java.time.LocalDateTime;
 public class Desvio {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "desvios_seq")
+    @SequenceGenerator(name = "desvios_seq", sequenceName = "desvios_seq", allocationSize = 50)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "hemograma_id", nullable = false)
     private Hemograma hemograma;
+
+    /**
+     * data_cadastro do hemograma, coluna de partição desta tabela no PostgreSQL
+     * (as partições de um mês são removidas junto com as do hemograma).
+     */
+    @Column(name = "data_cadastro_hemograma", nullable = false, updatable = false)
+    private LocalDateTime dataCadastroHemograma;
     
     @Enumerated(EnumType.STRING)
     @Column(name = "tipo_parametro", nullable = false)
@@ -55,6 +63,11 @@ public class Desvio {
         this.dataDeteccao = LocalDateTime.now();
     }
     
+    @PrePersist
+    protected void onCreate() {
+        this.dataCadastroHemograma = hemograma.getDataCadastro();
+    }
+    
     // Getters e Setters
     
     public Long getId() {
@@ -73,6 +86,10 @@ public class Desvio {
         this.hemograma = hemograma;
     }
     
+    public LocalDateTime getDataCadastroHemograma() {
+        return dataCadastroHemograma;
+    }
+    
     public TipoParametro getTipoParametro() {
         return tipoParametro;
     }
@@ -3,7 +3,9 @@ package br.ufg.inf.hemograma.model;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Entidade que representa um hemograma completo.
@@ -13,7 +15,8 @@ import java.util.List;
 public class Hemograma {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "hemogramas_seq")
+    @SequenceGenerator(name = "hemogramas_seq", sequenceName = "hemogramas_seq", allocationSize = 50)
     private Long id;
     
     @Column(name = "fhir_observation_id", unique = true, nullable = false)
@@ -32,12 +35,41 @@ public class Hemograma {
     @Column(name = "status")
     private String status; // final, preliminary, etc.
     
+    /**
+     * meta.versionId da Observation aplicada por último.
+     */
+    @Column(name = "versao_fhir", length = 64)
+    private String versaoFhir;
+    
+    /**
+     * Hash SHA-256 do conteúdo extraído da Observation, usado para descartar
+     * reenvios sem alteração.
+     */
+    @Column(name = "hash_conteudo", length = 64)
+    private String hashConteudo;
+    
     @OneToMany(mappedBy = "hemograma", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<ParametroHemograma> parametros = new ArrayList<>();
     
     @OneToMany(mappedBy = "hemograma", cascade = CascadeType.ALL, orphanRemoval = true)
     private List<Desvio> desvios = new ArrayList<>();
     
+    @OneToMany(mappedBy = "hemograma", cascade = CascadeType.ALL, orphanRemoval = true)
+    private List<AchadoComposto> achados = new ArrayList<>();
+    
+    /**
+     * Observations de um único analito que compõem o hemograma (vazio se a
+     * Observation recebida já trazia os componentes).
+     */
+    @OneToMany(mappedBy = "hemograma", cascade = CascadeType.ALL, orphanRemoval = true)
+    private List<MembroHemograma> membros = new ArrayList<>();
+    
+    /**
+     * Parâmetros no layout compacto (uma linha por hemograma). Nulo no layout normalizado.
+     */
+    @Embedded
+    private ParametrosCompactos parametrosCompactos;
+    
     public Hemograma() {
         this.dataCadastro = LocalDateTime.now();
     }
@@ -52,6 +84,77 @@ public class Hemograma {
         desvio.setHemograma(this);
     }
     
+    /**
+     * Substitui os achados compostos pelos da avaliação mais recente. Achados
+     * que continuam presentes (mesmo código) são mantidos, sem nova gravação.
+     */
+    public void substituirAchados(List<AchadoComposto> novos) {
+        Set<String> codigosNovos = new HashSet<>();
+        novos.forEach(achado -> codigosNovos.add(achado.getCodigo()));
+        achados.removeIf(achado -> !codigosNovos.contains(achado.getCodigo()));
+
+        Set<String> codigosAtuais = new HashSet<>();
+        achados.forEach(achado -> codigosAtuais.add(achado.getCodigo()));
+        for (AchadoComposto achado : novos) {
+            if (codigosAtuais.add(achado.getCodigo())) {
+                achados.add(achado);
+                achado.setHemograma(this);
+            }
+        }
+    }
+    
+    /**
+     * Registra o membro ou, se ele já compõe o hemograma, atualiza a sua versão.
+     */
+    public void registrarMembro(MembroHemograma membro) {
+        for (MembroHemograma atual : membros) {
+            if (atual.getFhirObservationId().equals(membro.getFhirObservationId())) {
+                atual.setTipoParametro(membro.getTipoParametro());
+                atual.setVersaoFhir(membro.getVersaoFhir());
+                atual.setHashConteudo(membro.getHashConteudo());
+                return;
+            }
+        }
+        membros.add(membro);
+        membro.setHemograma(this);
+    }
+    
+    /**
+     * Move os parâmetros para o layout compacto, de modo que nenhuma linha
+     * de parametros_hemograma seja gravada para este hemograma.
+     */
+    public void compactarParametros() {
+        this.parametrosCompactos = ParametrosCompactos.de(parametros);
+        this.parametros.clear();
+    }
+    
+    /**
+     * Descarta os IDs e as coleções gerenciadas de uma tentativa de gravação
+     * desfeita (rollback), para que o hemograma possa ser gravado novamente como novo.
+     */
+    public void descartarIdentificadores() {
+        this.id = null;
+        this.parametros = new ArrayList<>(parametros);
+        this.desvios = new ArrayList<>(desvios);
+        this.achados = new ArrayList<>(achados);
+        this.membros = new ArrayList<>(membros);
+        parametros.forEach(parametro -> parametro.setId(null));
+        desvios.forEach(desvio -> desvio.setId(null));
+        achados.forEach(achado -> achado.setId(null));
+        membros.forEach(membro -> membro.setId(null));
+    }
+    
+    /**
+     * Retorna os parâmetros do hemograma independentemente do layout de armazenamento.
+     * Deve ser usado para leitura; no layout compacto a lista é reconstruída a cada chamada.
+     */
+    public List<ParametroHemograma> listarParametros() {
+        if (parametros.isEmpty() && parametrosCompactos != null && !parametrosCompactos.isVazio()) {
+            return parametrosCompactos.paraParametros();
+        }
+        return parametros;
+    }
+    
     // Getters e Setters
     
     public Long getId() {
@@ -102,6 +205,22 @@ public class Hemograma {
         this.status = status;
     }
     
+    public String getVersaoFhir() {
+        return versaoFhir;
+    }
+    
+    public void setVersaoFhir(String versaoFhir) {
+        this.versaoFhir = versaoFhir;
+    }
+    
+    public String getHashConteudo() {
+        return hashConteudo;
+    }
+    
+    public void setHashConteudo(String hashConteudo) {
+        this.hashConteudo = hashConteudo;
+    }
+    
     public List<ParametroHemograma> getParametros() {
         return parametros;
     }
@@ -118,6 +237,30 @@ public class Hemograma {
         this.desvios = desvios;
     }
     
+    public List<AchadoComposto> getAchados() {
+        return achados;
+    }
+    
+    public void setAchados(List<AchadoComposto> achados) {
+        this.achados = achados;
+    }
+    
+    public List<MembroHemograma> getMembros() {
+        return membros;
+    }
+    
+    public void setMembros(List<MembroHemograma> membros) {
+        this.membros = membros;
+    }
+    
+    public ParametrosCompactos getParametrosCompactos() {
+        return parametrosCompactos;
+    }
+    
+    public void setParametrosCompactos(ParametrosCompactos parametrosCompactos) {
+        this.parametrosCompactos = parametrosCompactos;
+    }
+    
     @Override
     public String toString() {
         return "Hemograma{" +
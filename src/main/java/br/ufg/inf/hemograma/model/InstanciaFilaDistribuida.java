@@ -0,0 +1,44 @@
+package br.ufg.inf.hemograma.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Presença de uma instância na fila distribuída, renovada periodicamente.
+ * As instâncias presentes dividem entre si as partições da fila, inclusive
+ * as que ainda não detêm nenhuma (ex: recém-iniciadas).
+ *
+ * @see br.ufg.inf.hemograma.service.FilaDistribuidaService
+ */
+@Entity
+@Table(name = "instancias_fila_distribuida")
+public class InstanciaFilaDistribuida {
+
+    @Id
+    @Column(name = "instancia", length = 100)
+    private String instancia;
+
+    @Column(name = "lease_ate", nullable = false)
+    private LocalDateTime leaseAte;
+
+    public InstanciaFilaDistribuida() {
+    }
+
+    // Getters e Setters
+
+    public String getInstancia() {
+        return instancia;
+    }
+
+    public void setInstancia(String instancia) {
+        this.instancia = instancia;
+    }
+
+    public LocalDateTime getLeaseAte() {
+        return leaseAte;
+    }
+
+    public void setLeaseAte(LocalDateTime leaseAte) {
+        this.leaseAte = leaseAte;
+    }
+}
@@ -0,0 +1,122 @@
+package br.ufg.inf.hemograma.model;
+
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Observation de um único analito que compõe um hemograma combinado pelo
+ * correlacionador ({@link br.ufg.inf.hemograma.service.CorrelacaoObservacoesService}).
+ *
+ * Guarda a versão e o hash do conteúdo do membro, para que uma nova versão
+ * dele seja aplicada ao hemograma combinado (e não forme outro hemograma).
+ */
+@Entity
+@Table(name = "membros_hemograma")
+public class MembroHemograma {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "membros_hemograma_seq")
+    @SequenceGenerator(name = "membros_hemograma_seq", sequenceName = "membros_hemograma_seq", allocationSize = 50)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "hemograma_id", nullable = false)
+    private Hemograma hemograma;
+
+    /**
+     * data_cadastro do hemograma: no PostgreSQL, os membros de um mês são
+     * removidos junto com as partições do hemograma (a tabela não é
+     * particionada, para manter fhir_observation_id único).
+     */
+    @Column(name = "data_cadastro_hemograma", nullable = false, updatable = false)
+    private LocalDateTime dataCadastroHemograma;
+
+    @Column(name = "fhir_observation_id", unique = true, nullable = false)
+    private String fhirObservationId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "tipo_parametro", nullable = false)
+    private TipoParametro tipoParametro;
+
+    /**
+     * meta.versionId do membro aplicado por último.
+     */
+    @Column(name = "versao_fhir", length = 64)
+    private String versaoFhir;
+
+    /**
+     * Hash SHA-256 do conteúdo extraído do membro.
+     */
+    @Column(name = "hash_conteudo", length = 64)
+    private String hashConteudo;
+
+    public MembroHemograma() {
+    }
+
+    public MembroHemograma(String fhirObservationId, TipoParametro tipoParametro, String versaoFhir, String hashConteudo) {
+        this.fhirObservationId = fhirObservationId;
+        this.tipoParametro = tipoParametro;
+        this.versaoFhir = versaoFhir;
+        this.hashConteudo = hashConteudo;
+    }
+
+    @PrePersist
+    protected void onCreate() {
+        this.dataCadastroHemograma = hemograma.getDataCadastro();
+    }
+
+    // Getters e Setters
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Hemograma getHemograma() {
+        return hemograma;
+    }
+
+    public void setHemograma(Hemograma hemograma) {
+        this.hemograma = hemograma;
+    }
+
+    public LocalDateTime getDataCadastroHemograma() {
+        return dataCadastroHemograma;
+    }
+
+    public String getFhirObservationId() {
+        return fhirObservationId;
+    }
+
+    public void setFhirObservationId(String fhirObservationId) {
+        this.fhirObservationId = fhirObservationId;
+    }
+
+    public TipoParametro getTipoParametro() {
+        return tipoParametro;
+    }
+
+    public void setTipoParametro(TipoParametro tipoParametro) {
+        this.tipoParametro = tipoParametro;
+    }
+
+    public String getVersaoFhir() {
+        return versaoFhir;
+    }
+
+    public void setVersaoFhir(String versaoFhir) {
+        this.versaoFhir = versaoFhir;
+    }
+
+    public String getHashConteudo() {
+        return hashConteudo;
+    }
+
+    public void setHashConteudo(String hashConteudo) {
+        this.hashConteudo = hashConteudo;
+    }
+}
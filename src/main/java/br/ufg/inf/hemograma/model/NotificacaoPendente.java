@@ -0,0 +1,127 @@
+package br.ufg.inf.hemograma.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Entidade que representa uma notificação FHIR aguardando processamento na
+ * fila distribuída (tabela de trabalho compartilhada entre instâncias).
+ *
+ * Uma instância reivindica a notificação gravando um lease ({@code leaseAte}).
+ * Ao concluir o processamento a linha é removida; se a instância cair antes
+ * disso, o lease expira e outra instância a reivindica. Notificações com
+ * valores críticos têm prioridade maior e são reivindicadas primeiro.
+ *
+ * A partição (hash do paciente) restringe a reivindicação à instância que
+ * detém o lease da partição. Uma falha no processamento mantém a linha, sem
+ * trabalhador e com o lease adiado até a próxima tentativa.
+ *
+ * @see br.ufg.inf.hemograma.service.FilaDistribuidaService
+ */
+@Entity
+@Table(name = "notificacoes_pendentes")
+public class NotificacaoPendente {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notificacoes_pendentes_seq")
+    @SequenceGenerator(name = "notificacoes_pendentes_seq", sequenceName = "notificacoes_pendentes_seq", allocationSize = 50)
+    private Long id;
+    
+    @Column(name = "payload", length = 10485760, nullable = false)
+    private byte[] payload;
+    
+    @Column(name = "data_recebimento", nullable = false)
+    private LocalDateTime dataRecebimento;
+    
+    @Column(name = "tentativas", nullable = false)
+    private int tentativas;
+    
+    @Column(name = "prioridade", nullable = false)
+    private int prioridade;
+    
+    @Column(name = "particao", nullable = false)
+    private int particao;
+    
+    @Column(name = "lease_ate")
+    private LocalDateTime leaseAte;
+    
+    @Column(name = "trabalhador", length = 100)
+    private String trabalhador;
+    
+    public NotificacaoPendente() {
+        this.dataRecebimento = LocalDateTime.now();
+    }
+    
+    public NotificacaoPendente(byte[] payload, int prioridade, int particao) {
+        this();
+        this.payload = payload;
+        this.prioridade = prioridade;
+        this.particao = particao;
+    }
+    
+    // Getters e Setters
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public byte[] getPayload() {
+        return payload;
+    }
+    
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
+    
+    public LocalDateTime getDataRecebimento() {
+        return dataRecebimento;
+    }
+    
+    public void setDataRecebimento(LocalDateTime dataRecebimento) {
+        this.dataRecebimento = dataRecebimento;
+    }
+    
+    public int getTentativas() {
+        return tentativas;
+    }
+    
+    public void setTentativas(int tentativas) {
+        this.tentativas = tentativas;
+    }
+    
+    public int getPrioridade() {
+        return prioridade;
+    }
+    
+    public void setPrioridade(int prioridade) {
+        this.prioridade = prioridade;
+    }
+    
+    public int getParticao() {
+        return particao;
+    }
+    
+    public void setParticao(int particao) {
+        this.particao = particao;
+    }
+    
+    public LocalDateTime getLeaseAte() {
+        return leaseAte;
+    }
+    
+    public void setLeaseAte(LocalDateTime leaseAte) {
+        this.leaseAte = leaseAte;
+    }
+    
+    public String getTrabalhador() {
+        return trabalhador;
+    }
+    
+    public void setTrabalhador(String trabalhador) {
+        this.trabalhador = trabalhador;
+    }
+}
@@ -1,6 +1,8 @@
 package br.ufg.inf.hemograma.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.DynamicUpdate;
+
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 
@@ -11,6 +13,7 @@ import java.time.LocalDateTime;
  */
 @Entity
 @Table(name = "pacientes")
+@DynamicUpdate
 public class Paciente {
     
     @Id
@@ -58,6 +61,13 @@ public class Paciente {
     
     @Column(name = "data_atualizacao")
     private LocalDateTime dataAtualizacao;
+    
+    /**
+     * Hash do conteúdo demográfico recebido do FHIR, usado para ignorar
+     * reenvios sem alteração. Nulo enquanto o recurso Patient não foi recebido.
+     */
+    @Column(name = "hash_dados", length = 64)
+    private String hashDados;
 
     // Construtores
     
@@ -190,6 +200,14 @@ public class Paciente {
     public void setDataAtualizacao(LocalDateTime dataAtualizacao) {
         this.dataAtualizacao = dataAtualizacao;
     }
+    
+    public String getHashDados() {
+        return hashDados;
+    }
+    
+    public void setHashDados(String hashDados) {
+        this.hashDados = hashDados;
+    }
 
     @Override
     public String toString() {
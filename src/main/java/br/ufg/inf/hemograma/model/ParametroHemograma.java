@@ -2,6 +2,7 @@ package br.ufg.inf.hemograma.model;
 
 import br.ufg.inf.hemograma.model.enums.TipoParametro;
 import jakarta.persistence.*;
+import java.time.LocalDateTime;
 
 /**
  * Entidade que representa um parâmetro individual de um hemograma.
@@ -11,12 +12,20 @@ import jakarta.persistence.*;
 public class ParametroHemograma {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "parametros_hemograma_seq")
+    @SequenceGenerator(name = "parametros_hemograma_seq", sequenceName = "parametros_hemograma_seq", allocationSize = 50)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "hemograma_id", nullable = false)
     private Hemograma hemograma;
+
+    /**
+     * data_cadastro do hemograma, coluna de partição desta tabela no PostgreSQL
+     * (as partições de um mês são removidas junto com as do hemograma).
+     */
+    @Column(name = "data_cadastro_hemograma", nullable = false, updatable = false)
+    private LocalDateTime dataCadastroHemograma;
     
     @Enumerated(EnumType.STRING)
     @Column(name = "tipo_parametro", nullable = false)
@@ -41,6 +50,11 @@ public class ParametroHemograma {
         this.codigoLOINC = tipoParametro != null ? tipoParametro.getCodigoLOINC() : null;
     }
     
+    @PrePersist
+    protected void onCreate() {
+        this.dataCadastroHemograma = hemograma.getDataCadastro();
+    }
+    
     // Getters e Setters
     
     public Long getId() {
@@ -59,6 +73,10 @@ public class ParametroHemograma {
         this.hemograma = hemograma;
     }
     
+    public LocalDateTime getDataCadastroHemograma() {
+        return dataCadastroHemograma;
+    }
+    
     public TipoParametro getTipoParametro() {
         return tipoParametro;
     }
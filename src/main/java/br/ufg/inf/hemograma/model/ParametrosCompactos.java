@@ -0,0 +1,153 @@
+package br.ufg.inf.hemograma.model;
+
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Valores dos parâmetros de um hemograma na própria linha da tabela hemogramas:
+ * uma coluna anulável por {@link TipoParametro} ({@code valor_<tipo>}), nula
+ * quando o parâmetro não está presente.
+ * 
+ * As colunas são consultáveis por valor (ex: faixa de valores) como as linhas
+ * de parametros_hemograma no layout normalizado. A unidade e o código LOINC
+ * não são armazenados: são derivados do TipoParametro.
+ */
+@Embeddable
+public class ParametrosCompactos {
+    
+    private static final TipoParametro[] TIPOS = TipoParametro.values();
+    
+    @Column(name = "valor_leucocitos")
+    private Double leucocitos;
+    
+    @Column(name = "valor_hemoglobina")
+    private Double hemoglobina;
+    
+    @Column(name = "valor_plaquetas")
+    private Double plaquetas;
+    
+    @Column(name = "valor_hematocrito")
+    private Double hematocrito;
+    
+    @Column(name = "valor_eritrocitos")
+    private Double eritrocitos;
+    
+    @Column(name = "valor_vcm")
+    private Double vcm;
+    
+    @Column(name = "valor_hcm")
+    private Double hcm;
+    
+    @Column(name = "valor_chcm")
+    private Double chcm;
+    
+    @Column(name = "valor_rdw")
+    private Double rdw;
+    
+    @Column(name = "valor_neutrofilos")
+    private Double neutrofilos;
+    
+    @Column(name = "valor_linfocitos")
+    private Double linfocitos;
+    
+    @Column(name = "valor_monocitos")
+    private Double monocitos;
+    
+    @Column(name = "valor_eosinofilos")
+    private Double eosinofilos;
+    
+    @Column(name = "valor_basofilos")
+    private Double basofilos;
+    
+    public ParametrosCompactos() {
+    }
+    
+    /**
+     * Compacta uma lista de parâmetros. Se um tipo aparecer mais de uma vez,
+     * prevalece o último valor.
+     */
+    public static ParametrosCompactos de(List<ParametroHemograma> parametros) {
+        ParametrosCompactos compactos = new ParametrosCompactos();
+        for (ParametroHemograma parametro : parametros) {
+            compactos.definir(parametro.getTipoParametro(), parametro.getValor());
+        }
+        return compactos;
+    }
+    
+    /**
+     * Nome do atributo JPA com o valor do tipo (ex: {@code parametrosCompactos.hemoglobina}),
+     * para as consultas por valor.
+     */
+    public static String atributo(TipoParametro tipo) {
+        return tipo.name().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Reconstrói os parâmetros (não gerenciados pelo JPA) a partir das colunas, na ordem dos tipos.
+     */
+    public List<ParametroHemograma> paraParametros() {
+        List<ParametroHemograma> parametros = new ArrayList<>();
+        for (TipoParametro tipo : TIPOS) {
+            Double valor = valor(tipo);
+            if (valor != null) {
+                parametros.add(new ParametroHemograma(tipo, valor, tipo.getUnidade()));
+            }
+        }
+        return parametros;
+    }
+    
+    public boolean isVazio() {
+        for (TipoParametro tipo : TIPOS) {
+            if (valor(tipo) != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * @return Valor do parâmetro, ou null se ausente
+     */
+    public Double valor(TipoParametro tipo) {
+        return switch (tipo) {
+            case LEUCOCITOS -> leucocitos;
+            case HEMOGLOBINA -> hemoglobina;
+            case PLAQUETAS -> plaquetas;
+            case HEMATOCRITO -> hematocrito;
+            case ERITROCITOS -> eritrocitos;
+            case VCM -> vcm;
+            case HCM -> hcm;
+            case CHCM -> chcm;
+            case RDW -> rdw;
+            case NEUTROFILOS -> neutrofilos;
+            case LINFOCITOS -> linfocitos;
+            case MONOCITOS -> monocitos;
+            case EOSINOFILOS -> eosinofilos;
+            case BASOFILOS -> basofilos;
+        };
+    }
+    
+    private void definir(TipoParametro tipo, Double valor) {
+        switch (tipo) {
+            case LEUCOCITOS -> leucocitos = valor;
+            case HEMOGLOBINA -> hemoglobina = valor;
+            case PLAQUETAS -> plaquetas = valor;
+            case HEMATOCRITO -> hematocrito = valor;
+            case ERITROCITOS -> eritrocitos = valor;
+            case VCM -> vcm = valor;
+            case HCM -> hcm = valor;
+            case CHCM -> chcm = valor;
+            case RDW -> rdw = valor;
+            case NEUTROFILOS -> neutrofilos = valor;
+            case LINFOCITOS -> linfocitos = valor;
+            case MONOCITOS -> monocitos = valor;
+            case EOSINOFILOS -> eosinofilos = valor;
+            case BASOFILOS -> basofilos = valor;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package br.ufg.inf.hemograma.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Partição da fila distribuída: grupo de pacientes (pelo hash da referência)
+ * cujas notificações só são reivindicadas pela instância que detém o lease
+ * da partição. Assim as notificações de um mesmo paciente são processadas
+ * por uma única instância de cada vez, na fila desse paciente.
+ *
+ * @see br.ufg.inf.hemograma.service.FilaDistribuidaService
+ */
+@Entity
+@Table(name = "particoes_fila_distribuida")
+public class ParticaoFilaDistribuida {
+
+    @Id
+    @Column(name = "particao")
+    private Integer particao;
+
+    @Column(name = "instancia", length = 100)
+    private String instancia;
+
+    @Column(name = "lease_ate")
+    private LocalDateTime leaseAte;
+
+    public ParticaoFilaDistribuida() {
+    }
+
+    // Getters e Setters
+
+    public Integer getParticao() {
+        return particao;
+    }
+
+    public void setParticao(Integer particao) {
+        this.particao = particao;
+    }
+
+    public String getInstancia() {
+        return instancia;
+    }
+
+    public void setInstancia(String instancia) {
+        this.instancia = instancia;
+    }
+
+    public LocalDateTime getLeaseAte() {
+        return leaseAte;
+    }
+
+    public void setLeaseAte(LocalDateTime leaseAte) {
+        this.leaseAte = leaseAte;
+    }
+}
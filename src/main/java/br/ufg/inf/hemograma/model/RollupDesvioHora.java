@@ -0,0 +1,111 @@
+package br.ufg.inf.hemograma.model;
+
+import br.ufg.inf.hemograma.model.enums.SeveridadeDesvio;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Entidade que representa a contagem agregada de desvios por hora, tipo de
+ * parâmetro, severidade e região (estado do paciente).
+ * 
+ * Mantida incrementalmente na mesma transação que grava os desvios, permite
+ * responder séries históricas somando poucas linhas em vez de ler a tabela desvios.
+ */
+@Entity
+@Table(name = "rollup_desvios_hora",
+       uniqueConstraints = @UniqueConstraint(name = "uk_rollup_desvios_hora",
+               columnNames = {"hora", "tipo_parametro", "severidade", "regiao"}))
+public class RollupDesvioHora {
+    
+    /**
+     * Região usada quando o estado do paciente é desconhecido.
+     */
+    public static final String REGIAO_DESCONHECIDA = "N/D";
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    /**
+     * Início da hora (minutos e segundos zerados) da data de coleta do hemograma.
+     */
+    @Column(name = "hora", nullable = false)
+    private LocalDateTime hora;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "tipo_parametro", nullable = false)
+    private TipoParametro tipoParametro;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "severidade", nullable = false)
+    private SeveridadeDesvio severidade;
+    
+    @Column(name = "regiao", nullable = false, length = 10)
+    private String regiao;
+    
+    @Column(name = "quantidade", nullable = false)
+    private Long quantidade;
+    
+    public RollupDesvioHora() {
+    }
+    
+    public RollupDesvioHora(LocalDateTime hora, TipoParametro tipoParametro, SeveridadeDesvio severidade,
+                            String regiao, Long quantidade) {
+        this.hora = hora;
+        this.tipoParametro = tipoParametro;
+        this.severidade = severidade;
+        this.regiao = regiao;
+        this.quantidade = quantidade;
+    }
+    
+    // Getters e Setters
+    
+    public Long getId() {
+        return id;
+    }
+    
+    public void setId(Long id) {
+        this.id = id;
+    }
+    
+    public LocalDateTime getHora() {
+        return hora;
+    }
+    
+    public void setHora(LocalDateTime hora) {
+        this.hora = hora;
+    }
+    
+    public TipoParametro getTipoParametro() {
+        return tipoParametro;
+    }
+    
+    public void setTipoParametro(TipoParametro tipoParametro) {
+        this.tipoParametro = tipoParametro;
+    }
+    
+    public SeveridadeDesvio getSeveridade() {
+        return severidade;
+    }
+    
+    public void setSeveridade(SeveridadeDesvio severidade) {
+        this.severidade = severidade;
+    }
+    
+    public String getRegiao() {
+        return regiao;
+    }
+    
+    public void setRegiao(String regiao) {
+        this.regiao = regiao;
+    }
+    
+    public Long getQuantidade() {
+        return quantidade;
+    }
+    
+    public void setQuantidade(Long quantidade) {
+        this.quantidade = quantidade;
+    }
+}
@@ -0,0 +1,46 @@
+package br.ufg.inf.hemograma.model.enums;
+
+/**
+ * Enum que representa as faixas etárias usadas na estratificação das
+ * distribuições populacionais dos parâmetros.
+ */
+public enum FaixaEtaria {
+    CRIANCA(0, 11),
+    ADOLESCENTE(12, 17),
+    ADULTO_JOVEM(18, 39),
+    ADULTO(40, 59),
+    IDOSO(60, Integer.MAX_VALUE),
+    
+    /**
+     * Data de nascimento desconhecida.
+     */
+    DESCONHECIDA(-1, -1);
+    
+    private final int idadeMinima;
+    private final int idadeMaxima;
+    
+    FaixaEtaria(int idadeMinima, int idadeMaxima) {
+        this.idadeMinima = idadeMinima;
+        this.idadeMaxima = idadeMaxima;
+    }
+    
+    public static FaixaEtaria porIdade(Integer idade) {
+        if (idade == null || idade < 0) {
+            return DESCONHECIDA;
+        }
+        for (FaixaEtaria faixa : values()) {
+            if (idade >= faixa.idadeMinima && idade <= faixa.idadeMaxima) {
+                return faixa;
+            }
+        }
+        return DESCONHECIDA;
+    }
+    
+    public int getIdadeMinima() {
+        return idadeMinima;
+    }
+    
+    public int getIdadeMaxima() {
+        return idadeMaxima;
+    }
+}
@@ -0,0 +1,33 @@
+package br.ufg.inf.hemograma.model.enums;
+
+/**
+ * Enum que representa o formato das exportações de desvios.
+ */
+public enum FormatoExportacao {
+    
+    /**
+     * CSV (RFC 4180) com linha de cabeçalho.
+     */
+    CSV("text/csv", "csv"),
+    
+    /**
+     * Um objeto JSON por linha.
+     */
+    NDJSON("application/x-ndjson", "ndjson");
+    
+    private final String tipoConteudo;
+    private final String extensao;
+    
+    FormatoExportacao(String tipoConteudo, String extensao) {
+        this.tipoConteudo = tipoConteudo;
+        this.extensao = extensao;
+    }
+    
+    public String getTipoConteudo() {
+        return tipoConteudo;
+    }
+    
+    public String getExtensao() {
+        return extensao;
+    }
+}
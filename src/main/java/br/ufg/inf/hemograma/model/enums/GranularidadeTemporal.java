@@ -0,0 +1,15 @@
+package br.ufg.inf.hemograma.model.enums;
+
+/**
+ * Enum que representa a granularidade das séries históricas de desvios.
+ */
+public enum GranularidadeTemporal {
+    HORA,
+    DIA,
+    
+    /**
+     * Semana iniciando na segunda-feira.
+     */
+    SEMANA,
+    MES
+}
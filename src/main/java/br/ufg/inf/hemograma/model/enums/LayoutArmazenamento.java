@@ -0,0 +1,21 @@
+package br.ufg.inf.hemograma.model.enums;
+
+/**
+ * Enum que define como os parâmetros de um hemograma são persistidos.
+ */
+public enum LayoutArmazenamento {
+    
+    /**
+     * Uma linha em parametros_hemograma por parâmetro (layout original).
+     */
+    NORMALIZADO,
+    
+    /**
+     * Uma única linha por hemograma: uma coluna por tipo de parâmetro na
+     * própria tabela hemogramas (ver {@link br.ufg.inf.hemograma.model.ParametrosCompactos}).
+     *
+     * A troca de layout não converte os hemogramas já gravados; as consultas
+     * por valor de parâmetro (ex: faixa de valores) leem os dois layouts.
+     */
+    COMPACTO
+}
@@ -0,0 +1,22 @@
+package br.ufg.inf.hemograma.model.enums;
+
+/**
+ * Enum que representa o nível geográfico usado na análise coletiva (Marco 4).
+ */
+public enum NivelRegional {
+    
+    /**
+     * Unidade federativa (ex: "GO").
+     */
+    ESTADO,
+    
+    /**
+     * Município, qualificado pelo estado (ex: "GO/Goiânia").
+     */
+    CIDADE,
+    
+    /**
+     * Prefixo do CEP (ex: "74000"), aproximando bairros/regiões de um município.
+     */
+    CEP
+}
@@ -0,0 +1,24 @@
+package br.ufg.inf.hemograma.model.enums;
+
+/**
+ * Enum que define o que fazer com os desvios já registrados quando os dados
+ * demográficos de um paciente (sexo e data de nascimento) chegam ou mudam.
+ */
+public enum PoliticaReavaliacao {
+
+    /**
+     * Mantém os desvios existentes; apenas novos hemogramas usam os dados atualizados.
+     */
+    NENHUMA,
+
+    /**
+     * Reavalia os hemogramas do paciente, substituindo apenas os desvios
+     * cuja notificação ainda não foi enviada.
+     */
+    PENDENTES,
+
+    /**
+     * Reavalia os hemogramas do paciente, substituindo todos os desvios.
+     */
+    TODAS
+}
@@ -0,0 +1,25 @@
+package br.ufg.inf.hemograma.repository;
+
+import br.ufg.inf.hemograma.model.AchadoComposto;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AchadoCompostoRepository extends JpaRepository<AchadoComposto, Long> {
+    
+    /**
+     * Busca em uma única consulta os achados de uma página de hemogramas.
+     */
+    @Query("SELECT a FROM AchadoComposto a WHERE a.hemograma.id IN :hemogramaIds")
+    List<AchadoComposto> findByHemogramaIds(@Param("hemogramaIds") Collection<Long> hemogramaIds);
+    
+    @Modifying
+    @Query("DELETE FROM AchadoComposto a WHERE a.hemograma.id IN :hemogramaIds")
+    int deleteByHemogramaIds(@Param("hemogramaIds") Collection<Long> hemogramaIds);
+}
@@ -4,13 +4,19 @@ import br.ufg.inf.hemograma.model.Desvio;
 import br.ufg.inf.hemograma.model.Hemograma;
 import br.ufg.inf.hemograma.model.enums.SeveridadeDesvio;
 import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 @Repository
 public interface DesvioRepository extends JpaRepository<Desvio, Long> {
@@ -34,6 +40,29 @@ public interface DesvioRepository extends JpaRepository<Desvio, Long> {
                                              @Param("dataInicio") LocalDateTime dataInicio);
     
     List<Desvio> findByNotificacaoEnviada(Boolean notificacaoEnviada);
+    
+    /**
+     * Busca em uma única consulta os desvios de uma página de hemogramas.
+     */
+    @Query("SELECT d FROM Desvio d WHERE d.hemograma.id IN :hemogramaIds")
+    List<Desvio> findByHemogramaIds(@Param("hemogramaIds") Collection<Long> hemogramaIds);
+    
+    /**
+     * Percorre, sem carregar entidades, os desvios de um período para reconstrução dos rollups.
+     * 
+     * @return Linhas [data de coleta, tipo de parâmetro, severidade, estado do paciente]
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("SELECT COALESCE(h.dataColeta, h.dataCadastro), d.tipoParametro, d.severidade, p.estado " +
+           "FROM Desvio d JOIN d.hemograma h JOIN h.paciente p " +
+           "WHERE COALESCE(h.dataColeta, h.dataCadastro) >= :dataInicio " +
+           "AND COALESCE(h.dataColeta, h.dataCadastro) < :dataFim")
+    Stream<Object[]> streamParaRollup(@Param("dataInicio") LocalDateTime dataInicio,
+                                      @Param("dataFim") LocalDateTime dataFim);
+
+    @Modifying
+    @Query("DELETE FROM Desvio d WHERE d.hemograma.id IN :hemogramaIds")
+    int deleteByHemogramaIds(@Param("hemogramaIds") Collection<Long> hemogramaIds);
 
 }
 
@@ -2,20 +2,50 @@ package br.ufg.inf.hemograma.repository;
 
 import br.ufg.inf.hemograma.model.Hemograma;
 import br.ufg.inf.hemograma.model.Paciente;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface HemogramaRepository extends JpaRepository<Hemograma, Long> {
     
+    /**
+     * Versão e hash de conteúdo gravados para uma Observation.
+     */
+    interface VersaoHemograma {
+        Long getId();
+        
+        String getVersaoFhir();
+        
+        String getHashConteudo();
+    }
+    
+    /**
+     * ID e Observation de um hemograma.
+     */
+    interface ChaveHemograma {
+        Long getId();
+        
+        String getFhirObservationId();
+    }
+    
     Optional<Hemograma> findByFhirObservationId(String fhirObservationId);
     
+    /**
+     * Consulta apenas id, versão e hash, sem carregar o hemograma.
+     */
+    Optional<VersaoHemograma> findVersaoByFhirObservationId(String fhirObservationId);
+    
     boolean existsByFhirObservationId(String fhirObservationId);
     
     List<Hemograma> findByPaciente(Paciente paciente);
@@ -29,6 +59,61 @@ public interface HemogramaRepository extends JpaRepository<Hemograma, Long> {
     @Query("SELECT h FROM Hemograma h WHERE h.paciente = :paciente AND h.dataColeta >= :dataInicio")
     List<Hemograma> findByPacienteEDataColetaApos(@Param("paciente") Paciente paciente,
                                                     @Param("dataInicio") LocalDateTime dataInicio);
+    
+    /**
+     * Página de hemogramas de um paciente em um período, com o paciente já carregado.
+     * Hemogramas sem data de coleta são considerados pela data de cadastro.
+     */
+    @Query(value = "SELECT h FROM Hemograma h JOIN FETCH h.paciente p " +
+                   "WHERE p.fhirId = :pacienteFhirId " +
+                   "AND COALESCE(h.dataColeta, h.dataCadastro) BETWEEN :dataInicio AND :dataFim " +
+                   "ORDER BY COALESCE(h.dataColeta, h.dataCadastro) DESC, h.id DESC",
+           countQuery = "SELECT COUNT(h) FROM Hemograma h " +
+                        "WHERE h.paciente.fhirId = :pacienteFhirId " +
+                        "AND COALESCE(h.dataColeta, h.dataCadastro) BETWEEN :dataInicio AND :dataFim")
+    Page<Hemograma> findPaginaPorPacienteEPeriodo(@Param("pacienteFhirId") String pacienteFhirId,
+                                                   @Param("dataInicio") LocalDateTime dataInicio,
+                                                   @Param("dataFim") LocalDateTime dataFim,
+                                                   Pageable pageable);
+
+    /**
+     * IDs dos hemogramas com data de referência anterior ao corte, dos mais antigos
+     * aos mais recentes, para arquivamento.
+     */
+    @Query("SELECT h.id FROM Hemograma h WHERE COALESCE(h.dataColeta, h.dataCadastro) < :corte " +
+           "ORDER BY COALESCE(h.dataColeta, h.dataCadastro), h.id")
+    List<Long> findIdsParaArquivamento(@Param("corte") LocalDateTime corte, Pageable pageable);
+
+    /**
+     * Hemogramas com o paciente já carregado.
+     */
+    @Query("SELECT h FROM Hemograma h JOIN FETCH h.paciente WHERE h.id IN :ids")
+    List<Hemograma> findComPacienteByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * ID e Observation dos hemogramas informados, sem carregá-los.
+     */
+    @Query("SELECT h.id AS id, h.fhirObservationId AS fhirObservationId FROM Hemograma h WHERE h.id IN :ids")
+    List<ChaveHemograma> findChavesByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * IDs dos hemogramas com o parâmetro na faixa informada, do mais recente ao mais antigo
+     * (layout normalizado; o compacto é consultado pelas colunas de cada tipo).
+     */
+    @Query("SELECT h.id FROM ParametroHemograma p JOIN p.hemograma h " +
+           "WHERE p.tipoParametro = :tipo AND p.valor BETWEEN :minimo AND :maximo " +
+           "AND COALESCE(h.dataColeta, h.dataCadastro) BETWEEN :dataInicio AND :dataFim " +
+           "ORDER BY COALESCE(h.dataColeta, h.dataCadastro) DESC, h.id DESC")
+    List<Long> findIdsPorFaixaDeValor(@Param("tipo") TipoParametro tipo,
+                                      @Param("minimo") Double minimo,
+                                      @Param("maximo") Double maximo,
+                                      @Param("dataInicio") LocalDateTime dataInicio,
+                                      @Param("dataFim") LocalDateTime dataFim,
+                                      Pageable pageable);
+
+    @Modifying
+    @Query("DELETE FROM Hemograma h WHERE h.id IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
 
 }
 
@@ -0,0 +1,28 @@
+package br.ufg.inf.hemograma.repository;
+
+import br.ufg.inf.hemograma.model.MembroHemograma;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.Optional;
+
+@Repository
+public interface MembroHemogramaRepository extends JpaRepository<MembroHemograma, Long> {
+    
+    /**
+     * Hemograma combinado que o membro compõe (id) e a versão e o hash do
+     * membro, sem carregar o hemograma.
+     */
+    @Query("SELECT m.hemograma.id AS id, m.versaoFhir AS versaoFhir, m.hashConteudo AS hashConteudo " +
+           "FROM MembroHemograma m WHERE m.fhirObservationId = :fhirObservationId")
+    Optional<HemogramaRepository.VersaoHemograma> findVersaoByFhirObservationId(
+            @Param("fhirObservationId") String fhirObservationId);
+    
+    @Modifying
+    @Query("DELETE FROM MembroHemograma m WHERE m.hemograma.id IN :hemogramaIds")
+    int deleteByHemogramaIds(@Param("hemogramaIds") Collection<Long> hemogramaIds);
+}
@@ -0,0 +1,14 @@
+package br.ufg.inf.hemograma.repository;
+
+import br.ufg.inf.hemograma.model.NotificacaoPendente;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Inserção na fila distribuída. A reivindicação das linhas
+ * ({@code FOR UPDATE SKIP LOCKED}) e a conclusão são feitas em SQL nativo por
+ * {@link br.ufg.inf.hemograma.service.FilaDistribuidaService}.
+ */
+@Repository
+public interface NotificacaoPendenteRepository extends JpaRepository<NotificacaoPendente, Long> {
+}
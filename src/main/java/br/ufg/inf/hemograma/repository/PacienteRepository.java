@@ -4,6 +4,8 @@ import br.ufg.inf.hemograma.model.Paciente;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 /**
@@ -29,5 +31,13 @@ public interface PacienteRepository extends JpaRepository<Paciente, Long> {
      * @return true se existe, false caso contrário
      */
     boolean existsByFhirId(String fhirId);
+    
+    /**
+     * Busca, em uma única consulta, os pacientes de um lote de IDs do FHIR.
+     * 
+     * @param fhirIds IDs dos pacientes no servidor FHIR
+     * @return Pacientes encontrados (os inexistentes são omitidos)
+     */
+    List<Paciente> findByFhirIdIn(Collection<String> fhirIds);
 }
 
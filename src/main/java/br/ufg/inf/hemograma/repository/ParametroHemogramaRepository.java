@@ -0,0 +1,25 @@
+package br.ufg.inf.hemograma.repository;
+
+import br.ufg.inf.hemograma.model.ParametroHemograma;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ParametroHemogramaRepository extends JpaRepository<ParametroHemograma, Long> {
+    
+    /**
+     * Busca em uma única consulta os parâmetros de uma página de hemogramas.
+     */
+    @Query("SELECT p FROM ParametroHemograma p WHERE p.hemograma.id IN :hemogramaIds")
+    List<ParametroHemograma> findByHemogramaIds(@Param("hemogramaIds") Collection<Long> hemogramaIds);
+
+    @Modifying
+    @Query("DELETE FROM ParametroHemograma p WHERE p.hemograma.id IN :hemogramaIds")
+    int deleteByHemogramaIds(@Param("hemogramaIds") Collection<Long> hemogramaIds);
+}
@@ -0,0 +1,54 @@
+package br.ufg.inf.hemograma.repository;
+
+import br.ufg.inf.hemograma.model.RollupDesvioHora;
+import br.ufg.inf.hemograma.model.enums.SeveridadeDesvio;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface RollupDesvioHoraRepository extends JpaRepository<RollupDesvioHora, Long> {
+    
+    /**
+     * Soma (ou subtrai) uma quantidade à linha da chave informada.
+     * 
+     * @return Número de linhas afetadas (0 se a linha ainda não existe)
+     */
+    @Modifying
+    @Query("UPDATE RollupDesvioHora r SET r.quantidade = r.quantidade + :delta " +
+           "WHERE r.hora = :hora AND r.tipoParametro = :tipoParametro " +
+           "AND r.severidade = :severidade AND r.regiao = :regiao")
+    int incrementar(@Param("hora") LocalDateTime hora,
+                    @Param("tipoParametro") TipoParametro tipoParametro,
+                    @Param("severidade") SeveridadeDesvio severidade,
+                    @Param("regiao") String regiao,
+                    @Param("delta") long delta);
+    
+    /**
+     * Soma as quantidades por hora em um intervalo; filtros nulos são ignorados.
+     * 
+     * @return Linhas [hora, quantidade] em ordem cronológica
+     */
+    @Query("SELECT r.hora, SUM(r.quantidade) FROM RollupDesvioHora r " +
+           "WHERE r.hora >= :dataInicio AND r.hora < :dataFim " +
+           "AND (:tipoParametro IS NULL OR r.tipoParametro = :tipoParametro) " +
+           "AND (:severidade IS NULL OR r.severidade = :severidade) " +
+           "AND (:regiao IS NULL OR r.regiao = :regiao) " +
+           "GROUP BY r.hora ORDER BY r.hora")
+    List<Object[]> somarPorHora(@Param("dataInicio") LocalDateTime dataInicio,
+                                @Param("dataFim") LocalDateTime dataFim,
+                                @Param("tipoParametro") TipoParametro tipoParametro,
+                                @Param("severidade") SeveridadeDesvio severidade,
+                                @Param("regiao") String regiao);
+    
+    @Modifying
+    @Query("DELETE FROM RollupDesvioHora r WHERE r.hora >= :dataInicio AND r.hora < :dataFim")
+    int deleteByPeriodo(@Param("dataInicio") LocalDateTime dataInicio,
+                        @Param("dataFim") LocalDateTime dataFim);
+}
@@ -0,0 +1,238 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.Desvio;
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.Paciente;
+import br.ufg.inf.hemograma.model.ParametroHemograma;
+import br.ufg.inf.hemograma.model.enums.NivelRegional;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serviço de análise coletiva (Marco 4): agrega, em memória e em tempo real,
+ * a quantidade de exames e de desvios por região, janela horária e tipo de parâmetro.
+ *
+ * Cada região mantém um buffer circular de contadores primitivos cobrindo a
+ * janela deslizante configurada, de modo que o consumo de memória é fixo por
+ * região e o mapa de calor é respondido sem acessar o banco de dados.
+ *
+ * Uma região é sinalizada quando a taxa de desvio de um parâmetro supera a
+ * taxa de base (todas as regiões) em mais que o percentual configurado e o
+ * número de desvios atinge o limite mínimo.
+ */
+@Service
+public class AgregadorRegionalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AgregadorRegionalService.class);
+
+    private static final int NUM_TIPOS = TipoParametro.values().length;
+    private static final long MILLIS_POR_HORA = 3_600_000L;
+
+    @Value("${app.hemograma.analise-coletiva.janela-deslizante-horas:24}")
+    private int janelaHoras;
+
+    @Value("${app.hemograma.analise-coletiva.limite-alertas-criticos:5}")
+    private int limiteDesvios;
+
+    @Value("${app.hemograma.analise-coletiva.percentual-desvio-critico:50.0}")
+    private double percentualExcessoCritico;
+
+    @Value("${app.hemograma.analise-coletiva.prefixo-cep-digitos:5}")
+    private int prefixoCepDigitos;
+
+    private final Map<NivelRegional, Map<String, JanelaRegional>> regioes = new EnumMap<>(NivelRegional.class);
+    private JanelaRegional janelaGlobal;
+
+    @PostConstruct
+    public void iniciar() {
+        for (NivelRegional nivel : NivelRegional.values()) {
+            regioes.put(nivel, new ConcurrentHashMap<>());
+        }
+        janelaGlobal = new JanelaRegional(janelaHoras);
+    }
+
+    /**
+     * Contabiliza um hemograma analisado nas regiões do paciente.
+     *
+     * @param hemograma Hemograma com seus parâmetros
+     * @param desvios Desvios detectados no hemograma
+     * @param paciente Paciente (fornece estado, cidade e CEP)
+     */
+    public void registrar(Hemograma hemograma, List<Desvio> desvios, Paciente paciente) {
+        contabilizar(hemograma, desvios, paciente, 1);
+    }
+
+    /**
+     * Retira da janela a contagem da versão anterior de um hemograma
+     * corrigido. Horas que já saíram da janela não são alteradas.
+     *
+     * @param hemograma Hemograma com os parâmetros da versão anterior
+     * @param desvios Desvios da versão anterior
+     * @param paciente Paciente da versão anterior
+     */
+    public void retirar(Hemograma hemograma, List<Desvio> desvios, Paciente paciente) {
+        contabilizar(hemograma, desvios, paciente, -1);
+    }
+
+    private void contabilizar(Hemograma hemograma, List<Desvio> desvios, Paciente paciente, int delta) {
+        List<ParametroHemograma> parametros = hemograma.listarParametros();
+        if (parametros.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime referencia = hemograma.getDataColeta() != null
+                ? hemograma.getDataColeta() : hemograma.getDataCadastro();
+        long balde = referencia.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli() / MILLIS_POR_HORA;
+
+        boolean[] comDesvio = new boolean[NUM_TIPOS];
+        for (Desvio desvio : desvios) {
+            comDesvio[desvio.getTipoParametro().ordinal()] = true;
+        }
+
+        int[] ordinais = new int[parametros.size()];
+        int i = 0;
+        for (ParametroHemograma parametro : parametros) {
+            ordinais[i++] = parametro.getTipoParametro().ordinal();
+        }
+
+        janelaGlobal.registrar(balde, ordinais, comDesvio, delta);
+        for (NivelRegional nivel : NivelRegional.values()) {
+            String regiao = chaveRegiao(nivel, paciente);
+            if (regiao != null) {
+                regioes.get(nivel)
+                        .computeIfAbsent(regiao, r -> new JanelaRegional(janelaHoras))
+                        .registrar(balde, ordinais, comDesvio, delta);
+            }
+        }
+    }
+
+    /**
+     * Retorna o mapa de calor atual (janela deslizante) para um nível regional.
+     *
+     * @param nivel Nível geográfico
+     * @param apenasAlertas Se true, retorna apenas as regiões sinalizadas
+     * @return Uma entrada por região e tipo de parâmetro com exames na janela
+     */
+    public List<Map<String, Object>> mapaCalor(NivelRegional nivel, boolean apenasAlertas) {
+        long baldeAtual = System.currentTimeMillis() / MILLIS_POR_HORA;
+        int[] base = janelaGlobal.somar(baldeAtual);
+
+        List<Map<String, Object>> resultado = new ArrayList<>();
+        for (Map.Entry<String, JanelaRegional> entry : regioes.get(nivel).entrySet()) {
+            int[] contagens = entry.getValue().somar(baldeAtual);
+
+            for (TipoParametro tipo : TipoParametro.values()) {
+                int total = contagens[2 * tipo.ordinal()];
+                int desvios = contagens[2 * tipo.ordinal() + 1];
+                if (total == 0) {
+                    continue;
+                }
+
+                double taxa = (double) desvios / total;
+                int totalBase = base[2 * tipo.ordinal()];
+                double taxaBase = totalBase > 0 ? (double) base[2 * tipo.ordinal() + 1] / totalBase : 0.0;
+                boolean alerta = desvios >= limiteDesvios
+                        && taxa > taxaBase * (1.0 + percentualExcessoCritico / 100.0);
+
+                if (apenasAlertas && !alerta) {
+                    continue;
+                }
+
+                Map<String, Object> item = new LinkedHashMap<>();
+                item.put("regiao", entry.getKey());
+                item.put("tipoParametro", tipo);
+                item.put("total", total);
+                item.put("desvios", desvios);
+                item.put("taxaDesvio", taxa);
+                item.put("taxaBase", taxaBase);
+                item.put("alerta", alerta);
+                resultado.add(item);
+            }
+        }
+
+        resultado.sort(Comparator.comparingDouble((Map<String, Object> item) -> (Double) item.get("taxaDesvio")).reversed());
+        logger.debug("Mapa de calor {} com {} entradas", nivel, resultado.size());
+        return resultado;
+    }
+
+    private String chaveRegiao(NivelRegional nivel, Paciente paciente) {
+        if (paciente == null) {
+            return null;
+        }
+
+        switch (nivel) {
+            case ESTADO:
+                return UnidadesFederativas.sigla(paciente.getEstado());
+            case CIDADE:
+                String estado = UnidadesFederativas.sigla(paciente.getEstado());
+                String cidade = paciente.getCidade();
+                if (estado == null || cidade == null || cidade.isBlank()) {
+                    return null;
+                }
+                return estado + "/" + cidade.trim();
+            case CEP:
+                String cep = paciente.getCep() != null ? paciente.getCep().replaceAll("\\D", "") : "";
+                return cep.length() >= prefixoCepDigitos ? cep.substring(0, prefixoCepDigitos) : null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Buffer circular de contadores de uma região: para cada hora da janela,
+     * pares (total, desvios) por tipo de parâmetro em um único int[].
+     */
+    private static final class JanelaRegional {
+        private final long[] baldes;
+        private final int[] contagens;
+
+        JanelaRegional(int numeroBaldes) {
+            this.baldes = new long[numeroBaldes];
+            this.contagens = new int[numeroBaldes * NUM_TIPOS * 2];
+            Arrays.fill(baldes, Long.MIN_VALUE);
+        }
+
+        synchronized void registrar(long balde, int[] ordinais, boolean[] comDesvio, int delta) {
+            int posicao = (int) Math.floorMod(balde, (long) baldes.length);
+            if (baldes[posicao] != balde) {
+                if (baldes[posicao] > balde || delta < 0) {
+                    return; // Exame mais antigo que a janela
+                }
+                baldes[posicao] = balde;
+                Arrays.fill(contagens, posicao * NUM_TIPOS * 2, (posicao + 1) * NUM_TIPOS * 2, 0);
+            }
+
+            int deslocamento = posicao * NUM_TIPOS * 2;
+            for (int ordinal : ordinais) {
+                contagens[deslocamento + 2 * ordinal] = Math.max(0, contagens[deslocamento + 2 * ordinal] + delta);
+                if (comDesvio[ordinal]) {
+                    contagens[deslocamento + 2 * ordinal + 1] =
+                            Math.max(0, contagens[deslocamento + 2 * ordinal + 1] + delta);
+                }
+            }
+        }
+
+        synchronized int[] somar(long baldeAtual) {
+            int[] soma = new int[NUM_TIPOS * 2];
+            for (int posicao = 0; posicao < baldes.length; posicao++) {
+                long balde = baldes[posicao];
+                if (balde > baldeAtual - baldes.length && balde <= baldeAtual) {
+                    int deslocamento = posicao * NUM_TIPOS * 2;
+                    for (int k = 0; k < soma.length; k++) {
+                        soma[k] += contagens[deslocamento + k];
+                    }
+                }
+            }
+            return soma;
+        }
+    }
+}
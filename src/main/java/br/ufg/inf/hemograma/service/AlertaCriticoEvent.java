@@ -0,0 +1,47 @@
+package br.ufg.inf.hemograma.service;
+
+import org.springframework.context.ApplicationEvent;
+
+import java.util.List;
+
+/**
+ * Evento publicado pela triagem de valores críticos no recebimento da
+ * notificação, antes da fila, do parse e da gravação do hemograma.
+ *
+ * Os listeners são executados na thread do receptor: integrações lentas
+ * (ex: envio de mensagens) devem ser assíncronas.
+ *
+ * @see TriagemCriticaService
+ */
+public class AlertaCriticoEvent extends ApplicationEvent {
+
+    private final String recurso;
+    private final String paciente;
+    private final List<TriagemCriticaService.ValorCritico> valores;
+
+    public AlertaCriticoEvent(Object source, String recurso, String paciente,
+                              List<TriagemCriticaService.ValorCritico> valores) {
+        super(source);
+        this.recurso = recurso;
+        this.paciente = paciente;
+        this.valores = valores;
+    }
+
+    /**
+     * Referência do recurso notificado ("Observation/123"), se identificada.
+     */
+    public String getRecurso() {
+        return recurso;
+    }
+
+    /**
+     * Referência do paciente ("Patient/123"), se identificada.
+     */
+    public String getPaciente() {
+        return paciente;
+    }
+
+    public List<TriagemCriticaService.ValorCritico> getValores() {
+        return valores;
+    }
+}
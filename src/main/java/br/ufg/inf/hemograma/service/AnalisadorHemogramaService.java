@@ -1,5 +1,7 @@
 package br.ufg.inf.hemograma.service;
 
+import br.ufg.inf.hemograma.jfr.DesvioDetectadoEvent;
+import br.ufg.inf.hemograma.model.AchadoComposto;
 import br.ufg.inf.hemograma.model.Desvio;
 import br.ufg.inf.hemograma.model.Hemograma;
 import br.ufg.inf.hemograma.model.Paciente;
@@ -13,7 +15,9 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 @Service
 public class AnalisadorHemogramaService {
@@ -23,10 +27,24 @@ public class AnalisadorHemogramaService {
     @Autowired
     private ValoresReferenciaService valoresReferenciaService;
 
+    @Autowired
+    private MotorRegrasService motorRegrasService;
+
+    @Autowired
+    private QuantisPopulacionaisService quantisPopulacionaisService;
+
+    /**
+     * Analisa cada parâmetro contra sua faixa de referência e, com os desvios
+     * encontrados, avalia as regras de achados compostos (e, se habilitada, a
+     * comparação com os percentis populacionais). Desvios e achados são
+     * associados ao hemograma.
+     *
+     * @return Desvios detectados
+     */
     public List<Desvio> analisarHemograma(Hemograma hemograma, Paciente paciente) {
         List<Desvio> desvios = new ArrayList<>();
 
-        for (ParametroHemograma parametro : hemograma.getParametros()) {
+        for (ParametroHemograma parametro : hemograma.listarParametros()) {
             Desvio desvio = analisarParametro(parametro, paciente);
             if (desvio != null) {
                 desvio.setHemograma(hemograma);
@@ -36,14 +54,69 @@ public class AnalisadorHemogramaService {
             }
         }
 
+        List<AchadoComposto> achados = avaliarAchados(hemograma, paciente, desvios);
+        hemograma.substituirAchados(achados);
+        for (AchadoComposto achado : achados) {
+            logger.warn("{}", achado.getDescricao());
+        }
+
         return desvios;
     }
 
+    /**
+     * Desvios trocados por uma reanálise parcial.
+     */
+    public record Reanalise(List<Desvio> removidos, List<Desvio> novos) {
+    }
+
+    /**
+     * Reanalisa apenas os parâmetros dos tipos informados (ex: corrigidos em
+     * uma nova versão da Observation): os desvios desses tipos são descartados
+     * e recalculados, os demais são mantidos. As regras de achados compostos
+     * são reavaliadas com o conjunto resultante.
+     */
+    public Reanalise reanalisarParametros(Hemograma hemograma, Paciente paciente, Set<TipoParametro> tipos) {
+        List<Desvio> removidos = new ArrayList<>();
+        Iterator<Desvio> iterator = hemograma.getDesvios().iterator();
+        while (iterator.hasNext()) {
+            Desvio desvio = iterator.next();
+            if (tipos.contains(desvio.getTipoParametro())) {
+                iterator.remove();
+                removidos.add(desvio);
+            }
+        }
+
+        List<Desvio> novos = new ArrayList<>();
+        for (ParametroHemograma parametro : hemograma.listarParametros()) {
+            if (!tipos.contains(parametro.getTipoParametro())) {
+                continue;
+            }
+            Desvio desvio = analisarParametro(parametro, paciente);
+            if (desvio != null) {
+                novos.add(desvio);
+                hemograma.adicionarDesvio(desvio);
+                logger.warn("⚠️ {}", desvio.getDescricao());
+            }
+        }
+
+        hemograma.substituirAchados(avaliarAchados(hemograma, paciente, hemograma.getDesvios()));
+        return new Reanalise(removidos, novos);
+    }
+
+    private List<AchadoComposto> avaliarAchados(Hemograma hemograma, Paciente paciente, List<Desvio> desvios) {
+        List<AchadoComposto> achados = new ArrayList<>(motorRegrasService.avaliar(hemograma, desvios));
+        achados.addAll(quantisPopulacionaisService.avaliar(hemograma, paciente));
+        return achados;
+    }
+
     /**
      * LÓGICA DE IDENTIFICAÇÃO DE ANEMIA:
      * - Se Hemoglobina < Limite Inferior (VR Mínimo) → "Baixa (Anemia)"
      */
     private Desvio analisarParametro(ParametroHemograma parametro, Paciente paciente) {
+        DesvioDetectadoEvent evento = new DesvioDetectadoEvent();
+        evento.begin();
+
         TipoParametro tipo = parametro.getTipoParametro();
         Double valor = parametro.getValor();
         
@@ -72,6 +145,17 @@ public class AnalisadorHemogramaService {
         // Gerar descrição
         String descricao = gerarDescricao(tipo, valor, faixa, percentualDesvio, paciente);
         desvio.setDescricao(descricao);
+
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.parametro = tipo.name();
+            evento.valor = valor;
+            evento.limiteInferior = faixa.getMinimo();
+            evento.limiteSuperior = faixa.getMaximo();
+            evento.percentualDesvio = percentualDesvio;
+            evento.severidade = severidade.name();
+            evento.commit();
+        }
         
         return desvio;
     }
@@ -0,0 +1,142 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.Paciente;
+import br.ufg.inf.hemograma.model.ParametrosCompactos;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.boot.logging.LogLevel;
+import org.springframework.boot.logging.LoggingSystem;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Serviço de aquecimento executado na inicialização, antes de a aplicação
+ * ser marcada como pronta (readiness): o evento ApplicationStartedEvent é
+ * tratado de forma síncrona e o estado ACCEPTING_TRAFFIC só é publicado
+ * depois dele.
+ *
+ * Hemogramas sintéticos percorrem o pipeline (parsing do Bundle, extração,
+ * montagem, análise, layout compacto e consulta ao banco) sem gravar dados,
+ * para que o carregamento de classes e a compilação JIT não recaiam sobre as
+ * primeiras notificações reais após um restart.
+ */
+@Service
+public class AquecimentoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AquecimentoService.class);
+
+    private static final String PACIENTE_SINTETICO = "Patient/aquecimento";
+
+    private static final String BUNDLE_SINTETICO = """
+            {"resourceType":"Bundle","type":"collection","entry":[
+             {"resource":{"resourceType":"Patient","id":"aquecimento","gender":"%s","birthDate":"1980-01-01",
+              "name":[{"family":"Aquecimento","given":["Sintetico"]}],
+              "address":[{"city":"Goiania","state":"GO","postalCode":"74000-000"}]}},
+             {"resource":{"resourceType":"Observation","id":"aquecimento-%d","status":"final",
+              "code":{"coding":[{"system":"http://loinc.org","code":"58410-2"}]},
+              "subject":{"reference":"Patient/aquecimento"},"effectiveDateTime":"2026-01-01T10:00:00Z",
+              "component":[
+               {"code":{"coding":[{"system":"http://loinc.org","code":"718-7"}]},"valueQuantity":{"value":%.1f,"unit":"g/dL"}},
+               {"code":{"coding":[{"system":"http://loinc.org","code":"777-3"}]},"valueQuantity":{"value":%d,"unit":"/uL"}},
+               {"code":{"coding":[{"system":"http://loinc.org","code":"6690-2"}]},"valueQuantity":{"value":%d,"unit":"/uL"}}]}}]}
+            """;
+
+    /**
+     * Serviços que registram logs por hemograma, silenciados durante o aquecimento.
+     */
+    private static final List<Class<?>> SERVICOS_SILENCIADOS =
+            List.of(FhirParserService.class, AnalisadorHemogramaService.class);
+
+    @Autowired
+    private FhirParserService fhirParserService;
+
+    @Autowired
+    private HemogramaProcessingService hemogramaProcessingService;
+
+    @Autowired
+    private AnalisadorHemogramaService analisadorHemogramaService;
+
+    @Autowired
+    private HemogramaConsultaService hemogramaConsultaService;
+
+    @Autowired
+    private LoggingSystem loggingSystem;
+
+    @Value("${app.hemograma.aquecimento.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${app.hemograma.aquecimento.iteracoes:200}")
+    private int iteracoes;
+
+    @Value("${app.hemograma.aquecimento.consultas-banco:20}")
+    private int consultasBanco;
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void aquecer() {
+        if (!habilitado || iteracoes <= 0) {
+            return;
+        }
+
+        long inicio = System.nanoTime();
+        SERVICOS_SILENCIADOS.forEach(servico -> loggingSystem.setLogLevel(servico.getName(), LogLevel.ERROR));
+        try {
+            for (int i = 0; i < iteracoes; i++) {
+                processarSintetico(i);
+            }
+            for (int i = 0; i < consultasBanco; i++) {
+                hemogramaConsultaService.listarPorPaciente(PACIENTE_SINTETICO, null, null, 0, 20);
+            }
+        } catch (Exception e) {
+            // Aquecimento nunca impede a aplicação de subir
+            logger.warn("Aquecimento interrompido: {}", e.getMessage());
+        } finally {
+            SERVICOS_SILENCIADOS.forEach(servico -> loggingSystem.setLogLevel(servico.getName(), null));
+        }
+
+        logger.info("🔥 Aquecimento concluído: {} hemograma(s) sintético(s) em {} ms",
+                iteracoes, (System.nanoTime() - inicio) / 1_000_000);
+    }
+
+    private void processarSintetico(int iteracao) {
+        // Valores variam entre iterações para exercitar os ramos de análise
+        String json = String.format(Locale.ROOT, BUNDLE_SINTETICO,
+                iteracao % 2 == 0 ? "male" : "female",
+                iteracao,
+                10.0 + iteracao % 70 / 10.0,
+                120_000 + iteracao * 1_000,
+                3_000 + iteracao * 50);
+
+        Resource resource = fhirParserService.parseResource(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        Paciente paciente = new Paciente(PACIENTE_SINTETICO);
+        for (Bundle.BundleEntryComponent entry : ((Bundle) resource).getEntry()) {
+            if (entry.getResource() instanceof Patient patient) {
+                Map<String, Object> dados = fhirParserService.extrairDadosPaciente(patient);
+                paciente.setGenero((String) dados.get("genero"));
+                paciente.setDataNascimento(LocalDate.parse((String) dados.get("dataNascimento")));
+
+            } else if (entry.getResource() instanceof Observation observation) {
+                Map<String, Object> dados = fhirParserService.extrairDadosHemograma(observation);
+                Hemograma hemograma = hemogramaProcessingService.montarHemograma(observation, dados, paciente);
+                analisadorHemogramaService.analisarHemograma(hemograma, paciente);
+                ParametrosCompactos.de(hemograma.listarParametros()).paraParametros();
+            }
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.dto.HemogramaDTO;
+import br.ufg.inf.hemograma.model.AchadoComposto;
+import br.ufg.inf.hemograma.model.Desvio;
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.ParametroHemograma;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import br.ufg.inf.hemograma.repository.AchadoCompostoRepository;
+import br.ufg.inf.hemograma.repository.DesvioRepository;
+import br.ufg.inf.hemograma.repository.HemogramaRepository;
+import br.ufg.inf.hemograma.repository.MembroHemogramaRepository;
+import br.ufg.inf.hemograma.repository.ParametroHemogramaRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Serviço de arquivamento em camadas: hemogramas (com parâmetros, desvios e
+ * achados) cuja data de referência é anterior à retenção configurada saem do
+ * banco e vão para segmentos imutáveis, colunares e compactados
+ * ({@link SegmentoArquivo}).
+ *
+ * Os cabeçalhos dos segmentos ficam em memória; as consultas de
+ * {@link HemogramaConsultaService} descartam, sem ler o arquivo, os segmentos
+ * cujo período, filtro de pacientes ou mínimo/máximo do parâmetro não
+ * combinam com a consulta.
+ *
+ * O segmento é gravado (e sincronizado em disco) antes de as linhas serem
+ * removidas do banco; concluída a remoção, um marcador vazio
+ * ({@code segmento-N.hseg.concluido}) é criado ao lado dele. Se a aplicação
+ * parar entre os dois passos, a remoção é concluída na inicialização seguinte
+ * apenas para os segmentos sem marcador, e apenas para as linhas cujo ID e
+ * Observation coincidem com os do segmento: com o banco em memória, os IDs
+ * são reutilizados por hemogramas novos.
+ */
+@Service
+public class ArquivamentoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ArquivamentoService.class);
+
+    private static final String EXTENSAO = ".hseg";
+    private static final String EXTENSAO_CONCLUIDO = ".concluido";
+
+    @Autowired
+    private HemogramaRepository hemogramaRepository;
+
+    @Autowired
+    private ParametroHemogramaRepository parametroHemogramaRepository;
+
+    @Autowired
+    private MembroHemogramaRepository membroHemogramaRepository;
+
+    @Autowired
+    private DesvioRepository desvioRepository;
+
+    @Autowired
+    private AchadoCompostoRepository achadoCompostoRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.hemograma.arquivo.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${app.hemograma.arquivo.diretorio:./data/arquivo}")
+    private String diretorio;
+
+    @Value("${app.hemograma.arquivo.retencao-dias:365}")
+    private int retencaoDias;
+
+    @Value("${app.hemograma.arquivo.tamanho-segmento:10000}")
+    private int tamanhoSegmento;
+
+    private final List<SegmentoArquivo> segmentos = new CopyOnWriteArrayList<>();
+    private final List<SegmentoArquivo> pendentes = new ArrayList<>();
+    private TransactionTemplate transacao;
+    private Path pasta;
+    private long proximoSegmento;
+
+    @PostConstruct
+    public void iniciar() throws IOException {
+        transacao = new TransactionTemplate(transactionManager);
+        if (!habilitado) {
+            return;
+        }
+
+        pasta = Paths.get(diretorio);
+        Files.createDirectories(pasta);
+
+        List<Path> arquivos;
+        try (Stream<Path> listagem = Files.list(pasta)) {
+            arquivos = listagem.sorted().toList();
+        }
+        for (Path arquivo : arquivos) {
+            String nome = arquivo.getFileName().toString();
+            if (nome.endsWith(".tmp")) {
+                // Segmento cuja gravação não terminou: as linhas continuam no banco
+                Files.deleteIfExists(arquivo);
+            } else if (nome.endsWith(EXTENSAO)) {
+                SegmentoArquivo segmento = SegmentoArquivo.abrir(arquivo);
+                segmentos.add(segmento);
+                if (!Files.exists(marcador(arquivo))) {
+                    pendentes.add(segmento);
+                }
+                proximoSegmento = Math.max(proximoSegmento, numeroSegmento(nome) + 1);
+            }
+        }
+
+        if (!segmentos.isEmpty()) {
+            logger.info("🗄️ Arquivo de hemogramas: {} segmento(s), {} hemograma(s), horizonte {}",
+                    segmentos.size(), segmentos.stream().mapToLong(SegmentoArquivo::getLinhas).sum(),
+                    getHorizonte());
+        }
+    }
+
+    /**
+     * Conclui a remoção do banco das linhas dos segmentos sem marcador de
+     * conclusão, caso a aplicação tenha parado entre a gravação do segmento e
+     * a remoção. Segmentos já concluídos não são relidos.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void concluirArquivamentoPendente() {
+        for (SegmentoArquivo segmento : pendentes) {
+            try {
+                Map<Long, String> observacoes = segmento.lerObservacoes();
+                List<Long> ids = new ArrayList<>();
+                List<Long> lista = new ArrayList<>(observacoes.keySet());
+                for (int inicio = 0; inicio < lista.size(); inicio += 1000) {
+                    hemogramaRepository.findChavesByIds(lista.subList(inicio, Math.min(inicio + 1000, lista.size())))
+                            .stream()
+                            .filter(chave -> chave.getFhirObservationId().equals(observacoes.get(chave.getId())))
+                            .forEach(chave -> ids.add(chave.getId()));
+                }
+
+                int removidos = removerDoBanco(ids);
+                marcarConcluido(segmento.getArquivo());
+                if (removidos > 0) {
+                    logger.warn("Arquivamento interrompido concluído: {} hemograma(s) de {} removido(s) do banco",
+                            removidos, segmento.getArquivo().getFileName());
+                }
+            } catch (Exception e) {
+                logger.error("Erro ao concluir arquivamento pendente de {}: {}",
+                        segmento.getArquivo().getFileName(), e.getMessage());
+            }
+        }
+        pendentes.clear();
+    }
+
+    @Scheduled(cron = "${app.hemograma.arquivo.cron:0 30 3 * * *}")
+    public void arquivarPorRetencao() {
+        if (habilitado) {
+            arquivar(LocalDateTime.now().minusDays(retencaoDias));
+        }
+    }
+
+    /**
+     * Arquiva todos os hemogramas com data de referência (coleta ou, na falta
+     * dela, cadastro) anterior ao corte, em segmentos de até
+     * {@code tamanho-segmento} hemogramas.
+     *
+     * @return Quantidade de hemogramas arquivados
+     */
+    public synchronized int arquivar(LocalDateTime corte) {
+        if (!habilitado) {
+            throw new IllegalStateException("Arquivamento desabilitado");
+        }
+
+        int total = 0;
+        while (true) {
+            List<Long> ids = hemogramaRepository.findIdsParaArquivamento(corte, PageRequest.of(0, tamanhoSegmento));
+            if (ids.isEmpty()) {
+                break;
+            }
+
+            List<SegmentoArquivo.Linha> linhas = transacao.execute(status -> carregarLinhas(ids));
+            Path destino = pasta.resolve(String.format("segmento-%010d%s", proximoSegmento, EXTENSAO));
+
+            SegmentoArquivo segmento;
+            try {
+                segmento = SegmentoArquivo.gravar(destino, linhas);
+            } catch (IOException e) {
+                throw new IllegalStateException("Erro ao gravar segmento " + destino + ": " + e.getMessage(), e);
+            }
+            proximoSegmento++;
+
+            try {
+                removerDoBanco(ids);
+            } catch (RuntimeException e) {
+                // Sem a remoção, o segmento duplicaria as linhas que continuam no banco
+                destino.toFile().setWritable(true);
+                destino.toFile().delete();
+                throw e;
+            }
+            segmentos.add(segmento);
+            total += ids.size();
+            try {
+                marcarConcluido(destino);
+            } catch (IOException e) {
+                // Sem o marcador, a inicialização seguinte apenas confere as linhas do segmento
+                logger.warn("Erro ao marcar segmento {} como concluído: {}", destino.getFileName(), e.getMessage());
+            }
+
+            logger.info("🗄️ {} hemograma(s) arquivado(s) em {}", ids.size(), destino.getFileName());
+        }
+
+        if (total > 0) {
+            logger.info("🗄️ Arquivamento anterior a {} concluído: {} hemograma(s)", corte, total);
+        }
+        return total;
+    }
+
+    private List<SegmentoArquivo.Linha> carregarLinhas(List<Long> ids) {
+        Map<Long, List<ParametroHemograma>> parametros = parametroHemogramaRepository.findByHemogramaIds(ids)
+                .stream().collect(Collectors.groupingBy(p -> p.getHemograma().getId()));
+        Map<Long, List<Desvio>> desvios = desvioRepository.findByHemogramaIds(ids)
+                .stream().collect(Collectors.groupingBy(d -> d.getHemograma().getId()));
+        Map<Long, List<AchadoComposto>> achados = achadoCompostoRepository.findByHemogramaIds(ids)
+                .stream().collect(Collectors.groupingBy(a -> a.getHemograma().getId()));
+
+        Map<Long, Hemograma> porId = hemogramaRepository.findComPacienteByIds(ids).stream()
+                .collect(Collectors.toMap(Hemograma::getId, h -> h));
+
+        List<SegmentoArquivo.Linha> linhas = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Hemograma hemograma = porId.get(id);
+            HemogramaDTO dto = HemogramaConsultaService.paraDTO(hemograma,
+                    parametros.getOrDefault(id, List.of()), desvios.getOrDefault(id, List.of()),
+                    achados.getOrDefault(id, List.of()));
+            LocalDateTime referencia = hemograma.getDataColeta() != null
+                    ? hemograma.getDataColeta() : hemograma.getDataCadastro();
+            linhas.add(new SegmentoArquivo.Linha(dto, hemograma.getDataCadastro(), referencia));
+        }
+        return linhas;
+    }
+
+    private int removerDoBanco(Collection<Long> ids) {
+        Integer removidos = transacao.execute(status -> {
+            int total = 0;
+            List<Long> lista = new ArrayList<>(ids);
+            // Lotes limitam o tamanho da cláusula IN
+            for (int inicio = 0; inicio < lista.size(); inicio += 1000) {
+                List<Long> lote = lista.subList(inicio, Math.min(inicio + 1000, lista.size()));
+                desvioRepository.deleteByHemogramaIds(lote);
+                achadoCompostoRepository.deleteByHemogramaIds(lote);
+                parametroHemogramaRepository.deleteByHemogramaIds(lote);
+                membroHemogramaRepository.deleteByHemogramaIds(lote);
+                total += hemogramaRepository.deleteByIds(lote);
+            }
+            return total;
+        });
+        return removidos != null ? removidos : 0;
+    }
+
+    private static Path marcador(Path segmento) {
+        return segmento.resolveSibling(segmento.getFileName() + EXTENSAO_CONCLUIDO);
+    }
+
+    private static void marcarConcluido(Path segmento) throws IOException {
+        Path arquivo = marcador(segmento);
+        if (!Files.exists(arquivo)) {
+            Files.createFile(arquivo);
+        }
+    }
+
+    /**
+     * Página de hemogramas arquivados e total de arquivados da consulta.
+     */
+    public record PaginaArquivo(List<HemogramaDTO> hemogramas, long total) {
+    }
+
+    /**
+     * Hemogramas arquivados do paciente no período, do mais recente ao mais
+     * antigo (data de referência e ID, como no banco), a partir da posição
+     * informada.
+     *
+     * Os segmentos são descartados pelo cabeçalho; nos demais, só as colunas de
+     * paciente, data e ID são lidas para ordenar e contar, e apenas as linhas
+     * da página são montadas.
+     */
+    public PaginaArquivo buscarPorPaciente(String pacienteFhirId, LocalDateTime inicio, LocalDateTime fim,
+                                           long deslocamento, int quantidade) {
+        record Candidata(SegmentoArquivo segmento, SegmentoArquivo.Posicao posicao) {
+        }
+
+        List<Candidata> candidatas = new ArrayList<>();
+        for (SegmentoArquivo segmento : segmentos) {
+            if (segmento.podeConter(pacienteFhirId, inicio, fim)) {
+                try {
+                    segmento.localizarPorPaciente(pacienteFhirId, inicio, fim)
+                            .forEach(posicao -> candidatas.add(new Candidata(segmento, posicao)));
+                } catch (IOException e) {
+                    throw ilegivel(segmento, e);
+                }
+            }
+        }
+        if (quantidade <= 0 || deslocamento >= candidatas.size()) {
+            return new PaginaArquivo(List.of(), candidatas.size());
+        }
+
+        candidatas.sort(Comparator.comparingLong((Candidata c) -> c.posicao().referencia())
+                .thenComparingLong(c -> c.posicao().id()).reversed());
+        List<Candidata> pagina = candidatas.subList((int) deslocamento,
+                (int) Math.min(deslocamento + quantidade, candidatas.size()));
+
+        // Monta as linhas da página segmento a segmento e restaura a ordem da página
+        Map<Long, HemogramaDTO> porId = new HashMap<>();
+        Map<SegmentoArquivo, List<Integer>> linhasPorSegmento = pagina.stream()
+                .collect(Collectors.groupingBy(Candidata::segmento, LinkedHashMap::new,
+                        Collectors.mapping(c -> c.posicao().linha(), Collectors.toList())));
+        linhasPorSegmento.forEach((segmento, linhas) -> ler(segmento, s -> s.montar(linhas))
+                .forEach(dto -> porId.put(dto.id(), dto)));
+
+        List<HemogramaDTO> hemogramas = pagina.stream().map(c -> porId.get(c.posicao().id())).toList();
+        return new PaginaArquivo(hemogramas, candidatas.size());
+    }
+
+    /**
+     * Hemogramas arquivados com o parâmetro na faixa e no período, do mais recente ao mais antigo.
+     */
+    public List<HemogramaDTO> buscarPorFaixa(TipoParametro tipo, double minimo, double maximo,
+                                             LocalDateTime inicio, LocalDateTime fim) {
+        List<HemogramaDTO> resultado = new ArrayList<>();
+        for (SegmentoArquivo segmento : segmentos) {
+            if (segmento.podeConter(tipo, minimo, maximo, inicio, fim)) {
+                resultado.addAll(ler(segmento, s -> s.buscarPorFaixa(tipo, minimo, maximo, inicio, fim)));
+            }
+        }
+        return ordenar(resultado);
+    }
+
+    /**
+     * Indica se o hemograma da Observation já foi arquivado. Consulta os
+     * filtros de Bloom em memória; só lê um segmento quando o filtro indica
+     * a Observation.
+     */
+    public boolean contemObservacao(String fhirObservationId) {
+        for (SegmentoArquivo segmento : segmentos) {
+            try {
+                if (segmento.contemObservacao(fhirObservationId)) {
+                    return true;
+                }
+            } catch (IOException e) {
+                throw ilegivel(segmento, e);
+            }
+        }
+        return false;
+    }
+
+    private interface LeituraSegmento {
+        List<HemogramaDTO> ler(SegmentoArquivo segmento) throws IOException;
+    }
+
+    private List<HemogramaDTO> ler(SegmentoArquivo segmento, LeituraSegmento leitura) {
+        try {
+            return leitura.ler(segmento);
+        } catch (IOException e) {
+            throw ilegivel(segmento, e);
+        }
+    }
+
+    private static IllegalStateException ilegivel(SegmentoArquivo segmento, IOException e) {
+        logger.error("Erro ao ler segmento {}: {}", segmento.getArquivo().getFileName(), e.getMessage());
+        return new IllegalStateException("Arquivo de hemogramas ilegível: " + segmento.getArquivo(), e);
+    }
+
+    private static List<HemogramaDTO> ordenar(List<HemogramaDTO> hemogramas) {
+        hemogramas.sort(Comparator.comparing(HemogramaDTO::dataColeta,
+                        Comparator.nullsLast(Comparator.<LocalDateTime>reverseOrder()))
+                .thenComparing(HemogramaDTO::id, Comparator.reverseOrder()));
+        return hemogramas;
+    }
+
+    private static long numeroSegmento(String nome) {
+        try {
+            return Long.parseLong(nome.substring(nome.indexOf('-') + 1, nome.length() - EXTENSAO.length()));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Maior data de referência arquivada (nula se o arquivo está vazio). Dados
+     * anteriores a ela podem não estar mais no banco.
+     */
+    public LocalDateTime getHorizonte() {
+        return segmentos.stream().map(SegmentoArquivo::getReferenciaMaxima)
+                .max(Comparator.naturalOrder()).orElse(null);
+    }
+
+    public int getQuantidadeSegmentos() {
+        return segmentos.size();
+    }
+}
@@ -0,0 +1,276 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.Desvio;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Serviço de auditoria: um evento JSON compacto por Observation processada,
+ * com IDs, tempos de cada etapa, desvios e resultado.
+ *
+ * Os eventos vão para o logger {@value #LOGGER_AUDITORIA}, que o
+ * logback-spring.xml grava de forma assíncrona em arquivo rotativo, fora das
+ * threads de processamento. O evento e o buffer de texto são reutilizados por
+ * thread, de modo que cada registro aloca apenas a mensagem final.
+ *
+ * A amostragem é configurada por resultado e por etapa: a fração do
+ * resultado é multiplicada pela da última etapa concluída (ex: duplicadas
+ * terminam na extração). Eventos mais lentos que {@code sempre-acima-de-ms},
+ * ou com alguma etapa acima do limite próprio da etapa, são sempre registrados.
+ */
+@Service
+public class AuditoriaService {
+
+    public static final String LOGGER_AUDITORIA = "auditoria";
+
+    private static final Logger auditoria = LoggerFactory.getLogger(LOGGER_AUDITORIA);
+
+    /**
+     * Etapas cronometradas do processamento de uma Observation, na ordem em que ocorrem.
+     */
+    public enum Etapa {
+        EXTRACAO("extracao"),
+        PACIENTE("paciente"),
+        ANALISE("analise"),
+        PERSISTENCIA("persistencia"),
+        AGREGACAO("agregacao");
+
+        private final String chave;
+
+        Etapa(String chave) {
+            this.chave = chave;
+        }
+    }
+
+    public enum Resultado {
+        PROCESSADA,
+        ATUALIZADA,
+        DUPLICADA,
+        ERRO
+    }
+
+    @Value("${app.hemograma.auditoria.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${app.hemograma.auditoria.amostragem.processada:1.0}")
+    private double amostragemProcessada;
+
+    @Value("${app.hemograma.auditoria.amostragem.atualizada:1.0}")
+    private double amostragemAtualizada;
+
+    @Value("${app.hemograma.auditoria.amostragem.duplicada:0.1}")
+    private double amostragemDuplicada;
+
+    @Value("${app.hemograma.auditoria.amostragem.erro:1.0}")
+    private double amostragemErro;
+
+    @Value("${app.hemograma.auditoria.sempre-acima-de-ms:500}")
+    private long sempreAcimaDeMs;
+
+    @Autowired
+    private Environment environment;
+
+    /** Fração de amostragem e limite "sempre registrar" de cada etapa, por ordinal. */
+    private final double[] amostragemEtapas = new double[Etapa.values().length];
+    private final long[] limitesEtapasNanos = new long[Etapa.values().length];
+
+    private final ThreadLocal<Evento> eventos = ThreadLocal.withInitial(Evento::new);
+
+    /**
+     * Evento em construção na thread corrente. Reutilizado entre Observations.
+     */
+    public static final class Evento {
+
+        private final long[] etapasNanos = new long[Etapa.values().length];
+        private final StringBuilder texto = new StringBuilder(512);
+        private long parseNanos = -1;
+        private long inicio;
+        private long ultimaMarca;
+        private String observationId;
+        private Long hemogramaId;
+        private String pacienteFhirId;
+        private List<Desvio> desvios;
+        private String erro;
+
+        private void reiniciar(String observationId) {
+            Arrays.fill(etapasNanos, -1);
+            this.observationId = observationId;
+            hemogramaId = null;
+            pacienteFhirId = null;
+            desvios = null;
+            erro = null;
+            inicio = System.nanoTime();
+            ultimaMarca = inicio;
+        }
+
+        /**
+         * Registra o tempo decorrido desde a marca anterior como duração da etapa.
+         */
+        public void concluir(Etapa etapa) {
+            long agora = System.nanoTime();
+            etapasNanos[etapa.ordinal()] = agora - ultimaMarca;
+            ultimaMarca = agora;
+        }
+
+        public void setHemograma(Long hemogramaId, String pacienteFhirId) {
+            this.hemogramaId = hemogramaId;
+            this.pacienteFhirId = pacienteFhirId;
+        }
+
+        public void setDesvios(List<Desvio> desvios) {
+            this.desvios = desvios;
+        }
+
+        public void setErro(String erro) {
+            this.erro = erro;
+        }
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        for (Etapa etapa : Etapa.values()) {
+            String prefixo = "app.hemograma.auditoria.etapas." + etapa.chave;
+            amostragemEtapas[etapa.ordinal()] = environment.getProperty(prefixo + ".amostragem", Double.class, 1.0);
+            Long limiteMs = environment.getProperty(prefixo + ".sempre-acima-de-ms", Long.class);
+            limitesEtapasNanos[etapa.ordinal()] = limiteMs != null ? limiteMs * 1_000_000L : Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Registra o tempo de parse da notificação em curso; ele é incluído nos
+     * eventos de todas as Observations dessa notificação.
+     */
+    public void registrarParse(long nanos) {
+        eventos.get().parseNanos = nanos;
+    }
+
+    /**
+     * Inicia (reutilizando) o evento da thread corrente para uma Observation.
+     */
+    public Evento iniciar(String observationId) {
+        Evento evento = eventos.get();
+        evento.reiniciar(observationId);
+        return evento;
+    }
+
+    /**
+     * Conclui o evento e o envia ao log de auditoria, conforme a amostragem.
+     */
+    public void registrar(Evento evento, Resultado resultado) {
+        if (!habilitado || !auditoria.isInfoEnabled()) {
+            return;
+        }
+
+        long totalNanos = System.nanoTime() - evento.inicio;
+        if (totalNanos < sempreAcimaDeMs * 1_000_000L && !etapaLenta(evento) && !amostrado(resultado, evento)) {
+            return;
+        }
+
+        StringBuilder json = evento.texto;
+        json.setLength(0);
+        json.append("{\"ts\":").append(System.currentTimeMillis());
+        campoTexto(json, "observacao", evento.observationId);
+        if (evento.hemogramaId != null) {
+            json.append(",\"hemograma\":").append(evento.hemogramaId);
+        }
+        campoTexto(json, "paciente", evento.pacienteFhirId);
+        json.append(",\"resultado\":\"").append(resultado.name()).append('"');
+
+        json.append(",\"etapasUs\":{");
+        boolean primeira = true;
+        if (evento.parseNanos >= 0) {
+            json.append("\"parse\":").append(evento.parseNanos / 1000);
+            primeira = false;
+        }
+        for (Etapa etapa : Etapa.values()) {
+            long nanos = evento.etapasNanos[etapa.ordinal()];
+            if (nanos >= 0) {
+                if (!primeira) {
+                    json.append(',');
+                }
+                json.append('"').append(etapa.chave).append("\":").append(nanos / 1000);
+                primeira = false;
+            }
+        }
+        json.append("},\"totalUs\":").append(totalNanos / 1000);
+
+        if (evento.desvios != null) {
+            json.append(",\"desvios\":[");
+            for (int i = 0; i < evento.desvios.size(); i++) {
+                Desvio desvio = evento.desvios.get(i);
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append("{\"tipo\":\"").append(desvio.getTipoParametro().name())
+                        .append("\",\"severidade\":\"").append(desvio.getSeveridade().name()).append("\"}");
+            }
+            json.append(']');
+        }
+        campoTexto(json, "erro", evento.erro);
+        json.append('}');
+
+        auditoria.info(json.toString());
+        // Não retém referências a entidades entre eventos
+        evento.desvios = null;
+    }
+
+    private boolean etapaLenta(Evento evento) {
+        for (int i = 0; i < evento.etapasNanos.length; i++) {
+            if (evento.etapasNanos[i] >= limitesEtapasNanos[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean amostrado(Resultado resultado, Evento evento) {
+        double taxa = switch (resultado) {
+            case PROCESSADA -> amostragemProcessada;
+            case ATUALIZADA -> amostragemAtualizada;
+            case DUPLICADA -> amostragemDuplicada;
+            case ERRO -> amostragemErro;
+        };
+        // Última etapa concluída (nenhuma se o evento falhou antes da extração)
+        for (int i = evento.etapasNanos.length - 1; i >= 0; i--) {
+            if (evento.etapasNanos[i] >= 0) {
+                taxa *= amostragemEtapas[i];
+                break;
+            }
+        }
+        return taxa >= 1.0 || (taxa > 0 && ThreadLocalRandom.current().nextDouble() < taxa);
+    }
+
+    private static void campoTexto(StringBuilder json, String nome, String valor) {
+        if (valor == null) {
+            return;
+        }
+        json.append(",\"").append(nome).append("\":\"");
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+}
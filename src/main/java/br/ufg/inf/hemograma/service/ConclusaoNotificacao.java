@@ -0,0 +1,63 @@
+package br.ufg.inf.hemograma.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Conclusão de uma notificação aceita (confirmação no journal ou remoção da
+ * fila distribuída), executada uma única vez, quando terminam todas as suas
+ * pendências: as partes da notificação nas filas por paciente e os grupos do
+ * correlacionador que retêm as suas Observations, até a gravação do
+ * hemograma combinado.
+ *
+ * Se alguma pendência falhar ({@link #falhar()}), a ação de falha é
+ * executada no lugar da conclusão: a notificação não é confirmada no journal
+ * (é reprocessada na inicialização seguinte) ou volta à fila distribuída.
+ * Pendências não concluídas (ex: parada da aplicação) também mantêm a
+ * notificação no journal ou na fila distribuída.
+ */
+final class ConclusaoNotificacao {
+
+    private final AtomicInteger pendentes;
+    private final Runnable acao;
+    private final Runnable acaoFalha;
+    private volatile boolean falhou;
+
+    /**
+     * @param pendentes Pendências iniciais
+     * @param acao Executada na thread que concluir a última pendência
+     */
+    ConclusaoNotificacao(int pendentes, Runnable acao) {
+        this(pendentes, acao, () -> { });
+    }
+
+    /**
+     * @param acaoFalha Executada no lugar de {@code acao} se alguma pendência falhar
+     */
+    ConclusaoNotificacao(int pendentes, Runnable acao, Runnable acaoFalha) {
+        this.pendentes = new AtomicInteger(pendentes);
+        this.acao = acao;
+        this.acaoFalha = acaoFalha;
+    }
+
+    /**
+     * Acrescenta uma pendência. Deve ser chamada antes da conclusão da
+     * pendência que a originou.
+     */
+    void reter() {
+        pendentes.incrementAndGet();
+    }
+
+    void concluir() {
+        if (pendentes.decrementAndGet() == 0) {
+            (falhou ? acaoFalha : acao).run();
+        }
+    }
+
+    /**
+     * Encerra uma pendência cujo processamento falhou definitivamente.
+     */
+    void falhar() {
+        falhou = true;
+        concluir();
+    }
+}
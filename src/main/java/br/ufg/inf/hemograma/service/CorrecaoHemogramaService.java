@@ -0,0 +1,225 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.Desvio;
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.Paciente;
+import br.ufg.inf.hemograma.model.ParametroHemograma;
+import br.ufg.inf.hemograma.model.ParametrosCompactos;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import br.ufg.inf.hemograma.repository.HemogramaRepository;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Serviço que aplica a um hemograma já gravado uma nova versão da sua
+ * Observation (ex: resultado corrigido pelo laboratório).
+ *
+ * Apenas os componentes alterados são atualizados e apenas os desvios desses
+ * parâmetros são recalculados; os rollups recebem a diferença. Se a data de
+ * coleta ou o paciente mudarem, todos os desvios são recalculados e movidos
+ * para a nova hora/região dos rollups.
+ *
+ * Um hemograma combinado pelo correlacionador recebe as novas versões de
+ * cada membro em separado ({@link #aplicarMembros}): apenas os parâmetros
+ * dos membros recebidos são comparados, e os demais são mantidos.
+ */
+@Service
+public class CorrecaoHemogramaService {
+
+    @Autowired
+    private HemogramaRepository hemogramaRepository;
+
+    @Autowired
+    private AnalisadorHemogramaService analisadorHemogramaService;
+
+    @Autowired
+    private RollupDesvioService rollupDesvioService;
+
+    /**
+     * Resultado da aplicação de uma nova versão.
+     *
+     * @param hemograma Hemograma atualizado
+     * @param desviosNovos Desvios criados pela reanálise
+     * @param tiposAlterados Parâmetros incluídos, removidos ou com valor/unidade alterados
+     * @param anterior Cópia não gravada da versão anterior (data de coleta, cadastro, paciente e parâmetros)
+     * @param desviosAnteriores Desvios da versão anterior
+     * @param desviosAtuais Desvios do hemograma atualizado
+     */
+    public record Correcao(Hemograma hemograma, List<Desvio> desviosNovos, Set<TipoParametro> tiposAlterados,
+                           Hemograma anterior, List<Desvio> desviosAnteriores, List<Desvio> desviosAtuais) {
+    }
+
+    /**
+     * @param hemogramaId Hemograma gravado para a mesma Observation
+     * @param recebido Hemograma montado a partir da nova versão (não gravado)
+     * @param paciente Paciente da nova versão
+     */
+    @Transactional
+    public Correcao aplicar(Long hemogramaId, Hemograma recebido, Paciente paciente) {
+        Hemograma atual = hemogramaRepository.findById(hemogramaId)
+                .orElseThrow(() -> new IllegalStateException("Hemograma " + hemogramaId + " não encontrado"));
+
+        Hemograma anterior = copiar(atual);
+        List<Desvio> desviosAnteriores = new ArrayList<>(atual.getDesvios());
+        Map<TipoParametro, ParametroHemograma> anteriores = porTipo(atual.listarParametros());
+        Map<TipoParametro, ParametroHemograma> recebidos = porTipo(recebido.listarParametros());
+        Set<TipoParametro> alterados = alterados(anteriores, recebidos);
+
+        Paciente pacienteAnterior = atual.getPaciente();
+        boolean realocar = !Objects.equals(atual.getDataColeta(), recebido.getDataColeta())
+                || !Objects.equals(pacienteAnterior.getId(), paciente.getId());
+        if (realocar) {
+            // Rollups são por hora de coleta e região: todos os desvios mudam de lugar
+            rollupDesvioService.registrar(atual, desviosAnteriores, pacienteAnterior.getEstado(), -1);
+            alterados.addAll(anteriores.keySet());
+            alterados.addAll(recebidos.keySet());
+        }
+
+        aplicarParametros(atual, anteriores, recebidos, alterados);
+        atual.setDataColeta(recebido.getDataColeta());
+        atual.setStatus(recebido.getStatus());
+        atual.setPaciente(paciente);
+        atual.setVersaoFhir(recebido.getVersaoFhir());
+        atual.setHashConteudo(recebido.getHashConteudo());
+
+        AnalisadorHemogramaService.Reanalise reanalise = alterados.isEmpty()
+                ? new AnalisadorHemogramaService.Reanalise(List.of(), List.of())
+                : analisadorHemogramaService.reanalisarParametros(atual, paciente, alterados);
+
+        if (realocar) {
+            rollupDesvioService.registrar(atual, atual.getDesvios(), paciente.getEstado(), 1);
+        } else {
+            rollupDesvioService.registrar(atual, reanalise.removidos(), paciente.getEstado(), -1);
+            rollupDesvioService.registrar(atual, reanalise.novos(), paciente.getEstado(), 1);
+        }
+
+        return new Correcao(atual, reanalise.novos(), alterados,
+                anterior, desviosAnteriores, new ArrayList<>(atual.getDesvios()));
+    }
+
+    /**
+     * Aplica ao hemograma combinado os membros recebidos (novas versões ou
+     * membros ainda não registrados). Data de coleta, paciente e versão do
+     * hemograma são mantidos.
+     *
+     * @param hemogramaId Hemograma combinado gravado
+     * @param recebido Hemograma montado a partir dos membros, com os seus
+     *        parâmetros e registros de membro (não gravado)
+     */
+    @Transactional
+    public Correcao aplicarMembros(Long hemogramaId, Hemograma recebido) {
+        Hemograma atual = hemogramaRepository.findById(hemogramaId)
+                .orElseThrow(() -> new IllegalStateException("Hemograma " + hemogramaId + " não encontrado"));
+
+        Hemograma anterior = copiar(atual);
+        List<Desvio> desviosAnteriores = new ArrayList<>(atual.getDesvios());
+        Map<TipoParametro, ParametroHemograma> anteriores = porTipo(atual.listarParametros());
+        Map<TipoParametro, ParametroHemograma> recebidos = new EnumMap<>(TipoParametro.class);
+        recebidos.putAll(anteriores);
+        recebidos.putAll(porTipo(recebido.listarParametros()));
+        Set<TipoParametro> alterados = alterados(anteriores, recebidos);
+
+        aplicarParametros(atual, anteriores, recebidos, alterados);
+        recebido.getMembros().forEach(atual::registrarMembro);
+        // O hash passa a não corresponder a nenhuma combinação recebida
+        atual.setHashConteudo(null);
+
+        Paciente paciente = atual.getPaciente();
+        AnalisadorHemogramaService.Reanalise reanalise = alterados.isEmpty()
+                ? new AnalisadorHemogramaService.Reanalise(List.of(), List.of())
+                : analisadorHemogramaService.reanalisarParametros(atual, paciente, alterados);
+        rollupDesvioService.registrar(atual, reanalise.removidos(), paciente.getEstado(), -1);
+        rollupDesvioService.registrar(atual, reanalise.novos(), paciente.getEstado(), 1);
+
+        return new Correcao(atual, reanalise.novos(), alterados,
+                anterior, desviosAnteriores, new ArrayList<>(atual.getDesvios()));
+    }
+
+    /**
+     * Cópia não gravada do hemograma, com os valores atuais dos parâmetros
+     * (que são alterados no lugar pela correção) e o paciente carregado, para
+     * uso fora da transação.
+     */
+    private static Hemograma copiar(Hemograma hemograma) {
+        Hemograma copia = new Hemograma();
+        copia.setDataColeta(hemograma.getDataColeta());
+        copia.setDataCadastro(hemograma.getDataCadastro());
+        copia.setPaciente(Hibernate.unproxy(hemograma.getPaciente(), Paciente.class));
+        for (ParametroHemograma parametro : hemograma.listarParametros()) {
+            copia.adicionarParametro(new ParametroHemograma(parametro.getTipoParametro(),
+                    parametro.getValor(), parametro.getUnidade()));
+        }
+        return copia;
+    }
+
+    /**
+     * Parâmetros incluídos, removidos ou com valor/unidade alterados.
+     */
+    private static Set<TipoParametro> alterados(Map<TipoParametro, ParametroHemograma> anteriores,
+                                                Map<TipoParametro, ParametroHemograma> recebidos) {
+        Set<TipoParametro> alterados = EnumSet.noneOf(TipoParametro.class);
+        for (TipoParametro tipo : TipoParametro.values()) {
+            ParametroHemograma anterior = anteriores.get(tipo);
+            ParametroHemograma novo = recebidos.get(tipo);
+            if (anterior == null && novo == null) {
+                continue;
+            }
+            if (anterior == null || novo == null
+                    || !Objects.equals(anterior.getValor(), novo.getValor())
+                    || !Objects.equals(anterior.getUnidade(), novo.getUnidade())) {
+                alterados.add(tipo);
+            }
+        }
+        return alterados;
+    }
+
+    /**
+     * Atualiza somente as linhas de parâmetros alteradas; no layout compacto,
+     * a coluna compacta é regravada.
+     */
+    private void aplicarParametros(Hemograma atual, Map<TipoParametro, ParametroHemograma> anteriores,
+                                   Map<TipoParametro, ParametroHemograma> recebidos, Set<TipoParametro> alterados) {
+        if (alterados.isEmpty()) {
+            return;
+        }
+
+        if (atual.getParametros().isEmpty() && atual.getParametrosCompactos() != null) {
+            atual.setParametrosCompactos(ParametrosCompactos.de(new ArrayList<>(recebidos.values())));
+            return;
+        }
+
+        for (TipoParametro tipo : alterados) {
+            ParametroHemograma anterior = anteriores.get(tipo);
+            ParametroHemograma novo = recebidos.get(tipo);
+            if (novo == null) {
+                atual.getParametros().remove(anterior);
+            } else if (anterior == null) {
+                atual.adicionarParametro(new ParametroHemograma(tipo, novo.getValor(), novo.getUnidade()));
+            } else {
+                anterior.setValor(novo.getValor());
+                anterior.setUnidade(novo.getUnidade());
+            }
+        }
+    }
+
+    /**
+     * Se um tipo aparecer mais de uma vez, prevalece o último valor, como no layout compacto.
+     */
+    private static Map<TipoParametro, ParametroHemograma> porTipo(List<ParametroHemograma> parametros) {
+        Map<TipoParametro, ParametroHemograma> mapa = new EnumMap<>(TipoParametro.class);
+        for (ParametroHemograma parametro : parametros) {
+            mapa.put(parametro.getTipoParametro(), parametro);
+        }
+        return mapa;
+    }
+}
@@ -0,0 +1,414 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Reference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Correlaciona Observations de um único analito (ex: laboratórios que
+ * enviam o hemograma como 14 Observations separadas) em um único hemograma.
+ *
+ * As Observations são agrupadas pelo painel que as referencia
+ * ({@code hasMember}) ou que elas referenciam ({@code derivedFrom}) e, na
+ * falta de vínculo, por paciente e {@code effectiveDateTime}. Cada grupo fica
+ * em memória até completar os membros esperados do painel ou até esgotar a
+ * janela de correlação, contada da chegada do primeiro membro; então uma
+ * Observation combinada (um componente por analito) é entregue ao destino
+ * (a fila do paciente), para versionamento, análise e gravação únicos.
+ *
+ * O hemograma combinado usa o id do painel ou, sem painel, o menor id entre
+ * os membros, e registra o id de cada membro; uma nova versão de um membro
+ * já gravado não é retida, e sim aplicada ao hemograma combinado
+ * ({@link #analitoUnico}).
+ *
+ * As notificações com Observations retidas só são concluídas (confirmadas
+ * no journal) depois que o grupo é processado. Na parada da aplicação, os
+ * grupos ainda na janela são descartados e as suas notificações voltam do
+ * journal na inicialização seguinte.
+ */
+@Service
+public class CorrelacaoObservacoesService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CorrelacaoObservacoesService.class);
+
+    private static final String SISTEMA_LOINC = "http://loinc.org";
+    private static final String CODIGO_PAINEL_HEMOGRAMA = "58410-2";
+    private static final String PREFIXO_OBSERVATION = "Observation/";
+
+    /**
+     * Hemograma combinado entregue ao destino.
+     *
+     * @param hemograma Observation com um componente por analito
+     * @param membros Observations de um único analito combinadas
+     * @param paciente Referência do paciente ("Patient/123")
+     * @param conclusoes Notificações que aguardam o processamento do grupo
+     */
+    record Combinacao(Observation hemograma, List<Observation> membros, String paciente,
+                      List<ConclusaoNotificacao> conclusoes) {
+
+        /**
+         * Conclui as notificações dos membros; chamado após o processamento.
+         */
+        void concluir() {
+            conclusoes.forEach(ConclusaoNotificacao::concluir);
+        }
+
+        /**
+         * Encerra as notificações dos membros como falhas; chamado se o
+         * processamento falhar após todas as tentativas.
+         */
+        void falhar() {
+            conclusoes.forEach(ConclusaoNotificacao::falhar);
+        }
+    }
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.hemograma.correlacao.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${app.hemograma.correlacao.janela-ms:2000}")
+    private long janelaMs;
+
+    @Value("${app.hemograma.correlacao.maximo-grupos:10000}")
+    private int maximoGrupos;
+
+    /**
+     * Observations de um hemograma em formação. Acesso protegido pelo serviço.
+     */
+    private static final class Grupo {
+        private final String chave;
+        private final Map<TipoParametro, Observation> membros = new EnumMap<>(TipoParametro.class);
+        private final Set<String> recebidos = new HashSet<>();
+        private final Set<String> esperados = new HashSet<>();
+        private final List<ConclusaoNotificacao> conclusoes = new ArrayList<>();
+        private Observation painel;
+
+        Grupo(String chave) {
+            this.chave = chave;
+        }
+
+        boolean completo() {
+            return painel != null && !esperados.isEmpty() && recebidos.containsAll(esperados);
+        }
+    }
+
+    /** Grupos em formação, na ordem de criação (o mais antigo é entregue se o limite for atingido). */
+    private final LinkedHashMap<String, Grupo> grupos = new LinkedHashMap<>();
+    /** Referência de cada membro ("Observation/123") → chave do seu grupo. */
+    private final Map<String, String> chavesMembros = new HashMap<>();
+
+    private ScheduledExecutorService agendador;
+    private volatile Consumer<Combinacao> destino;
+    private Counter combinadas;
+    private Counter retidas;
+
+    @PostConstruct
+    public void iniciar() {
+        agendador = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "correlacao-observacoes");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        retidas = Counter.builder("hemograma.correlacao.observacoes")
+                .description("Observations de um único analito retidas para correlação")
+                .register(meterRegistry);
+        combinadas = Counter.builder("hemograma.correlacao.hemogramas")
+                .description("Hemogramas combinados entregues ao processamento")
+                .register(meterRegistry);
+        Gauge.builder("hemograma.correlacao.grupos", this, servico -> servico.quantidadeGrupos())
+                .description("Grupos de Observations aguardando a janela de correlação")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Os grupos ainda na janela não são entregues: as suas notificações não
+     * foram concluídas e voltam do journal na inicialização seguinte.
+     */
+    @PreDestroy
+    public void parar() {
+        agendador.shutdownNow();
+        int pendentes = quantidadeGrupos();
+        if (pendentes > 0) {
+            logger.info("{} grupo(s) de Observations em correlação ficam no journal para a próxima inicialização",
+                    pendentes);
+        }
+    }
+
+    /**
+     * Define quem recebe os hemogramas combinados (a fila do paciente). O
+     * destino é chamado pela thread do agendador e pode bloquear.
+     */
+    void setDestino(Consumer<Combinacao> destino) {
+        this.destino = destino;
+    }
+
+    /**
+     * @return Analito da Observation, se ela for de um único analito de
+     *         hemograma (candidata a membro de um hemograma combinado), ou null
+     */
+    public TipoParametro analitoUnico(Observation observation) {
+        if (observation.hasComponent() || !observation.hasValueQuantity()) {
+            return null;
+        }
+        return TipoParametro.porCodigoLOINC(observation.getCode().getCodingFirstRep().getCode());
+    }
+
+    /**
+     * Retém a Observation para correlação se ela for de um único analito de
+     * hemograma ou um painel sem valores que lista os membros.
+     *
+     * @param conclusao Notificação de origem, concluída após o processamento
+     *        do grupo (null se não houver o que concluir)
+     * @return true se retida (não deve ser processada agora)
+     */
+    boolean reter(Observation observation, ConclusaoNotificacao conclusao) {
+        if (!habilitado || destino == null || observation.hasComponent()) {
+            return false;
+        }
+
+        String referencia = PREFIXO_OBSERVATION + observation.getIdElement().getIdPart();
+        if (!observation.hasValue() && observation.hasHasMember()) {
+            retidas.increment();
+            reterPainel(referencia, observation, conclusao);
+            return true;
+        }
+
+        TipoParametro tipo = analitoUnico(observation);
+        String painel = referenciaObservation(observation.getDerivedFrom());
+        if (tipo == null || !observation.hasSubject() || (painel == null && !observation.hasEffectiveDateTimeType())) {
+            return false;
+        }
+
+        retidas.increment();
+        reterMembro(referencia, tipo, painel, observation, conclusao);
+        return true;
+    }
+
+    private synchronized void reterMembro(String referencia, TipoParametro tipo, String painel, Observation observation,
+                                          ConclusaoNotificacao conclusao) {
+        String chave = chavesMembros.get(referencia);
+        if (chave == null) {
+            chave = painel != null ? painel
+                    : observation.getSubject().getReference() + "|" + observation.getEffectiveDateTimeType().getValueAsString();
+        }
+
+        Grupo grupo = obterGrupo(chave);
+        grupo.membros.put(tipo, observation);
+        grupo.recebidos.add(referencia);
+        adicionarConclusao(grupo, conclusao);
+        chavesMembros.put(referencia, chave);
+
+        if (grupo.completo()) {
+            agendar(grupo, 0);
+        }
+    }
+
+    private synchronized void reterPainel(String referencia, Observation painel, ConclusaoNotificacao conclusao) {
+        Grupo grupo = obterGrupo(referencia);
+        grupo.painel = painel;
+        adicionarConclusao(grupo, conclusao);
+
+        for (Reference membro : painel.getHasMember()) {
+            String referenciaMembro = normalizar(membro.getReference());
+            if (referenciaMembro == null) {
+                continue;
+            }
+            grupo.esperados.add(referenciaMembro);
+
+            // Membros que chegaram antes do painel, agrupados por paciente e data
+            String chaveAnterior = chavesMembros.put(referenciaMembro, referencia);
+            Grupo anterior = chaveAnterior != null && !chaveAnterior.equals(referencia) ? grupos.get(chaveAnterior) : null;
+            if (anterior != null) {
+                grupo.membros.putAll(anterior.membros);
+                grupo.recebidos.addAll(anterior.recebidos);
+                grupo.conclusoes.addAll(anterior.conclusoes);
+                anterior.membros.clear();
+                anterior.recebidos.clear();
+                anterior.conclusoes.clear();
+            }
+        }
+
+        if (grupo.completo()) {
+            agendar(grupo, 0);
+        }
+    }
+
+    private static void adicionarConclusao(Grupo grupo, ConclusaoNotificacao conclusao) {
+        if (conclusao != null) {
+            conclusao.reter();
+            grupo.conclusoes.add(conclusao);
+        }
+    }
+
+    private Grupo obterGrupo(String chave) {
+        Grupo grupo = grupos.get(chave);
+        if (grupo != null) {
+            return grupo;
+        }
+
+        if (grupos.size() >= maximoGrupos) {
+            Grupo maisAntigo = grupos.values().iterator().next();
+            logger.warn("Limite de {} grupos em correlação atingido; grupo {} entregue antes da janela",
+                    maximoGrupos, maisAntigo.chave);
+            retirar(maisAntigo);
+            try {
+                agendador.execute(() -> entregar(maisAntigo));
+            } catch (RejectedExecutionException e) {
+                // Aplicação em parada: as notificações do grupo voltam do journal
+            }
+        }
+
+        grupo = new Grupo(chave);
+        grupos.put(chave, grupo);
+        agendar(grupo, janelaMs);
+        return grupo;
+    }
+
+    private void agendar(Grupo grupo, long atrasoMs) {
+        try {
+            agendador.schedule(() -> despachar(grupo), atrasoMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Aplicação em parada: as notificações do grupo voltam do journal
+        }
+    }
+
+    /**
+     * Retira o grupo (se ainda estiver em formação) e o entrega.
+     */
+    private void despachar(Grupo grupo) {
+        synchronized (this) {
+            if (grupos.get(grupo.chave) != grupo) {
+                return; // Já entregue
+            }
+            retirar(grupo);
+        }
+        entregar(grupo);
+    }
+
+    private void retirar(Grupo grupo) {
+        grupos.remove(grupo.chave);
+        for (String referencia : grupo.recebidos) {
+            chavesMembros.remove(referencia, grupo.chave);
+        }
+        for (String referencia : grupo.esperados) {
+            chavesMembros.remove(referencia, grupo.chave);
+        }
+    }
+
+    private void entregar(Grupo grupo) {
+        if (grupo.membros.isEmpty()) {
+            // Painel sem membros recebidos, ou grupo absorvido por um painel
+            if (grupo.painel != null) {
+                logger.warn("Painel {} sem membros recebidos na janela de correlação", grupo.chave);
+            }
+            grupo.conclusoes.forEach(ConclusaoNotificacao::concluir);
+            return;
+        }
+
+        Observation combinada = combinar(grupo);
+        if (grupo.painel != null && !grupo.completo()) {
+            logger.info("Painel {} entregue incompleto: {} de {} membro(s)",
+                    grupo.chave, grupo.recebidos.size(), grupo.esperados.size());
+        }
+        logger.debug("🔗 {} Observation(s) combinada(s) em {}", grupo.membros.size(), combinada.getIdElement().getIdPart());
+
+        String paciente = combinada.getSubject().getReference();
+        combinadas.increment();
+        try {
+            destino.accept(new Combinacao(combinada, List.copyOf(grupo.membros.values()),
+                    paciente != null ? VarreduraJson.normalizarReferencia(paciente) : null,
+                    List.copyOf(grupo.conclusoes)));
+        } catch (Exception e) {
+            // Notificações não concluídas: voltam do journal na próxima inicialização
+            logger.error("Erro ao entregar o hemograma combinado {}: {}", grupo.chave, e.getMessage());
+        }
+    }
+
+    /**
+     * Monta a Observation do hemograma com um componente por analito.
+     */
+    private static Observation combinar(Grupo grupo) {
+        Observation primeiro = grupo.membros.values().iterator().next();
+        Observation base = grupo.painel != null ? grupo.painel : primeiro;
+
+        String id;
+        if (grupo.painel != null) {
+            id = grupo.painel.getIdElement().getIdPart();
+        } else {
+            id = grupo.membros.values().stream()
+                    .map(membro -> membro.getIdElement().getIdPart())
+                    .min(Comparator.naturalOrder())
+                    .orElseThrow();
+        }
+
+        Observation combinada = new Observation();
+        combinada.setIdElement(new IdType("Observation", id));
+        combinada.setStatus(base.getStatus());
+        combinada.setSubject(base.hasSubject() ? base.getSubject() : primeiro.getSubject());
+        combinada.setEffective(base.hasEffective() ? base.getEffective() : primeiro.getEffective());
+        if (grupo.painel != null) {
+            combinada.setCode(grupo.painel.getCode());
+            combinada.getMeta().setVersionId(grupo.painel.getMeta().getVersionId());
+        } else {
+            combinada.getCode().addCoding().setSystem(SISTEMA_LOINC).setCode(CODIGO_PAINEL_HEMOGRAMA);
+        }
+
+        for (Observation membro : grupo.membros.values()) {
+            combinada.addComponent()
+                    .setCode(membro.getCode())
+                    .setValue(membro.getValueQuantity());
+        }
+        return combinada;
+    }
+
+    private static String referenciaObservation(List<Reference> referencias) {
+        for (Reference referencia : referencias) {
+            String normalizada = normalizar(referencia.getReference());
+            if (normalizada != null) {
+                return normalizada;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * "http://servidor/fhir/Observation/123/_history/2" → "Observation/123".
+     */
+    private static String normalizar(String referencia) {
+        if (referencia == null) {
+            return null;
+        }
+        int inicio = referencia.lastIndexOf(PREFIXO_OBSERVATION);
+        if (inicio < 0) {
+            return null;
+        }
+        String id = referencia.substring(inicio + PREFIXO_OBSERVATION.length());
+        int historico = id.indexOf('/');
+        return PREFIXO_OBSERVATION + (historico >= 0 ? id.substring(0, historico) : id);
+    }
+
+    private synchronized int quantidadeGrupos() {
+        return grupos.size();
+    }
+}
@@ -0,0 +1,448 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.Paciente;
+import br.ufg.inf.hemograma.model.ParametroHemograma;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serviço de detecção de mudanças lentas na população (ex: queda gradual da
+ * média de plaquetas de um estado durante um surto de dengue), que a contagem
+ * de desvios por limiar não percebe.
+ *
+ * Para cada estado (sigla da unidade federativa, ver
+ * {@link UnidadesFederativas}; e para o país, {@value #REGIAO_NACIONAL}) e tipo de
+ * parâmetro, os valores alimentam dois gráficos de controle:
+ * <ul>
+ *   <li>EWMA: média móvel exponencial com limites
+ *       {@code base ± L·σ·sqrt(λ/(2-λ))};</li>
+ *   <li>CUSUM tabular: somas acumuladas dos desvios padronizados acima e
+ *       abaixo da base, com folga {@code k} e limite de decisão {@code h}.</li>
+ * </ul>
+ *
+ * A base (média e variância) é aprendida nas primeiras amostras e depois
+ * acompanha a população com peso muito pequeno, suspenso enquanto houver
+ * alarme para que o surto não seja absorvido. Cada atualização é O(1) sobre
+ * vetores primitivos; um alerta coletivo é emitido quando um gráfico entra em
+ * alarme e rearmado quando ele volta aos limites.
+ *
+ * O estado dos detectores é gravado periodicamente em arquivo e recarregado
+ * na inicialização, de modo que reinícios não descartam as bases aprendidas.
+ */
+@Service
+public class DeteccaoMudancaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeteccaoMudancaService.class);
+
+    public static final String REGIAO_NACIONAL = "BR";
+
+    private static final int MAGICO = 0x48444D43; // "HDMC"
+    private static final short VERSAO = 1;
+    private static final int NUM_TIPOS = TipoParametro.values().length;
+
+    /** Desvio padrão mínimo, relativo à média da base, para bases quase constantes. */
+    private static final double DESVIO_MINIMO_RELATIVO = 0.001;
+
+    /** Sinais de alarme de cada par região × parâmetro. */
+    enum Sinal {
+        EWMA_ALTA, EWMA_BAIXA, CUSUM_ALTA, CUSUM_BAIXA
+    }
+
+    private static final int NUM_SINAIS = Sinal.values().length;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.hemograma.deteccao-mudanca.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${app.hemograma.deteccao-mudanca.amostras-base:200}")
+    private long amostrasBase;
+
+    @Value("${app.hemograma.deteccao-mudanca.peso-atualizacao-base:0.001}")
+    private double pesoAtualizacaoBase;
+
+    @Value("${app.hemograma.deteccao-mudanca.ewma.lambda:0.1}")
+    private double lambda;
+
+    @Value("${app.hemograma.deteccao-mudanca.ewma.largura-limite:3.0}")
+    private double larguraLimite;
+
+    @Value("${app.hemograma.deteccao-mudanca.cusum.folga:0.5}")
+    private double folga;
+
+    @Value("${app.hemograma.deteccao-mudanca.cusum.limite-decisao:5.0}")
+    private double limiteDecisao;
+
+    @Value("${app.hemograma.deteccao-mudanca.arquivo:./data/deteccao/detectores.bin}")
+    private String arquivo;
+
+    @Value("${app.hemograma.deteccao-mudanca.maximo-alertas-recentes:200}")
+    private int maximoAlertasRecentes;
+
+    private final Map<String, DetectoresRegiao> regioes = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> alertasRecentes = new ArrayDeque<>();
+    private final Map<Sinal, Counter> contadoresAlertas = new EnumMap<>(Sinal.class);
+    private double fatorEwma;
+    private volatile boolean alterado;
+
+    @PostConstruct
+    public void iniciar() {
+        fatorEwma = Math.sqrt(lambda / (2 - lambda));
+        for (Sinal sinal : Sinal.values()) {
+            contadoresAlertas.put(sinal, Counter.builder("hemograma.deteccao-mudanca.alertas")
+                    .description("Alertas coletivos de mudança na distribuição de um parâmetro")
+                    .tag("sinal", sinal.name())
+                    .register(meterRegistry));
+        }
+
+        if (habilitado) {
+            carregarCheckpoint();
+        }
+    }
+
+    @PreDestroy
+    public void parar() {
+        gravarCheckpoint();
+    }
+
+    /**
+     * Alimenta os detectores do estado do paciente e do país com os
+     * parâmetros de um hemograma gravado.
+     *
+     * Correções (novas versões da Observation) não passam por aqui: EWMA e
+     * CUSUM são recorrências sobre a sequência de amostras e não permitem
+     * retirar um valor já incorporado, e registrar o valor corrigido contaria
+     * o mesmo exame duas vezes. A primeira versão permanece nos detectores.
+     */
+    public void registrar(Hemograma hemograma, Paciente paciente) {
+        if (!habilitado) {
+            return;
+        }
+
+        String estado = paciente != null ? UnidadesFederativas.sigla(paciente.getEstado()) : null;
+
+        for (ParametroHemograma parametro : hemograma.listarParametros()) {
+            Double valor = parametro.getValor();
+            if (valor == null || !Double.isFinite(valor)) {
+                continue;
+            }
+            int ordinal = parametro.getTipoParametro().ordinal();
+            atualizar(REGIAO_NACIONAL, ordinal, valor);
+            if (estado != null) {
+                atualizar(estado, ordinal, valor);
+            }
+        }
+        alterado = true;
+    }
+
+    /**
+     * Estado atual dos detectores (base, EWMA, limites, CUSUM e alarmes).
+     *
+     * @param regiao Filtro opcional por estado, sigla ou nome ({@value #REGIAO_NACIONAL} para o país)
+     * @param tipoParametro Filtro opcional
+     * @param apenasAlarmes Se true, apenas detectores em alarme
+     */
+    public List<Map<String, Object>> consultar(String regiao, TipoParametro tipoParametro, boolean apenasAlarmes) {
+        String chave = regiao == null || REGIAO_NACIONAL.equalsIgnoreCase(regiao.trim())
+                ? REGIAO_NACIONAL : UnidadesFederativas.sigla(regiao);
+        List<Map<String, Object>> resultado = new ArrayList<>();
+        for (Map.Entry<String, DetectoresRegiao> entry : new TreeMap<>(regioes).entrySet()) {
+            if (regiao != null && !entry.getKey().equals(chave)) {
+                continue;
+            }
+            for (TipoParametro tipo : TipoParametro.values()) {
+                if (tipoParametro != null && tipo != tipoParametro) {
+                    continue;
+                }
+                Map<String, Object> item = entry.getValue().descrever(tipo);
+                if (item == null || (apenasAlarmes && ((List<?>) item.get("alarmes")).isEmpty())) {
+                    continue;
+                }
+                item.put("regiao", entry.getKey());
+                resultado.add(item);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Alertas coletivos mais recentes, do mais novo para o mais antigo.
+     */
+    public List<Map<String, Object>> alertasRecentes() {
+        synchronized (alertasRecentes) {
+            return new ArrayList<>(alertasRecentes);
+        }
+    }
+
+    /**
+     * Grava o estado dos detectores (temporário + renomeação atômica), se houve
+     * atualizações desde a última gravação.
+     */
+    @Scheduled(fixedDelayString = "${app.hemograma.deteccao-mudanca.intervalo-checkpoint-ms:60000}")
+    public void gravarCheckpoint() {
+        if (!habilitado || !alterado) {
+            return;
+        }
+        alterado = false;
+
+        Path destino = Paths.get(arquivo);
+        Path temporario = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(destino.toAbsolutePath().getParent());
+            try (FileOutputStream arquivoSaida = new FileOutputStream(temporario.toFile());
+                 DataOutputStream saida = new DataOutputStream(new BufferedOutputStream(arquivoSaida))) {
+                List<Map.Entry<String, DetectoresRegiao>> entradas = new ArrayList<>(regioes.entrySet());
+                saida.writeInt(MAGICO);
+                saida.writeShort(VERSAO);
+                saida.writeInt(NUM_TIPOS);
+                for (TipoParametro tipo : TipoParametro.values()) {
+                    saida.writeUTF(tipo.name());
+                }
+                saida.writeInt(entradas.size());
+                for (Map.Entry<String, DetectoresRegiao> entry : entradas) {
+                    saida.writeUTF(entry.getKey());
+                    entry.getValue().escrever(saida);
+                }
+                saida.flush();
+                arquivoSaida.getFD().sync();
+            }
+            Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Checkpoint de {} região(ões) de detectores gravado", regioes.size());
+        } catch (IOException e) {
+            alterado = true;
+            logger.error("Erro ao gravar o checkpoint dos detectores {}: {}", destino, e.getMessage());
+        }
+    }
+
+    private void carregarCheckpoint() {
+        Path caminho = Paths.get(arquivo);
+        if (!Files.exists(caminho)) {
+            return;
+        }
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(caminho)))) {
+            if (entrada.readInt() != MAGICO || entrada.readShort() != VERSAO) {
+                throw new IOException("formato desconhecido");
+            }
+
+            // Tipos gravados por nome: o checkpoint sobrevive a mudanças no enum
+            int tiposGravados = entrada.readInt();
+            int[] ordinais = new int[tiposGravados];
+            for (int i = 0; i < tiposGravados; i++) {
+                String nome = entrada.readUTF();
+                ordinais[i] = Arrays.stream(TipoParametro.values())
+                        .filter(tipo -> tipo.name().equals(nome))
+                        .mapToInt(Enum::ordinal)
+                        .findFirst()
+                        .orElse(-1);
+            }
+
+            int quantidade = entrada.readInt();
+            for (int i = 0; i < quantidade; i++) {
+                String regiao = entrada.readUTF();
+                DetectoresRegiao detectores = new DetectoresRegiao();
+                detectores.ler(entrada, ordinais);
+                // Checkpoints anteriores usavam o estado em maiúsculas ("GOIÁS"); detectores
+                // não podem ser mesclados, então prevalece o primeiro de cada sigla
+                String chave = REGIAO_NACIONAL.equals(regiao) ? regiao : UnidadesFederativas.sigla(regiao);
+                if (chave != null) {
+                    regioes.putIfAbsent(chave, detectores);
+                }
+            }
+            logger.info("📉 Detectores de mudança de {} região(ões) carregados de {}", quantidade, caminho);
+        } catch (Exception e) {
+            logger.error("Erro ao carregar o checkpoint dos detectores {}: {}", caminho, e.getMessage());
+            regioes.clear();
+        }
+    }
+
+    private void atualizar(String regiao, int ordinal, double valor) {
+        DetectoresRegiao detectores = regioes.computeIfAbsent(regiao, r -> new DetectoresRegiao());
+        int disparados = detectores.atualizar(ordinal, valor);
+        if (disparados != 0) {
+            emitirAlertas(regiao, ordinal, disparados, detectores.descrever(TipoParametro.values()[ordinal]));
+        }
+    }
+
+    private void emitirAlertas(String regiao, int ordinal, int disparados, Map<String, Object> estado) {
+        TipoParametro tipo = TipoParametro.values()[ordinal];
+        for (Sinal sinal : Sinal.values()) {
+            if ((disparados & (1 << sinal.ordinal())) == 0) {
+                continue;
+            }
+            contadoresAlertas.get(sinal).increment();
+            logger.warn("📉 ALERTA COLETIVO: {} em {} - {} (base {}, EWMA {}, CUSUM +{} / -{})",
+                    tipo.getNome(), regiao, sinal,
+                    String.format("%.2f", (Double) estado.get("mediaBase")),
+                    String.format("%.2f", (Double) estado.get("ewma")),
+                    String.format("%.2f", (Double) estado.get("cusumAlta")),
+                    String.format("%.2f", (Double) estado.get("cusumBaixa")));
+
+            Map<String, Object> alerta = new LinkedHashMap<>(estado);
+            alerta.put("regiao", regiao);
+            alerta.put("sinal", sinal);
+            alerta.put("dataAlerta", LocalDateTime.now());
+            synchronized (alertasRecentes) {
+                alertasRecentes.addFirst(alerta);
+                while (alertasRecentes.size() > maximoAlertasRecentes) {
+                    alertasRecentes.removeLast();
+                }
+            }
+        }
+    }
+
+    /**
+     * Estado dos detectores de uma região, em vetores primitivos indexados
+     * pelo ordinal do tipo de parâmetro.
+     */
+    private final class DetectoresRegiao {
+        private final long[] amostras = new long[NUM_TIPOS];
+        private final double[] media = new double[NUM_TIPOS];
+        /** Soma dos quadrados (Welford) até completar a base; depois, a variância. */
+        private final double[] variancia = new double[NUM_TIPOS];
+        private final double[] ewma = new double[NUM_TIPOS];
+        private final double[] cusumAlta = new double[NUM_TIPOS];
+        private final double[] cusumBaixa = new double[NUM_TIPOS];
+        /** Bits dos sinais em alarme ({@link Sinal#ordinal()}). */
+        private final int[] alarmes = new int[NUM_TIPOS];
+
+        /**
+         * @return Bits dos sinais que entraram em alarme com esta amostra
+         */
+        synchronized int atualizar(int i, double x) {
+            long n = ++amostras[i];
+
+            if (n <= amostrasBase) {
+                double delta = x - media[i];
+                media[i] += delta / n;
+                variancia[i] += delta * (x - media[i]);
+                if (n == amostrasBase) {
+                    variancia[i] = n > 1 ? variancia[i] / (n - 1) : 0.0;
+                    ewma[i] = media[i];
+                }
+                return 0;
+            }
+
+            double sigma = desvioPadrao(i);
+            double z = (x - media[i]) / sigma;
+
+            ewma[i] = lambda * x + (1 - lambda) * ewma[i];
+            // Limitadas para que o retorno aos limites não demore tanto quanto o surto durou
+            cusumAlta[i] = Math.min(Math.max(0.0, cusumAlta[i] + z - folga), 2 * limiteDecisao);
+            cusumBaixa[i] = Math.min(Math.max(0.0, cusumBaixa[i] - z - folga), 2 * limiteDecisao);
+
+            double limiteEwma = larguraLimite * sigma * fatorEwma;
+            int atuais = 0;
+            if (ewma[i] > media[i] + limiteEwma) {
+                atuais |= 1 << Sinal.EWMA_ALTA.ordinal();
+            }
+            if (ewma[i] < media[i] - limiteEwma) {
+                atuais |= 1 << Sinal.EWMA_BAIXA.ordinal();
+            }
+            if (cusumAlta[i] > limiteDecisao) {
+                atuais |= 1 << Sinal.CUSUM_ALTA.ordinal();
+            }
+            if (cusumBaixa[i] > limiteDecisao) {
+                atuais |= 1 << Sinal.CUSUM_BAIXA.ordinal();
+            }
+
+            int disparados = atuais & ~alarmes[i];
+            alarmes[i] = atuais;
+
+            if (atuais == 0) {
+                double delta = x - media[i];
+                media[i] += pesoAtualizacaoBase * delta;
+                variancia[i] = (1 - pesoAtualizacaoBase) * (variancia[i] + pesoAtualizacaoBase * delta * delta);
+            }
+            return disparados;
+        }
+
+        synchronized Map<String, Object> descrever(TipoParametro tipo) {
+            int i = tipo.ordinal();
+            if (amostras[i] == 0) {
+                return null;
+            }
+
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("tipoParametro", tipo);
+            item.put("amostras", amostras[i]);
+            boolean baseCompleta = amostras[i] >= amostrasBase;
+            item.put("baseCompleta", baseCompleta);
+            item.put("mediaBase", media[i]);
+            if (baseCompleta) {
+                double sigma = desvioPadrao(i);
+                item.put("desvioPadraoBase", sigma);
+                item.put("ewma", ewma[i]);
+                item.put("limiteInferiorEwma", media[i] - larguraLimite * sigma * fatorEwma);
+                item.put("limiteSuperiorEwma", media[i] + larguraLimite * sigma * fatorEwma);
+                item.put("cusumAlta", cusumAlta[i]);
+                item.put("cusumBaixa", cusumBaixa[i]);
+            }
+            List<Sinal> emAlarme = new ArrayList<>();
+            for (Sinal sinal : Sinal.values()) {
+                if ((alarmes[i] & (1 << sinal.ordinal())) != 0) {
+                    emAlarme.add(sinal);
+                }
+            }
+            item.put("alarmes", emAlarme);
+            return item;
+        }
+
+        private double desvioPadrao(int i) {
+            return Math.max(Math.sqrt(variancia[i]), Math.abs(media[i]) * DESVIO_MINIMO_RELATIVO + 1e-9);
+        }
+
+        synchronized void escrever(DataOutput saida) throws IOException {
+            for (int i = 0; i < NUM_TIPOS; i++) {
+                saida.writeLong(amostras[i]);
+                saida.writeDouble(media[i]);
+                saida.writeDouble(variancia[i]);
+                saida.writeDouble(ewma[i]);
+                saida.writeDouble(cusumAlta[i]);
+                saida.writeDouble(cusumBaixa[i]);
+                saida.writeInt(alarmes[i]);
+            }
+        }
+
+        synchronized void ler(DataInput entrada, int[] ordinais) throws IOException {
+            for (int ordinal : ordinais) {
+                long n = entrada.readLong();
+                double m = entrada.readDouble();
+                double v = entrada.readDouble();
+                double e = entrada.readDouble();
+                double ca = entrada.readDouble();
+                double cb = entrada.readDouble();
+                int a = entrada.readInt();
+                if (ordinal < 0) {
+                    continue;
+                }
+                amostras[ordinal] = n;
+                media[ordinal] = m;
+                variancia[ordinal] = v;
+                ewma[ordinal] = e;
+                cusumAlta[ordinal] = ca;
+                cusumBaixa[ordinal] = cb;
+                alarmes[ordinal] = a & ((1 << NUM_SINAIS) - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.RollupDesvioHora;
+import br.ufg.inf.hemograma.model.enums.FormatoExportacao;
+import br.ufg.inf.hemograma.model.enums.SeveridadeDesvio;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serviço de exportação dos desvios de um período para análise
+ * epidemiológica, em CSV ou NDJSON.
+ *
+ * As linhas são lidas de um cursor do banco (fetch size configurado, em uma
+ * transação somente leitura, requisito do driver do PostgreSQL para não
+ * carregar o resultado inteiro) e escritas diretamente no fluxo de saída, sem
+ * entidades nem listas intermediárias: o consumo de memória independe do
+ * número de linhas.
+ *
+ * Os dados do paciente se limitam a sexo, cidade e estado. Desvios de
+ * hemogramas já arquivados não fazem parte da exportação.
+ */
+@Service
+public class ExportacaoDesviosService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ExportacaoDesviosService.class);
+
+    private static final int TAMANHO_BUFFER = 65536;
+
+    private static final String[] COLUNAS = {
+            "desvio_id", "data_deteccao", "tipo_parametro", "severidade", "valor_encontrado",
+            "valor_referencia_minimo", "valor_referencia_maximo", "percentual_desvio",
+            "fhir_observation_id", "data_coleta", "genero", "cidade", "estado"
+    };
+
+    private static final String SQL_DESVIOS =
+            "SELECT d.id, d.data_deteccao, d.tipo_parametro, d.severidade, d.valor_encontrado, " +
+            "d.valor_referencia_minimo, d.valor_referencia_maximo, d.percentual_desvio, " +
+            "h.fhir_observation_id, h.data_coleta, p.genero, p.cidade, p.estado " +
+            "FROM desvios d " +
+            "JOIN hemogramas h ON h.id = d.hemograma_id " +
+            "JOIN pacientes p ON p.id = h.paciente_id " +
+            "WHERE d.data_deteccao >= ? AND d.data_deteccao < ?";
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.hemograma.exportacao.fetch-size:1000}")
+    private int fetchSize;
+
+    private JdbcTemplate jdbcTemplate;
+    private TransactionTemplate transacao;
+
+    @PostConstruct
+    public void iniciar() {
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.setFetchSize(fetchSize);
+
+        transacao = new TransactionTemplate(transactionManager);
+        transacao.setReadOnly(true);
+    }
+
+    /**
+     * Escreve os desvios do período [inicio, fim) no fluxo de saída.
+     *
+     * @param tipoParametro Filtro opcional
+     * @param severidade Filtro opcional
+     * @param regiao Filtro opcional por estado do paciente (sigla ou nome;
+     *        {@value RollupDesvioHora#REGIAO_DESCONHECIDA} para estado ausente ou não reconhecido)
+     * @param gzip Se true, a saída é compactada
+     * @return Quantidade de desvios exportados
+     */
+    public long exportar(OutputStream saida, FormatoExportacao formato, boolean gzip,
+                         LocalDateTime inicio, LocalDateTime fim,
+                         TipoParametro tipoParametro, SeveridadeDesvio severidade, String regiao) throws IOException {
+        StringBuilder sql = new StringBuilder(SQL_DESVIOS);
+        List<Object> parametros = new ArrayList<>();
+        parametros.add(Timestamp.valueOf(inicio));
+        parametros.add(Timestamp.valueOf(fim));
+        if (tipoParametro != null) {
+            sql.append(" AND d.tipo_parametro = ?");
+            parametros.add(tipoParametro.name());
+        }
+        if (severidade != null) {
+            sql.append(" AND d.severidade = ?");
+            parametros.add(severidade.name());
+        }
+        // Estado gravado como recebido ("Goiás", "go"): filtrado pela sigla na leitura
+        String siglaRegiao = regiao != null ? UnidadesFederativas.normalizarRegiao(regiao) : null;
+
+        long inicioExportacao = System.nanoTime();
+        GZIPOutputStream compactador = gzip ? new GZIPOutputStream(saida, TAMANHO_BUFFER) : null;
+        Writer escritor = new BufferedWriter(new OutputStreamWriter(
+                compactador != null ? compactador : saida, StandardCharsets.UTF_8), TAMANHO_BUFFER);
+
+        if (formato == FormatoExportacao.CSV) {
+            escritor.write(String.join(",", COLUNAS));
+            escritor.write('\n');
+        }
+
+        long[] total = new long[1];
+        try {
+            transacao.executeWithoutResult(status -> jdbcTemplate.query(sql.toString(), rs -> {
+                if (siglaRegiao != null
+                        && !siglaRegiao.equals(UnidadesFederativas.normalizarRegiao(rs.getString(COLUNAS.length)))) {
+                    return;
+                }
+                try {
+                    if (formato == FormatoExportacao.CSV) {
+                        escreverCsv(escritor, rs);
+                    } else {
+                        escreverNdjson(escritor, rs);
+                    }
+                } catch (IOException e) {
+                    // Ex: cliente desconectado; interrompe a leitura do cursor
+                    throw new UncheckedIOException(e);
+                }
+                total[0]++;
+            }, parametros.toArray()));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        escritor.flush();
+        if (compactador != null) {
+            compactador.finish();
+        }
+
+        logger.info("📤 Exportação {} concluída: {} desvio(s) em {} ms",
+                formato, total[0], (System.nanoTime() - inicioExportacao) / 1_000_000);
+        return total[0];
+    }
+
+    private void escreverCsv(Writer escritor, ResultSet rs) throws SQLException, IOException {
+        for (int coluna = 1; coluna <= COLUNAS.length; coluna++) {
+            if (coluna > 1) {
+                escritor.write(',');
+            }
+            Object valor = rs.getObject(coluna);
+            if (valor == null) {
+                continue;
+            }
+            if (valor instanceof Number) {
+                escritor.write(valor.toString());
+            } else {
+                String texto = valor instanceof Timestamp data ? data.toLocalDateTime().toString() : valor.toString();
+                textoCsv(escritor, texto);
+            }
+        }
+        escritor.write('\n');
+    }
+
+    private void escreverNdjson(Writer escritor, ResultSet rs) throws SQLException, IOException {
+        escritor.write('{');
+        boolean primeiro = true;
+        for (int coluna = 1; coluna <= COLUNAS.length; coluna++) {
+            Object valor = rs.getObject(coluna);
+            if (valor == null) {
+                continue;
+            }
+            if (!primeiro) {
+                escritor.write(',');
+            }
+            primeiro = false;
+            escritor.write('"');
+            escritor.write(COLUNAS[coluna - 1]);
+            escritor.write("\":");
+            if (valor instanceof Number numero && Double.isFinite(numero.doubleValue())) {
+                escritor.write(valor.toString());
+            } else {
+                String texto = valor instanceof Timestamp data ? data.toLocalDateTime().toString() : valor.toString();
+                textoJson(escritor, texto);
+            }
+        }
+        escritor.write("}\n");
+    }
+
+    /**
+     * Campo CSV entre aspas apenas quando contém separador, aspas ou quebra de linha.
+     */
+    private static void textoCsv(Writer escritor, String texto) throws IOException {
+        boolean aspas = false;
+        for (int i = 0; i < texto.length() && !aspas; i++) {
+            char c = texto.charAt(i);
+            aspas = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!aspas) {
+            escritor.write(texto);
+            return;
+        }
+        escritor.write('"');
+        escritor.write(texto.replace("\"", "\"\""));
+        escritor.write('"');
+    }
+
+    private static void textoJson(Writer escritor, String texto) throws IOException {
+        escritor.write('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            switch (c) {
+                case '"' -> escritor.write("\\\"");
+                case '\\' -> escritor.write("\\\\");
+                case '\n' -> escritor.write("\\n");
+                case '\r' -> escritor.write("\\r");
+                case '\t' -> escritor.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        escritor.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        escritor.write(c);
+                    }
+                }
+            }
+        }
+        escritor.write('"');
+    }
+}
@@ -7,6 +7,9 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -25,9 +28,9 @@ public class FhirParserService {
     private final FhirContext fhirContext;
     private final IParser jsonParser;
 
-    public FhirParserService() {
-        // Cria o contexto FHIR para R4
-        this.fhirContext = FhirContext.forR4();
+    public FhirParserService(FhirContext fhirContext) {
+        // Contexto FHIR R4 compartilhado (ver FhirConfig)
+        this.fhirContext = fhirContext;
         
         // Cria o parser JSON
         this.jsonParser = fhirContext.newJsonParser();
@@ -38,6 +41,13 @@ public class FhirParserService {
         logger.info("FhirParserService inicializado com HAPI-FHIR {}", fhirContext.getVersion().getVersion());
     }
 
+    /**
+     * Retorna o contexto FHIR R4 compartilhado (criação cara, reutilizável entre threads).
+     */
+    public FhirContext getFhirContext() {
+        return fhirContext;
+    }
+
     /**
      * Faz o parsing de uma string JSON para um recurso FHIR genérico.
      * 
@@ -56,6 +66,23 @@ public class FhirParserService {
         }
     }
 
+    /**
+     * Faz o parsing de um recurso FHIR diretamente de um fluxo de bytes UTF-8,
+     * sem materializar o JSON como String.
+     *
+     * Usa um parser próprio por chamada (barato de criar), pois IParser não é thread-safe.
+     *
+     * @param entrada Fluxo com o JSON do recurso
+     * @return Recurso FHIR parseado
+     * @throws ca.uhn.fhir.parser.DataFormatException se o conteúdo não for um recurso FHIR válido
+     */
+    public Resource parseResource(InputStream entrada) {
+        Resource resource = (Resource) fhirContext.newJsonParser()
+                .parseResource(new InputStreamReader(entrada, StandardCharsets.UTF_8));
+        logger.debug("Recurso parseado com sucesso: {}", resource.getResourceType());
+        return resource;
+    }
+
     /**
      * Faz o parsing de uma string JSON para uma Observation.
      * 
@@ -184,7 +211,14 @@ public class FhirParserService {
                 dados.put("componentes", componentes);
                 dados.put("totalComponentes", componentes.size());
             }
-            
+
+            // Valor de uma Observation de um único analito (entra no hash do conteúdo)
+            if (observation.hasValueQuantity()) {
+                Quantity value = observation.getValueQuantity();
+                dados.put("valor", value.getValue().doubleValue());
+                dados.put("unidade", value.getUnit());
+            }
+
             logger.info("Dados do hemograma extraídos com sucesso: {} componentes", 
                 dados.getOrDefault("totalComponentes", 0));
             
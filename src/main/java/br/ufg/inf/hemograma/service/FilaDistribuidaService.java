@@ -0,0 +1,526 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.NotificacaoPendente;
+import br.ufg.inf.hemograma.repository.NotificacaoPendenteRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fila de trabalho distribuída em banco de dados, para executar várias
+ * instâncias da aplicação lado a lado (modo opcional).
+ *
+ * O receptor grava o payload bruto em {@code notificacoes_pendentes}, com a
+ * partição do paciente (hash da referência, como nas filas por paciente; um
+ * Bundle com pacientes de partições diferentes vira uma linha por partição).
+ * Cada partição é detida, com lease, por uma única instância, e as
+ * instâncias presentes dividem as partições entre si; uma instância só
+ * reivindica linhas das suas partições. As notificações de um paciente
+ * (inclusive as Observations de um analito de um mesmo hemograma) são
+ * processadas, portanto, por uma única instância de cada vez.
+ *
+ * Na instância, uma thread reivindica lotes de linhas com
+ * {@code SELECT ... FOR UPDATE SKIP LOCKED}, grava nelas um lease com prazo
+ * e as entrega às {@link FilasPorPacienteService filas por paciente}, onde
+ * não disputam com outras notificações do mesmo paciente. O número de linhas
+ * entregues e ainda não concluídas é limitado por {@code maximo-em-andamento}.
+ * Concluído o processamento sem erro, a linha é removida. Se ele falhar, a
+ * linha permanece, sem trabalhador e com o lease adiado por uma espera
+ * exponencial, e é reivindicada de novo depois dela. Linhas que esgotam as
+ * tentativas permanecem na tabela para análise e não são mais reivindicadas.
+ *
+ * Os leases das partições, da presença da instância e das linhas em
+ * processamento são renovados a cada terço do lease. Se uma instância cair,
+ * eles expiram e as suas partições e linhas passam a outra instância. Uma
+ * instância que deixa de renovar por mais que o lease (ex: pausa longa) pode
+ * ter uma notificação ainda em processamento quando outra assume a partição;
+ * a deduplicação no banco evita a repetição do que já foi gravado. Uma
+ * instância só cede uma partição (ao rebalancear) quando não tem linhas dela
+ * em processamento.
+ *
+ * Uma notificação com Observations retidas pelo
+ * {@link CorrelacaoObservacoesService} só é removida depois que o hemograma
+ * combinado é processado (na fila do paciente); a janela de correlação deve
+ * ser bem menor que o lease.
+ *
+ * Notificações com valores críticos ({@link TriagemCriticaService}) são
+ * gravadas com prioridade maior e reivindicadas antes das demais.
+ *
+ * Os prazos de lease são gravados e comparados com o relógio do banco
+ * ({@code CURRENT_TIMESTAMP}), comum a todas as instâncias; a diferença
+ * entre os relógios das instâncias não antecipa nem atrasa a expiração.
+ * A coluna não guarda fuso, então as instâncias devem usar o mesmo fuso
+ * horário nas sessões com o banco. Todas as instâncias devem usar a mesma
+ * quantidade de partições.
+ */
+@Service
+public class FilaDistribuidaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FilaDistribuidaService.class);
+
+    private static final int PRIORIDADE_NORMAL = 0;
+    private static final int PRIORIDADE_CRITICA = 1;
+
+    private static final String SQL_REIVINDICAR =
+            "SELECT id, trabalhador, tentativas, payload FROM notificacoes_pendentes " +
+            "WHERE (lease_ate IS NULL OR lease_ate < CURRENT_TIMESTAMP) AND tentativas < ? " +
+            "AND particao IN (SELECT particao FROM particoes_fila_distribuida " +
+            "WHERE instancia = ? AND lease_ate >= CURRENT_TIMESTAMP) " +
+            "ORDER BY prioridade DESC, id LIMIT ? FOR UPDATE SKIP LOCKED";
+
+    private static final String SQL_CONCEDER_LEASE =
+            "UPDATE notificacoes_pendentes " +
+            "SET lease_ate = CURRENT_TIMESTAMP + CAST(? AS INTEGER) * INTERVAL '1' SECOND, " +
+            "trabalhador = ?, tentativas = tentativas + 1 " +
+            "WHERE id IN (%s)";
+
+    private static final String SQL_CONCLUIR =
+            "DELETE FROM notificacoes_pendentes WHERE id = ? AND trabalhador = ?";
+
+    private static final String SQL_DEVOLVER =
+            "UPDATE notificacoes_pendentes " +
+            "SET lease_ate = CURRENT_TIMESTAMP + CAST(? AS INTEGER) * INTERVAL '1' SECOND, trabalhador = NULL " +
+            "WHERE id = ? AND trabalhador = ?";
+
+    private static final String SQL_LIBERAR =
+            "UPDATE notificacoes_pendentes SET lease_ate = NULL, trabalhador = NULL, tentativas = tentativas - 1 " +
+            "WHERE trabalhador = ?";
+
+    private static final String SQL_RENOVAR_NOTIFICACOES =
+            "UPDATE notificacoes_pendentes " +
+            "SET lease_ate = CURRENT_TIMESTAMP + CAST(? AS INTEGER) * INTERVAL '1' SECOND " +
+            "WHERE trabalhador = ? AND particao IN (SELECT particao FROM particoes_fila_distribuida WHERE instancia = ?)";
+
+    private static final String SQL_RENOVAR_PRESENCA =
+            "UPDATE instancias_fila_distribuida " +
+            "SET lease_ate = CURRENT_TIMESTAMP + CAST(? AS INTEGER) * INTERVAL '1' SECOND WHERE instancia = ?";
+
+    private static final String SQL_REGISTRAR_PRESENCA =
+            "INSERT INTO instancias_fila_distribuida (lease_ate, instancia) " +
+            "VALUES (CURRENT_TIMESTAMP + CAST(? AS INTEGER) * INTERVAL '1' SECOND, ?)";
+
+    private static final String SQL_REMOVER_AUSENTES =
+            "DELETE FROM instancias_fila_distribuida WHERE lease_ate < CURRENT_TIMESTAMP";
+
+    private static final String SQL_CONTAR_OUTRAS_INSTANCIAS =
+            "SELECT COUNT(*) FROM instancias_fila_distribuida WHERE instancia <> ? AND lease_ate >= CURRENT_TIMESTAMP";
+
+    private static final String SQL_RENOVAR_PARTICOES =
+            "UPDATE particoes_fila_distribuida " +
+            "SET lease_ate = CURRENT_TIMESTAMP + CAST(? AS INTEGER) * INTERVAL '1' SECOND WHERE instancia = ?";
+
+    private static final String SQL_PARTICOES_LIVRES =
+            "SELECT particao FROM particoes_fila_distribuida " +
+            "WHERE instancia IS NULL OR lease_ate < CURRENT_TIMESTAMP " +
+            "ORDER BY particao LIMIT ? FOR UPDATE SKIP LOCKED";
+
+    private static final String SQL_CONCEDER_PARTICOES =
+            "UPDATE particoes_fila_distribuida " +
+            "SET lease_ate = CURRENT_TIMESTAMP + CAST(? AS INTEGER) * INTERVAL '1' SECOND, instancia = ? " +
+            "WHERE particao IN (%s)";
+
+    /** Cede partições da instância sem linhas dela em processamento. */
+    private static final String SQL_CEDER_PARTICOES =
+            "UPDATE particoes_fila_distribuida SET instancia = NULL, lease_ate = NULL " +
+            "WHERE particao IN (SELECT p.particao FROM particoes_fila_distribuida p WHERE p.instancia = ? " +
+            "AND NOT EXISTS (SELECT 1 FROM notificacoes_pendentes n WHERE n.particao = p.particao AND n.trabalhador = ?) " +
+            "ORDER BY p.particao DESC LIMIT ?)";
+
+    private static final String SQL_CEDER_TODAS_PARTICOES =
+            "UPDATE particoes_fila_distribuida SET instancia = NULL, lease_ate = NULL WHERE instancia = ?";
+
+    private static final String SQL_REMOVER_PRESENCA =
+            "DELETE FROM instancias_fila_distribuida WHERE instancia = ?";
+
+    @Autowired
+    private NotificacaoPendenteRepository notificacaoPendenteRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private FilasPorPacienteService filasPorPacienteService;
+
+    @Autowired
+    private TriagemCriticaService triagemCriticaService;
+
+    @Autowired
+    private RastreamentoService rastreamentoService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.hemograma.fila-distribuida.habilitado:false}")
+    private boolean habilitado;
+
+    @Value("${app.hemograma.fila-distribuida.particoes:64}")
+    private int particoes;
+
+    @Value("${app.hemograma.fila-distribuida.tamanho-lote:10}")
+    private int tamanhoLote;
+
+    @Value("${app.hemograma.fila-distribuida.maximo-em-andamento:50}")
+    private int maximoEmAndamento;
+
+    @Value("${app.hemograma.fila-distribuida.lease-segundos:60}")
+    private long leaseSegundos;
+
+    @Value("${app.hemograma.fila-distribuida.maximo-tentativas:5}")
+    private int maximoTentativas;
+
+    /** Espera antes da segunda tentativa; dobra a cada nova falha. */
+    @Value("${app.hemograma.fila-distribuida.espera-tentativa-segundos:5}")
+    private long esperaTentativaSegundos;
+
+    @Value("${app.hemograma.fila-distribuida.intervalo-ocioso-ms:500}")
+    private long intervaloOciosoMs;
+
+    /**
+     * @param leaseExpirado Outro trabalhador detinha a linha
+     * @param tentativas Tentativas anteriores a esta reivindicação
+     */
+    record Reivindicada(long id, boolean leaseExpirado, int tentativas, byte[] payload) {
+    }
+
+    /** Acorda o reivindicador quando o receptor grava uma notificação ou uma linha é concluída. */
+    private final Semaphore sinal = new Semaphore(0);
+
+    /** Partição de notificações sem paciente identificável. */
+    private final AtomicInteger rodizio = new AtomicInteger();
+
+    private TransactionTemplate transacao;
+    private String instancia;
+    private Semaphore vagas;
+    private Thread reivindicador;
+    private Counter processadas;
+    private Counter falhas;
+    private Counter leasesExpirados;
+    private volatile boolean ativo;
+
+    public boolean isHabilitada() {
+        return habilitado;
+    }
+
+    @PostConstruct
+    public void preparar() {
+        transacao = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Inicia o reivindicador depois do reprocessamento do journal local.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void iniciar() {
+        if (!habilitado) {
+            return;
+        }
+
+        processadas = Counter.builder("hemograma.fila-distribuida.processadas")
+                .description("Notificações processadas a partir da fila distribuída")
+                .register(meterRegistry);
+        falhas = Counter.builder("hemograma.fila-distribuida.falhas")
+                .description("Processamentos com falha devolvidos à fila distribuída")
+                .register(meterRegistry);
+        leasesExpirados = Counter.builder("hemograma.fila-distribuida.leases-expirados")
+                .description("Notificações reivindicadas após expirar o lease de outro trabalhador")
+                .register(meterRegistry);
+
+        criarParticoes();
+        instancia = identificarInstancia();
+        vagas = new Semaphore(maximoEmAndamento);
+        ativo = true;
+        reivindicador = new Thread(this::trabalhar, "fila-distribuida");
+        reivindicador.setDaemon(true);
+        reivindicador.start();
+
+        logger.info("🌐 Fila distribuída ativa em {}: {} partições, lote {}, até {} em andamento, lease {}s",
+                instancia, particoes, tamanhoLote, maximoEmAndamento, leaseSegundos);
+    }
+
+    /**
+     * Para de reivindicar, aguarda as notificações já entregues às filas
+     * (que param depois desta) e devolve as linhas e partições restantes sem
+     * esperar o lease expirar.
+     */
+    @PreDestroy
+    public void parar() throws InterruptedException {
+        if (reivindicador == null) {
+            return;
+        }
+        ativo = false;
+        sinal.release();
+        reivindicador.join(TimeUnit.SECONDS.toMillis(10));
+        vagas.tryAcquire(maximoEmAndamento, 10, TimeUnit.SECONDS);
+
+        try {
+            int devolvidas = jdbcTemplate.update(SQL_LIBERAR, instancia);
+            if (devolvidas > 0) {
+                logger.info("{} notificação(ões) em andamento devolvida(s) à fila distribuída", devolvidas);
+            }
+            jdbcTemplate.update(SQL_CEDER_TODAS_PARTICOES, instancia);
+            jdbcTemplate.update(SQL_REMOVER_PRESENCA, instancia);
+        } catch (Exception e) {
+            logger.warn("Erro ao devolver as partições da fila distribuída: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Grava a notificação na tabela de trabalho. Ao retornar, ela está
+     * confirmada no banco e será processada por alguma instância.
+     */
+    public void enfileirar(byte[] payload) {
+        Map<Integer, byte[]> partes = filasPorPacienteService.dividirPorPaciente(payload, this::particao);
+        List<NotificacaoPendente> linhas = new ArrayList<>(partes.size());
+        partes.forEach((particao, parte) -> linhas.add(new NotificacaoPendente(parte,
+                triagemCriticaService.triar(parte).isEmpty() ? PRIORIDADE_NORMAL : PRIORIDADE_CRITICA, particao)));
+        // Todas as partes na mesma transação
+        notificacaoPendenteRepository.saveAll(linhas);
+        sinal.release();
+    }
+
+    private int particao(String paciente) {
+        return paciente != null
+                ? FilasPorPacienteService.indicePaciente(paciente, particoes)
+                : Math.floorMod(rodizio.getAndIncrement(), particoes);
+    }
+
+    private void trabalhar() {
+        long proximaDistribuicao = System.nanoTime();
+        while (ativo) {
+            if (System.nanoTime() - proximaDistribuicao >= 0) {
+                try {
+                    distribuirParticoes(instancia);
+                } catch (Exception e) {
+                    logger.error("Erro ao renovar as partições da fila distribuída: {}", e.getMessage());
+                }
+                proximaDistribuicao = System.nanoTime() + TimeUnit.SECONDS.toNanos(leaseSegundos) / 3;
+            }
+
+            List<Reivindicada> lote = Collections.emptyList();
+            int livres = vagas.availablePermits();
+            if (livres > 0) {
+                try {
+                    lote = reivindicar(instancia, Math.min(tamanhoLote, livres));
+                } catch (Exception e) {
+                    logger.error("Erro ao reivindicar notificações da fila distribuída: {}", e.getMessage());
+                }
+            }
+
+            if (lote.isEmpty()) {
+                try {
+                    sinal.tryAcquire(intervaloOciosoMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+
+            for (Reivindicada notificacao : lote) {
+                vagas.acquireUninterruptibly();
+                despachar(notificacao);
+            }
+        }
+    }
+
+    /**
+     * Renova a presença da instância, os leases das suas partições e das
+     * linhas em processamento, e ajusta as partições à sua cota (partições
+     * divididas pelas instâncias presentes): reivindica partições livres ou
+     * com lease expirado, ou cede as excedentes sem linhas em processamento.
+     *
+     * @return Quantidade de partições detidas pela instância
+     */
+    int distribuirParticoes(String instancia) {
+        return transacao.execute(status -> {
+            if (jdbcTemplate.update(SQL_RENOVAR_PRESENCA, leaseSegundos, instancia) == 0) {
+                jdbcTemplate.update(SQL_REMOVER_AUSENTES);
+                jdbcTemplate.update(SQL_REGISTRAR_PRESENCA, leaseSegundos, instancia);
+            }
+            int proprias = jdbcTemplate.update(SQL_RENOVAR_PARTICOES, leaseSegundos, instancia);
+            jdbcTemplate.update(SQL_RENOVAR_NOTIFICACOES, leaseSegundos, instancia, instancia);
+
+            Integer outras = jdbcTemplate.queryForObject(SQL_CONTAR_OUTRAS_INSTANCIAS, Integer.class, instancia);
+            int instancias = (outras != null ? outras : 0) + 1;
+            int cota = (particoes + instancias - 1) / instancias;
+            if (proprias < cota) {
+                List<Integer> livres = jdbcTemplate.queryForList(SQL_PARTICOES_LIVRES, Integer.class, cota - proprias);
+                if (!livres.isEmpty()) {
+                    Object[] parametros = new Object[livres.size() + 2];
+                    parametros[0] = leaseSegundos;
+                    parametros[1] = instancia;
+                    for (int i = 0; i < livres.size(); i++) {
+                        parametros[i + 2] = livres.get(i);
+                    }
+                    String marcadores = String.join(",", Collections.nCopies(livres.size(), "?"));
+                    jdbcTemplate.update(String.format(SQL_CONCEDER_PARTICOES, marcadores), parametros);
+                    proprias += livres.size();
+                }
+            } else if (proprias > cota) {
+                proprias -= jdbcTemplate.update(SQL_CEDER_PARTICOES, instancia, instancia, proprias - cota);
+            }
+            return proprias;
+        });
+    }
+
+    /**
+     * Reivindica até {@code tamanho-lote} notificações livres ou com lease
+     * expirado das partições da instância, em uma única transação curta.
+     */
+    List<Reivindicada> reivindicar(String trabalhador) {
+        return reivindicar(trabalhador, tamanhoLote);
+    }
+
+    private List<Reivindicada> reivindicar(String trabalhador, int limite) {
+        return transacao.execute(status -> {
+            List<Reivindicada> lote = jdbcTemplate.query(SQL_REIVINDICAR,
+                    (rs, linha) -> new Reivindicada(rs.getLong(1), rs.getString(2) != null, rs.getInt(3), rs.getBytes(4)),
+                    maximoTentativas, trabalhador, limite);
+            if (lote.isEmpty()) {
+                return lote;
+            }
+
+            Object[] parametros = new Object[lote.size() + 2];
+            parametros[0] = leaseSegundos;
+            parametros[1] = trabalhador;
+            for (int i = 0; i < lote.size(); i++) {
+                parametros[i + 2] = lote.get(i).id();
+            }
+            String marcadores = String.join(",", Collections.nCopies(lote.size(), "?"));
+            jdbcTemplate.update(String.format(SQL_CONCEDER_LEASE, marcadores), parametros);
+            return lote;
+        });
+    }
+
+    /**
+     * Entrega a notificação à fila do paciente, com uma única tentativa: as
+     * novas tentativas são controladas pela tabela de trabalho.
+     */
+    private void despachar(Reivindicada notificacao) {
+        if (notificacao.leaseExpirado()) {
+            leasesExpirados.increment();
+            logger.warn("⏰ Lease expirado: notificação {} reivindicada por {}", notificacao.id(), instancia);
+        }
+
+        // O rastro do recebimento termina na gravação da fila; o processamento abre outro
+        try (RastreamentoService.Trecho trecho = rastreamentoService.iniciarRastro("fila-distribuida.processamento")) {
+            trecho.atributo("notificacao.id", notificacao.id()).atributo("trabalhador", instancia);
+            filasPorPacienteService.submeter(notificacao.payload(), Map.of(), 1,
+                    () -> {
+                        concluir(notificacao, instancia);
+                        liberarVaga();
+                    },
+                    () -> {
+                        devolver(notificacao, instancia);
+                        liberarVaga();
+                    });
+        } catch (Exception e) {
+            // Aplicação em parada: a linha é devolvida em parar()
+            logger.error("Erro ao entregar notificação {} às filas: {}", notificacao.id(), e.getMessage());
+        }
+    }
+
+    private void liberarVaga() {
+        vagas.release();
+        sinal.release();
+    }
+
+    void concluir(Reivindicada notificacao, String trabalhador) {
+        try {
+            // Só remove se o lease ainda for deste trabalhador; do contrário
+            // outro já a reivindicou e a deduplicação no banco evita repetição
+            if (jdbcTemplate.update(SQL_CONCLUIR, notificacao.id(), trabalhador) == 0) {
+                logger.debug("Notificação {} reivindicada por outro trabalhador antes da conclusão", notificacao.id());
+            }
+            if (processadas != null) {
+                processadas.increment();
+            }
+        } catch (Exception e) {
+            logger.error("Erro ao concluir notificação {} da fila distribuída: {}", notificacao.id(), e.getMessage());
+        }
+    }
+
+    /**
+     * Mantém a linha de uma notificação cujo processamento falhou, sem
+     * trabalhador e com o lease adiado pela espera exponencial; esgotadas as
+     * tentativas, ela não é mais reivindicada.
+     */
+    void devolver(Reivindicada notificacao, String trabalhador) {
+        int tentativa = notificacao.tentativas() + 1;
+        long esperaSegundos = esperaTentativaSegundos << Math.min(notificacao.tentativas(), 6);
+        try {
+            jdbcTemplate.update(SQL_DEVOLVER, esperaSegundos, notificacao.id(), trabalhador);
+            if (falhas != null) {
+                falhas.increment();
+            }
+        } catch (Exception e) {
+            // A linha volta quando o lease expirar
+            logger.error("Erro ao devolver notificação {} à fila distribuída: {}", notificacao.id(), e.getMessage());
+            return;
+        }
+
+        if (tentativa >= maximoTentativas) {
+            logger.error("Notificação {} da fila distribuída falhou após {} tentativa(s); fica na tabela para análise",
+                    notificacao.id(), tentativa);
+        } else {
+            logger.warn("Notificação {} da fila distribuída falhou (tentativa {} de {}); nova tentativa em {}s",
+                    notificacao.id(), tentativa, maximoTentativas, esperaSegundos);
+        }
+    }
+
+    /**
+     * Cria as linhas das partições que ainda não existem (instâncias
+     * iniciando ao mesmo tempo criam a mesma partição uma única vez).
+     */
+    void criarParticoes() {
+        Set<Integer> existentes = new HashSet<>(
+                jdbcTemplate.queryForList("SELECT particao FROM particoes_fila_distribuida", Integer.class));
+        for (int particao = 0; particao < particoes; particao++) {
+            if (existentes.contains(particao)) {
+                continue;
+            }
+            try {
+                jdbcTemplate.update("INSERT INTO particoes_fila_distribuida (particao) VALUES (?)", particao);
+            } catch (DuplicateKeyException e) {
+                // Criada por outra instância
+            }
+        }
+    }
+
+    private static String identificarInstancia() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            host = "desconhecido";
+        }
+        String instancia = host + ":" + ProcessHandle.current().pid();
+        return instancia.length() > 90 ? instancia.substring(instancia.length() - 90) : instancia;
+    }
+}
@@ -0,0 +1,504 @@
+package br.ufg.inf.hemograma.service;
+
+import ca.uhn.fhir.parser.DataFormatException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.hl7.fhir.r4.model.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * Executor de ingestão com filas por paciente.
+ *
+ * Cada notificação é direcionada, pelo hash da referência do paciente
+ * ({@code subject.reference}), a uma de N filas com uma única thread
+ * consumidora. Notificações do mesmo paciente são processadas uma de cada
+ * vez e na ordem de chegada (o "exame anterior" e a criação do paciente não
+ * disputam entre si); pacientes diferentes são processados em paralelo.
+ *
+ * A referência é localizada por uma varredura dos bytes do JSON, sem parse
+ * ({@link VarreduraJson}). Notificações sem referência identificável (ex:
+ * Bundle só de Patients sem id) são distribuídas em rodízio. Um Bundle com
+ * pacientes de filas diferentes é dividido em um Bundle por fila (parse no
+ * recebimento, apenas nesse caso), e a entrada do journal só é confirmada
+ * quando todas as partes terminam.
+ *
+ * Os hemogramas combinados pelo {@link CorrelacaoObservacoesService} também
+ * entram na fila do paciente (parte comum; o alerta antecipado dos valores
+ * críticos já foi emitido no recebimento de cada membro). As notificações
+ * com Observations retidas pelo correlacionador só são confirmadas no
+ * journal depois que o hemograma combinado é processado.
+ *
+ * Notificações com valores críticos ({@link TriagemCriticaService}) entram
+ * na parte prioritária da fila do próprio paciente, que a thread consumidora
+ * esvazia antes da parte comum: não esperam pelo volume acumulado (ex: carga
+ * retroativa), e continuam processadas pela mesma thread que as demais
+ * notificações do paciente, sem concorrência entre elas. Podem ultrapassar
+ * uma notificação anterior do mesmo paciente ainda na parte comum.
+ *
+ * A entrada do journal só é confirmada se o processamento terminar sem
+ * erro. Uma notificação que falha (ex: banco indisponível, lote sem item
+ * identificável) volta ao fim da fila do paciente após uma espera
+ * exponencial, até {@code maximo-tentativas}; esgotadas as tentativas, ela
+ * fica pendente no journal e é reprocessada na inicialização seguinte. Uma
+ * nova tentativa pode ser ultrapassada por notificações posteriores do mesmo
+ * paciente; o versionamento das Observations descarta o que já foi aplicado.
+ *
+ * A {@link FilaDistribuidaService} também entrega nestas filas as
+ * notificações que reivindica, com uma única tentativa: uma falha devolve a
+ * linha à tabela de trabalho, que controla as novas tentativas.
+ *
+ * Filas cheias bloqueiam o receptor (contrapressão). Na parada, as tarefas
+ * ainda na fila ou aguardando nova tentativa não são confirmadas no journal
+ * e, na inicialização seguinte, voltam pelas mesmas filas.
+ */
+@Service
+public class FilasPorPacienteService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FilasPorPacienteService.class);
+
+    @Autowired
+    private HemogramaProcessingService hemogramaProcessingService;
+
+    @Autowired
+    private LoteGravacaoHemogramaService loteGravacaoHemogramaService;
+
+    @Autowired
+    private JournalNotificacaoService journalNotificacaoService;
+
+    @Autowired
+    private TriagemCriticaService triagemCriticaService;
+
+    @Autowired
+    private FhirParserService fhirParserService;
+
+    @Autowired
+    private CorrelacaoObservacoesService correlacaoObservacoesService;
+
+    @Autowired
+    private RastreamentoService rastreamentoService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    /** Quantidade de filas; 0 usa a quantidade de processadores. */
+    @Value("${app.hemograma.ingestao.filas:0}")
+    private int quantidadeFilas;
+
+    @Value("${app.hemograma.ingestao.capacidade-fila:1000}")
+    private int capacidadeFila;
+
+    @Value("${app.hemograma.ingestao.maximo-tentativas:4}")
+    private int maximoTentativas;
+
+    /** Espera antes da segunda tentativa; dobra a cada nova falha. */
+    @Value("${app.hemograma.ingestao.espera-tentativa-ms:1000}")
+    private long esperaTentativaMs;
+
+    /**
+     * @param payload Notificação (ou parte dela); null para um hemograma combinado
+     * @param combinacao Hemograma combinado pelo correlacionador; null para notificações
+     * @param conclusao Concluída ao fim do processamento da tarefa
+     * @param contexto Rastro do recebimento (null sem rastreamento ou em uma nova tentativa)
+     * @param enfileiradaEm System.nanoTime() do enfileiramento
+     * @param tentativa Número da tentativa (a partir de 1)
+     * @param maximoTentativas Tentativas antes de encerrar a tarefa como falha
+     */
+    private record Tarefa(byte[] payload, Map<String, String> headers,
+                          CorrelacaoObservacoesService.Combinacao combinacao, ConclusaoNotificacao conclusao,
+                          RastreamentoService.Contexto contexto, long enfileiradaEm, boolean critica,
+                          int indiceFila, int tentativa, int maximoTentativas) {
+
+        Tarefa novaTentativa() {
+            return new Tarefa(payload, headers, combinacao, conclusao, null, System.nanoTime(), critica,
+                    indiceFila, tentativa + 1, maximoTentativas);
+        }
+    }
+
+    /**
+     * Fila de um grupo de pacientes, com uma parte prioritária (valores
+     * críticos) retirada antes da parte comum. Cada parte tem a capacidade
+     * configurada, para que a comum cheia não bloqueie as críticas.
+     */
+    private static final class Fila {
+        private final ReentrantLock trava = new ReentrantLock();
+        private final Condition naoVazia = trava.newCondition();
+        private final Condition comEspaco = trava.newCondition();
+        private final ArrayDeque<Tarefa> criticas = new ArrayDeque<>();
+        private final ArrayDeque<Tarefa> comuns = new ArrayDeque<>();
+        private final int capacidade;
+
+        Fila(int capacidade) {
+            this.capacidade = capacidade;
+        }
+
+        void colocar(Tarefa tarefa) throws InterruptedException {
+            ArrayDeque<Tarefa> destino = tarefa.critica() ? criticas : comuns;
+            trava.lockInterruptibly();
+            try {
+                while (destino.size() >= capacidade) {
+                    comEspaco.await();
+                }
+                destino.addLast(tarefa);
+                naoVazia.signal();
+            } finally {
+                trava.unlock();
+            }
+        }
+
+        Tarefa retirar(long tempo, TimeUnit unidade) throws InterruptedException {
+            long restante = unidade.toNanos(tempo);
+            trava.lockInterruptibly();
+            try {
+                while (criticas.isEmpty() && comuns.isEmpty()) {
+                    if (restante <= 0) {
+                        return null;
+                    }
+                    restante = naoVazia.awaitNanos(restante);
+                }
+                Tarefa tarefa = criticas.isEmpty() ? comuns.pollFirst() : criticas.pollFirst();
+                comEspaco.signalAll();
+                return tarefa;
+            } finally {
+                trava.unlock();
+            }
+        }
+
+        int tamanho() {
+            trava.lock();
+            try {
+                return criticas.size() + comuns.size();
+            } finally {
+                trava.unlock();
+            }
+        }
+
+        int criticas() {
+            trava.lock();
+            try {
+                return criticas.size();
+            } finally {
+                trava.unlock();
+            }
+        }
+    }
+
+    private Fila[] filas;
+    private Thread[] consumidores;
+    private ScheduledExecutorService retentativas;
+    private final AtomicInteger rodizio = new AtomicInteger();
+    private volatile boolean ativo;
+
+    @PostConstruct
+    public void iniciar() {
+        int quantidade = quantidadeFilas > 0 ? quantidadeFilas : Runtime.getRuntime().availableProcessors();
+        filas = new Fila[quantidade];
+        consumidores = new Thread[quantidade];
+        ativo = true;
+        retentativas = Executors.newSingleThreadScheduledExecutor(tarefa -> {
+            Thread thread = new Thread(tarefa, "ingestao-retentativas");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        for (int i = 0; i < quantidade; i++) {
+            Fila fila = new Fila(capacidadeFila);
+            filas[i] = fila;
+
+            Gauge.builder("hemograma.ingestao.fila.profundidade", fila, Fila::tamanho)
+                    .description("Notificações aguardando na fila de ingestão")
+                    .tag("fila", String.valueOf(i))
+                    .register(meterRegistry);
+
+            consumidores[i] = new Thread(() -> consumir(fila), "ingestao-" + i);
+            consumidores[i].setDaemon(true);
+            consumidores[i].start();
+        }
+
+        Gauge.builder("hemograma.ingestao.fila.profundidade", this, FilasPorPacienteService::criticasAguardando)
+                .description("Notificações aguardando na fila de ingestão")
+                .tag("fila", "critica")
+                .register(meterRegistry);
+
+        correlacaoObservacoesService.setDestino(this::submeterCombinacao);
+
+        logger.info("🛤️ Ingestão com {} fila(s) por paciente (capacidade {} comuns e {} críticas cada)",
+                quantidade, capacidadeFila, capacidadeFila);
+    }
+
+    @PreDestroy
+    public void parar() throws InterruptedException {
+        ativo = false;
+        int aguardandoTentativa = retentativas.shutdownNow().size();
+        for (Thread consumidor : consumidores) {
+            // Sem interrupção: a notificação em andamento termina e é confirmada
+            consumidor.join(TimeUnit.SECONDS.toMillis(10));
+        }
+
+        int pendentes = 0;
+        for (Fila fila : filas) {
+            pendentes += fila.tamanho();
+        }
+        pendentes += aguardandoTentativa;
+        if (pendentes > 0) {
+            logger.info("{} notificação(ões) pendente(s) ficam no journal para a próxima inicialização", pendentes);
+        }
+    }
+
+    /**
+     * Reenfileira as notificações aceitas e não concluídas antes da última
+     * parada (ou que esgotaram as tentativas) nas filas dos seus pacientes.
+     * São confirmadas no journal ao fim do processamento, como as recebidas.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reprocessarJournal() {
+        List<JournalNotificacaoService.EntradaJournal> entradas = journalNotificacaoService.consumirRecuperadas();
+        if (entradas.isEmpty()) {
+            return;
+        }
+
+        logger.info("♻️ Reprocessando {} notificação(ões) do journal", entradas.size());
+        for (JournalNotificacaoService.EntradaJournal entrada : entradas) {
+            submeter(entrada.payload(), Map.of(), entrada.sequencia());
+        }
+    }
+
+    /**
+     * Enfileira a notificação na fila do paciente (na parte prioritária, se
+     * tiver valores críticos), aguardando se ela estiver cheia. Um Bundle com
+     * pacientes de filas diferentes é dividido entre elas.
+     *
+     * @param sequenciaJournal Sequência do journal, confirmada após o processamento sem erro
+     */
+    public void submeter(byte[] payload, Map<String, String> headers, long sequenciaJournal) {
+        submeter(payload, headers, maximoTentativas,
+                () -> journalNotificacaoService.confirmar(sequenciaJournal),
+                () -> logger.error("Notificação {} do journal não processada; fica pendente para a próxima inicialização",
+                        sequenciaJournal));
+    }
+
+    /**
+     * Enfileira a notificação de outra origem (ex: fila distribuída), que
+     * confirma ou devolve a notificação por conta própria.
+     *
+     * @param tentativas Máximo de tentativas nas filas (1 se a origem repete por conta própria)
+     * @param aoConcluir Executada quando todas as partes terminam sem erro
+     * @param aoFalhar Executada, no lugar de {@code aoConcluir}, se alguma parte esgotar as tentativas
+     */
+    public void submeter(byte[] payload, Map<String, String> headers, int tentativas,
+                         Runnable aoConcluir, Runnable aoFalhar) {
+        Map<Integer, byte[]> partes = dividirPorPaciente(payload, this::indiceFila);
+        ConclusaoNotificacao conclusao = new ConclusaoNotificacao(partes.size(), aoConcluir, aoFalhar);
+
+        for (Map.Entry<Integer, byte[]> parte : partes.entrySet()) {
+            boolean critica = !triagemCriticaService.triar(parte.getValue()).isEmpty();
+            colocar(new Tarefa(parte.getValue(), headers, null, conclusao,
+                    rastreamentoService.capturar(), System.nanoTime(), critica, parte.getKey(), 1, tentativas));
+        }
+    }
+
+    /**
+     * Enfileira o hemograma combinado na fila do paciente (thread do
+     * agendador do correlacionador), aguardando se ela estiver cheia.
+     */
+    private void submeterCombinacao(CorrelacaoObservacoesService.Combinacao combinacao) {
+        colocar(new Tarefa(null, Map.of(), combinacao,
+                new ConclusaoNotificacao(1, combinacao::concluir, combinacao::falhar), null, System.nanoTime(),
+                false, indiceFila(combinacao.paciente()), 1, maximoTentativas));
+    }
+
+    private void colocar(Tarefa tarefa) {
+        try {
+            filas[tarefa.indiceFila()].colocar(tarefa);
+        } catch (InterruptedException e) {
+            if (tarefa.contexto() != null) {
+                tarefa.contexto().close();
+            }
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Enfileiramento da notificação interrompido", e);
+        }
+    }
+
+    /**
+     * Payload de cada índice envolvido (fila, ou partição da fila
+     * distribuída): o próprio payload, no índice do paciente, ou um Bundle
+     * por índice quando as entradas são de pacientes de índices diferentes
+     * (Observations pelo subject, Patients pelo id). Entradas sem paciente
+     * acompanham a primeira parte.
+     *
+     * @param indice Índice de uma referência de paciente (null sem paciente identificável)
+     */
+    Map<Integer, byte[]> dividirPorPaciente(byte[] payload, ToIntFunction<String> indice) {
+        if ("Bundle".equals(VarreduraJson.tipoRecurso(payload))) {
+            Set<String> pacientes = VarreduraJson.referenciasPacientes(payload);
+            if (pacientes.stream().map(indice::applyAsInt).distinct().count() > 1) {
+                Map<Integer, byte[]> partes = dividirBundle(payload, indice);
+                if (partes != null) {
+                    return partes;
+                }
+            }
+        }
+        return Map.of(indice.applyAsInt(VarreduraJson.referenciaPaciente(payload)), payload);
+    }
+
+    /**
+     * @return Partes por índice, ou null se o payload não puder ser parseado
+     *         (segue inteiro e o erro é registrado no processamento)
+     */
+    private Map<Integer, byte[]> dividirBundle(byte[] payload, ToIntFunction<String> indice) {
+        Resource recurso;
+        try {
+            recurso = fhirParserService.parseResource(new ByteArrayInputStream(payload));
+        } catch (DataFormatException e) {
+            return null;
+        }
+        if (!(recurso instanceof Bundle bundle)) {
+            return null;
+        }
+
+        Map<Integer, Bundle> bundles = new LinkedHashMap<>();
+        List<Bundle.BundleEntryComponent> semPaciente = new ArrayList<>();
+        for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+            String paciente = null;
+            if (entry.getResource() instanceof Observation observation && observation.getSubject().hasReference()) {
+                paciente = VarreduraJson.normalizarReferencia(observation.getSubject().getReference());
+            } else if (entry.getResource() instanceof Patient patient && patient.getIdElement().hasIdPart()) {
+                paciente = "Patient/" + patient.getIdElement().getIdPart();
+            }
+            if (paciente == null) {
+                semPaciente.add(entry);
+                continue;
+            }
+            bundles.computeIfAbsent(indice.applyAsInt(paciente), i -> new Bundle().setType(bundle.getType()))
+                    .addEntry(entry);
+        }
+        if (bundles.size() < 2) {
+            return null;
+        }
+        semPaciente.forEach(bundles.values().iterator().next()::addEntry);
+
+        // Um parser por chamada: IParser não é thread-safe
+        Map<Integer, byte[]> partes = new LinkedHashMap<>();
+        bundles.forEach((chave, parte) -> partes.put(chave, fhirParserService.getFhirContext().newJsonParser()
+                .encodeResourceToString(parte).getBytes(StandardCharsets.UTF_8)));
+        logger.debug("Bundle com pacientes de {} índices dividido", partes.size());
+        return partes;
+    }
+
+    private int indiceFila(String paciente) {
+        return paciente != null
+                ? indicePaciente(paciente, filas.length)
+                : Math.floorMod(rodizio.getAndIncrement(), filas.length);
+    }
+
+    /** Índice da referência de paciente entre {@code quantidade} filas ou partições. */
+    static int indicePaciente(String paciente, int quantidade) {
+        return Math.floorMod(espalhar(paciente.hashCode()), quantidade);
+    }
+
+    private void consumir(Fila fila) {
+        while (ativo) {
+            Tarefa tarefa;
+            try {
+                tarefa = fila.retirar(200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (tarefa == null) {
+                continue;
+            }
+
+            boolean processada = false;
+            // Enquanto processa, esta fila pode enviar um hemograma ao lote de gravação
+            loteGravacaoHemogramaService.iniciarProducao();
+            try (RastreamentoService.Contexto contexto = tarefa.contexto()) {
+                if (tarefa.combinacao() != null) {
+                    // Hemogramas combinados não têm rastro de recebimento: abrem um próprio
+                    try (RastreamentoService.Trecho trecho = rastreamentoService.iniciarRastro("correlacao.despacho")) {
+                        processada = hemogramaProcessingService.processarCombinacao(tarefa.combinacao());
+                    }
+                } else {
+                    rastreamentoService.registrarTrecho(contexto, "fila.espera", tarefa.enfileiradaEm())
+                            .atributo("fila", tarefa.critica() ? "critica" : "paciente");
+                    try (RastreamentoService.Trecho trecho = rastreamentoService.retomar(contexto, "processamento")) {
+                        processada = hemogramaProcessingService.processarNotificacaoFhir(tarefa.payload(),
+                                tarefa.headers(), tarefa.conclusao());
+                    }
+                }
+            } catch (Throwable t) {
+                logger.error("Erro inesperado na fila de ingestão: {}", t.getMessage());
+            } finally {
+                loteGravacaoHemogramaService.encerrarProducao();
+            }
+
+            if (processada) {
+                // Observations retidas pelo correlacionador adiam a conclusão até o grupo ser processado
+                tarefa.conclusao().concluir();
+            } else {
+                repetirOuFalhar(tarefa);
+            }
+        }
+    }
+
+    /**
+     * Agenda uma nova tentativa da tarefa, com espera exponencial, ou a
+     * encerra como falha se as tentativas se esgotaram.
+     */
+    private void repetirOuFalhar(Tarefa tarefa) {
+        if (tarefa.tentativa() >= tarefa.maximoTentativas()) {
+            logger.error("Processamento falhou após {} tentativa(s)", tarefa.tentativa());
+            tarefa.conclusao().falhar();
+            return;
+        }
+
+        long esperaMs = esperaTentativaMs << Math.min(tarefa.tentativa() - 1, 6);
+        logger.warn("Processamento falhou (tentativa {} de {}); nova tentativa em {} ms",
+                tarefa.tentativa(), tarefa.maximoTentativas(), esperaMs);
+        try {
+            retentativas.schedule(() -> colocar(tarefa.novaTentativa()), esperaMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Aplicação em parada: a notificação fica pendente no journal
+        }
+    }
+
+    private int criticasAguardando() {
+        int total = 0;
+        for (Fila fila : filas) {
+            total += fila.criticas();
+        }
+        return total;
+    }
+
+    /** Espalha os bits do hash (como o HashMap) para distribuir melhor entre as filas. */
+    private static int espalhar(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
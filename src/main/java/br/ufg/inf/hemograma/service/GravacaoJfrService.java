@@ -0,0 +1,116 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.jfr.*;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Registra os eventos JFR do pipeline e, se habilitada, inicia uma gravação
+ * contínua com a configuração padrão do JDK (GC, locks, amostras de CPU)
+ * somada à do classpath ({@value #CONFIGURACAO_HEMOGRAMA}).
+ *
+ * A gravação é circular (idade e tamanho máximos) e é gravada no arquivo
+ * configurado na parada da aplicação; a qualquer momento pode ser copiada
+ * com {@code jcmd <pid> JFR.dump name=hemograma}.
+ */
+@Service
+public class GravacaoJfrService {
+
+    private static final Logger logger = LoggerFactory.getLogger(GravacaoJfrService.class);
+
+    public static final String CONFIGURACAO_HEMOGRAMA = "jfr/hemograma.jfc";
+    private static final String NOME_GRAVACAO = "hemograma";
+
+    @Value("${app.hemograma.jfr.gravacao-continua.habilitado:false}")
+    private boolean gravacaoContinua;
+
+    @Value("${app.hemograma.jfr.gravacao-continua.arquivo:./data/jfr/hemograma.jfr}")
+    private String arquivo;
+
+    @Value("${app.hemograma.jfr.gravacao-continua.idade-maxima-min:60}")
+    private long idadeMaximaMin;
+
+    @Value("${app.hemograma.jfr.gravacao-continua.tamanho-maximo-mb:250}")
+    private long tamanhoMaximoMb;
+
+    private Recording gravacao;
+
+    @PostConstruct
+    public void iniciar() {
+        // Registrados já na inicialização, para que apareçam nos metadados da
+        // gravação mesmo antes da primeira ocorrência
+        FlightRecorder.register(NotificacaoRecebidaEvent.class);
+        FlightRecorder.register(ObservacaoParseadaEvent.class);
+        FlightRecorder.register(FaixaReferenciaResolvidaEvent.class);
+        FlightRecorder.register(DesvioDetectadoEvent.class);
+        FlightRecorder.register(HemogramaPersistidoEvent.class);
+
+        if (!gravacaoContinua) {
+            return;
+        }
+
+        try {
+            Map<String, String> configuracao = new HashMap<>(Configuration.getConfiguration("default").getSettings());
+            configuracao.putAll(configuracaoHemograma().getSettings());
+
+            Path destino = Path.of(arquivo);
+            if (destino.getParent() != null) {
+                Files.createDirectories(destino.getParent());
+            }
+
+            gravacao = new Recording(configuracao);
+            gravacao.setName(NOME_GRAVACAO);
+            gravacao.setToDisk(true);
+            gravacao.setMaxAge(Duration.ofMinutes(idadeMaximaMin));
+            gravacao.setMaxSize(tamanhoMaximoMb * 1024 * 1024);
+            gravacao.setDestination(destino);
+            gravacao.setDumpOnExit(true);
+            gravacao.start();
+
+            logger.info("🎥 Gravação JFR contínua iniciada (últimos {} min, até {} MB) -> {}",
+                    idadeMaximaMin, tamanhoMaximoMb, arquivo);
+        } catch (IOException | ParseException | IllegalStateException | SecurityException e) {
+            logger.error("Não foi possível iniciar a gravação JFR: {}", e.getMessage());
+            gravacao = null;
+        }
+    }
+
+    @PreDestroy
+    public void parar() {
+        if (gravacao != null) {
+            // Com destino definido, a parada grava o arquivo
+            gravacao.stop();
+            gravacao.close();
+            logger.info("🎥 Gravação JFR salva em {}", arquivo);
+        }
+    }
+
+    private static Configuration configuracaoHemograma() throws IOException, ParseException {
+        InputStream entrada = GravacaoJfrService.class.getClassLoader().getResourceAsStream(CONFIGURACAO_HEMOGRAMA);
+        if (entrada == null) {
+            throw new IOException(CONFIGURACAO_HEMOGRAMA + " não encontrado no classpath");
+        }
+        try (Reader reader = new InputStreamReader(entrada, StandardCharsets.UTF_8)) {
+            return Configuration.create(reader);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.dto.AchadoCompostoDTO;
+import br.ufg.inf.hemograma.dto.DesvioDTO;
+import br.ufg.inf.hemograma.dto.HemogramaDTO;
+import br.ufg.inf.hemograma.dto.ParametroDTO;
+import br.ufg.inf.hemograma.model.AchadoComposto;
+import br.ufg.inf.hemograma.model.Desvio;
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.ParametroHemograma;
+import br.ufg.inf.hemograma.model.ParametrosCompactos;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import br.ufg.inf.hemograma.repository.AchadoCompostoRepository;
+import br.ufg.inf.hemograma.repository.DesvioRepository;
+import br.ufg.inf.hemograma.repository.HemogramaRepository;
+import br.ufg.inf.hemograma.repository.ParametroHemogramaRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Serviço de leitura de hemogramas para a API REST (aplicativo móvel e painéis).
+ *
+ * As coleções lazy das entidades nunca são acessadas: cada página é montada
+ * com um número fixo de consultas, independente do tamanho da página:
+ * 1. página de hemogramas com o paciente (JOIN FETCH) e a contagem;
+ * 2. parâmetros de todos os hemogramas da página (IN);
+ * 3. desvios de todos os hemogramas da página (IN);
+ * 4. achados compostos de todos os hemogramas da página (IN).
+ *
+ * Hemogramas antigos movidos para o arquivo ({@link ArquivamentoService}) são
+ * incluídos nas mesmas consultas, após os registros do banco.
+ */
+@Service
+public class HemogramaConsultaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HemogramaConsultaService.class);
+
+    public static final int TAMANHO_MAXIMO_PAGINA = 100;
+
+    private static final LocalDateTime DATA_MINIMA = LocalDateTime.of(1900, 1, 1, 0, 0);
+    private static final LocalDateTime DATA_MAXIMA = LocalDateTime.of(9999, 12, 31, 23, 59, 59);
+
+    @Autowired
+    private HemogramaRepository hemogramaRepository;
+
+    @Autowired
+    private ParametroHemogramaRepository parametroHemogramaRepository;
+
+    @Autowired
+    private DesvioRepository desvioRepository;
+
+    @Autowired
+    private AchadoCompostoRepository achadoCompostoRepository;
+
+    @Autowired
+    private ArquivamentoService arquivamentoService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * Lista os hemogramas de um paciente em um período, do mais recente ao mais antigo.
+     * Os hemogramas arquivados vêm depois dos que ainda estão no banco; do arquivo,
+     * só são montados os hemogramas da página.
+     *
+     * @param pacienteFhirId Referência do paciente (ex: "Patient/123")
+     * @param dataInicio Início do período (inclusive; nulo para sem limite)
+     * @param dataFim Fim do período (inclusive; nulo para sem limite)
+     * @param pagina Número da página (a partir de 0)
+     * @param tamanho Tamanho da página (limitado a {@value #TAMANHO_MAXIMO_PAGINA})
+     */
+    @Transactional(readOnly = true)
+    public Page<HemogramaDTO> listarPorPaciente(String pacienteFhirId, LocalDateTime dataInicio,
+                                                LocalDateTime dataFim, int pagina, int tamanho) {
+        PageRequest pageRequest = PageRequest.of(Math.max(pagina, 0),
+                Math.min(Math.max(tamanho, 1), TAMANHO_MAXIMO_PAGINA));
+        LocalDateTime inicio = dataInicio != null ? dataInicio : DATA_MINIMA;
+        LocalDateTime fim = dataFim != null ? dataFim : DATA_MAXIMA;
+
+        Page<Hemograma> hemogramas = hemogramaRepository.findPaginaPorPacienteEPeriodo(
+                pacienteFhirId, inicio, fim, pageRequest);
+        List<HemogramaDTO> conteudo = new ArrayList<>(paraDTOs(hemogramas.getContent()));
+
+        // Completa a página com os arquivados, que seguem os registros do banco
+        long posicaoArquivo = pageRequest.getOffset() + conteudo.size() - hemogramas.getTotalElements();
+        ArquivamentoService.PaginaArquivo arquivados = arquivamentoService.buscarPorPaciente(
+                pacienteFhirId, inicio, fim, Math.max(posicaoArquivo, 0), pageRequest.getPageSize() - conteudo.size());
+        conteudo.addAll(arquivados.hemogramas());
+
+        if (conteudo.isEmpty() && hemogramas.getTotalElements() + arquivados.total() == 0) {
+            return Page.empty(pageRequest);
+        }
+
+        logger.debug("Página {} de hemogramas de {}: {} registro(s), {} arquivado(s) no período",
+                pagina, pacienteFhirId, conteudo.size(), arquivados.total());
+
+        return new PageImpl<>(conteudo, pageRequest, hemogramas.getTotalElements() + arquivados.total());
+    }
+
+    /**
+     * Lista os hemogramas com um parâmetro dentro de uma faixa de valores em um período,
+     * nos dois layouts de armazenamento (linhas de parametros_hemograma e colunas
+     * compactas). No arquivo, só são lidos os segmentos cujo período e mínimo/máximo
+     * do parâmetro se sobrepõem à consulta.
+     *
+     * @param limite Quantidade máxima de hemogramas (limitada a {@value #TAMANHO_MAXIMO_PAGINA})
+     */
+    @Transactional(readOnly = true)
+    public List<HemogramaDTO> listarPorFaixaDeValor(TipoParametro tipo, double minimo, double maximo,
+                                                    LocalDateTime dataInicio, LocalDateTime dataFim,
+                                                    int limite) {
+        int quantidade = Math.min(Math.max(limite, 1), TAMANHO_MAXIMO_PAGINA);
+        LocalDateTime inicio = dataInicio != null ? dataInicio : DATA_MINIMA;
+        LocalDateTime fim = dataFim != null ? dataFim : DATA_MAXIMA;
+
+        // A troca de layout não converte os hemogramas já gravados: consulta os dois
+        Set<Long> ids = new HashSet<>(hemogramaRepository.findIdsPorFaixaDeValor(
+                tipo, minimo, maximo, inicio, fim, PageRequest.of(0, quantidade)));
+        ids.addAll(buscarIdsCompactosPorFaixaDeValor(tipo, minimo, maximo, inicio, fim, quantidade));
+
+        List<HemogramaDTO> resultado = new ArrayList<>();
+        if (!ids.isEmpty()) {
+            // Mais recente primeiro, como nas consultas de IDs
+            List<Hemograma> hemogramas = hemogramaRepository.findComPacienteByIds(ids).stream()
+                    .sorted(Comparator.comparing(HemogramaConsultaService::dataReferencia)
+                            .thenComparing(Hemograma::getId).reversed())
+                    .limit(quantidade)
+                    .toList();
+            resultado.addAll(paraDTOs(hemogramas));
+        }
+
+        if (resultado.size() < quantidade) {
+            List<HemogramaDTO> arquivados = arquivamentoService.buscarPorFaixa(tipo, minimo, maximo, inicio, fim);
+            resultado.addAll(arquivados.subList(0, Math.min(quantidade - resultado.size(), arquivados.size())));
+        }
+        return resultado;
+    }
+
+    private static LocalDateTime dataReferencia(Hemograma hemograma) {
+        return hemograma.getDataColeta() != null ? hemograma.getDataColeta() : hemograma.getDataCadastro();
+    }
+
+    /**
+     * IDs dos hemogramas do layout compacto com o parâmetro na faixa informada,
+     * do mais recente ao mais antigo. A coluna do tipo vem de
+     * {@link ParametrosCompactos#atributo}, não da requisição.
+     */
+    private List<Long> buscarIdsCompactosPorFaixaDeValor(TipoParametro tipo, double minimo, double maximo,
+                                                         LocalDateTime inicio, LocalDateTime fim, int quantidade) {
+        String valor = "h.parametrosCompactos." + ParametrosCompactos.atributo(tipo);
+        return entityManager.createQuery(
+                        "SELECT h.id FROM Hemograma h " +
+                        "WHERE " + valor + " BETWEEN :minimo AND :maximo " +
+                        "AND COALESCE(h.dataColeta, h.dataCadastro) BETWEEN :dataInicio AND :dataFim " +
+                        "ORDER BY COALESCE(h.dataColeta, h.dataCadastro) DESC, h.id DESC", Long.class)
+                .setParameter("minimo", minimo)
+                .setParameter("maximo", maximo)
+                .setParameter("dataInicio", inicio)
+                .setParameter("dataFim", fim)
+                .setMaxResults(quantidade)
+                .getResultList();
+    }
+
+    /**
+     * Converte hemogramas (com paciente carregado) buscando parâmetros, desvios
+     * e achados em uma consulta cada.
+     */
+    List<HemogramaDTO> paraDTOs(List<Hemograma> hemogramas) {
+        if (hemogramas.isEmpty()) {
+            return List.of();
+        }
+
+        List<Long> ids = hemogramas.stream().map(Hemograma::getId).toList();
+
+        Map<Long, List<ParametroHemograma>> parametrosPorHemograma = parametroHemogramaRepository
+                .findByHemogramaIds(ids).stream()
+                .collect(Collectors.groupingBy(p -> p.getHemograma().getId()));
+
+        Map<Long, List<Desvio>> desviosPorHemograma = desvioRepository
+                .findByHemogramaIds(ids).stream()
+                .collect(Collectors.groupingBy(d -> d.getHemograma().getId()));
+
+        Map<Long, List<AchadoComposto>> achadosPorHemograma = achadoCompostoRepository
+                .findByHemogramaIds(ids).stream()
+                .collect(Collectors.groupingBy(a -> a.getHemograma().getId()));
+
+        return hemogramas.stream().map(hemograma -> paraDTO(hemograma,
+                parametrosPorHemograma.getOrDefault(hemograma.getId(), List.of()),
+                desviosPorHemograma.getOrDefault(hemograma.getId(), List.of()),
+                achadosPorHemograma.getOrDefault(hemograma.getId(), List.of()))).toList();
+    }
+
+    static HemogramaDTO paraDTO(Hemograma hemograma, List<ParametroHemograma> parametros, List<Desvio> desvios,
+                                List<AchadoComposto> achados) {
+        // Layout compacto: parâmetros estão na própria linha do hemograma
+        if (parametros.isEmpty() && hemograma.getParametrosCompactos() != null) {
+            parametros = hemograma.getParametrosCompactos().paraParametros();
+        }
+
+        return new HemogramaDTO(
+                hemograma.getId(),
+                hemograma.getFhirObservationId(),
+                hemograma.getPaciente().getFhirId(),
+                hemograma.getDataColeta(),
+                hemograma.getStatus(),
+                parametros.stream().map(ParametroDTO::de).toList(),
+                desvios.stream().map(DesvioDTO::de).toList(),
+                achados.stream().map(AchadoCompostoDTO::de).toList());
+    }
+}
@@ -1,25 +1,38 @@
 package br.ufg.inf.hemograma.service;
 
+import br.ufg.inf.hemograma.jfr.ObservacaoParseadaEvent;
 import br.ufg.inf.hemograma.model.*;
+import br.ufg.inf.hemograma.model.enums.LayoutArmazenamento;
 import br.ufg.inf.hemograma.model.enums.TipoParametro;
-import br.ufg.inf.hemograma.repository.DesvioRepository;
 import br.ufg.inf.hemograma.repository.HemogramaRepository;
+import br.ufg.inf.hemograma.repository.MembroHemogramaRepository;
 import br.ufg.inf.hemograma.repository.PacienteRepository;
+import ca.uhn.fhir.parser.DataFormatException;
+import jakarta.annotation.PostConstruct;
 import org.hl7.fhir.r4.model.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.TimeUnit;
+import java.util.Optional;
+import java.util.TreeMap;
 
 @Service
 public class HemogramaProcessingService {
@@ -32,165 +45,513 @@ public class HemogramaProcessingService {
     @Autowired
     private PacienteRepository pacienteRepository;
 
+    @Autowired
+    private LoteGravacaoHemogramaService loteGravacaoHemogramaService;
+
+    @Autowired
+    private AnalisadorHemogramaService analisadorHemogramaService;
+
+    @Autowired
+    private PacienteService pacienteService;
+
+    @Autowired
+    private ResolvedorPacienteService resolvedorPacienteService;
+
+    @Autowired
+    private AgregadorRegionalService agregadorRegionalService;
+
+    @Value("${app.hemograma.armazenamento.layout:NORMALIZADO}")
+    private LayoutArmazenamento layoutArmazenamento;
+
     @Autowired
     private HemogramaRepository hemogramaRepository;
 
     @Autowired
-    private DesvioRepository desvioRepository;
+    private CorrecaoHemogramaService correcaoHemogramaService;
 
     @Autowired
-    private AnalisadorHemogramaService analisadorHemogramaService;
+    private QuantisPopulacionaisService quantisPopulacionaisService;
 
-    private final Map<String, Long> processedObservations = new ConcurrentHashMap<>();
-    private static final long CACHE_EXPIRATION_MS = TimeUnit.MINUTES.toMillis(5);
+    @Autowired
+    private DeteccaoMudancaService deteccaoMudancaService;
+
+    @Autowired
+    private ArquivamentoService arquivamentoService;
+
+    @Autowired
+    private CorrelacaoObservacoesService correlacaoObservacoesService;
+
+    @Autowired
+    private MembroHemogramaRepository membroHemogramaRepository;
+
+    @Value("${app.hemograma.versionamento.maximo-recentes:50000}")
+    private int maximoRecentes;
+
+    /**
+     * Hash do payload por recurso raiz ("Bundle/abc"), das notificações
+     * concluídas sem erro: um reenvio idêntico é descartado antes do parse.
+     */
+    private Map<String, String> payloadsRecentes;
+
+    /**
+     * Hash do conteúdo por Observation aplicada recentemente, para descartar
+     * reenvios sem alteração sem consultar o banco.
+     */
+    private Map<String, String> conteudosRecentes;
+
+    @Autowired
+    private AuditoriaService auditoriaService;
+
+    @Autowired
+    private RastreamentoService rastreamentoService;
 
-    @Async
-    public void processarNotificacaoFhirAsync(String payload, Map<String, String> headers) {
-        processarNotificacaoFhir(payload, headers);
+    @PostConstruct
+    public void iniciar() {
+        payloadsRecentes = criarCacheRecentes(maximoRecentes);
+        conteudosRecentes = criarCacheRecentes(maximoRecentes);
     }
 
-    public void processarNotificacaoFhir(String payload, Map<String, String> headers) {
+    /**
+     * Mapa LRU limitado, sincronizado.
+     */
+    private static Map<String, String> criarCacheRecentes(int maximo) {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> maisAntigo) {
+                return size() > maximo;
+            }
+        });
+    }
+
+    /**
+     * Processa o payload bruto (JSON UTF-8) de uma notificação FHIR.
+     * O recurso é parseado uma única vez, direto dos bytes; um reenvio
+     * idêntico de um recurso já concluído não é parseado.
+     *
+     * @param conclusao Conclusão da notificação; cada Observation retida pelo
+     *        correlacionador a adia até a gravação do hemograma combinado
+     * @return false se o processamento de algum recurso falhou (ex: banco
+     *         indisponível) e a notificação deve ser processada novamente;
+     *         true também para payloads que nunca serão processáveis (JSON inválido)
+     */
+    boolean processarNotificacaoFhir(byte[] payload, Map<String, String> headers, ConclusaoNotificacao conclusao) {
         try {
-            limparCacheAntigo();
+            if (payload == null || payload.length == 0) {
+                return true;
+            }
 
-            if (!fhirParserService.isValidFhirResource(payload)) {
-                return;
+            String recurso = VarreduraJson.referenciaRecurso(payload);
+            String hashPayload = recurso != null ? calcularHash(payload) : null;
+            if (recurso != null && hashPayload.equals(payloadsRecentes.get(recurso))) {
+                logger.debug("Reenvio sem alteração de {} descartado", recurso);
+                return true;
             }
 
-            Resource resource = fhirParserService.parseResource(payload);
+            Resource resource;
+            ObservacaoParseadaEvent eventoParse = new ObservacaoParseadaEvent();
+            eventoParse.begin();
+            long inicioParse = System.nanoTime();
+            try {
+                resource = fhirParserService.parseResource(new ByteArrayInputStream(payload));
+            } catch (DataFormatException e) {
+                logger.warn("JSON não é um recurso FHIR válido: {}", e.getMessage());
+                return true;
+            }
+            auditoriaService.registrarParse(System.nanoTime() - inicioParse);
+            rastreamentoService.registrarTrecho("parse", inicioParse);
+            registrarEventoParse(eventoParse, resource, payload.length);
 
+            boolean concluida = true;
             if (resource instanceof Bundle) {
-                processarBundle((Bundle) resource);
+                concluida = processarBundle((Bundle) resource, conclusao);
             } else if (resource instanceof Observation) {
-                processarObservation((Observation) resource);
+                concluida = processarObservation((Observation) resource, conclusao);
             } else if (resource instanceof Patient) {
-                processarPatient((Patient) resource);
+                concluida = processarPatients(List.of((Patient) resource));
+            }
+
+            if (concluida && recurso != null) {
+                payloadsRecentes.put(recurso, hashPayload);
             }
+            return concluida;
         } catch (Exception e) {
             logger.error("Erro ao processar notificação FHIR: {}", e.getMessage());
+            return false;
         }
     }
 
-    private void limparCacheAntigo() {
-        long now = System.currentTimeMillis();
-        processedObservations.entrySet().removeIf(entry ->
-                (now - entry.getValue()) > CACHE_EXPIRATION_MS
-        );
-    }
+    /**
+     * Conclui o evento JFR do parse; os componentes só são contados se o
+     * evento estiver habilitado na gravação.
+     */
+    private static void registrarEventoParse(ObservacaoParseadaEvent evento, Resource resource, int tamanhoPayload) {
+        evento.end();
+        if (!evento.shouldCommit()) {
+            return;
+        }
 
-    private boolean jaFoiProcessada(String observationId) {
-        Long timestamp = processedObservations.get(observationId);
-        if (timestamp != null) {
-            long age = System.currentTimeMillis() - timestamp;
-            return age < CACHE_EXPIRATION_MS;
+        evento.tipoRecurso = resource.fhirType();
+        evento.tamanhoPayload = tamanhoPayload;
+        if (resource instanceof Observation observation) {
+            evento.observacoes = 1;
+            evento.componentes = observation.getComponent().size();
+        } else if (resource instanceof Bundle bundle) {
+            for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+                if (entry.getResource() instanceof Observation observation) {
+                    evento.observacoes++;
+                    evento.componentes += observation.getComponent().size();
+                }
+            }
         }
-        return false;
+        evento.commit();
     }
 
-    private void marcarComoProcessada(String observationId) {
-        processedObservations.put(observationId, System.currentTimeMillis());
-    }
+    /**
+     * @return true se todos os recursos do Bundle foram processados sem erro
+     */
+    private boolean processarBundle(Bundle bundle, ConclusaoNotificacao conclusao) {
+        List<Patient> patients = new ArrayList<>();
+        List<Observation> observations = new ArrayList<>();
 
-    private void processarBundle(Bundle bundle) {
         for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
             if (entry.hasResource()) {
                 Resource resource = entry.getResource();
                 if (resource instanceof Observation) {
-                    processarObservation((Observation) resource);
+                    observations.add((Observation) resource);
                 } else if (resource instanceof Patient) {
-                    processarPatient((Patient) resource);
+                    patients.add((Patient) resource);
                 }
             }
         }
+
+        // Pacientes primeiro, para que as Observations do mesmo Bundle já
+        // sejam analisadas com sexo e idade conhecidos
+        boolean concluido = patients.isEmpty() || processarPatients(patients);
+        for (Observation observation : observations) {
+            concluido &= processarObservation(observation, conclusao);
+        }
+        return concluido;
     }
 
+    /**
+     * Processa uma Observation conforme a versão já registrada: nova
+     * (gravada), igual (descartada sem gravação), anterior à registrada
+     * (ignorada) ou corrigida (apenas os componentes alterados são aplicados).
+     * Observations de um único analito são retidas pelo correlacionador e
+     * voltam combinadas em um hemograma ({@link #processarCombinacao}); as
+     * que já compõem um hemograma combinado são aplicadas a ele, com a versão
+     * comparada à do membro.
+     *
+     * @return false se o processamento falhou
+     */
     @Transactional
-    protected void processarObservation(Observation observation) {
+    protected boolean processarObservation(Observation observation, ConclusaoNotificacao conclusao) {
+        if (correlacaoObservacoesService.analitoUnico(observation) != null) {
+            HemogramaRepository.VersaoHemograma membro = membroHemogramaRepository
+                    .findVersaoByFhirObservationId("Observation/" + observation.getIdElement().getIdPart())
+                    .orElse(null);
+            if (membro != null) {
+                return gravarObservation(observation, membro, List.of());
+            }
+        }
+        if (correlacaoObservacoesService.reter(observation, conclusao)) {
+            return true;
+        }
+        return gravarObservation(observation, null, List.of());
+    }
+
+    /**
+     * Grava o hemograma combinado pelo correlacionador e registra os seus membros.
+     *
+     * @return false se o processamento falhou
+     */
+    boolean processarCombinacao(CorrelacaoObservacoesService.Combinacao combinacao) {
+        return gravarObservation(combinacao.hemograma(), null, combinacao.membros());
+    }
+
+    /**
+     * @param membro Registro do membro de um hemograma combinado (id do
+     *        hemograma, versão e hash do membro), se a Observation for uma
+     *        nova versão de um membro; null nos demais casos
+     * @param membros Observations de um único analito combinadas na Observation
+     */
+    private boolean gravarObservation(Observation observation, HemogramaRepository.VersaoHemograma membro,
+                                      List<Observation> membros) {
+        String observationId = observation.getIdElement().getIdPart();
+        AuditoriaService.Evento evento = auditoriaService.iniciar(observationId);
+        RastreamentoService.Trecho trecho = rastreamentoService.iniciar("observacao")
+                .atributo("observation.id", observationId);
         try {
-            String observationId = observation.getIdElement().getIdPart();
+            logger.debug("📊 Processando Observation: {}", observationId);
+
+            Map<String, Object> dados = fhirParserService.extrairDadosHemograma(observation);
+            String hashConteudo = calcularHashConteudo(dados);
+            evento.concluir(AuditoriaService.Etapa.EXTRACAO);
+            trecho.etapa("extracao");
 
-            if (jaFoiProcessada(observationId)) {
-                return;
+            if (hashConteudo.equals(conteudosRecentes.get(observationId))) {
+                auditoriaService.registrar(evento, AuditoriaService.Resultado.DUPLICADA);
+                return true;
             }
 
-            logger.info("📊 Processando Observation: {}", observationId);
+            HemogramaRepository.VersaoHemograma registrada = membro != null ? membro : hemogramaRepository
+                    .findVersaoByFhirObservationId("Observation/" + observationId).orElse(null);
+            String versao = observation.getMeta().getVersionId();
+            if (registrada != null && (hashConteudo.equals(registrada.getHashConteudo())
+                    || versaoAnterior(versao, registrada.getVersaoFhir()))) {
+                if (!hashConteudo.equals(registrada.getHashConteudo())) {
+                    logger.info("Versão {} da Observation {} é anterior à registrada ({}) e foi ignorada",
+                            versao, observationId, registrada.getVersaoFhir());
+                }
+                conteudosRecentes.put(observationId, hashConteudo);
+                auditoriaService.registrar(evento, AuditoriaService.Resultado.DUPLICADA);
+                return true;
+            }
+            if (registrada == null && arquivamentoService.contemObservacao("Observation/" + observationId)) {
+                // Fora do banco, o hemograma seria gravado de novo como um exame distinto
+                logger.warn("Versão {} da Observation {} não aplicada: hemograma já arquivado", versao, observationId);
+                conteudosRecentes.put(observationId, hashConteudo);
+                auditoriaService.registrar(evento, AuditoriaService.Resultado.DUPLICADA);
+                return true;
+            }
 
-            Map<String, Object> dados = fhirParserService.extrairDadosHemograma(observation);
             String pacienteRef = (String) dados.get("pacienteReferencia");
             Paciente paciente = buscarOuCriarPaciente(pacienteRef);
+            evento.concluir(AuditoriaService.Etapa.PACIENTE);
+            trecho.etapa("paciente");
+
+            Hemograma hemograma = montarHemograma(observation, dados, paciente);
+            hemograma.setVersaoFhir(versao);
+            hemograma.setHashConteudo(hashConteudo);
+            Map<String, String> hashesMembros = registrarMembros(hemograma, membro != null ? List.of(observation) : membros);
+
+            if (registrada != null) {
+                aplicarCorrecao(registrada.getId(), hemograma, paciente, evento, !hemograma.getMembros().isEmpty());
+                trecho.etapa("correcao");
+                conteudosRecentes.put(observationId, hashConteudo);
+                conteudosRecentes.putAll(hashesMembros);
+                auditoriaService.registrar(evento, AuditoriaService.Resultado.ATUALIZADA);
+                return true;
+            }
 
-            Hemograma hemograma = new Hemograma();
-            hemograma.setFhirObservationId("Observation/" + observationId);
-            hemograma.setPaciente(paciente);
-            hemograma.setStatus((String) dados.get("status"));
+            // Análise antes da gravação: os desvios são persistidos em cascata
+            // junto com o hemograma, em qualquer layout de armazenamento
+            List<Desvio> desvios = analisadorHemogramaService.analisarHemograma(hemograma, paciente);
+            evento.setDesvios(desvios);
+            evento.concluir(AuditoriaService.Etapa.ANALISE);
+            trecho.etapa("analise");
 
-            if (observation.hasEffectiveDateTimeType()) {
-                Date dataColeta = observation.getEffectiveDateTimeType().getValue();
-                hemograma.setDataColeta(LocalDateTime.ofInstant(dataColeta.toInstant(), ZoneId.systemDefault()));
+            if (layoutArmazenamento == LayoutArmazenamento.COMPACTO) {
+                hemograma.compactarParametros();
             }
 
-            if (dados.containsKey("componentes")) {
-                @SuppressWarnings("unchecked")
-                java.util.List<Map<String, Object>> componentes =
-                        (java.util.List<Map<String, Object>>) dados.get("componentes");
+            loteGravacaoHemogramaService.gravar(hemograma, desvios, paciente);
+            evento.setHemograma(hemograma.getId(), paciente.getFhirId());
+            evento.concluir(AuditoriaService.Etapa.PERSISTENCIA);
+            trecho.etapa("persistencia");
+            logger.debug("✅ Hemograma salvo: ID {}", hemograma.getId());
 
-                for (Map<String, Object> componente : componentes) {
-                    String codigo = (String) componente.getOrDefault("codigo", "N/A");
-                    Object valorObj = componente.get("valor");
-                    String unidade = (String) componente.getOrDefault("unidade", "");
+            alertar(desvios);
 
-                    if (valorObj instanceof Number) {
-                        Double valor = ((Number) valorObj).doubleValue();
-                        TipoParametro tipo = TipoParametro.porCodigoLOINC(codigo);
+            agregadorRegionalService.registrar(hemograma, desvios, paciente);
+            quantisPopulacionaisService.registrar(hemograma, paciente);
+            deteccaoMudancaService.registrar(hemograma, paciente);
+            evento.concluir(AuditoriaService.Etapa.AGREGACAO);
+            trecho.etapa("agregacao");
 
-                        if (tipo != null) {
-                            ParametroHemograma parametro = new ParametroHemograma(tipo, valor, unidade);
-                            hemograma.adicionarParametro(parametro);
-                        }
-                    }
-                }
-            } else if (observation.hasValueQuantity()) {
-                Quantity value = observation.getValueQuantity();
-                String codigo = observation.getCode().getCodingFirstRep().getCode();
-                TipoParametro tipo = TipoParametro.porCodigoLOINC(codigo);
-
-                if (tipo != null) {
-                    ParametroHemograma parametro = new ParametroHemograma(
-                            tipo,
-                            value.getValue().doubleValue(),
-                            value.getUnit()
-                    );
-                    hemograma.adicionarParametro(parametro);
-                }
-            }
+            conteudosRecentes.put(observationId, hashConteudo);
+            conteudosRecentes.putAll(hashesMembros);
+            auditoriaService.registrar(evento, AuditoriaService.Resultado.PROCESSADA);
+            return true;
 
-            hemogramaRepository.save(hemograma);
-            logger.info("✅ Hemograma salvo: ID {}", hemograma.getId());
+        } catch (Exception e) {
+            logger.error("Erro ao processar Observation: {}", e.getMessage());
+            evento.setErro(e.getMessage());
+            trecho.erro(e);
+            auditoriaService.registrar(evento, AuditoriaService.Resultado.ERRO);
+            return false;
+        } finally {
+            trecho.close();
+        }
+    }
 
-            List<Desvio> desvios = analisadorHemogramaService.analisarHemograma(hemograma, paciente);
+    /**
+     * Registra no hemograma (ainda não gravado) os membros combinados nele,
+     * com a versão e o hash do conteúdo de cada um.
+     *
+     * @return Hash do conteúdo por id de membro, para o cache de recentes
+     */
+    private Map<String, String> registrarMembros(Hemograma hemograma, List<Observation> membros) {
+        Map<String, String> hashes = new LinkedHashMap<>();
+        for (Observation membro : membros) {
+            String id = membro.getIdElement().getIdPart();
+            String hash = calcularHashConteudo(fhirParserService.extrairDadosHemograma(membro));
+            hemograma.registrarMembro(new MembroHemograma("Observation/" + id,
+                    correlacaoObservacoesService.analitoUnico(membro), membro.getMeta().getVersionId(), hash));
+            hashes.put(id, hash);
+        }
+        return hashes;
+    }
+
+    /**
+     * Aplica ao hemograma gravado a nova versão da Observation. Na janela
+     * regional e nas distribuições populacionais a versão anterior é retirada
+     * e a nova registrada; os detectores de mudança mantêm a primeira versão
+     * (ver {@link DeteccaoMudancaService#registrar}).
+     *
+     * @param combinado true se o hemograma recebido traz membros de um
+     *        hemograma combinado (apenas os seus parâmetros são aplicados)
+     */
+    private void aplicarCorrecao(Long hemogramaId, Hemograma recebido, Paciente paciente,
+                                 AuditoriaService.Evento evento, boolean combinado) {
+        CorrecaoHemogramaService.Correcao correcao = combinado
+                ? correcaoHemogramaService.aplicarMembros(hemogramaId, recebido)
+                : correcaoHemogramaService.aplicar(hemogramaId, recebido, paciente);
+        evento.setHemograma(hemogramaId, paciente.getFhirId());
+        evento.setDesvios(correcao.desviosNovos());
+        evento.concluir(AuditoriaService.Etapa.PERSISTENCIA);
+
+        logger.info("✏️ Hemograma {} atualizado para a versão {}: parâmetros alterados {}",
+                hemogramaId, recebido.getVersaoFhir(), correcao.tiposAlterados());
+        alertar(correcao.desviosNovos());
+
+        if (!correcao.tiposAlterados().isEmpty()) {
+            Hemograma anterior = correcao.anterior();
+            agregadorRegionalService.retirar(anterior, correcao.desviosAnteriores(), anterior.getPaciente());
+            agregadorRegionalService.registrar(correcao.hemograma(), correcao.desviosAtuais(), paciente);
+            quantisPopulacionaisService.retirar(anterior, anterior.getPaciente());
+            quantisPopulacionaisService.registrar(correcao.hemograma(), paciente);
+            evento.concluir(AuditoriaService.Etapa.AGREGACAO);
+        }
+    }
+
+    private void alertar(List<Desvio> desvios) {
+        for (Desvio desvio : desvios) {
+            logger.warn("🚨 ALERTA: {} - {}",
+                    desvio.getTipoParametro().getNome(),
+                    desvio.getSeveridade().getDescricao());
+        }
+    }
+
+    /**
+     * Compara versionIds numéricos (padrão do HAPI FHIR). Versões não
+     * numéricas ou ausentes nunca são consideradas anteriores.
+     */
+    private static boolean versaoAnterior(String versao, String registrada) {
+        if (versao == null || registrada == null) {
+            return false;
+        }
+        try {
+            return Long.parseLong(versao) < Long.parseLong(registrada);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static String calcularHashConteudo(Map<String, Object> dados) {
+        return calcularHash(new TreeMap<>(dados).toString().getBytes(StandardCharsets.UTF_8));
+    }
 
-            if (!desvios.isEmpty()) {
-                desvioRepository.saveAll(desvios);
-                for (Desvio desvio : desvios) {
-                    logger.warn("🚨 ALERTA: {} - {}",
-                            desvio.getTipoParametro().getNome(),
-                            desvio.getSeveridade().getDescricao());
+    private static String calcularHash(byte[] conteudo) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(conteudo));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+
+    /**
+     * Monta o hemograma (ainda não gravado) a partir de uma Observation e dos
+     * dados já extraídos dela. Também usado pelo aquecimento da aplicação.
+     */
+    Hemograma montarHemograma(Observation observation, Map<String, Object> dados, Paciente paciente) {
+        Hemograma hemograma = new Hemograma();
+        hemograma.setFhirObservationId("Observation/" + observation.getIdElement().getIdPart());
+        hemograma.setPaciente(paciente);
+        hemograma.setStatus((String) dados.get("status"));
+
+        if (observation.hasEffectiveDateTimeType()) {
+            Date dataColeta = observation.getEffectiveDateTimeType().getValue();
+            hemograma.setDataColeta(LocalDateTime.ofInstant(dataColeta.toInstant(), ZoneId.systemDefault()));
+        }
+
+        if (dados.containsKey("componentes")) {
+            @SuppressWarnings("unchecked")
+            java.util.List<Map<String, Object>> componentes =
+                    (java.util.List<Map<String, Object>>) dados.get("componentes");
+
+            for (Map<String, Object> componente : componentes) {
+                String codigo = (String) componente.getOrDefault("codigo", "N/A");
+                Object valorObj = componente.get("valor");
+                String unidade = (String) componente.getOrDefault("unidade", "");
+
+                if (valorObj instanceof Number) {
+                    Double valor = ((Number) valorObj).doubleValue();
+                    TipoParametro tipo = TipoParametro.porCodigoLOINC(codigo);
+
+                    if (tipo != null) {
+                        ParametroHemograma parametro = new ParametroHemograma(tipo, valor, unidade);
+                        hemograma.adicionarParametro(parametro);
+                    }
                 }
             }
+        } else if (observation.hasValueQuantity()) {
+            Quantity value = observation.getValueQuantity();
+            String codigo = observation.getCode().getCodingFirstRep().getCode();
+            TipoParametro tipo = TipoParametro.porCodigoLOINC(codigo);
+
+            if (tipo != null) {
+                ParametroHemograma parametro = new ParametroHemograma(
+                        tipo,
+                        value.getValue().doubleValue(),
+                        value.getUnit()
+                );
+                hemograma.adicionarParametro(parametro);
+            }
+        }
+
+        return hemograma;
+    }
 
-            marcarComoProcessada(observationId);
+    private Paciente buscarOuCriarPaciente(String fhirId) {
+        Optional<Paciente> existente = pacienteRepository.findByFhirId(fhirId);
+        if (existente.isPresent() && existente.get().getHashDados() != null) {
+            return existente.get();
+        }
 
-        } catch (Exception e) {
-            logger.error("Erro ao processar Observation: {}", e.getMessage());
+        // Paciente nunca recebido: busca sexo e idade no servidor FHIR (com prazo)
+        if (resolvedorPacienteService.aguardarResolucao(fhirId)) {
+            existente = pacienteRepository.findByFhirId(fhirId);
         }
+
+        return existente.orElseGet(() -> criarPaciente(fhirId));
     }
 
-    private Paciente buscarOuCriarPaciente(String fhirId) {
-        return pacienteRepository.findByFhirId(fhirId)
-                .orElseGet(() -> pacienteRepository.save(new Paciente(fhirId)));
+    private Paciente criarPaciente(String fhirId) {
+        try {
+            return pacienteRepository.save(new Paciente(fhirId));
+        } catch (DataIntegrityViolationException e) {
+            // Gravado em paralelo pelo resolvedor após o prazo
+            return pacienteRepository.findByFhirId(fhirId).orElseThrow(() -> e);
+        }
     }
 
-    private void processarPatient(Patient patient) {
-        // Implementação futura se necessário
+    /**
+     * @return false se o upsert dos pacientes falhou
+     */
+    private boolean processarPatients(List<Patient> patients) {
+        try {
+            try {
+                pacienteService.upsertLote(patients);
+            } catch (DataIntegrityViolationException e) {
+                // Paciente criado em paralelo por uma Observation; o novo upsert o atualiza
+                pacienteService.upsertLote(patients);
+            }
+            return true;
+        } catch (Exception e) {
+            logger.error("Erro ao processar Patient: {}", e.getMessage());
+            return false;
+        }
     }
 }
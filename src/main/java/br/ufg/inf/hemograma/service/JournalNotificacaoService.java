@@ -0,0 +1,425 @@
+package br.ufg.inf.hemograma.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal (write-ahead log) das notificações aceitas pelo receptor rest-hook.
+ *
+ * Cada payload é gravado com um número de sequência em segmentos de arquivo
+ * mapeados em memória antes de a notificação ser confirmada ao servidor FHIR.
+ * O fsync é feito em grupo por uma thread dedicada: as requisições que chegam
+ * dentro do mesmo intervalo compartilham um único {@code force()}. Se o
+ * {@code force()} falhar ou não terminar dentro de {@code timeout-fsync-ms},
+ * as requisições do grupo recebem a falha (o receptor responde 503 e o
+ * servidor FHIR reenvia) e as entradas são descartadas do journal.
+ *
+ * Quando o processamento termina sem erro, um registro de confirmação é
+ * gravado; um segmento cujas entradas foram todas confirmadas é apagado. Na
+ * inicialização, as entradas sem confirmação (inclusive as que falharam em
+ * todas as tentativas) são recuperadas para reprocessamento.
+ *
+ * Formato de um registro: [tamanho do payload + 1 int][tipo byte][sequência long][crc int][payload].
+ * O tamanho é escrito por último (e nunca é zero), de modo que um registro
+ * incompleto (queda no meio da escrita) é lido como fim do segmento.
+ */
+@Service
+public class JournalNotificacaoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(JournalNotificacaoService.class);
+
+    private static final byte TIPO_ENTRADA = 1;
+    private static final byte TIPO_CONFIRMACAO = 2;
+    private static final int TAMANHO_CABECALHO = Integer.BYTES + 1 + Long.BYTES + Integer.BYTES;
+    private static final String EXTENSAO = ".seg";
+
+    /**
+     * Notificação recuperada do journal na inicialização.
+     */
+    public record EntradaJournal(long sequencia, byte[] payload) {
+    }
+
+    @Autowired
+    private RastreamentoService rastreamentoService;
+
+    @Value("${app.hemograma.journal.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${app.hemograma.journal.diretorio:./data/journal}")
+    private String diretorio;
+
+    @Value("${app.hemograma.journal.tamanho-segmento-mb:64}")
+    private int tamanhoSegmentoMb;
+
+    @Value("${app.hemograma.journal.intervalo-fsync-micros:200}")
+    private long intervaloFsyncMicros;
+
+    @Value("${app.hemograma.journal.timeout-fsync-ms:5000}")
+    private long timeoutFsyncMs;
+
+    private final Map<Long, Segmento> segmentoPorEntrada = new ConcurrentHashMap<>();
+    private final List<EntradaJournal> recuperadas = new ArrayList<>();
+    private final Object monitorPersistencia = new Object();
+
+    private Path pastaJournal;
+    private Segmento segmentoAtual;
+    private long proximoSegmento = 1;
+    private long ultimaSequencia;
+    private volatile long ultimaSequenciaPersistida;
+    /** Maior sequência alcançada por um fsync que falhou, e a falha. */
+    private volatile long ultimaSequenciaFalha;
+    private volatile Exception falhaFsync;
+    private volatile boolean ativo;
+    private Thread threadFsync;
+
+    @PostConstruct
+    public void iniciar() throws IOException {
+        if (!habilitado) {
+            return;
+        }
+
+        pastaJournal = Paths.get(diretorio);
+        Files.createDirectories(pastaJournal);
+        recuperar();
+
+        segmentoAtual = Segmento.criar(pastaJournal, proximoSegmento++, tamanhoSegmentoMb * 1024L * 1024L);
+        ultimaSequenciaPersistida = ultimaSequencia;
+        ativo = true;
+
+        threadFsync = new Thread(this::executarFsyncEmGrupo, "journal-fsync");
+        threadFsync.setDaemon(true);
+        threadFsync.start();
+
+        logger.info("📒 Journal de notificações em {}: {} entrada(s) pendente(s) recuperada(s)",
+                pastaJournal.toAbsolutePath(), recuperadas.size());
+    }
+
+    @PreDestroy
+    public void parar() {
+        ativo = false;
+        if (threadFsync != null) {
+            threadFsync.interrupt();
+        }
+        synchronized (this) {
+            if (segmentoAtual != null) {
+                segmentoAtual.buffer.force();
+            }
+        }
+    }
+
+    public boolean isHabilitado() {
+        return habilitado;
+    }
+
+    /**
+     * Grava um payload no journal e aguarda o fsync do grupo em que ele entrou.
+     *
+     * @param payload Payload bruto da notificação
+     * @return Número de sequência, a ser informado em {@link #confirmar(long)}; -1 se desabilitado
+     * @throws IllegalStateException se o fsync do grupo falhar ou exceder {@code timeout-fsync-ms};
+     *         a entrada é descartada e a notificação não deve ser aceita
+     */
+    public long registrar(byte[] payload) {
+        if (!habilitado) {
+            return -1;
+        }
+
+        long sequencia;
+        synchronized (this) {
+            sequencia = ++ultimaSequencia;
+            Segmento segmento = segmentoComEspaco(payload.length);
+            segmento.escrever(TIPO_ENTRADA, sequencia, payload);
+            segmento.pendentes.incrementAndGet();
+            segmentoPorEntrada.put(sequencia, segmento);
+        }
+
+        long inicioEspera = System.nanoTime();
+        try {
+            aguardarFsync(sequencia, inicioEspera);
+        } catch (IllegalStateException e) {
+            // Não será aceita: não deve ser reprocessada nem reter o segmento
+            confirmar(sequencia);
+            throw e;
+        }
+        rastreamentoService.registrarTrecho("journal.fsync", inicioEspera);
+        return sequencia;
+    }
+
+    private void aguardarFsync(long sequencia, long inicioEspera) {
+        long prazo = inicioEspera + TimeUnit.MILLISECONDS.toNanos(timeoutFsyncMs);
+        synchronized (monitorPersistencia) {
+            monitorPersistencia.notifyAll();
+            while (ultimaSequenciaPersistida < sequencia) {
+                if (ultimaSequenciaFalha >= sequencia) {
+                    throw new IllegalStateException("Falha no fsync do journal: " + falhaFsync.getMessage(),
+                            falhaFsync);
+                }
+                long restanteMs = TimeUnit.NANOSECONDS.toMillis(prazo - System.nanoTime());
+                if (restanteMs <= 0) {
+                    throw new IllegalStateException(
+                            "Tempo esgotado aguardando fsync do journal (" + timeoutFsyncMs + " ms)");
+                }
+                try {
+                    monitorPersistencia.wait(restanteMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrompido aguardando fsync do journal", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Marca uma entrada como processada. Não aguarda fsync: na pior hipótese a
+     * notificação é reprocessada após uma queda, e a deduplicação a descarta.
+     */
+    public void confirmar(long sequencia) {
+        if (!habilitado || sequencia < 0) {
+            return;
+        }
+
+        synchronized (this) {
+            segmentoComEspaco(0).escrever(TIPO_CONFIRMACAO, sequencia, new byte[0]);
+
+            Segmento segmento = segmentoPorEntrada.remove(sequencia);
+            if (segmento != null && segmento.pendentes.decrementAndGet() == 0 && segmento != segmentoAtual) {
+                segmento.apagar();
+            }
+        }
+    }
+
+    /**
+     * Retorna (uma única vez) as entradas sem confirmação encontradas na inicialização.
+     */
+    public synchronized List<EntradaJournal> consumirRecuperadas() {
+        List<EntradaJournal> entradas = new ArrayList<>(recuperadas);
+        recuperadas.clear();
+        return entradas;
+    }
+
+    private Segmento segmentoComEspaco(int tamanhoPayload) {
+        int necessario = TAMANHO_CABECALHO + tamanhoPayload;
+        if (!segmentoAtual.cabe(necessario)) {
+            Segmento anterior = segmentoAtual;
+            anterior.buffer.force();
+            long tamanho = Math.max(tamanhoSegmentoMb * 1024L * 1024L, necessario + Integer.BYTES);
+            segmentoAtual = Segmento.criar(pastaJournal, proximoSegmento++, tamanho);
+            if (anterior.pendentes.get() == 0) {
+                anterior.apagar();
+            }
+        }
+        return segmentoAtual;
+    }
+
+    private void executarFsyncEmGrupo() {
+        while (ativo) {
+            try {
+                synchronized (monitorPersistencia) {
+                    while (ativo && ultimaSequencia() <= ultimaSequenciaPersistida) {
+                        monitorPersistencia.wait(100);
+                    }
+                }
+
+                // Janela para que outras requisições entrem no mesmo fsync
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(intervaloFsyncMicros));
+
+                long alvo;
+                Segmento segmento;
+                synchronized (this) {
+                    alvo = ultimaSequencia;
+                    segmento = segmentoAtual;
+                }
+                try {
+                    segmento.buffer.force();
+                } catch (Exception e) {
+                    logger.error("Erro no fsync do journal: {}", e.getMessage());
+                    synchronized (monitorPersistencia) {
+                        falhaFsync = e;
+                        ultimaSequenciaFalha = alvo;
+                        monitorPersistencia.notifyAll();
+                        // Nova tentativa com a próxima entrada ou após uma pausa
+                        monitorPersistencia.wait(100);
+                    }
+                    continue;
+                }
+
+                synchronized (monitorPersistencia) {
+                    ultimaSequenciaPersistida = alvo;
+                    monitorPersistencia.notifyAll();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Erro no fsync do journal: {}", e.getMessage());
+            }
+        }
+    }
+
+    private synchronized long ultimaSequencia() {
+        return ultimaSequencia;
+    }
+
+    /**
+     * Lê os segmentos existentes, separando as entradas não confirmadas.
+     */
+    private void recuperar() throws IOException {
+        List<Path> arquivos;
+        try (Stream<Path> lista = Files.list(pastaJournal)) {
+            arquivos = lista.filter(p -> p.getFileName().toString().endsWith(EXTENSAO)).sorted().toList();
+        }
+
+        Map<Long, byte[]> pendentes = new LinkedHashMap<>();
+        Map<Long, Segmento> segmentoDaEntrada = new HashMap<>();
+        List<Segmento> segmentos = new ArrayList<>();
+
+        for (Path arquivo : arquivos) {
+            String nome = arquivo.getFileName().toString();
+            proximoSegmento = Math.max(proximoSegmento,
+                    Long.parseLong(nome.substring("journal-".length(), nome.length() - EXTENSAO.length())) + 1);
+
+            Segmento segmento = Segmento.abrir(arquivo);
+            segmentos.add(segmento);
+            segmento.ler((tipo, sequencia, payload) -> {
+                ultimaSequencia = Math.max(ultimaSequencia, sequencia);
+                if (tipo == TIPO_ENTRADA) {
+                    pendentes.put(sequencia, payload);
+                    segmentoDaEntrada.put(sequencia, segmento);
+                } else {
+                    pendentes.remove(sequencia);
+                }
+            });
+        }
+
+        pendentes.forEach((sequencia, payload) -> {
+            Segmento segmento = segmentoDaEntrada.get(sequencia);
+            segmento.pendentes.incrementAndGet();
+            segmentoPorEntrada.put(sequencia, segmento);
+            recuperadas.add(new EntradaJournal(sequencia, payload));
+        });
+
+        for (Segmento segmento : segmentos) {
+            if (segmento.pendentes.get() == 0) {
+                segmento.apagar();
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface LeitorRegistro {
+        void aceitar(byte tipo, long sequencia, byte[] payload);
+    }
+
+    /**
+     * Arquivo de segmento mapeado em memória.
+     */
+    private static final class Segmento {
+        private final Path arquivo;
+        private final MappedByteBuffer buffer;
+        private final AtomicInteger pendentes = new AtomicInteger();
+        private int posicao;
+
+        private Segmento(Path arquivo, MappedByteBuffer buffer) {
+            this.arquivo = arquivo;
+            this.buffer = buffer;
+        }
+
+        static Segmento criar(Path pasta, long numero, long tamanho) {
+            // Número com zeros à esquerda: ordem alfabética = ordem de criação
+            Path arquivo = pasta.resolve(String.format("journal-%020d%s", numero, EXTENSAO));
+            return mapear(arquivo, tamanho, StandardOpenOption.CREATE_NEW);
+        }
+
+        static Segmento abrir(Path arquivo) throws IOException {
+            return mapear(arquivo, Files.size(arquivo));
+        }
+
+        private static Segmento mapear(Path arquivo, long tamanho, OpenOption... extras) {
+            Set<OpenOption> opcoes = new HashSet<>(List.of(StandardOpenOption.READ, StandardOpenOption.WRITE));
+            opcoes.addAll(List.of(extras));
+            try (FileChannel canal = FileChannel.open(arquivo, opcoes)) {
+                return new Segmento(arquivo, canal.map(FileChannel.MapMode.READ_WRITE, 0, tamanho));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Erro ao mapear segmento do journal " + arquivo, e);
+            }
+        }
+
+        boolean cabe(int tamanhoRegistro) {
+            // Reserva um int zerado ao final, que marca o fim dos registros
+            return posicao + tamanhoRegistro + Integer.BYTES <= buffer.capacity();
+        }
+
+        void escrever(byte tipo, long sequencia, byte[] payload) {
+            int inicio = posicao;
+            buffer.put(inicio + Integer.BYTES, tipo);
+            buffer.putLong(inicio + Integer.BYTES + 1, sequencia);
+            buffer.putInt(inicio + Integer.BYTES + 1 + Long.BYTES, crc(tipo, sequencia, payload));
+            buffer.put(inicio + TAMANHO_CABECALHO, payload);
+            // Tamanho por último: registro só é visível na leitura quando completo
+            buffer.putInt(inicio, payload.length + 1);
+            posicao = inicio + TAMANHO_CABECALHO + payload.length;
+        }
+
+        void ler(LeitorRegistro leitor) {
+            int atual = 0;
+            while (atual + TAMANHO_CABECALHO <= buffer.capacity()) {
+                int tamanhoMaisUm = buffer.getInt(atual);
+                if (tamanhoMaisUm <= 0 || atual + TAMANHO_CABECALHO + tamanhoMaisUm - 1 > buffer.capacity()) {
+                    break;
+                }
+
+                byte tipo = buffer.get(atual + Integer.BYTES);
+                long sequencia = buffer.getLong(atual + Integer.BYTES + 1);
+                int crcGravado = buffer.getInt(atual + Integer.BYTES + 1 + Long.BYTES);
+                byte[] payload = new byte[tamanhoMaisUm - 1];
+                buffer.get(atual + TAMANHO_CABECALHO, payload);
+
+                if (crc(tipo, sequencia, payload) != crcGravado) {
+                    logger.warn("Registro corrompido no journal {} (posição {}); leitura interrompida", arquivo, atual);
+                    break;
+                }
+
+                leitor.aceitar(tipo, sequencia, payload);
+                atual += TAMANHO_CABECALHO + payload.length;
+            }
+            posicao = atual;
+        }
+
+        void apagar() {
+            try {
+                Files.deleteIfExists(arquivo);
+                logger.debug("Segmento do journal removido: {}", arquivo.getFileName());
+            } catch (IOException e) {
+                logger.warn("Não foi possível remover o segmento {}: {}", arquivo, e.getMessage());
+            }
+        }
+
+        private static int crc(byte tipo, long sequencia, byte[] payload) {
+            CRC32C crc = new CRC32C();
+            crc.update(tipo);
+            for (int deslocamento = 56; deslocamento >= 0; deslocamento -= 8) {
+                crc.update((int) (sequencia >>> deslocamento));
+            }
+            crc.update(payload);
+            return (int) crc.getValue();
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.jfr.ContadorInstrucoes;
+import br.ufg.inf.hemograma.jfr.HemogramaPersistidoEvent;
+import br.ufg.inf.hemograma.model.Desvio;
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.Paciente;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serviço de gravação em micro-lotes (group commit) dos hemogramas analisados.
+ *
+ * As threads de processamento enfileiram o hemograma e aguardam; uma thread
+ * gravadora acumula até {@code tamanho-maximo} itens ou {@code espera-maxima-ms}
+ * a partir do primeiro item e grava o lote em uma única transação, com inserts
+ * em lote do Hibernate. Lotes maiores aumentam a vazão; esperas menores
+ * reduzem a latência de cada notificação.
+ *
+ * Cada thread produtora (as filas por paciente) tem no máximo um item em
+ * andamento, pois aguarda o commit. Por isso, o lote também é fechado assim
+ * que todas as produtoras em processamento ({@link #iniciarProducao}) têm um
+ * item nele: nenhum outro item pode chegar, e esperar o restante de
+ * {@code espera-maxima-ms} só acrescentaria latência. Com uma fila por
+ * paciente, cada lote tem um item e é gravado sem espera. Chamadas de threads
+ * não registradas não mantêm o lote aberto.
+ *
+ * Se o lote falhar, ele é regravado item a item (com flush) em uma transação
+ * descartada para identificar o item problemático (ex: violação de unicidade);
+ * esse item falha isoladamente e o restante do lote é regravado.
+ */
+@Service
+public class LoteGravacaoHemogramaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoteGravacaoHemogramaService.class);
+
+    @Autowired
+    private PersistenciaHemogramaService persistenciaHemogramaService;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private RastreamentoService rastreamentoService;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${app.hemograma.persistencia.lote.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${app.hemograma.persistencia.lote.tamanho-maximo:50}")
+    private int tamanhoMaximo;
+
+    @Value("${app.hemograma.persistencia.lote.espera-maxima-ms:10}")
+    private long esperaMaximaMs;
+
+    @Value("${app.hemograma.persistencia.lote.capacidade-fila:1000}")
+    private int capacidadeFila;
+
+    /** Fatia da espera por novos itens, para perceber produtoras que terminaram sem gravar. */
+    private static final long FATIA_ESPERA_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    /** Threads em processamento que podem enviar um item ao lote. */
+    private final AtomicInteger produtoras = new AtomicInteger();
+
+    private BlockingQueue<ItemLote> fila;
+    private TransactionTemplate transacao;
+    private Thread threadGravadora;
+    private volatile boolean ativo;
+
+    /**
+     * @param contexto Rastro da thread que aguarda a gravação (null sem rastreamento)
+     */
+    private record ItemLote(Hemograma hemograma, List<Desvio> desvios, Paciente paciente,
+                            CompletableFuture<Hemograma> resultado, RastreamentoService.Contexto contexto) {
+    }
+
+    private record Falha(ItemLote item, RuntimeException excecao) {
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        if (!habilitado) {
+            return;
+        }
+
+        fila = new ArrayBlockingQueue<>(capacidadeFila);
+        transacao = new TransactionTemplate(transactionManager);
+        ativo = true;
+
+        threadGravadora = new Thread(this::executar, "gravador-hemogramas");
+        threadGravadora.setDaemon(true);
+        threadGravadora.start();
+    }
+
+    @PreDestroy
+    public void parar() throws InterruptedException {
+        if (threadGravadora == null) {
+            return;
+        }
+
+        ativo = false;
+        threadGravadora.interrupt();
+        threadGravadora.join(TimeUnit.SECONDS.toMillis(5));
+
+        // Itens ainda na fila são gravados antes de o banco ser fechado
+        List<ItemLote> restantes = new ArrayList<>();
+        fila.drainTo(restantes);
+        for (int inicio = 0; inicio < restantes.size(); inicio += tamanhoMaximo) {
+            gravarLote(restantes.subList(inicio, Math.min(inicio + tamanhoMaximo, restantes.size())));
+        }
+    }
+
+    /**
+     * Marca o início do processamento de uma tarefa pela thread atual, que
+     * pode chamar {@link #gravar} (um item por vez) até {@link #encerrarProducao}.
+     */
+    public void iniciarProducao() {
+        produtoras.incrementAndGet();
+    }
+
+    public void encerrarProducao() {
+        produtoras.decrementAndGet();
+    }
+
+    /**
+     * Grava o hemograma (com parâmetros, desvios e rollups) e aguarda o commit
+     * do lote em que ele entrou. Sem o modo em lote, grava imediatamente.
+     *
+     * @return Hemograma gravado, com ID atribuído
+     */
+    public Hemograma gravar(Hemograma hemograma, List<Desvio> desvios, Paciente paciente) {
+        if (!habilitado) {
+            HemogramaPersistidoEvent evento = new HemogramaPersistidoEvent();
+            evento.begin();
+            long instrucoes = ContadorInstrucoes.atual();
+            Hemograma gravado = persistenciaHemogramaService.persistir(hemograma, desvios, paciente);
+            registrarEvento(evento, 1, desvios.size(), ContadorInstrucoes.atual() - instrucoes, false);
+            return gravado;
+        }
+
+        try (RastreamentoService.Contexto contexto = rastreamentoService.capturar()) {
+            ItemLote item = new ItemLote(hemograma, desvios, paciente, new CompletableFuture<>(), contexto);
+            fila.put(item);
+            return item.resultado().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Gravação do hemograma interrompida", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private void executar() {
+        List<ItemLote> lote = new ArrayList<>(tamanhoMaximo);
+        while (ativo) {
+            try {
+                lote.add(fila.take());
+
+                long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(esperaMaximaMs);
+                while (lote.size() < tamanhoMaximo) {
+                    ItemLote item = fila.poll();
+                    if (item == null) {
+                        long restante = limite - System.nanoTime();
+                        if (restante <= 0 || lote.size() >= produtoras.get()) {
+                            // Prazo esgotado, ou todas as produtoras já aguardam este lote
+                            break;
+                        }
+                        item = fila.poll(Math.min(restante, FATIA_ESPERA_NANOS), TimeUnit.NANOSECONDS);
+                    }
+                    if (item != null) {
+                        lote.add(item);
+                    }
+                }
+
+                gravarLote(lote);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                gravarLote(lote);
+                return;
+            } catch (Throwable t) {
+                logger.error("Erro inesperado no gravador de hemogramas: {}", t.getMessage());
+                lote.forEach(item -> item.resultado().completeExceptionally(t));
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    private void gravarLote(List<ItemLote> lote) {
+        List<ItemLote> pendentes = new ArrayList<>(lote);
+
+        while (!pendentes.isEmpty()) {
+            try {
+                HemogramaPersistidoEvent evento = new HemogramaPersistidoEvent();
+                evento.begin();
+                long instrucoes = ContadorInstrucoes.atual();
+                long inicio = System.nanoTime();
+                long[] fimPersistencia = new long[1];
+                transacao.executeWithoutResult(status -> {
+                    pendentes.forEach(this::persistir);
+                    fimPersistencia[0] = System.nanoTime();
+                });
+                registrarEvento(evento, pendentes.size(),
+                        pendentes.stream().mapToInt(item -> item.desvios().size()).sum(),
+                        ContadorInstrucoes.atual() - instrucoes, true);
+                double commitMs = (System.nanoTime() - fimPersistencia[0]) / 1_000_000.0;
+                for (ItemLote item : pendentes) {
+                    // Antes de concluir o item: depois disso o rastro pode terminar
+                    rastreamentoService.registrarTrecho(item.contexto(), "lote.transacao", inicio)
+                            .atributo("lote.tamanho", pendentes.size())
+                            .atributo("lote.commitMs", commitMs);
+                }
+                pendentes.forEach(item -> item.resultado().complete(item.hemograma()));
+                logger.debug("Lote de {} hemograma(s) gravado", pendentes.size());
+                return;
+
+            } catch (RuntimeException e) {
+                pendentes.forEach(item -> item.hemograma().descartarIdentificadores());
+
+                Falha falha = localizarFalha(pendentes);
+                if (falha == null) {
+                    // Falha não atribuível a um item (ex: banco indisponível)
+                    logger.error("Erro ao gravar lote de {} hemograma(s): {}", pendentes.size(), e.getMessage());
+                    pendentes.forEach(item -> item.resultado().completeExceptionally(e));
+                    return;
+                }
+
+                logger.warn("Hemograma {} removido do lote: {}",
+                        falha.item().hemograma().getFhirObservationId(), falha.excecao().getMessage());
+                pendentes.remove(falha.item());
+                falha.item().resultado().completeExceptionally(falha.excecao());
+            }
+        }
+    }
+
+    /**
+     * Regrava o lote com flush a cada item em uma transação sempre desfeita,
+     * retornando o primeiro item cuja gravação falha.
+     */
+    private Falha localizarFalha(List<ItemLote> pendentes) {
+        Falha falha = transacao.execute(status -> {
+            status.setRollbackOnly();
+            for (ItemLote item : pendentes) {
+                try {
+                    persistir(item);
+                    entityManager.flush();
+                } catch (RuntimeException e) {
+                    return new Falha(item, e);
+                }
+            }
+            return null;
+        });
+
+        pendentes.forEach(item -> item.hemograma().descartarIdentificadores());
+        return falha;
+    }
+
+    private static void registrarEvento(HemogramaPersistidoEvent evento, int hemogramas, int desvios,
+                                        long instrucoes, boolean emLote) {
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.hemogramas = hemogramas;
+            evento.desvios = desvios;
+            evento.instrucoes = instrucoes;
+            evento.emLote = emLote;
+            evento.commit();
+        }
+    }
+
+    private void persistir(ItemLote item) {
+        try (RastreamentoService.Trecho trecho = rastreamentoService.retomar(item.contexto(), "lote.persistir")) {
+            persistenciaHemogramaService.persistir(item.hemograma(), item.desvios(), item.paciente());
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package br.ufg.inf.hemograma.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serviço que mantém criadas, com antecedência, as partições mensais de
+ * hemogramas e das tabelas filhas (parâmetros, desvios e achados, todas
+ * particionadas pela data de cadastro do hemograma) no PostgreSQL (ver
+ * db/migration/postgresql).
+ *
+ * Sem a partição do mês, as linhas cairiam na partição padrão, que não pode
+ * ser dividida depois sem mover dados. Com retencao-meses configurado, as
+ * partições dos meses mais antigos são desanexadas (ou removidas) juntas
+ * pela função remover_particoes_mensais, que também libera as Observations
+ * em hemogramas_observacoes. Em outros bancos (H2) não faz nada.
+ */
+@Service
+public class ManutencaoParticoesService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ManutencaoParticoesService.class);
+
+    private static final List<String> TABELAS_PARTICIONADAS = List.of(
+            "hemogramas", "parametros_hemograma", "desvios", "achados_compostos");
+
+    private static final Pattern PARTICAO_MENSAL = Pattern.compile("hemogramas_(\\d{4})_(\\d{2})");
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Value("${app.hemograma.particoes.meses-adiante:3}")
+    private int mesesAdiante;
+
+    /** Meses mantidos além do corrente; 0 desliga a remoção de partições. */
+    @Value("${app.hemograma.particoes.retencao-meses:0}")
+    private int retencaoMeses;
+
+    /** true: DETACH (a partição vira tabela avulsa); false: DROP. */
+    @Value("${app.hemograma.particoes.desanexar:true}")
+    private boolean desanexar;
+
+    private Boolean postgres;
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${app.hemograma.particoes.cron:0 0 3 * * *}")
+    public void garantirParticoes() {
+        if (!isPostgres()) {
+            return;
+        }
+
+        Date inicio = Date.valueOf(LocalDate.now().withDayOfMonth(1));
+        for (String tabela : TABELAS_PARTICIONADAS) {
+            try {
+                Integer criadas = jdbcTemplate.queryForObject(
+                        "SELECT criar_particoes_mensais(?, ?, ?)", Integer.class,
+                        tabela, inicio, mesesAdiante + 1);
+                if (criadas != null && criadas > 0) {
+                    logger.info("🗂️ {} partição(ões) mensal(is) criada(s) para {}", criadas, tabela);
+                }
+            } catch (Exception e) {
+                logger.error("Erro ao criar partições de {}: {}", tabela, e.getMessage());
+            }
+        }
+
+        if (retencaoMeses > 0) {
+            removerParticoesAntigas(YearMonth.now().minusMonths(retencaoMeses));
+        }
+    }
+
+    /**
+     * Desanexa ou remove as partições mensais anteriores a "limite" em
+     * hemogramas e nas tabelas filhas.
+     *
+     * @return número de meses removidos
+     */
+    public int removerParticoesAntigas(YearMonth limite) {
+        if (!isPostgres()) {
+            return 0;
+        }
+
+        List<YearMonth> meses = jdbcTemplate.queryForList(
+                        "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                        "WHERE i.inhparent = 'hemogramas'::regclass", String.class)
+                .stream()
+                .map(PARTICAO_MENSAL::matcher)
+                .filter(Matcher::matches)
+                .map(m -> YearMonth.of(Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2))))
+                .filter(mes -> mes.isBefore(limite))
+                .sorted()
+                .toList();
+
+        int removidos = 0;
+        for (YearMonth mes : meses) {
+            try {
+                Integer liberadas = jdbcTemplate.queryForObject(
+                        "SELECT remover_particoes_mensais(?, ?)", Integer.class,
+                        Date.valueOf(mes.atDay(1)), desanexar);
+                removidos++;
+                logger.info("🗂️ Partições de {} {} ({} Observation(s) liberada(s))",
+                        mes, desanexar ? "desanexadas" : "removidas", liberadas);
+            } catch (Exception e) {
+                logger.error("Erro ao remover as partições de {}: {}", mes, e.getMessage());
+            }
+        }
+        return removidos;
+    }
+
+    private boolean isPostgres() {
+        if (postgres == null) {
+            try {
+                String produto = JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(),
+                        DatabaseMetaData::getDatabaseProductName);
+                postgres = "PostgreSQL".equalsIgnoreCase(produto);
+            } catch (Exception e) {
+                logger.warn("Não foi possível identificar o banco de dados: {}", e.getMessage());
+                return false;
+            }
+        }
+        return postgres;
+    }
+}
@@ -0,0 +1,507 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.AchadoComposto;
+import br.ufg.inf.hemograma.model.Desvio;
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.ParametroHemograma;
+import br.ufg.inf.hemograma.model.enums.SeveridadeDesvio;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Motor de regras de achados compostos: combinações de parâmetros que, juntas,
+ * indicam um quadro clínico (pancitopenia, anemia microcítica etc.).
+ *
+ * As regras (arquivo regras/achados-compostos.regras) são compiladas na
+ * carga para a forma normal disjuntiva, em que cada conjunção é um conjunto
+ * de máscaras de bits:
+ * - estado: 4 bits por {@link TipoParametro} (baixo, alto, normal, presente),
+ *   obtidos dos desvios do hemograma;
+ * - predicados: 1 bit por comparação numérica distinta ("NEUTROFILOS &lt; 500").
+ *
+ * Cada hemograma é reduzido a um par (estado, predicados). O resultado das
+ * regras para cada par é memorizado em uma tabela de decisão, de modo que,
+ * para combinações já vistas, o custo por hemograma não depende da
+ * quantidade de regras carregadas.
+ */
+@Service
+public class MotorRegrasService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MotorRegrasService.class);
+
+    private static final TipoParametro[] TIPOS = TipoParametro.values();
+
+    private static final int BAIXO = 0;
+    private static final int ALTO = 1;
+    private static final int NORMAL = 2;
+    private static final int PRESENTE = 3;
+    private static final int BITS_POR_TIPO = 4;
+
+    private static final int MAXIMO_PREDICADOS = Long.SIZE;
+    private static final int MAXIMO_CONJUNCOES_POR_REGRA = 256;
+
+    /** Bits "presente" de todos os tipos. */
+    private static final long MASCARA_PRESENTE;
+
+    static {
+        if (TIPOS.length * BITS_POR_TIPO > Long.SIZE) {
+            throw new IllegalStateException("Estado dos parâmetros não cabe em 64 bits");
+        }
+        long mascara = 0;
+        for (int ordinal = 0; ordinal < TIPOS.length; ordinal++) {
+            mascara |= bit(ordinal, PRESENTE);
+        }
+        MASCARA_PRESENTE = mascara;
+    }
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    @Value("${app.hemograma.regras.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${app.hemograma.regras.arquivo:classpath:regras/achados-compostos.regras}")
+    private String arquivoRegras;
+
+    @Value("${app.hemograma.regras.tamanho-maximo-tabela:65536}")
+    private int tamanhoMaximoTabela;
+
+    private volatile RegrasCompiladas regras = new RegrasCompiladas(List.of(), List.of(), List.of());
+
+    private record Regra(String codigo, String nome, SeveridadeDesvio severidade, TipoParametro[] tipos) {
+    }
+
+    private enum Operador {
+        MENOR("<"), MENOR_IGUAL("<="), MAIOR(">"), MAIOR_IGUAL(">=");
+
+        private final String simbolo;
+
+        Operador(String simbolo) {
+            this.simbolo = simbolo;
+        }
+
+        boolean aplicar(double valor, double limite) {
+            return switch (this) {
+                case MENOR -> valor < limite;
+                case MENOR_IGUAL -> valor <= limite;
+                case MAIOR -> valor > limite;
+                case MAIOR_IGUAL -> valor >= limite;
+            };
+        }
+    }
+
+    private record Predicado(TipoParametro tipo, Operador operador, double limite) {
+    }
+
+    /**
+     * Conjunção compilada: casa quando todos os bits exigidos estão ligados e
+     * nenhum dos proibidos.
+     */
+    private record Conjuncao(long exigeEstado, long proibeEstado, long exigePredicado, long proibePredicado,
+                             int regra) {
+
+        boolean casa(long estado, long predicados) {
+            return (estado & exigeEstado) == exigeEstado && (estado & proibeEstado) == 0
+                    && (predicados & exigePredicado) == exigePredicado && (predicados & proibePredicado) == 0;
+        }
+    }
+
+    private record Chave(long estado, long predicados) {
+    }
+
+    private static final class RegrasCompiladas {
+        private final Regra[] regras;
+        private final Conjuncao[] conjuncoes;
+        private final Predicado[] predicados;
+        private final Map<Chave, int[]> tabela = new ConcurrentHashMap<>();
+
+        RegrasCompiladas(List<Regra> regras, List<Conjuncao> conjuncoes, List<Predicado> predicados) {
+            this.regras = regras.toArray(Regra[]::new);
+            this.conjuncoes = conjuncoes.toArray(Conjuncao[]::new);
+            this.predicados = predicados.toArray(Predicado[]::new);
+        }
+
+        int[] casar(Chave chave) {
+            BitSet casadas = new BitSet(regras.length);
+            for (Conjuncao conjuncao : conjuncoes) {
+                if (conjuncao.casa(chave.estado(), chave.predicados())) {
+                    casadas.set(conjuncao.regra());
+                }
+            }
+            return casadas.stream().toArray();
+        }
+    }
+
+    @PostConstruct
+    public void carregar() throws IOException {
+        if (!habilitado) {
+            return;
+        }
+
+        Resource recurso = resourceLoader.getResource(arquivoRegras);
+        List<Regra> lista = new ArrayList<>();
+        List<Conjuncao> conjuncoes = new ArrayList<>();
+        Map<Predicado, Integer> predicados = new LinkedHashMap<>();
+        Set<String> codigos = new HashSet<>();
+
+        try (BufferedReader leitor = new BufferedReader(
+                new InputStreamReader(recurso.getInputStream(), StandardCharsets.UTF_8))) {
+            String linha;
+            int numero = 0;
+            while ((linha = leitor.readLine()) != null) {
+                numero++;
+                linha = linha.trim();
+                if (linha.isEmpty() || linha.startsWith("#")) {
+                    continue;
+                }
+
+                String[] campos = linha.split("\\|", 4);
+                if (campos.length < 4) {
+                    throw new IllegalStateException(String.format(
+                            "Regra inválida em %s, linha %d: esperado CODIGO | Nome | SEVERIDADE | condição",
+                            arquivoRegras, numero));
+                }
+
+                String codigo = campos[0].trim();
+                if (!codigos.add(codigo)) {
+                    throw new IllegalStateException("Regra duplicada em " + arquivoRegras + ": " + codigo);
+                }
+
+                try {
+                    Compilador compilador = new Compilador(campos[3], predicados);
+                    No condicao = compilador.compilar();
+                    List<long[]> dnf = formaNormal(condicao, false);
+
+                    int indice = lista.size();
+                    lista.add(new Regra(codigo, campos[1].trim(),
+                            SeveridadeDesvio.valueOf(campos[2].trim()),
+                            compilador.tipos.toArray(TipoParametro[]::new)));
+                    for (long[] mascaras : dnf) {
+                        conjuncoes.add(new Conjuncao(mascaras[0], mascaras[1], mascaras[2], mascaras[3], indice));
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalStateException(String.format(
+                            "Regra %s inválida (%s, linha %d): %s", codigo, arquivoRegras, numero, e.getMessage()), e);
+                }
+            }
+        }
+
+        regras = new RegrasCompiladas(lista, conjuncoes, new ArrayList<>(predicados.keySet()));
+        logger.info("🧩 {} regra(s) de achados compostos compilada(s): {} conjunção(ões), {} predicado(s) numérico(s)",
+                lista.size(), conjuncoes.size(), predicados.size());
+    }
+
+    /**
+     * Avalia todas as regras sobre o hemograma e seus desvios.
+     *
+     * @return Achados compostos encontrados (ainda não associados ao hemograma)
+     */
+    public List<AchadoComposto> avaliar(Hemograma hemograma, List<Desvio> desvios) {
+        RegrasCompiladas compiladas = regras;
+        if (compiladas.regras.length == 0) {
+            return List.of();
+        }
+
+        double[] valores = new double[TIPOS.length];
+        long estado = 0;
+        for (ParametroHemograma parametro : hemograma.listarParametros()) {
+            int ordinal = parametro.getTipoParametro().ordinal();
+            valores[ordinal] = parametro.getValor();
+            estado |= bit(ordinal, PRESENTE);
+        }
+
+        long desviados = 0;
+        for (Desvio desvio : desvios) {
+            int ordinal = desvio.getTipoParametro().ordinal();
+            boolean baixo = desvio.getValorReferenciaMinimo() != null
+                    && desvio.getValorEncontrado() < desvio.getValorReferenciaMinimo();
+            estado |= bit(ordinal, baixo ? BAIXO : ALTO);
+            desviados |= bit(ordinal, PRESENTE);
+        }
+
+        // Presentes sem desvio: normais
+        long normais = estado & ~desviados & MASCARA_PRESENTE;
+        estado |= normais >>> (PRESENTE - NORMAL);
+
+        long predicados = 0;
+        for (int i = 0; i < compiladas.predicados.length; i++) {
+            Predicado predicado = compiladas.predicados[i];
+            int ordinal = predicado.tipo().ordinal();
+            if ((estado & bit(ordinal, PRESENTE)) != 0
+                    && predicado.operador().aplicar(valores[ordinal], predicado.limite())) {
+                predicados |= 1L << i;
+            }
+        }
+
+        Chave chave = new Chave(estado, predicados);
+        int[] casadas = compiladas.tabela.get(chave);
+        if (casadas == null) {
+            casadas = compiladas.casar(chave);
+            if (compiladas.tabela.size() < tamanhoMaximoTabela) {
+                compiladas.tabela.put(chave, casadas);
+            }
+        }
+
+        if (casadas.length == 0) {
+            return List.of();
+        }
+
+        List<AchadoComposto> achados = new ArrayList<>(casadas.length);
+        for (int indice : casadas) {
+            Regra regra = compiladas.regras[indice];
+            achados.add(new AchadoComposto(regra.codigo(), regra.nome(), regra.severidade(),
+                    gerarDescricao(regra, valores, estado)));
+        }
+        return achados;
+    }
+
+    private static long bit(int ordinal, int estado) {
+        return 1L << (ordinal * BITS_POR_TIPO + estado);
+    }
+
+    private String gerarDescricao(Regra regra, double[] valores, long estado) {
+        StringBuilder desc = new StringBuilder("🧩 ").append(regra.nome()).append(':');
+        String separador = " ";
+        for (TipoParametro tipo : regra.tipos()) {
+            if ((estado & bit(tipo.ordinal(), PRESENTE)) != 0) {
+                desc.append(separador).append(tipo.getNome()).append(' ')
+                        .append(String.format("%.1f", valores[tipo.ordinal()])).append(' ').append(tipo.getUnidade());
+                separador = ", ";
+            }
+        }
+        return desc.length() > 500 ? desc.substring(0, 500) : desc.toString();
+    }
+
+    public int getQuantidadeRegras() {
+        return regras.regras.length;
+    }
+
+    // ------------------------------------------------------------------
+    // Compilação
+    // ------------------------------------------------------------------
+
+    private sealed interface No permits Atomo, E, Ou, Nao {
+    }
+
+    /** Bit de estado ou, se {@code predicado}, índice do predicado numérico. */
+    private record Atomo(int bit, boolean predicado) implements No {
+    }
+
+    private record E(No esquerda, No direita) implements No {
+    }
+
+    private record Ou(No esquerda, No direita) implements No {
+    }
+
+    private record Nao(No operando) implements No {
+    }
+
+    /**
+     * Converte a condição para a forma normal disjuntiva: lista de conjunções
+     * [exigeEstado, proibeEstado, exigePredicado, proibePredicado]. Negações são
+     * empurradas até os átomos (De Morgan); conjunções contraditórias são descartadas.
+     */
+    private static List<long[]> formaNormal(No no, boolean negado) {
+        if (no instanceof Atomo atomo) {
+            long[] conjuncao = new long[4];
+            int posicao = (atomo.predicado() ? 2 : 0) + (negado ? 1 : 0);
+            conjuncao[posicao] = 1L << atomo.bit();
+            return List.of(conjuncao);
+        }
+        if (no instanceof Nao nao) {
+            return formaNormal(nao.operando(), !negado);
+        }
+        if (no instanceof E e) {
+            return negado
+                    ? uniao(formaNormal(e.esquerda(), true), formaNormal(e.direita(), true))
+                    : produto(formaNormal(e.esquerda(), false), formaNormal(e.direita(), false));
+        }
+        Ou ou = (Ou) no;
+        return negado
+                ? produto(formaNormal(ou.esquerda(), true), formaNormal(ou.direita(), true))
+                : uniao(formaNormal(ou.esquerda(), false), formaNormal(ou.direita(), false));
+    }
+
+    private static List<long[]> uniao(List<long[]> a, List<long[]> b) {
+        List<long[]> resultado = new ArrayList<>(a);
+        resultado.addAll(b);
+        limitar(resultado);
+        return resultado;
+    }
+
+    private static List<long[]> produto(List<long[]> a, List<long[]> b) {
+        List<long[]> resultado = new ArrayList<>();
+        for (long[] x : a) {
+            for (long[] y : b) {
+                long[] conjuncao = {x[0] | y[0], x[1] | y[1], x[2] | y[2], x[3] | y[3]};
+                boolean contraditoria = (conjuncao[0] & conjuncao[1]) != 0 || (conjuncao[2] & conjuncao[3]) != 0;
+                if (!contraditoria) {
+                    resultado.add(conjuncao);
+                }
+            }
+        }
+        limitar(resultado);
+        return resultado;
+    }
+
+    private static void limitar(List<long[]> conjuncoes) {
+        if (conjuncoes.size() > MAXIMO_CONJUNCOES_POR_REGRA) {
+            throw new IllegalArgumentException("condição gera mais de " + MAXIMO_CONJUNCOES_POR_REGRA
+                    + " conjunções; simplifique a regra");
+        }
+    }
+
+    /**
+     * Analisador descendente da condição:
+     * ou := e ('|' e)* ; e := fator ('&amp;' fator)* ; fator := '!' fator | '(' ou ')' | atomo ;
+     * atomo := TIPO (BAIXO | ALTO | NORMAL | PRESENTE | operador número).
+     */
+    private static final class Compilador {
+
+        private final String texto;
+        private final Map<Predicado, Integer> predicados;
+        private final Set<TipoParametro> tipos = EnumSet.noneOf(TipoParametro.class);
+        private int posicao;
+
+        Compilador(String texto, Map<Predicado, Integer> predicados) {
+            this.texto = texto;
+            this.predicados = predicados;
+        }
+
+        No compilar() {
+            No no = ou();
+            pularEspacos();
+            if (posicao < texto.length()) {
+                throw erro("símbolo inesperado");
+            }
+            return no;
+        }
+
+        private No ou() {
+            No no = e();
+            while (consumir("|")) {
+                no = new Ou(no, e());
+            }
+            return no;
+        }
+
+        private No e() {
+            No no = fator();
+            while (consumir("&")) {
+                no = new E(no, fator());
+            }
+            return no;
+        }
+
+        private No fator() {
+            if (consumir("!")) {
+                return new Nao(fator());
+            }
+            if (consumir("(")) {
+                No no = ou();
+                if (!consumir(")")) {
+                    throw erro("')' esperado");
+                }
+                return no;
+            }
+            return atomo();
+        }
+
+        private No atomo() {
+            String nomeTipo = palavra();
+            TipoParametro tipo;
+            try {
+                tipo = TipoParametro.valueOf(nomeTipo);
+            } catch (IllegalArgumentException e) {
+                throw erro("tipo de parâmetro desconhecido '" + nomeTipo + "'");
+            }
+            tipos.add(tipo);
+
+            for (Operador operador : new Operador[]{Operador.MENOR_IGUAL, Operador.MAIOR_IGUAL,
+                    Operador.MENOR, Operador.MAIOR}) {
+                if (consumir(operador.simbolo)) {
+                    Predicado predicado = new Predicado(tipo, operador, numero());
+                    Integer indice = predicados.get(predicado);
+                    if (indice == null) {
+                        if (predicados.size() == MAXIMO_PREDICADOS) {
+                            throw erro("mais de " + MAXIMO_PREDICADOS + " comparações numéricas distintas");
+                        }
+                        indice = predicados.size();
+                        predicados.put(predicado, indice);
+                    }
+                    return new Atomo(indice, true);
+                }
+            }
+
+            String estado = palavra();
+            int deslocamento = switch (estado) {
+                case "BAIXO" -> BAIXO;
+                case "ALTO" -> ALTO;
+                case "NORMAL" -> NORMAL;
+                case "PRESENTE" -> PRESENTE;
+                default -> throw erro("estado desconhecido '" + estado + "' (BAIXO, ALTO, NORMAL ou PRESENTE)");
+            };
+            return new Atomo(tipo.ordinal() * BITS_POR_TIPO + deslocamento, false);
+        }
+
+        private String palavra() {
+            pularEspacos();
+            int inicio = posicao;
+            while (posicao < texto.length()
+                    && (Character.isLetterOrDigit(texto.charAt(posicao)) || texto.charAt(posicao) == '_')) {
+                posicao++;
+            }
+            if (inicio == posicao) {
+                throw erro("nome esperado");
+            }
+            return texto.substring(inicio, posicao);
+        }
+
+        private double numero() {
+            pularEspacos();
+            int inicio = posicao;
+            while (posicao < texto.length()
+                    && (Character.isDigit(texto.charAt(posicao)) || texto.charAt(posicao) == '.')) {
+                posicao++;
+            }
+            try {
+                return Double.parseDouble(texto.substring(inicio, posicao));
+            } catch (NumberFormatException e) {
+                throw erro("número esperado");
+            }
+        }
+
+        private boolean consumir(String simbolo) {
+            pularEspacos();
+            if (texto.startsWith(simbolo, posicao)) {
+                posicao += simbolo.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void pularEspacos() {
+            while (posicao < texto.length() && Character.isWhitespace(texto.charAt(posicao))) {
+                posicao++;
+            }
+        }
+
+        private IllegalArgumentException erro(String mensagem) {
+            return new IllegalArgumentException(mensagem + " na posição " + (posicao + 1) + " de '" + texto.trim() + "'");
+        }
+    }
+}
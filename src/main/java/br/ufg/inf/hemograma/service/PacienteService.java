@@ -0,0 +1,237 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.Desvio;
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.Paciente;
+import br.ufg.inf.hemograma.model.enums.PoliticaReavaliacao;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import br.ufg.inf.hemograma.repository.HemogramaRepository;
+import br.ufg.inf.hemograma.repository.PacienteRepository;
+import org.hl7.fhir.r4.model.Patient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Serviço responsável pela ingestão de recursos FHIR Patient.
+ *
+ * Os pacientes são gravados em lote (upsert): uma única consulta busca os
+ * registros existentes e só são escritos os pacientes cujo hash de conteúdo
+ * mudou. Quando sexo ou data de nascimento mudam, os desvios já registrados
+ * são reavaliados conforme a {@link PoliticaReavaliacao} configurada.
+ */
+@Service
+public class PacienteService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PacienteService.class);
+
+    private static final String PREFIXO_REFERENCIA = "Patient/";
+
+    @Autowired
+    private FhirParserService fhirParserService;
+
+    @Autowired
+    private PacienteRepository pacienteRepository;
+
+    @Autowired
+    private HemogramaRepository hemogramaRepository;
+
+    @Autowired
+    private AnalisadorHemogramaService analisadorHemogramaService;
+
+    @Autowired
+    private RollupDesvioService rollupDesvioService;
+
+    @Value("${app.hemograma.paciente.tamanho-lote:100}")
+    private int tamanhoLote;
+
+    @Value("${app.hemograma.paciente.politica-reavaliacao:PENDENTES}")
+    private PoliticaReavaliacao politicaReavaliacao;
+
+    /**
+     * Grava (insere ou atualiza) os dados demográficos de um lote de Patients.
+     *
+     * @param patients Recursos Patient recebidos
+     * @return Quantidade de pacientes efetivamente inseridos ou alterados
+     */
+    @Transactional
+    public int upsertLote(List<Patient> patients) {
+        // Último recurso recebido para o mesmo paciente prevalece
+        Map<String, Map<String, Object>> dadosPorFhirId = new LinkedHashMap<>();
+        for (Patient patient : patients) {
+            Map<String, Object> dados = fhirParserService.extrairDadosPaciente(patient);
+            Object id = dados.get("id");
+            if (id == null || id.toString().isBlank()) {
+                logger.warn("Patient sem id ignorado: não pode ser associado aos hemogramas");
+                continue;
+            }
+            dadosPorFhirId.put(PREFIXO_REFERENCIA + id, dados);
+        }
+
+        List<String> fhirIds = new ArrayList<>(dadosPorFhirId.keySet());
+        int alterados = 0;
+
+        for (int inicio = 0; inicio < fhirIds.size(); inicio += tamanhoLote) {
+            List<String> lote = fhirIds.subList(inicio, Math.min(inicio + tamanhoLote, fhirIds.size()));
+            alterados += upsertSubLote(lote, dadosPorFhirId);
+        }
+
+        logger.info("👤 {} paciente(s) recebido(s), {} inserido(s) ou alterado(s)",
+                fhirIds.size(), alterados);
+        return alterados;
+    }
+
+    private int upsertSubLote(List<String> fhirIds, Map<String, Map<String, Object>> dadosPorFhirId) {
+        Map<String, Paciente> existentes = pacienteRepository.findByFhirIdIn(fhirIds).stream()
+                .collect(Collectors.toMap(Paciente::getFhirId, p -> p));
+
+        List<Paciente> paraSalvar = new ArrayList<>();
+        // Paciente a reavaliar -> estado anterior (região dos rollups já contabilizados)
+        Map<Paciente, String> paraReavaliar = new LinkedHashMap<>();
+
+        for (String fhirId : fhirIds) {
+            Map<String, Object> dados = dadosPorFhirId.get(fhirId);
+            String hash = calcularHash(dados);
+
+            Paciente paciente = existentes.get(fhirId);
+            if (paciente == null) {
+                paciente = new Paciente(fhirId);
+            } else if (hash.equals(paciente.getHashDados())) {
+                continue; // Reenvio sem alteração
+            }
+
+            String estadoAnterior = paciente.getEstado();
+            boolean demografiaAlterada = aplicarDados(paciente, dados);
+            paciente.setHashDados(hash);
+            paraSalvar.add(paciente);
+
+            if (demografiaAlterada && paciente.getId() != null) {
+                paraReavaliar.put(paciente, estadoAnterior);
+            }
+        }
+
+        pacienteRepository.saveAll(paraSalvar);
+
+        if (politicaReavaliacao != PoliticaReavaliacao.NENHUMA) {
+            paraReavaliar.forEach(this::reavaliarDesvios);
+        }
+
+        return paraSalvar.size();
+    }
+
+    /**
+     * Copia para a entidade apenas os campos que mudaram, de modo que o UPDATE
+     * gerado (a entidade usa {@code @DynamicUpdate}) contenha somente essas colunas.
+     *
+     * @return true se sexo ou data de nascimento foram alterados
+     */
+    @SuppressWarnings("unchecked")
+    private boolean aplicarDados(Paciente paciente, Map<String, Object> dados) {
+        atualizar(paciente.getNomeCompleto(), (String) dados.get("nomeCompleto"), paciente::setNomeCompleto);
+        atualizar(paciente.getPrimeiroNome(), (String) dados.get("primeiroNome"), paciente::setPrimeiroNome);
+        atualizar(paciente.getSobrenome(), (String) dados.get("sobrenome"), paciente::setSobrenome);
+
+        List<String> telefones = (List<String>) dados.get("telefones");
+        String telefone = telefones != null && !telefones.isEmpty() ? telefones.get(0) : null;
+        atualizar(paciente.getTelefone(), telefone, paciente::setTelefone);
+
+        Map<String, String> endereco = (Map<String, String>) dados.getOrDefault("endereco", Map.of());
+        atualizar(paciente.getEndereco(), endereco.get("linha"), paciente::setEndereco);
+        atualizar(paciente.getCidade(), endereco.get("cidade"), paciente::setCidade);
+        atualizar(paciente.getEstado(), endereco.get("estado"), paciente::setEstado);
+        atualizar(paciente.getCep(), endereco.get("cep"), paciente::setCep);
+
+        boolean generoAlterado = atualizar(paciente.getGenero(), (String) dados.get("genero"), paciente::setGenero);
+        boolean nascimentoAlterado = atualizar(paciente.getDataNascimento(),
+                converterDataNascimento((String) dados.get("dataNascimento")), paciente::setDataNascimento);
+
+        return generoAlterado || nascimentoAlterado;
+    }
+
+    private <T> boolean atualizar(T atual, T novo, Consumer<T> setter) {
+        if (Objects.equals(atual, novo)) {
+            return false;
+        }
+        setter.accept(novo);
+        return true;
+    }
+
+    /**
+     * Converte a data de nascimento FHIR, que pode ser parcial (AAAA ou AAAA-MM).
+     */
+    private LocalDate converterDataNascimento(String valor) {
+        if (valor == null || valor.isBlank()) {
+            return null;
+        }
+        try {
+            if (valor.length() == 4) {
+                return LocalDate.of(Integer.parseInt(valor), 1, 1);
+            }
+            if (valor.length() == 7) {
+                return LocalDate.parse(valor + "-01");
+            }
+            return LocalDate.parse(valor.substring(0, 10));
+        } catch (Exception e) {
+            logger.warn("Data de nascimento inválida ignorada: {}", valor);
+            return null;
+        }
+    }
+
+    /**
+     * Reavalia os hemogramas do paciente com os novos dados demográficos.
+     *
+     * Com a política PENDENTES, desvios já notificados são preservados e não
+     * são duplicados; os demais são descartados e recalculados.
+     */
+    private void reavaliarDesvios(Paciente paciente, String estadoAnterior) {
+        for (Hemograma hemograma : hemogramaRepository.findByPaciente(paciente)) {
+            Set<TipoParametro> tiposPreservados = EnumSet.noneOf(TipoParametro.class);
+            List<Desvio> removidos = new ArrayList<>();
+
+            Iterator<Desvio> iterator = hemograma.getDesvios().iterator();
+            while (iterator.hasNext()) {
+                Desvio desvio = iterator.next();
+                boolean notificado = Boolean.TRUE.equals(desvio.getNotificacaoEnviada());
+                if (politicaReavaliacao == PoliticaReavaliacao.PENDENTES && notificado) {
+                    tiposPreservados.add(desvio.getTipoParametro());
+                } else {
+                    iterator.remove();
+                    removidos.add(desvio);
+                }
+            }
+
+            List<Desvio> novos = new ArrayList<>(analisadorHemogramaService.analisarHemograma(hemograma, paciente));
+            novos.removeIf(desvio -> tiposPreservados.contains(desvio.getTipoParametro()));
+            hemograma.getDesvios().removeIf(desvio ->
+                    desvio.getId() == null && tiposPreservados.contains(desvio.getTipoParametro()));
+
+            rollupDesvioService.registrar(hemograma, removidos, estadoAnterior, -1);
+            rollupDesvioService.registrar(hemograma, novos, paciente.getEstado(), 1);
+        }
+
+        logger.info("🔁 Desvios do paciente {} reavaliados (política {})",
+                paciente.getFhirId(), politicaReavaliacao);
+    }
+
+    private String calcularHash(Map<String, Object> dados) {
+        // TreeMap garante ordem estável das chaves
+        String conteudo = new TreeMap<>(dados).toString();
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(conteudo.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponível", e);
+        }
+    }
+}
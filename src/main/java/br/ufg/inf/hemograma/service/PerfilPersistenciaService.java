@@ -0,0 +1,330 @@
+package br.ufg.inf.hemograma.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.QueryStatistics;
+import org.hibernate.stat.Statistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Perfil da camada de persistência (modo opcional, para diagnóstico).
+ *
+ * Com {@code app.hemograma.perfil-persistencia.habilitado}, o DataSource é
+ * envolvido por proxies JDBC que medem cada instrução executada e contam as
+ * linhas lidas, e os métodos dos repositórios Spring Data são interceptados
+ * ({@link br.ufg.inf.hemograma.config.PerfilPersistenciaConfig}). Cada
+ * instrução é atribuída ao método de repositório em execução na thread (o
+ * mais externo); as demais (JdbcTemplate, carregamentos lazy) ficam em
+ * {@value #FORA_DE_REPOSITORIO}.
+ *
+ * São sinalizados automaticamente:
+ * <ul>
+ *   <li>N+1: o mesmo SELECT repetido muitas vezes em uma transação;</li>
+ *   <li>instruções mais lentas que o limite configurado.</li>
+ * </ul>
+ *
+ * As estatísticas do Hibernate são habilitadas no mesmo modo e incluídas no
+ * relatório.
+ */
+@Service
+public class PerfilPersistenciaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PerfilPersistenciaService.class);
+
+    public static final String FORA_DE_REPOSITORIO = "(fora de repositório)";
+
+    private static final int TAMANHO_MAXIMO_SQL = 500;
+    private static final double PRECISAO_LATENCIAS = 0.01;
+    private static final int MAXIMO_BALDES_LATENCIAS = 2048;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Value("${app.hemograma.perfil-persistencia.habilitado:false}")
+    private boolean habilitado;
+
+    @Value("${app.hemograma.perfil-persistencia.limite-lenta-ms:200}")
+    private long limiteLentaMs;
+
+    @Value("${app.hemograma.perfil-persistencia.limite-repeticoes:10}")
+    private int limiteRepeticoes;
+
+    @Value("${app.hemograma.perfil-persistencia.maximo-sinalizacoes:200}")
+    private int maximoSinalizacoes;
+
+    /**
+     * Totais de um método de repositório (ou das instruções fora deles).
+     */
+    private static final class EstatisticaMetodo {
+        private final LongAdder chamadas = new LongAdder();
+        private final LongAdder instrucoes = new LongAdder();
+        private final LongAdder linhas = new LongAdder();
+        private final LongAdder nanosTotal = new LongAdder();
+        private final SketchQuantis latenciasMs = new SketchQuantis(PRECISAO_LATENCIAS, MAXIMO_BALDES_LATENCIAS);
+    }
+
+    /**
+     * Chamada de repositório em execução na thread.
+     */
+    private static final class Chamada {
+        private final String metodo;
+        private int profundidade = 1;
+        private long instrucoes;
+        private long linhas;
+
+        Chamada(String metodo) {
+            this.metodo = metodo;
+        }
+    }
+
+    /**
+     * SELECTs executados em uma transação, por texto da instrução.
+     */
+    private final class RastreioTransacao implements TransactionSynchronization {
+        private final Map<String, int[]> repeticoes = new HashMap<>();
+        private final Map<String, String> origens = new HashMap<>();
+
+        void registrar(String sql, String origem) {
+            repeticoes.computeIfAbsent(sql, s -> new int[1])[0]++;
+            origens.putIfAbsent(sql, origem);
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            TransactionSynchronizationManager.unbindResourceIfPossible(PerfilPersistenciaService.this);
+            for (Map.Entry<String, int[]> entry : repeticoes.entrySet()) {
+                int vezes = entry.getValue()[0];
+                if (vezes >= limiteRepeticoes) {
+                    sinalizar("N_MAIS_1", entry.getKey(), origens.get(entry.getKey()), Map.of("repeticoes", vezes));
+                }
+            }
+        }
+    }
+
+    private final Map<String, EstatisticaMetodo> metodos = new ConcurrentHashMap<>();
+    private final Deque<Map<String, Object>> sinalizacoes = new ArrayDeque<>();
+    private final ThreadLocal<Chamada> chamadaAtual = new ThreadLocal<>();
+    private volatile LocalDateTime inicioColeta = LocalDateTime.now();
+
+    public boolean isHabilitado() {
+        return habilitado;
+    }
+
+    /**
+     * Início de uma chamada de repositório. Chamadas aninhadas são contadas
+     * na mais externa; cada início deve ter um {@link #encerrarChamada}.
+     */
+    public void iniciarChamada(String metodo) {
+        Chamada chamada = chamadaAtual.get();
+        if (chamada != null) {
+            chamada.profundidade++;
+            return;
+        }
+        chamadaAtual.set(new Chamada(metodo));
+    }
+
+    public void encerrarChamada(long nanos) {
+        Chamada chamada = chamadaAtual.get();
+        if (chamada == null) {
+            return;
+        }
+        if (--chamada.profundidade > 0) {
+            return;
+        }
+        chamadaAtual.remove();
+
+        EstatisticaMetodo estatistica = estatistica(chamada.metodo);
+        estatistica.chamadas.increment();
+        estatistica.instrucoes.add(chamada.instrucoes);
+        estatistica.linhas.add(chamada.linhas);
+        estatistica.nanosTotal.add(nanos);
+        estatistica.latenciasMs.adicionar(nanos / 1_000_000.0);
+    }
+
+    /**
+     * Registra uma instrução executada pelo DataSource instrumentado.
+     */
+    public void registrarInstrucao(String sql, long nanos) {
+        Chamada chamada = chamadaAtual.get();
+        String origem = chamada != null ? chamada.metodo : FORA_DE_REPOSITORIO;
+        if (chamada != null) {
+            chamada.instrucoes++;
+        } else {
+            EstatisticaMetodo estatistica = estatistica(FORA_DE_REPOSITORIO);
+            estatistica.instrucoes.increment();
+            estatistica.nanosTotal.add(nanos);
+            estatistica.latenciasMs.adicionar(nanos / 1_000_000.0);
+        }
+
+        long ms = TimeUnit.NANOSECONDS.toMillis(nanos);
+        if (ms >= limiteLentaMs) {
+            sinalizar("LENTA", sql, origem, Map.of("duracaoMs", ms));
+        }
+
+        if (consultaRepetivel(sql) && TransactionSynchronizationManager.isSynchronizationActive()) {
+            RastreioTransacao rastreio = (RastreioTransacao) TransactionSynchronizationManager.getResource(this);
+            if (rastreio == null) {
+                rastreio = new RastreioTransacao();
+                TransactionSynchronizationManager.bindResource(this, rastreio);
+                TransactionSynchronizationManager.registerSynchronization(rastreio);
+            }
+            rastreio.registrar(sql, origem);
+        }
+    }
+
+    /**
+     * SELECT que conta para N+1. Leituras de sequência (geração de ids em
+     * inserções) se repetem por natureza e ficam de fora.
+     */
+    private static boolean consultaRepetivel(String sql) {
+        if (sql == null || !sql.regionMatches(true, 0, "select", 0, 6)) {
+            return false;
+        }
+        String minusculo = sql.toLowerCase(Locale.ROOT);
+        return !minusculo.contains("next value for") && !minusculo.contains("nextval(");
+    }
+
+    /**
+     * Registra uma linha lida de um ResultSet.
+     */
+    public void registrarLinha() {
+        Chamada chamada = chamadaAtual.get();
+        if (chamada != null) {
+            chamada.linhas++;
+        } else {
+            estatistica(FORA_DE_REPOSITORIO).linhas.increment();
+        }
+    }
+
+    /**
+     * Relatório por método de repositório (do maior para o menor tempo total),
+     * estatísticas do Hibernate e sinalizações recentes.
+     */
+    public Map<String, Object> relatorio() {
+        Map<String, Object> relatorio = new LinkedHashMap<>();
+        relatorio.put("habilitado", habilitado);
+        relatorio.put("inicioColeta", inicioColeta);
+        if (!habilitado) {
+            return relatorio;
+        }
+
+        List<Map.Entry<String, EstatisticaMetodo>> entradas = new ArrayList<>(metodos.entrySet());
+        entradas.sort(Comparator.comparingLong((Map.Entry<String, EstatisticaMetodo> e) -> e.getValue().nanosTotal.sum()).reversed());
+
+        List<Map<String, Object>> repositorios = new ArrayList<>();
+        for (Map.Entry<String, EstatisticaMetodo> entry : entradas) {
+            EstatisticaMetodo estatistica = entry.getValue();
+            long chamadas = estatistica.chamadas.sum();
+            long instrucoes = estatistica.instrucoes.sum();
+
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("metodo", entry.getKey());
+            item.put("chamadas", chamadas);
+            item.put("instrucoes", instrucoes);
+            item.put("instrucoesPorChamada", chamadas > 0 ? (double) instrucoes / chamadas : null);
+            item.put("linhas", estatistica.linhas.sum());
+            item.put("tempoTotalMs", estatistica.nanosTotal.sum() / 1_000_000.0);
+            Map<String, Double> latencias = new LinkedHashMap<>();
+            latencias.put("p50", estatistica.latenciasMs.quantil(0.50));
+            latencias.put("p95", estatistica.latenciasMs.quantil(0.95));
+            latencias.put("p99", estatistica.latenciasMs.quantil(0.99));
+            latencias.put("max", estatistica.latenciasMs.quantil(1.0));
+            item.put("latenciaMs", latencias);
+            repositorios.add(item);
+        }
+        relatorio.put("repositorios", repositorios);
+        relatorio.put("hibernate", estatisticasHibernate());
+        synchronized (sinalizacoes) {
+            relatorio.put("sinalizacoes", new ArrayList<>(sinalizacoes));
+        }
+        return relatorio;
+    }
+
+    /**
+     * Zera os contadores, as sinalizações e as estatísticas do Hibernate.
+     */
+    public void reiniciar() {
+        metodos.clear();
+        synchronized (sinalizacoes) {
+            sinalizacoes.clear();
+        }
+        if (habilitado) {
+            entityManagerFactory.unwrap(SessionFactory.class).getStatistics().clear();
+        }
+        inicioColeta = LocalDateTime.now();
+    }
+
+    private Map<String, Object> estatisticasHibernate() {
+        Statistics estatisticas = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        Map<String, Object> hibernate = new LinkedHashMap<>();
+        hibernate.put("transacoes", estatisticas.getTransactionCount());
+        hibernate.put("instrucoesPreparadas", estatisticas.getPrepareStatementCount());
+        hibernate.put("consultas", estatisticas.getQueryExecutionCount());
+        hibernate.put("consultaMaisLenta", estatisticas.getQueryExecutionMaxTimeQueryString());
+        hibernate.put("consultaMaisLentaMs", estatisticas.getQueryExecutionMaxTime());
+        hibernate.put("entidadesCarregadas", estatisticas.getEntityLoadCount());
+        hibernate.put("entidadesBuscadas", estatisticas.getEntityFetchCount());
+        hibernate.put("colecoesBuscadas", estatisticas.getCollectionFetchCount());
+        hibernate.put("entidadesInseridas", estatisticas.getEntityInsertCount());
+        hibernate.put("entidadesAtualizadas", estatisticas.getEntityUpdateCount());
+        hibernate.put("flushes", estatisticas.getFlushCount());
+
+        List<Map<String, Object>> consultas = new ArrayList<>();
+        for (String consulta : estatisticas.getQueries()) {
+            QueryStatistics porConsulta = estatisticas.getQueryStatistics(consulta);
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("consulta", truncar(consulta));
+            item.put("execucoes", porConsulta.getExecutionCount());
+            item.put("linhas", porConsulta.getExecutionRowCount());
+            item.put("mediaMs", porConsulta.getExecutionAvgTime());
+            item.put("maximoMs", porConsulta.getExecutionMaxTime());
+            consultas.add(item);
+        }
+        consultas.sort(Comparator.comparingLong((Map<String, Object> item) ->
+                (Long) item.get("execucoes") * (Long) item.get("mediaMs")).reversed());
+        hibernate.put("consultasHql", consultas);
+        return hibernate;
+    }
+
+    private void sinalizar(String tipo, String sql, String origem, Map<String, Object> detalhes) {
+        String transacao = TransactionSynchronizationManager.getCurrentTransactionName();
+        logger.warn("🐢 Persistência {}: {} em {} (transação {}): {}", tipo, detalhes, origem, transacao, truncar(sql));
+
+        Map<String, Object> sinalizacao = new LinkedHashMap<>();
+        sinalizacao.put("tipo", tipo);
+        sinalizacao.put("data", LocalDateTime.now());
+        sinalizacao.put("origem", origem);
+        sinalizacao.put("transacao", transacao);
+        sinalizacao.put("sql", truncar(sql));
+        sinalizacao.putAll(detalhes);
+        synchronized (sinalizacoes) {
+            sinalizacoes.addFirst(sinalizacao);
+            while (sinalizacoes.size() > maximoSinalizacoes) {
+                sinalizacoes.removeLast();
+            }
+        }
+    }
+
+    private EstatisticaMetodo estatistica(String metodo) {
+        return metodos.computeIfAbsent(metodo, m -> new EstatisticaMetodo());
+    }
+
+    private static String truncar(String sql) {
+        if (sql == null) {
+            return null;
+        }
+        return sql.length() > TAMANHO_MAXIMO_SQL ? sql.substring(0, TAMANHO_MAXIMO_SQL) + "..." : sql;
+    }
+}
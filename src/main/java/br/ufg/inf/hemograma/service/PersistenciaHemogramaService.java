@@ -0,0 +1,32 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.Desvio;
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.Paciente;
+import br.ufg.inf.hemograma.repository.HemogramaRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Serviço responsável por gravar um hemograma analisado em uma única transação:
+ * hemograma, parâmetros e desvios (em cascata) e os rollups horários de desvios.
+ */
+@Service
+public class PersistenciaHemogramaService {
+
+    @Autowired
+    private HemogramaRepository hemogramaRepository;
+
+    @Autowired
+    private RollupDesvioService rollupDesvioService;
+
+    @Transactional
+    public Hemograma persistir(Hemograma hemograma, List<Desvio> desvios, Paciente paciente) {
+        Hemograma salvo = hemogramaRepository.save(hemograma);
+        rollupDesvioService.registrar(salvo, desvios, paciente.getEstado(), 1);
+        return salvo;
+    }
+}
@@ -0,0 +1,332 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.AchadoComposto;
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.Paciente;
+import br.ufg.inf.hemograma.model.ParametroHemograma;
+import br.ufg.inf.hemograma.model.enums.FaixaEtaria;
+import br.ufg.inf.hemograma.model.enums.SeveridadeDesvio;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serviço que mantém, em memória, a distribuição populacional de cada
+ * parâmetro por sexo, faixa etária e estado, com sketches de quantis
+ * mescláveis ({@link SketchQuantis}) atualizados a cada hemograma gravado.
+ *
+ * Cada valor é registrado no estrato exato (tipo × sexo × faixa × estado,
+ * pela sigla da unidade federativa; ver {@link UnidadesFederativas}) e
+ * no estrato sem estado, de modo que a consulta sem região e a avaliação de
+ * pacientes de estados com poucas amostras não precisam mesclar todos os
+ * estados. Consultas com sexo ou faixa em aberto mesclam os estratos.
+ *
+ * Os sketches são gravados periodicamente em arquivo e recarregados na
+ * inicialização. Opcionalmente, parâmetros dentro da faixa de referência
+ * fixa, mas fora dos percentis populacionais do estrato do paciente, geram
+ * um achado.
+ */
+@Service
+public class QuantisPopulacionaisService {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuantisPopulacionaisService.class);
+
+    private static final int MAGICO = 0x4851544C; // "HQTL"
+    private static final short VERSAO = 1;
+    private static final String SEXO_DESCONHECIDO = "desconhecido";
+    private static final double[] QUANTIS_CONSULTA = {0.01, 0.05, 0.50, 0.95, 0.99};
+
+    /**
+     * Estrato da população. Estado nulo agrega todos os estados.
+     */
+    record Estrato(TipoParametro tipo, String sexo, FaixaEtaria faixa, String estado) {
+    }
+
+    @Value("${app.hemograma.quantis.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${app.hemograma.quantis.precisao-relativa:0.01}")
+    private double precisaoRelativa;
+
+    @Value("${app.hemograma.quantis.maximo-baldes:2048}")
+    private int maximoBaldes;
+
+    @Value("${app.hemograma.quantis.arquivo:./data/quantis/quantis.bin}")
+    private String arquivo;
+
+    @Value("${app.hemograma.quantis.sinalizacao.habilitado:false}")
+    private boolean sinalizacaoHabilitada;
+
+    @Value("${app.hemograma.quantis.sinalizacao.percentil-inferior:1}")
+    private double percentilInferior;
+
+    @Value("${app.hemograma.quantis.sinalizacao.percentil-superior:99}")
+    private double percentilSuperior;
+
+    @Value("${app.hemograma.quantis.sinalizacao.minimo-amostras:1000}")
+    private long minimoAmostras;
+
+    private final Map<Estrato, SketchQuantis> sketches = new ConcurrentHashMap<>();
+    private volatile boolean alterado;
+
+    @PostConstruct
+    public void iniciar() {
+        if (!habilitado) {
+            return;
+        }
+        Path caminho = Paths.get(arquivo);
+        if (!Files.exists(caminho)) {
+            return;
+        }
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(caminho)))) {
+            if (entrada.readInt() != MAGICO || entrada.readShort() != VERSAO) {
+                throw new IOException("formato desconhecido");
+            }
+            if (entrada.readDouble() != precisaoRelativa) {
+                logger.warn("Snapshot de quantis com outra precisão relativa descartado");
+                return;
+            }
+            int quantidade = entrada.readInt();
+            for (int i = 0; i < quantidade; i++) {
+                TipoParametro tipo = TipoParametro.valueOf(entrada.readUTF());
+                String sexo = entrada.readUTF();
+                FaixaEtaria faixa = FaixaEtaria.valueOf(entrada.readUTF());
+                String estado = entrada.readBoolean() ? entrada.readUTF() : null;
+                SketchQuantis sketch = SketchQuantis.ler(entrada, precisaoRelativa, maximoBaldes);
+                if (estado != null) {
+                    // Snapshots anteriores usavam o estado como recebido ("Goiás", "go")
+                    estado = UnidadesFederativas.sigla(estado);
+                    if (estado == null) {
+                        continue;
+                    }
+                }
+                sketch(new Estrato(tipo, sexo, faixa, estado)).mesclar(sketch);
+            }
+            logger.info("📈 {} distribuição(ões) populacional(is) carregada(s) de {}", quantidade, caminho);
+        } catch (Exception e) {
+            logger.error("Erro ao carregar o snapshot de quantis {}: {}", caminho, e.getMessage());
+            sketches.clear();
+        }
+    }
+
+    @PreDestroy
+    public void parar() {
+        gravarSnapshot();
+    }
+
+    /**
+     * Registra os parâmetros de um hemograma gravado nas distribuições.
+     */
+    public void registrar(Hemograma hemograma, Paciente paciente) {
+        contabilizar(hemograma, paciente, false);
+    }
+
+    /**
+     * Retira das distribuições os parâmetros registrados para a versão
+     * anterior de um hemograma corrigido.
+     */
+    public void retirar(Hemograma hemograma, Paciente paciente) {
+        contabilizar(hemograma, paciente, true);
+    }
+
+    private void contabilizar(Hemograma hemograma, Paciente paciente, boolean retirar) {
+        if (!habilitado) {
+            return;
+        }
+        String sexo = sexo(paciente);
+        FaixaEtaria faixa = faixaEtaria(hemograma, paciente);
+        String estado = paciente != null ? UnidadesFederativas.sigla(paciente.getEstado()) : null;
+
+        for (ParametroHemograma parametro : hemograma.listarParametros()) {
+            if (parametro.getValor() == null) {
+                continue;
+            }
+            TipoParametro tipo = parametro.getTipoParametro();
+            contabilizar(sketch(new Estrato(tipo, sexo, faixa, null)), parametro.getValor(), retirar);
+            if (estado != null) {
+                contabilizar(sketch(new Estrato(tipo, sexo, faixa, estado)), parametro.getValor(), retirar);
+            }
+        }
+        alterado = true;
+    }
+
+    /**
+     * Percentis populacionais de um parâmetro. Filtros nulos mesclam todos os estratos.
+     *
+     * @return total de amostras e p1, p5, p50, p95 e p99
+     */
+    public Map<String, Object> consultar(TipoParametro tipo, String sexo, FaixaEtaria faixa, String estado) {
+        String sigla = estado != null ? UnidadesFederativas.sigla(estado) : null;
+        boolean estadoDesconhecido = estado != null && sigla == null;
+        SketchQuantis mesclado = novoSketch();
+        for (Map.Entry<Estrato, SketchQuantis> entry : sketches.entrySet()) {
+            Estrato estrato = entry.getKey();
+            if (estrato.tipo() == tipo
+                    && (sexo == null || sexo.equalsIgnoreCase(estrato.sexo()))
+                    && (faixa == null || faixa == estrato.faixa())
+                    && !estadoDesconhecido && Objects.equals(sigla, estrato.estado())) {
+                mesclado.mesclar(entry.getValue());
+            }
+        }
+
+        Map<String, Object> resultado = new LinkedHashMap<>();
+        resultado.put("tipoParametro", tipo);
+        resultado.put("sexo", sexo);
+        resultado.put("faixaEtaria", faixa);
+        resultado.put("estado", sigla != null ? sigla : estado);
+        resultado.put("amostras", mesclado.getTotal());
+        if (mesclado.getTotal() > 0) {
+            Map<String, Double> percentis = new LinkedHashMap<>();
+            for (double q : QUANTIS_CONSULTA) {
+                percentis.put("p" + Math.round(q * 100), mesclado.quantil(q));
+            }
+            resultado.put("percentis", percentis);
+        }
+        resultado.put("precisaoRelativa", precisaoRelativa);
+        return resultado;
+    }
+
+    /**
+     * Achados para parâmetros fora dos percentis populacionais do estrato do
+     * paciente (estado, ou todos os estados se o estado tiver poucas
+     * amostras). Vazio se a sinalização estiver desabilitada.
+     */
+    public List<AchadoComposto> avaliar(Hemograma hemograma, Paciente paciente) {
+        if (!habilitado || !sinalizacaoHabilitada) {
+            return List.of();
+        }
+
+        String sexo = sexo(paciente);
+        FaixaEtaria faixa = faixaEtaria(hemograma, paciente);
+        String estado = paciente != null ? UnidadesFederativas.sigla(paciente.getEstado()) : null;
+
+        List<AchadoComposto> achados = new ArrayList<>();
+        for (ParametroHemograma parametro : hemograma.listarParametros()) {
+            Double valor = parametro.getValor();
+            TipoParametro tipo = parametro.getTipoParametro();
+            SketchQuantis sketch = estado != null ? sketches.get(new Estrato(tipo, sexo, faixa, estado)) : null;
+            if (sketch == null || sketch.getTotal() < minimoAmostras) {
+                sketch = sketches.get(new Estrato(tipo, sexo, faixa, null));
+            }
+            if (valor == null || sketch == null || sketch.getTotal() < minimoAmostras) {
+                continue;
+            }
+
+            double inferior = sketch.quantil(percentilInferior / 100);
+            double superior = sketch.quantil(percentilSuperior / 100);
+            if (valor >= inferior && valor <= superior) {
+                continue;
+            }
+
+            boolean abaixo = valor < inferior;
+            String descricao = String.format("📊 %s %s (%.2f %s) do p%s populacional (%.2f) para %s, %s, %s (n=%d)",
+                    tipo.getNome(), abaixo ? "abaixo" : "acima", valor,
+                    parametro.getUnidade() != null ? parametro.getUnidade() : "",
+                    formatarPercentil(abaixo ? percentilInferior : percentilSuperior),
+                    abaixo ? inferior : superior, sexo, faixa, estado != null ? estado : "todos os estados",
+                    sketch.getTotal());
+            achados.add(new AchadoComposto("PERCENTIL_POPULACIONAL_" + tipo.name(),
+                    tipo.getNome() + " fora da faixa populacional", SeveridadeDesvio.LEVE, descricao));
+        }
+        return achados;
+    }
+
+    /**
+     * Grava os sketches em arquivo (temporário + renomeação atômica), se houve registros desde a última gravação.
+     */
+    @Scheduled(fixedDelayString = "${app.hemograma.quantis.intervalo-snapshot-ms:300000}")
+    public void gravarSnapshot() {
+        if (!habilitado || !alterado) {
+            return;
+        }
+        alterado = false;
+
+        Path destino = Paths.get(arquivo);
+        Path temporario = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(destino.toAbsolutePath().getParent());
+            try (FileOutputStream arquivoSaida = new FileOutputStream(temporario.toFile());
+                 DataOutputStream saida = new DataOutputStream(new BufferedOutputStream(arquivoSaida))) {
+                List<Map.Entry<Estrato, SketchQuantis>> entradas = new ArrayList<>(sketches.entrySet());
+                saida.writeInt(MAGICO);
+                saida.writeShort(VERSAO);
+                saida.writeDouble(precisaoRelativa);
+                saida.writeInt(entradas.size());
+                for (Map.Entry<Estrato, SketchQuantis> entry : entradas) {
+                    Estrato estrato = entry.getKey();
+                    saida.writeUTF(estrato.tipo().name());
+                    saida.writeUTF(estrato.sexo());
+                    saida.writeUTF(estrato.faixa().name());
+                    saida.writeBoolean(estrato.estado() != null);
+                    if (estrato.estado() != null) {
+                        saida.writeUTF(estrato.estado());
+                    }
+                    entry.getValue().escrever(saida);
+                }
+                saida.flush();
+                arquivoSaida.getFD().sync();
+            }
+            Files.move(temporario, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Snapshot de {} distribuição(ões) populacional(is) gravado", sketches.size());
+        } catch (IOException e) {
+            alterado = true;
+            logger.error("Erro ao gravar o snapshot de quantis {}: {}", destino, e.getMessage());
+        }
+    }
+
+    private static void contabilizar(SketchQuantis sketch, double valor, boolean retirar) {
+        if (retirar) {
+            sketch.remover(valor);
+        } else {
+            sketch.adicionar(valor);
+        }
+    }
+
+    private SketchQuantis sketch(Estrato estrato) {
+        return sketches.computeIfAbsent(estrato, e -> novoSketch());
+    }
+
+    private SketchQuantis novoSketch() {
+        return new SketchQuantis(precisaoRelativa, maximoBaldes);
+    }
+
+    private static String sexo(Paciente paciente) {
+        return paciente != null && paciente.getGenero() != null
+                ? paciente.getGenero().toLowerCase() : SEXO_DESCONHECIDO;
+    }
+
+    /**
+     * Faixa etária na data da coleta (ou do cadastro).
+     */
+    private static FaixaEtaria faixaEtaria(Hemograma hemograma, Paciente paciente) {
+        if (paciente == null || paciente.getDataNascimento() == null) {
+            return FaixaEtaria.DESCONHECIDA;
+        }
+        LocalDate referencia = hemograma.getDataColeta() != null
+                ? hemograma.getDataColeta().toLocalDate() : hemograma.getDataCadastro().toLocalDate();
+        return FaixaEtaria.porIdade(Period.between(paciente.getDataNascimento(), referencia).getYears());
+    }
+
+    private static String formatarPercentil(double percentil) {
+        return percentil == Math.rint(percentil) ? String.valueOf((long) percentil) : String.valueOf(percentil);
+    }
+}
@@ -0,0 +1,643 @@
+package br.ufg.inf.hemograma.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rastreamento ponta a ponta do processamento de uma notificação, do
+ * recebimento ao commit dos desvios.
+ *
+ * O trecho (span) corrente fica em um ThreadLocal; para atravessar as filas
+ * (ingestão por paciente, gravação em lote, executor assíncrono) o contexto é
+ * capturado com {@link #capturar()}, viaja junto com a tarefa e é retomado
+ * na thread consumidora com {@link #retomar(Contexto, String)}. Um rastro
+ * termina quando não há mais trechos abertos nem contextos capturados.
+ *
+ * A amostragem é feita no fim do rastro: só são exportados os rastros mais
+ * lentos que {@code limite-lento-ms}, os que terminaram com erro e uma
+ * fração opcional dos demais. Os exportados ficam em memória (consulta em
+ * /diagnostico/rastros) e são gravados em arquivo no formato JSON do OTLP,
+ * uma requisição de exportação por linha, legível pelo receptor
+ * {@code otlpjsonfile} do OpenTelemetry Collector.
+ *
+ * Desabilitado, todas as operações retornam trechos e contextos vazios, sem
+ * alocação.
+ */
+@Service
+public class RastreamentoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RastreamentoService.class);
+
+    /** Tipos de trecho do OTLP (SpanKind). */
+    public static final int TIPO_INTERNO = 1;
+    public static final int TIPO_SERVIDOR = 2;
+
+    private static final String NOME_SERVICO = "hemograma-api";
+    private static final String NOME_ESCOPO = "br.ufg.inf.hemograma";
+
+    /** Origem comum para converter System.nanoTime() em nanossegundos desde a época. */
+    private static final long ORIGEM_EPOCA_NANOS = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    private static final long ORIGEM_NANO_TIME = System.nanoTime();
+
+    private static final Trecho VAZIO = new Trecho(null, null, null, 0, 0);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.hemograma.rastreamento.habilitado:false}")
+    private boolean habilitado;
+
+    @Value("${app.hemograma.rastreamento.limite-lento-ms:500}")
+    private long limiteLentoMs;
+
+    /** Fração dos rastros abaixo do limite que também é exportada. */
+    @Value("${app.hemograma.rastreamento.amostragem-normais:0.0}")
+    private double amostragemNormais;
+
+    @Value("${app.hemograma.rastreamento.maximo-rastros-abertos:10000}")
+    private int maximoRastrosAbertos;
+
+    @Value("${app.hemograma.rastreamento.maximo-trechos-por-rastro:256}")
+    private int maximoTrechosPorRastro;
+
+    @Value("${app.hemograma.rastreamento.rastros-recentes:50}")
+    private int maximoRecentes;
+
+    /** Arquivo OTLP/JSON; vazio mantém os rastros só em memória. */
+    @Value("${app.hemograma.rastreamento.arquivo:./data/rastros/rastros-otlp.jsonl}")
+    private String arquivo;
+
+    @Value("${app.hemograma.rastreamento.tamanho-maximo-arquivo-mb:100}")
+    private long tamanhoMaximoArquivoMb;
+
+    private final ThreadLocal<Trecho> trechoAtual = new ThreadLocal<>();
+    private final AtomicInteger rastrosAbertos = new AtomicInteger();
+    private final Deque<Rastro> recentes = new ArrayDeque<>();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private BlockingQueue<Rastro> filaExportacao;
+    private Thread threadExportadora;
+    private volatile boolean ativo;
+    private Counter exportados;
+    private Counter descartados;
+    private Counter recusados;
+
+    /**
+     * Um rastro: trechos concluídos e contagem de pendências (trechos abertos
+     * e contextos capturados). Os trechos podem vir de threads diferentes.
+     */
+    private final class Rastro {
+        private final String id = identificador(16);
+        private final List<Trecho> trechos = new ArrayList<>();
+        private final AtomicInteger pendencias = new AtomicInteger(1);
+        private volatile boolean erro;
+        private int truncados;
+
+        boolean reter() {
+            int atual;
+            do {
+                atual = pendencias.get();
+                if (atual == 0) {
+                    return false;
+                }
+            } while (!pendencias.compareAndSet(atual, atual + 1));
+            return true;
+        }
+
+        void liberar() {
+            if (pendencias.decrementAndGet() == 0) {
+                concluir(this);
+            }
+        }
+
+        synchronized void adicionar(Trecho trecho) {
+            if (trechos.size() < maximoTrechosPorRastro) {
+                trechos.add(trecho);
+            } else {
+                truncados++;
+            }
+        }
+
+        synchronized List<Trecho> copiarTrechos() {
+            return new ArrayList<>(trechos);
+        }
+
+        synchronized Trecho raiz() {
+            return trechos.stream().filter(trecho -> trecho.idPai == null).findFirst()
+                    .orElse(trechos.isEmpty() ? null : trechos.get(0));
+        }
+
+        synchronized long inicio() {
+            return trechos.stream().mapToLong(trecho -> trecho.inicio).min().orElse(0);
+        }
+
+        synchronized long fim() {
+            return trechos.stream().mapToLong(trecho -> trecho.fim).max().orElse(0);
+        }
+    }
+
+    /**
+     * Trecho de um rastro. Deve ser fechado na thread em que foi aberto,
+     * de preferência com try-with-resources.
+     */
+    public static final class Trecho implements AutoCloseable {
+        private final Rastro rastro;
+        private final RastreamentoService servico;
+        private final String id;
+        private final String idPai;
+        private String nome;
+        private int tipo = TIPO_INTERNO;
+        private final long inicio;
+        private long fim;
+        private long marca;
+        private Map<String, Object> atributos;
+        private String erro;
+        private Trecho anterior;
+
+        private Trecho(RastreamentoService servico, Rastro rastro, String idPai, String nome, long inicio) {
+            this.servico = servico;
+            this.rastro = rastro;
+            this.id = rastro != null ? identificador(8) : null;
+            this.idPai = idPai;
+            this.nome = nome;
+            this.inicio = inicio;
+            this.marca = inicio;
+        }
+
+        private Trecho(Rastro rastro, String idPai, String nome, long inicio, long fim) {
+            this(null, rastro, idPai, nome, inicio);
+            this.fim = fim;
+        }
+
+        public boolean isGravando() {
+            return rastro != null;
+        }
+
+        public Trecho nome(String nome) {
+            if (rastro != null) {
+                this.nome = nome;
+            }
+            return this;
+        }
+
+        public Trecho tipo(int tipo) {
+            if (rastro != null) {
+                this.tipo = tipo;
+            }
+            return this;
+        }
+
+        public Trecho atributo(String chave, Object valor) {
+            if (rastro != null && valor != null) {
+                if (atributos == null) {
+                    atributos = new LinkedHashMap<>();
+                }
+                atributos.put(chave, valor);
+            }
+            return this;
+        }
+
+        public Trecho erro(Throwable t) {
+            return erro(t.getClass().getSimpleName() + ": " + t.getMessage());
+        }
+
+        public Trecho erro(String mensagem) {
+            if (rastro != null) {
+                erro = mensagem;
+                rastro.erro = true;
+            }
+            return this;
+        }
+
+        /**
+         * Registra como trecho filho, já concluído, o intervalo desde a
+         * marca anterior (ou o início deste trecho) até agora. Usado para
+         * etapas sequenciais já cronometradas.
+         */
+        public void etapa(String nomeEtapa) {
+            if (rastro == null) {
+                return;
+            }
+            long agora = System.nanoTime();
+            rastro.adicionar(new Trecho(rastro, id, nomeEtapa, marca, agora));
+            marca = agora;
+        }
+
+        @Override
+        public void close() {
+            if (rastro == null || fim != 0) {
+                return;
+            }
+            fim = System.nanoTime();
+            if (servico.trechoAtual.get() == this) {
+                if (anterior != null) {
+                    servico.trechoAtual.set(anterior);
+                } else {
+                    servico.trechoAtual.remove();
+                }
+            }
+            rastro.adicionar(this);
+            rastro.liberar();
+        }
+    }
+
+    /**
+     * Contexto capturado para continuar o rastro em outra thread. Mantém o
+     * rastro aberto até ser fechado.
+     */
+    public static final class Contexto implements AutoCloseable {
+        private final Rastro rastro;
+        private final String idTrecho;
+        private final AtomicBoolean fechado = new AtomicBoolean();
+
+        private Contexto(Rastro rastro, String idTrecho) {
+            this.rastro = rastro;
+            this.idTrecho = idTrecho;
+        }
+
+        @Override
+        public void close() {
+            if (fechado.compareAndSet(false, true)) {
+                rastro.liberar();
+            }
+        }
+    }
+
+    @PostConstruct
+    public void iniciar() {
+        if (!habilitado) {
+            return;
+        }
+
+        exportados = contador("exportado");
+        descartados = contador("descartado");
+        recusados = contador("recusado");
+        Gauge.builder("hemograma.rastreamento.abertos", rastrosAbertos, AtomicInteger::get)
+                .description("Rastros em andamento")
+                .register(meterRegistry);
+
+        if (!arquivo.isBlank()) {
+            filaExportacao = new ArrayBlockingQueue<>(1000);
+            ativo = true;
+            threadExportadora = new Thread(this::exportar, "exportador-rastros");
+            threadExportadora.setDaemon(true);
+            threadExportadora.start();
+        }
+
+        logger.info("🧭 Rastreamento habilitado: rastros acima de {} ms{}", limiteLentoMs,
+                arquivo.isBlank() ? " (somente em memória)" : " exportados em " + arquivo);
+    }
+
+    @PreDestroy
+    public void parar() throws InterruptedException {
+        if (threadExportadora != null) {
+            ativo = false;
+            threadExportadora.join(TimeUnit.SECONDS.toMillis(5));
+        }
+    }
+
+    public boolean isHabilitado() {
+        return habilitado;
+    }
+
+    /**
+     * Abre o trecho raiz de um novo rastro, ou um filho do trecho corrente
+     * se já houver um na thread.
+     */
+    public Trecho iniciarRastro(String nome) {
+        if (!habilitado) {
+            return VAZIO;
+        }
+        if (trechoAtual.get() != null) {
+            return iniciar(nome);
+        }
+        if (rastrosAbertos.incrementAndGet() > maximoRastrosAbertos) {
+            rastrosAbertos.decrementAndGet();
+            recusados.increment();
+            return VAZIO;
+        }
+        return abrir(new Rastro(), null, nome);
+    }
+
+    /**
+     * Abre um trecho filho do trecho corrente. Sem trecho corrente (fora de
+     * um rastro), retorna um trecho vazio.
+     */
+    public Trecho iniciar(String nome) {
+        Trecho pai = habilitado ? trechoAtual.get() : null;
+        if (pai == null || !pai.rastro.reter()) {
+            return VAZIO;
+        }
+        return abrir(pai.rastro, pai.id, nome);
+    }
+
+    /**
+     * Registra um trecho filho do corrente, já concluído, de {@code inicio}
+     * (System.nanoTime()) até agora.
+     */
+    public void registrarTrecho(String nome, long inicio) {
+        Trecho pai = habilitado ? trechoAtual.get() : null;
+        if (pai != null) {
+            pai.rastro.adicionar(new Trecho(pai.rastro, pai.id, nome, inicio, System.nanoTime()));
+        }
+    }
+
+    /**
+     * Registra um trecho, já concluído, no rastro do contexto. Os atributos
+     * devem ser definidos antes de o contexto ser fechado.
+     *
+     * @return Trecho registrado (vazio sem contexto)
+     */
+    public Trecho registrarTrecho(Contexto contexto, String nome, long inicio) {
+        if (contexto == null) {
+            return VAZIO;
+        }
+        Trecho trecho = new Trecho(contexto.rastro, contexto.idTrecho, nome, inicio, System.nanoTime());
+        contexto.rastro.adicionar(trecho);
+        return trecho;
+    }
+
+    /**
+     * Captura o trecho corrente para continuar o rastro em outra thread.
+     *
+     * @return Contexto, a ser fechado quando a tarefa terminar, ou null fora de um rastro
+     */
+    public Contexto capturar() {
+        Trecho atual = habilitado ? trechoAtual.get() : null;
+        if (atual == null || !atual.rastro.reter()) {
+            return null;
+        }
+        return new Contexto(atual.rastro, atual.id);
+    }
+
+    /**
+     * Abre, na thread corrente, um trecho filho do trecho capturado.
+     */
+    public Trecho retomar(Contexto contexto, String nome) {
+        if (contexto == null || !contexto.rastro.reter()) {
+            return VAZIO;
+        }
+        return abrir(contexto.rastro, contexto.idTrecho, nome);
+    }
+
+    /**
+     * Envolve a tarefa para que ela continue, em outra thread, o rastro da
+     * thread que a submeteu (usado como TaskDecorator do executor assíncrono).
+     */
+    public Runnable propagar(Runnable tarefa) {
+        Contexto contexto = capturar();
+        if (contexto == null) {
+            return tarefa;
+        }
+        return () -> {
+            try (contexto; Trecho trecho = retomar(contexto, "tarefa-assincrona")) {
+                trecho.atributo("thread.name", Thread.currentThread().getName());
+                tarefa.run();
+            }
+        };
+    }
+
+    private Trecho abrir(Rastro rastro, String idPai, String nome) {
+        Trecho trecho = new Trecho(this, rastro, idPai, nome, System.nanoTime());
+        trecho.anterior = trechoAtual.get();
+        trechoAtual.set(trecho);
+        return trecho;
+    }
+
+    /**
+     * Fim do rastro: decide se ele é exportado.
+     */
+    private void concluir(Rastro rastro) {
+        rastrosAbertos.decrementAndGet();
+
+        long duracaoMs = TimeUnit.NANOSECONDS.toMillis(rastro.fim() - rastro.inicio());
+        boolean manter = rastro.erro || duracaoMs >= limiteLentoMs
+                || (amostragemNormais > 0 && ThreadLocalRandom.current().nextDouble() < amostragemNormais);
+        if (!manter) {
+            descartados.increment();
+            return;
+        }
+
+        exportados.increment();
+        synchronized (recentes) {
+            recentes.addFirst(rastro);
+            while (recentes.size() > maximoRecentes) {
+                recentes.removeLast();
+            }
+        }
+        if (filaExportacao != null && !filaExportacao.offer(rastro)) {
+            logger.warn("Fila de exportação de rastros cheia; rastro {} só ficará em memória", rastro.id);
+        }
+    }
+
+    /**
+     * Rastros exportados mais recentes, com os trechos em ordem de início.
+     */
+    public Map<String, Object> relatorio() {
+        Map<String, Object> relatorio = new LinkedHashMap<>();
+        relatorio.put("habilitado", habilitado);
+        if (!habilitado) {
+            return relatorio;
+        }
+
+        relatorio.put("limiteLentoMs", limiteLentoMs);
+        relatorio.put("abertos", rastrosAbertos.get());
+        relatorio.put("exportados", (long) exportados.count());
+        relatorio.put("descartados", (long) descartados.count());
+        relatorio.put("recusados", (long) recusados.count());
+
+        List<Rastro> copia;
+        synchronized (recentes) {
+            copia = new ArrayList<>(recentes);
+        }
+        List<Map<String, Object>> rastros = new ArrayList<>();
+        for (Rastro rastro : copia) {
+            rastros.add(resumir(rastro));
+        }
+        relatorio.put("rastros", rastros);
+        return relatorio;
+    }
+
+    private Map<String, Object> resumir(Rastro rastro) {
+        long inicio = rastro.inicio();
+        Trecho raiz = rastro.raiz();
+
+        Map<String, Object> resumo = new LinkedHashMap<>();
+        resumo.put("traceId", rastro.id);
+        resumo.put("raiz", raiz != null ? raiz.nome : null);
+        resumo.put("inicio", LocalDateTime.ofInstant(Instant.ofEpochMilli(
+                TimeUnit.NANOSECONDS.toMillis(epocaNanos(inicio))), ZoneId.systemDefault()).toString());
+        resumo.put("duracaoMs", milissegundos(rastro.fim() - inicio));
+        resumo.put("erro", rastro.erro);
+
+        List<Trecho> trechos = rastro.copiarTrechos();
+        trechos.sort(Comparator.comparingLong(trecho -> trecho.inicio));
+        List<Map<String, Object>> itens = new ArrayList<>();
+        for (Trecho trecho : trechos) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("nome", trecho.nome);
+            item.put("spanId", trecho.id);
+            item.put("parentSpanId", trecho.idPai);
+            item.put("inicioMs", milissegundos(trecho.inicio - inicio));
+            item.put("duracaoMs", milissegundos(trecho.fim - trecho.inicio));
+            if (trecho.atributos != null) {
+                item.put("atributos", trecho.atributos);
+            }
+            if (trecho.erro != null) {
+                item.put("erro", trecho.erro);
+            }
+            itens.add(item);
+        }
+        resumo.put("trechos", itens);
+        if (rastro.truncados > 0) {
+            resumo.put("trechosDescartados", rastro.truncados);
+        }
+        return resumo;
+    }
+
+    private void exportar() {
+        Path caminho = Path.of(arquivo);
+        List<Rastro> lote = new ArrayList<>();
+        while (ativo || !filaExportacao.isEmpty()) {
+            try {
+                Rastro primeiro = filaExportacao.poll(500, TimeUnit.MILLISECONDS);
+                if (primeiro == null) {
+                    continue;
+                }
+                lote.add(primeiro);
+                filaExportacao.drainTo(lote);
+
+                if (caminho.getParent() != null) {
+                    Files.createDirectories(caminho.getParent());
+                }
+                rotacionarSeNecessario(caminho);
+                try (BufferedWriter writer = Files.newBufferedWriter(caminho, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for (Rastro rastro : lote) {
+                        writer.write(objectMapper.writeValueAsString(otlp(rastro)));
+                        writer.newLine();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (IOException e) {
+                logger.error("Erro ao exportar rastros para {}: {}", arquivo, e.getMessage());
+            } finally {
+                lote.clear();
+            }
+        }
+    }
+
+    /**
+     * Ao atingir o tamanho máximo, o arquivo passa a ser o ".1" (substituindo o anterior).
+     */
+    private void rotacionarSeNecessario(Path caminho) throws IOException {
+        if (Files.exists(caminho) && Files.size(caminho) >= tamanhoMaximoArquivoMb * 1024 * 1024) {
+            Files.move(caminho, caminho.resolveSibling(caminho.getFileName() + ".1"),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Rastro no formato ExportTraceServiceRequest do OTLP/JSON.
+     */
+    private Map<String, Object> otlp(Rastro rastro) {
+        List<Map<String, Object>> spans = new ArrayList<>();
+        for (Trecho trecho : rastro.copiarTrechos()) {
+            Map<String, Object> span = new LinkedHashMap<>();
+            span.put("traceId", rastro.id);
+            span.put("spanId", trecho.id);
+            if (trecho.idPai != null) {
+                span.put("parentSpanId", trecho.idPai);
+            }
+            span.put("name", trecho.nome);
+            span.put("kind", trecho.tipo);
+            span.put("startTimeUnixNano", String.valueOf(epocaNanos(trecho.inicio)));
+            span.put("endTimeUnixNano", String.valueOf(epocaNanos(trecho.fim)));
+            if (trecho.atributos != null) {
+                span.put("attributes", atributosOtlp(trecho.atributos));
+            }
+            if (trecho.erro != null) {
+                span.put("status", Map.of("code", 2, "message", trecho.erro));
+            }
+            spans.add(span);
+        }
+
+        Map<String, Object> recurso = Map.of("attributes", atributosOtlp(Map.of("service.name", NOME_SERVICO)));
+        Map<String, Object> escopo = Map.of("scope", Map.of("name", NOME_ESCOPO), "spans", spans);
+        return Map.of("resourceSpans", List.of(Map.of("resource", recurso, "scopeSpans", List.of(escopo))));
+    }
+
+    private static List<Map<String, Object>> atributosOtlp(Map<String, Object> atributos) {
+        List<Map<String, Object>> lista = new ArrayList<>(atributos.size());
+        for (Map.Entry<String, Object> entry : atributos.entrySet()) {
+            Object valor = entry.getValue();
+            Map<String, Object> valorOtlp;
+            if (valor instanceof Integer || valor instanceof Long) {
+                valorOtlp = Map.of("intValue", valor.toString());
+            } else if (valor instanceof Number numero) {
+                valorOtlp = Map.of("doubleValue", numero.doubleValue());
+            } else if (valor instanceof Boolean booleano) {
+                valorOtlp = Map.of("boolValue", booleano);
+            } else {
+                valorOtlp = Map.of("stringValue", valor.toString());
+            }
+            lista.add(Map.of("key", entry.getKey(), "value", valorOtlp));
+        }
+        return lista;
+    }
+
+    private Counter contador(String resultado) {
+        return Counter.builder("hemograma.rastreamento.rastros")
+                .description("Rastros concluídos, por decisão da amostragem")
+                .tag("resultado", resultado)
+                .register(meterRegistry);
+    }
+
+    private static long epocaNanos(long nanoTime) {
+        return ORIGEM_EPOCA_NANOS + (nanoTime - ORIGEM_NANO_TIME);
+    }
+
+    private static double milissegundos(long nanos) {
+        return Math.round(nanos / 10_000.0) / 100.0;
+    }
+
+    /** Identificador hexadecimal aleatório com o número de bytes indicado. */
+    private static String identificador(int bytes) {
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        StringBuilder texto = new StringBuilder(bytes * 2);
+        for (int i = 0; i < bytes; i += 8) {
+            String parte = Long.toHexString(aleatorio.nextLong() | Long.MIN_VALUE);
+            texto.append(parte, 0, Math.min(16, (bytes - i) * 2));
+        }
+        return texto.toString();
+    }
+}
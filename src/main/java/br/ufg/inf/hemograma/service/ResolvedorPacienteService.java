@@ -0,0 +1,214 @@
+package br.ufg.inf.hemograma.service;
+
+import ca.uhn.fhir.rest.client.api.IGenericClient;
+import ca.uhn.fhir.rest.client.api.ServerValidationModeEnum;
+import ca.uhn.fhir.rest.gclient.TokenClientParam;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.hl7.fhir.r4.model.Bundle;
+import org.hl7.fhir.r4.model.Patient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Serviço que busca sob demanda, no servidor FHIR, os dados demográficos de
+ * pacientes referenciados por Observations mas ainda não recebidos.
+ *
+ * Para não sobrecarregar o HAPI-FHIR em rajadas:
+ * - consultas concorrentes ao mesmo paciente compartilham a mesma busca;
+ * - as buscas pendentes são agrupadas a cada janela em um único
+ *   {@code Patient?_id=a,b,c};
+ * - o resultado (inclusive "não encontrado") fica em cache por um TTL.
+ *
+ * Desabilitado por padrão: {@link #aguardarResolucao} bloqueia a thread da
+ * faixa que processa a notificação por até {@code prazo-ms}, atrasando os
+ * demais pacientes da faixa.
+ */
+@Service
+public class ResolvedorPacienteService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResolvedorPacienteService.class);
+
+    private static final String PREFIXO_REFERENCIA = "Patient/";
+
+    @Autowired
+    private FhirParserService fhirParserService;
+
+    @Autowired
+    private PacienteService pacienteService;
+
+    @Value("${app.hemograma.fhir.server-url}")
+    private String fhirServerUrl;
+
+    @Value("${app.hemograma.fhir.resolucao-paciente.habilitada:false}")
+    private boolean habilitada;
+
+    @Value("${app.hemograma.fhir.resolucao-paciente.janela-ms:5}")
+    private long janelaMs;
+
+    @Value("${app.hemograma.fhir.resolucao-paciente.tamanho-lote:50}")
+    private int tamanhoLote;
+
+    @Value("${app.hemograma.fhir.resolucao-paciente.ttl-segundos:600}")
+    private long ttlSegundos;
+
+    @Value("${app.hemograma.fhir.resolucao-paciente.prazo-ms:300}")
+    private long prazoMs;
+
+    private final Map<String, CompletableFuture<Boolean>> emAndamento = new ConcurrentHashMap<>();
+    private final Map<String, Long> cacheResolvidos = new ConcurrentHashMap<>();
+    private final Queue<String> pendentes = new ConcurrentLinkedQueue<>();
+
+    private IGenericClient client;
+    private ScheduledExecutorService agendador;
+
+    @PostConstruct
+    public void iniciar() {
+        if (!habilitada) {
+            return;
+        }
+
+        fhirParserService.getFhirContext().getRestfulClientFactory()
+                .setServerValidationMode(ServerValidationModeEnum.NEVER);
+        client = fhirParserService.getFhirContext().newRestfulGenericClient(fhirServerUrl);
+
+        agendador = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "resolvedor-paciente");
+            thread.setDaemon(true);
+            return thread;
+        });
+        agendador.scheduleWithFixedDelay(this::despachar, janelaMs, janelaMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void parar() {
+        if (agendador != null) {
+            agendador.shutdownNow();
+        }
+    }
+
+    /**
+     * Solicita a resolução de um paciente. Chamadas concorrentes para o mesmo
+     * ID recebem o mesmo future.
+     *
+     * @param fhirId Referência do paciente (ex: "Patient/123")
+     * @return Future concluído com true se o paciente foi encontrado e gravado
+     */
+    public CompletableFuture<Boolean> resolver(String fhirId) {
+        Long expiracao = cacheResolvidos.get(fhirId);
+        if (expiracao != null && expiracao > System.currentTimeMillis()) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        return emAndamento.computeIfAbsent(fhirId, id -> {
+            pendentes.add(id);
+            return new CompletableFuture<>();
+        });
+    }
+
+    /**
+     * Resolve o paciente aguardando no máximo o prazo configurado.
+     *
+     * @param fhirId Referência do paciente (ex: "Patient/123")
+     * @return true se os dados demográficos foram gravados dentro do prazo
+     */
+    public boolean aguardarResolucao(String fhirId) {
+        if (!habilitada || fhirId == null || !fhirId.startsWith(PREFIXO_REFERENCIA)) {
+            return false;
+        }
+
+        try {
+            return resolver(fhirId).get(prazoMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.debug("Prazo de resolução esgotado para {}; análise seguirá sem dados demográficos", fhirId);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    private void despachar() {
+        limparCacheExpirado();
+
+        List<String> lote = new ArrayList<>(tamanhoLote);
+        String fhirId;
+        while ((fhirId = pendentes.poll()) != null) {
+            lote.add(fhirId);
+            if (lote.size() == tamanhoLote) {
+                buscarLote(lote);
+                lote = new ArrayList<>(tamanhoLote);
+            }
+        }
+        if (!lote.isEmpty()) {
+            buscarLote(lote);
+        }
+    }
+
+    private void buscarLote(List<String> fhirIds) {
+        Set<String> encontrados = new HashSet<>();
+        boolean sucesso = false;
+
+        try {
+            List<String> ids = fhirIds.stream()
+                    .map(fhirId -> fhirId.substring(PREFIXO_REFERENCIA.length()))
+                    .toList();
+
+            Bundle bundle = client.search()
+                    .forResource(Patient.class)
+                    .where(new TokenClientParam("_id").exactly().codes(ids))
+                    .count(ids.size())
+                    .returnBundle(Bundle.class)
+                    .execute();
+
+            List<Patient> patients = new ArrayList<>();
+            for (Bundle.BundleEntryComponent entry : bundle.getEntry()) {
+                if (entry.getResource() instanceof Patient patient) {
+                    patients.add(patient);
+                    encontrados.add(PREFIXO_REFERENCIA + patient.getIdElement().getIdPart());
+                }
+            }
+
+            if (!patients.isEmpty()) {
+                try {
+                    pacienteService.upsertLote(patients);
+                } catch (DataIntegrityViolationException e) {
+                    // Paciente criado em paralelo (prazo esgotado); o novo upsert o atualiza
+                    pacienteService.upsertLote(patients);
+                }
+            }
+            sucesso = true;
+
+            logger.info("🔎 {} paciente(s) buscado(s) no servidor FHIR, {} encontrado(s)",
+                    fhirIds.size(), encontrados.size());
+
+        } catch (Exception e) {
+            logger.error("Erro ao buscar pacientes no servidor FHIR: {}", e.getMessage());
+        } finally {
+            long expiracao = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSegundos);
+            for (String fhirId : fhirIds) {
+                if (sucesso) {
+                    cacheResolvidos.put(fhirId, expiracao);
+                }
+                CompletableFuture<Boolean> future = emAndamento.remove(fhirId);
+                if (future != null) {
+                    future.complete(encontrados.contains(fhirId));
+                }
+            }
+        }
+    }
+
+    private void limparCacheExpirado() {
+        long agora = System.currentTimeMillis();
+        cacheResolvidos.entrySet().removeIf(entry -> entry.getValue() <= agora);
+    }
+}
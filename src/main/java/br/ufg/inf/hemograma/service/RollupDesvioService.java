@@ -0,0 +1,245 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.Desvio;
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.RollupDesvioHora;
+import br.ufg.inf.hemograma.model.enums.GranularidadeTemporal;
+import br.ufg.inf.hemograma.model.enums.SeveridadeDesvio;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import br.ufg.inf.hemograma.repository.DesvioRepository;
+import br.ufg.inf.hemograma.repository.RollupDesvioHoraRepository;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.DatabaseMetaData;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Serviço que mantém e consulta os rollups horários de desvios
+ * (hora × tipo de parâmetro × severidade × estado).
+ *
+ * Os incrementos ocorrem na mesma transação que grava os desvios, de modo que
+ * rollups e tabela desvios nunca divergem após um commit. Consultas de longos
+ * períodos ("casos críticos de anemia por semana em 2026") somam no máximo
+ * uma linha por hora e combinação, independentemente do volume de desvios.
+ *
+ * A região é a sigla da unidade federativa: nomes de estados (com ou sem
+ * acento) são convertidos para a sigla, e valores não reconhecidos são
+ * contabilizados como {@link RollupDesvioHora#REGIAO_DESCONHECIDA}.
+ */
+@Service
+public class RollupDesvioService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RollupDesvioService.class);
+
+    /**
+     * Cria a linha zerada da chave se ainda não existir, sem erro se outra
+     * transação a criou antes (PostgreSQL).
+     */
+    private static final String SQL_CRIAR_LINHA_POSTGRES =
+            "INSERT INTO rollup_desvios_hora (hora, tipo_parametro, severidade, regiao, quantidade) " +
+            "VALUES (?, ?, ?, ?, 0) ON CONFLICT (hora, tipo_parametro, severidade, regiao) DO NOTHING";
+
+    /**
+     * Equivalente em MERGE para o H2. Criações concorrentes da mesma chave
+     * ainda podem violar a unicidade, o que no H2 não desfaz a transação.
+     */
+    private static final String SQL_CRIAR_LINHA =
+            "MERGE INTO rollup_desvios_hora r USING (VALUES (CAST(? AS TIMESTAMP(6)), CAST(? AS VARCHAR(255)), " +
+            "CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(10)))) AS c (hora, tipo_parametro, severidade, regiao) " +
+            "ON r.hora = c.hora AND r.tipo_parametro = c.tipo_parametro " +
+            "AND r.severidade = c.severidade AND r.regiao = c.regiao " +
+            "WHEN NOT MATCHED THEN INSERT (hora, tipo_parametro, severidade, regiao, quantidade) " +
+            "VALUES (c.hora, c.tipo_parametro, c.severidade, c.regiao, 0)";
+
+    @Autowired
+    private RollupDesvioHoraRepository rollupRepository;
+
+    @Autowired
+    private DesvioRepository desvioRepository;
+
+    @Autowired
+    private ArquivamentoService arquivamentoService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private boolean postgres;
+
+    @PostConstruct
+    public void iniciar() {
+        try {
+            String produto = JdbcUtils.extractDatabaseMetaData(jdbcTemplate.getDataSource(),
+                    DatabaseMetaData::getDatabaseProductName);
+            postgres = "PostgreSQL".equalsIgnoreCase(produto);
+        } catch (Exception e) {
+            logger.warn("Não foi possível identificar o banco de dados: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Aplica os desvios de um hemograma aos rollups da transação corrente.
+     *
+     * @param hemograma Hemograma (fornece a data de coleta)
+     * @param desvios Desvios a contabilizar
+     * @param regiao Estado do paciente (nulo se desconhecido)
+     * @param sinal +1 para desvios novos, -1 para desvios removidos
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void registrar(Hemograma hemograma, Collection<Desvio> desvios, String regiao, int sinal) {
+        if (desvios.isEmpty()) {
+            return;
+        }
+
+        LocalDateTime referencia = hemograma.getDataColeta() != null
+                ? hemograma.getDataColeta() : hemograma.getDataCadastro();
+        LocalDateTime hora = referencia.truncatedTo(ChronoUnit.HOURS);
+        String chaveRegiao = UnidadesFederativas.normalizarRegiao(regiao);
+
+        // Mesma hora e região para todo o hemograma: agrupa só por tipo e severidade
+        Map<TipoParametro, Map<SeveridadeDesvio, Long>> contagens = new EnumMap<>(TipoParametro.class);
+        for (Desvio desvio : desvios) {
+            contagens.computeIfAbsent(desvio.getTipoParametro(), t -> new EnumMap<>(SeveridadeDesvio.class))
+                    .merge(desvio.getSeveridade(), 1L, Long::sum);
+        }
+
+        contagens.forEach((tipo, porSeveridade) -> porSeveridade.forEach((severidade, quantidade) -> {
+            long delta = sinal * quantidade;
+            if (rollupRepository.incrementar(hora, tipo, severidade, chaveRegiao, delta) == 0) {
+                garantirLinha(hora, tipo, severidade, chaveRegiao);
+                if (rollupRepository.incrementar(hora, tipo, severidade, chaveRegiao, delta) == 0) {
+                    // Desfaz a transação: o desvio não fica gravado sem a contagem
+                    throw new IllegalStateException(String.format(
+                            "Linha de rollup ausente após a criação: %s %s %s %s", hora, tipo, severidade, chaveRegiao));
+                }
+            }
+        }));
+    }
+
+    /**
+     * Cria a linha zerada da chave, se ainda não existir, na própria transação
+     * (e conexão) do chamador.
+     */
+    private void garantirLinha(LocalDateTime hora, TipoParametro tipo, SeveridadeDesvio severidade, String regiao) {
+        try {
+            jdbcTemplate.update(postgres ? SQL_CRIAR_LINHA_POSTGRES : SQL_CRIAR_LINHA,
+                    Timestamp.valueOf(hora), tipo.name(), severidade.name(), regiao);
+        } catch (DuplicateKeyException e) {
+            logger.debug("Linha de rollup criada em paralelo: {} {} {} {}", hora, tipo, severidade, regiao);
+        }
+    }
+
+    /**
+     * Soma os rollups de um intervalo, agrupando na granularidade pedida.
+     * Filtros nulos são ignorados.
+     *
+     * @return Um item por período com desvios, em ordem cronológica
+     */
+    @Transactional(readOnly = true)
+    public List<Map<String, Object>> consultar(LocalDateTime dataInicio, LocalDateTime dataFim,
+                                               GranularidadeTemporal granularidade,
+                                               TipoParametro tipoParametro,
+                                               SeveridadeDesvio severidade,
+                                               String regiao) {
+        List<Object[]> horas = rollupRepository.somarPorHora(
+                dataInicio.truncatedTo(ChronoUnit.HOURS), dataFim, tipoParametro, severidade,
+                regiao != null ? UnidadesFederativas.normalizarRegiao(regiao) : null);
+
+        Map<LocalDateTime, Long> porPeriodo = new TreeMap<>();
+        for (Object[] linha : horas) {
+            LocalDateTime periodo = inicioPeriodo((LocalDateTime) linha[0], granularidade);
+            porPeriodo.merge(periodo, ((Number) linha[1]).longValue(), Long::sum);
+        }
+
+        List<Map<String, Object>> serie = new ArrayList<>();
+        porPeriodo.forEach((periodo, quantidade) -> {
+            if (quantidade > 0) {
+                serie.add(Map.of("periodo", periodo, "quantidade", quantidade));
+            }
+        });
+        return serie;
+    }
+
+    /**
+     * Reconstrói os rollups de um intervalo a partir da tabela desvios (backfill).
+     * O intervalo é expandido para horas completas. Horas que já têm
+     * hemogramas arquivados não são reconstruídas, pois seus desvios não
+     * estão mais na tabela.
+     *
+     * @return Quantidade de desvios contabilizados
+     */
+    @Transactional
+    public long reconstruir(LocalDateTime dataInicio, LocalDateTime dataFim) {
+        LocalDateTime inicio = dataInicio.truncatedTo(ChronoUnit.HOURS);
+        LocalDateTime fim = dataFim.truncatedTo(ChronoUnit.HOURS);
+        if (fim.isBefore(dataFim)) {
+            fim = fim.plusHours(1);
+        }
+
+        LocalDateTime horizonte = arquivamentoService.getHorizonte();
+        if (horizonte != null && !inicio.isAfter(horizonte)) {
+            inicio = horizonte.truncatedTo(ChronoUnit.HOURS).plusHours(1);
+            logger.warn("Reconstrução de rollups limitada a partir de {} (dados anteriores arquivados)", inicio);
+            if (!inicio.isBefore(fim)) {
+                return 0;
+            }
+        }
+
+        int removidas = rollupRepository.deleteByPeriodo(inicio, fim);
+
+        Map<List<Object>, long[]> contagens = new HashMap<>();
+        long total = 0;
+        try (Stream<Object[]> linhas = desvioRepository.streamParaRollup(inicio, fim)) {
+            Iterator<Object[]> iterator = linhas.iterator();
+            while (iterator.hasNext()) {
+                Object[] linha = iterator.next();
+                LocalDateTime hora = ((LocalDateTime) linha[0]).truncatedTo(ChronoUnit.HOURS);
+                List<Object> chave = List.of(hora, linha[1], linha[2],
+                        UnidadesFederativas.normalizarRegiao((String) linha[3]));
+                contagens.computeIfAbsent(chave, c -> new long[1])[0]++;
+                total++;
+            }
+        }
+
+        List<RollupDesvioHora> rollups = new ArrayList<>(contagens.size());
+        contagens.forEach((chave, quantidade) -> rollups.add(new RollupDesvioHora(
+                (LocalDateTime) chave.get(0),
+                (TipoParametro) chave.get(1),
+                (SeveridadeDesvio) chave.get(2),
+                (String) chave.get(3),
+                quantidade[0])));
+        rollupRepository.saveAll(rollups);
+
+        logger.info("📈 Rollups reconstruídos de {} a {}: {} linha(s) removida(s), {} criada(s), {} desvio(s)",
+                inicio, fim, removidas, rollups.size(), total);
+        return total;
+    }
+
+    private LocalDateTime inicioPeriodo(LocalDateTime hora, GranularidadeTemporal granularidade) {
+        switch (granularidade) {
+            case DIA:
+                return hora.truncatedTo(ChronoUnit.DAYS);
+            case SEMANA:
+                return hora.truncatedTo(ChronoUnit.DAYS).with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MES:
+                return hora.truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+            case HORA:
+            default:
+                return hora;
+        }
+    }
+}
@@ -0,0 +1,693 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.dto.AchadoCompostoDTO;
+import br.ufg.inf.hemograma.dto.DesvioDTO;
+import br.ufg.inf.hemograma.dto.HemogramaDTO;
+import br.ufg.inf.hemograma.dto.ParametroDTO;
+import br.ufg.inf.hemograma.model.enums.SeveridadeDesvio;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Segmento imutável do arquivo de hemogramas antigos.
+ *
+ * Formato do arquivo:
+ * - cabeçalho (não compactado): quantidade de linhas, intervalo de datas de
+ *   referência, mínimo/máximo de cada {@link TipoParametro}, filtros de Bloom
+ *   dos pacientes e (a partir da versão 2) das Observations, e o diretório de
+ *   colunas (nome, posição, tamanho);
+ * - colunas, cada uma compactada (deflate) separadamente: dados do hemograma,
+ *   uma coluna por tipo de parâmetro (bitmap de presença + valores), os
+ *   desvios e os achados compostos (ausente em segmentos anteriores a eles).
+ *
+ * O cabeçalho fica em memória para a poda de segmentos; uma consulta só
+ * descompacta as colunas de que precisa e apenas dos segmentos não podados.
+ */
+public final class SegmentoArquivo {
+
+    private static final int MAGICO = 0x48534547; // "HSEG"
+    private static final short VERSAO = 2;
+    private static final TipoParametro[] TIPOS = TipoParametro.values();
+    private static final SeveridadeDesvio[] SEVERIDADES = SeveridadeDesvio.values();
+
+    private static final String COLUNA_ID = "id";
+    private static final String COLUNA_REFERENCIA = "referencia";
+    private static final String COLUNA_PACIENTE = "paciente";
+    private static final String COLUNA_HEMOGRAMA = "hemograma";
+    private static final String COLUNA_DESVIOS = "desvios";
+    private static final String COLUNA_ACHADOS = "achados";
+    private static final String PREFIXO_COLUNA_PARAMETRO = "parametro.";
+
+    private static final int BITS_BLOOM_POR_LINHA = 10;
+    /** Mais bits que o de pacientes: consultado a cada Observation nova recebida. */
+    private static final int BITS_BLOOM_OBSERVACOES_POR_LINHA = 16;
+    private static final int FUNCOES_BLOOM = 4;
+
+    /**
+     * Hemograma a arquivar, com todos os dados necessários para reconstruí-lo.
+     */
+    public record Linha(HemogramaDTO hemograma, LocalDateTime dataCadastro, LocalDateTime referencia) {
+    }
+
+    /**
+     * Linha selecionada por uma consulta, com as chaves de ordenação.
+     *
+     * @param linha Posição no segmento
+     * @param referencia Data de referência (segundos UTC)
+     */
+    public record Posicao(int linha, long referencia, long id) {
+    }
+
+    private final Path arquivo;
+    private final int linhas;
+    private final long referenciaMinima;
+    private final long referenciaMaxima;
+    private final double[] minimos;
+    private final double[] maximos;
+    private final long[] bloomPacientes;
+    /** Nulo em segmentos da versão 1. */
+    private final long[] bloomObservacoes;
+    private final Map<String, long[]> colunas;
+
+    private SegmentoArquivo(Path arquivo, int linhas, long referenciaMinima, long referenciaMaxima,
+                            double[] minimos, double[] maximos, long[] bloomPacientes, long[] bloomObservacoes,
+                            Map<String, long[]> colunas) {
+        this.arquivo = arquivo;
+        this.linhas = linhas;
+        this.referenciaMinima = referenciaMinima;
+        this.referenciaMaxima = referenciaMaxima;
+        this.minimos = minimos;
+        this.maximos = maximos;
+        this.bloomPacientes = bloomPacientes;
+        this.bloomObservacoes = bloomObservacoes;
+        this.colunas = colunas;
+    }
+
+    // ------------------------------------------------------------------
+    // Gravação
+    // ------------------------------------------------------------------
+
+    /**
+     * Grava as linhas em um novo segmento. O arquivo é escrito em um temporário,
+     * sincronizado em disco e renomeado atomicamente para o destino.
+     */
+    public static SegmentoArquivo gravar(Path destino, List<Linha> linhasSegmento) throws IOException {
+        int n = linhasSegmento.size();
+        long[] referencias = new long[n];
+        double[] minimos = new double[TIPOS.length];
+        double[] maximos = new double[TIPOS.length];
+        Arrays.fill(minimos, Double.NaN);
+        Arrays.fill(maximos, Double.NaN);
+        long[] bloom = new long[Math.max(1, (n * BITS_BLOOM_POR_LINHA + 63) / 64)];
+        long[] bloomObservacoes = new long[Math.max(1, (n * BITS_BLOOM_OBSERVACOES_POR_LINHA + 63) / 64)];
+
+        for (int i = 0; i < n; i++) {
+            Linha linha = linhasSegmento.get(i);
+            referencias[i] = paraEpoch(linha.referencia());
+            adicionarBloom(bloom, linha.hemograma().pacienteFhirId());
+            adicionarBloom(bloomObservacoes, linha.hemograma().fhirObservationId());
+            for (ParametroDTO parametro : linha.hemograma().parametros()) {
+                int ordinal = parametro.tipoParametro().ordinal();
+                double valor = parametro.valor();
+                minimos[ordinal] = Double.isNaN(minimos[ordinal]) ? valor : Math.min(minimos[ordinal], valor);
+                maximos[ordinal] = Double.isNaN(maximos[ordinal]) ? valor : Math.max(maximos[ordinal], valor);
+            }
+        }
+
+        Map<String, byte[]> blocos = new LinkedHashMap<>();
+        blocos.put(COLUNA_ID, compactar(saida -> {
+            for (Linha linha : linhasSegmento) {
+                saida.writeLong(linha.hemograma().id());
+            }
+        }));
+        blocos.put(COLUNA_REFERENCIA, compactar(saida -> {
+            for (long referencia : referencias) {
+                saida.writeLong(referencia);
+            }
+        }));
+        blocos.put(COLUNA_PACIENTE, compactar(saida -> {
+            for (Linha linha : linhasSegmento) {
+                saida.writeUTF(linha.hemograma().pacienteFhirId());
+            }
+        }));
+        blocos.put(COLUNA_HEMOGRAMA, compactar(saida -> {
+            for (Linha linha : linhasSegmento) {
+                HemogramaDTO hemograma = linha.hemograma();
+                saida.writeUTF(hemograma.fhirObservationId());
+                escreverData(saida, hemograma.dataColeta());
+                escreverData(saida, linha.dataCadastro());
+                escreverTexto(saida, hemograma.status());
+            }
+        }));
+
+        for (TipoParametro tipo : TIPOS) {
+            if (Double.isNaN(minimos[tipo.ordinal()])) {
+                continue;
+            }
+            blocos.put(PREFIXO_COLUNA_PARAMETRO + tipo.name(), compactar(saida -> {
+                BitSet presenca = new BitSet(n);
+                List<Double> valores = new ArrayList<>();
+                for (int i = 0; i < n; i++) {
+                    for (ParametroDTO parametro : linhasSegmento.get(i).hemograma().parametros()) {
+                        if (parametro.tipoParametro() == tipo) {
+                            presenca.set(i);
+                            valores.add(parametro.valor());
+                            break;
+                        }
+                    }
+                }
+                long[] palavras = presenca.toLongArray();
+                saida.writeInt(palavras.length);
+                for (long palavra : palavras) {
+                    saida.writeLong(palavra);
+                }
+                for (double valor : valores) {
+                    saida.writeDouble(valor);
+                }
+            }));
+        }
+
+        blocos.put(COLUNA_DESVIOS, compactar(saida -> {
+            int total = linhasSegmento.stream().mapToInt(linha -> linha.hemograma().desvios().size()).sum();
+            saida.writeInt(total);
+            for (int i = 0; i < n; i++) {
+                for (DesvioDTO desvio : linhasSegmento.get(i).hemograma().desvios()) {
+                    saida.writeInt(i);
+                    saida.writeLong(desvio.id());
+                    saida.writeByte(desvio.tipoParametro().ordinal());
+                    saida.writeByte(desvio.severidade().ordinal());
+                    escreverNumero(saida, desvio.valorEncontrado());
+                    escreverNumero(saida, desvio.valorReferenciaMinimo());
+                    escreverNumero(saida, desvio.valorReferenciaMaximo());
+                    escreverNumero(saida, desvio.percentualDesvio());
+                    escreverData(saida, desvio.dataDeteccao());
+                    escreverTexto(saida, desvio.descricao());
+                }
+            }
+        }));
+
+        blocos.put(COLUNA_ACHADOS, compactar(saida -> {
+            int total = linhasSegmento.stream().mapToInt(linha -> linha.hemograma().achados().size()).sum();
+            saida.writeInt(total);
+            for (int i = 0; i < n; i++) {
+                for (AchadoCompostoDTO achado : linhasSegmento.get(i).hemograma().achados()) {
+                    saida.writeInt(i);
+                    saida.writeLong(achado.id());
+                    saida.writeUTF(achado.codigo());
+                    saida.writeUTF(achado.nome());
+                    saida.writeByte(achado.severidade().ordinal());
+                    escreverData(saida, achado.dataDeteccao());
+                    escreverTexto(saida, achado.descricao());
+                }
+            }
+        }));
+
+        long referenciaMinima = Arrays.stream(referencias).min().orElse(0);
+        long referenciaMaxima = Arrays.stream(referencias).max().orElse(0);
+
+        ByteArrayOutputStream cabecalhoBytes = new ByteArrayOutputStream();
+        Map<String, long[]> diretorio = new LinkedHashMap<>();
+        try (DataOutputStream cabecalho = new DataOutputStream(cabecalhoBytes)) {
+            cabecalho.writeInt(MAGICO);
+            cabecalho.writeShort(VERSAO);
+            cabecalho.writeInt(n);
+            cabecalho.writeLong(referenciaMinima);
+            cabecalho.writeLong(referenciaMaxima);
+            cabecalho.writeShort(TIPOS.length);
+            for (int ordinal = 0; ordinal < TIPOS.length; ordinal++) {
+                cabecalho.writeDouble(minimos[ordinal]);
+                cabecalho.writeDouble(maximos[ordinal]);
+            }
+            cabecalho.writeInt(bloom.length);
+            for (long palavra : bloom) {
+                cabecalho.writeLong(palavra);
+            }
+            cabecalho.writeInt(bloomObservacoes.length);
+            for (long palavra : bloomObservacoes) {
+                cabecalho.writeLong(palavra);
+            }
+
+            // Posições relativas ao fim do cabeçalho
+            cabecalho.writeShort(blocos.size());
+            long posicao = 0;
+            for (Map.Entry<String, byte[]> bloco : blocos.entrySet()) {
+                cabecalho.writeUTF(bloco.getKey());
+                cabecalho.writeLong(posicao);
+                cabecalho.writeInt(bloco.getValue().length);
+                diretorio.put(bloco.getKey(), new long[]{posicao, bloco.getValue().length});
+                posicao += bloco.getValue().length;
+            }
+        }
+
+        byte[] cabecalho = cabecalhoBytes.toByteArray();
+        Map<String, long[]> colunas = new LinkedHashMap<>();
+        diretorio.forEach((nome, posicao) ->
+                colunas.put(nome, new long[]{Integer.BYTES + cabecalho.length + posicao[0], posicao[1]}));
+
+        Path temporario = destino.resolveSibling(destino.getFileName() + ".tmp");
+        try (FileChannel canal = FileChannel.open(temporario,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            canal.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, cabecalho.length));
+            canal.write(ByteBuffer.wrap(cabecalho));
+            for (byte[] bloco : blocos.values()) {
+                canal.write(ByteBuffer.wrap(bloco));
+            }
+            canal.force(true);
+        }
+        Files.move(temporario, destino, StandardCopyOption.ATOMIC_MOVE);
+        destino.toFile().setReadOnly();
+
+        return new SegmentoArquivo(destino, n, referenciaMinima, referenciaMaxima,
+                minimos, maximos, bloom, bloomObservacoes, colunas);
+    }
+
+    // ------------------------------------------------------------------
+    // Leitura
+    // ------------------------------------------------------------------
+
+    /**
+     * Lê apenas o cabeçalho de um segmento existente.
+     */
+    public static SegmentoArquivo abrir(Path arquivo) throws IOException {
+        try (DataInputStream entrada = new DataInputStream(new BufferedInputStream(Files.newInputStream(arquivo)))) {
+            int tamanhoCabecalho = entrada.readInt();
+            if (entrada.readInt() != MAGICO) {
+                throw new IOException("Arquivo não é um segmento de hemogramas: " + arquivo);
+            }
+            short versao = entrada.readShort();
+            if (versao != 1 && versao != VERSAO) {
+                throw new IOException("Versão de segmento não suportada: " + versao);
+            }
+
+            int linhas = entrada.readInt();
+            long referenciaMinima = entrada.readLong();
+            long referenciaMaxima = entrada.readLong();
+
+            int tipos = entrada.readShort();
+            double[] minimos = new double[TIPOS.length];
+            double[] maximos = new double[TIPOS.length];
+            Arrays.fill(minimos, Double.NaN);
+            Arrays.fill(maximos, Double.NaN);
+            for (int ordinal = 0; ordinal < tipos; ordinal++) {
+                double minimo = entrada.readDouble();
+                double maximo = entrada.readDouble();
+                if (ordinal < TIPOS.length) {
+                    minimos[ordinal] = minimo;
+                    maximos[ordinal] = maximo;
+                }
+            }
+
+            long[] bloom = lerBloom(entrada);
+            long[] bloomObservacoes = versao >= 2 ? lerBloom(entrada) : null;
+
+            int quantidadeColunas = entrada.readShort();
+            Map<String, long[]> colunas = new LinkedHashMap<>();
+            for (int i = 0; i < quantidadeColunas; i++) {
+                String nome = entrada.readUTF();
+                long posicao = entrada.readLong();
+                int tamanho = entrada.readInt();
+                colunas.put(nome, new long[]{Integer.BYTES + tamanhoCabecalho + posicao, tamanho});
+            }
+
+            return new SegmentoArquivo(arquivo, linhas, referenciaMinima, referenciaMaxima,
+                    minimos, maximos, bloom, bloomObservacoes, colunas);
+        }
+    }
+
+    private static long[] lerBloom(DataInputStream entrada) throws IOException {
+        long[] bloom = new long[entrada.readInt()];
+        for (int i = 0; i < bloom.length; i++) {
+            bloom[i] = entrada.readLong();
+        }
+        return bloom;
+    }
+
+    /**
+     * Indica, apenas pelo cabeçalho, se o segmento pode ter hemogramas do paciente no período.
+     */
+    public boolean podeConter(String pacienteFhirId, LocalDateTime inicio, LocalDateTime fim) {
+        return sobrepoePeriodo(inicio, fim) && contemBloom(bloomPacientes, pacienteFhirId);
+    }
+
+    /**
+     * Indica se o segmento tem o hemograma da Observation. Pelo cabeçalho na
+     * maioria dos casos; a coluna do hemograma só é lida se o filtro de Bloom
+     * indicar a Observation (ou se o segmento for da versão 1, sem filtro).
+     */
+    public boolean contemObservacao(String fhirObservationId) throws IOException {
+        if (bloomObservacoes != null && !contemBloom(bloomObservacoes, fhirObservationId)) {
+            return false;
+        }
+        try (DataInputStream entrada = abrirColuna(COLUNA_HEMOGRAMA)) {
+            for (int i = 0; i < linhas; i++) {
+                if (entrada.readUTF().equals(fhirObservationId)) {
+                    return true;
+                }
+                lerData(entrada);
+                lerData(entrada);
+                lerTexto(entrada);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Indica, apenas pelo cabeçalho, se o segmento pode ter valores do parâmetro na faixa e no período.
+     */
+    public boolean podeConter(TipoParametro tipo, double minimo, double maximo, LocalDateTime inicio, LocalDateTime fim) {
+        int ordinal = tipo.ordinal();
+        return sobrepoePeriodo(inicio, fim)
+                && !Double.isNaN(minimos[ordinal])
+                && maximos[ordinal] >= minimo && minimos[ordinal] <= maximo;
+    }
+
+    /**
+     * Linhas do paciente no período. Descompacta apenas as colunas de
+     * paciente, de data e de IDs; os hemogramas são montados depois, só para
+     * as linhas da página ({@link #montar(Collection)}).
+     */
+    public List<Posicao> localizarPorPaciente(String pacienteFhirId, LocalDateTime inicio,
+                                              LocalDateTime fim) throws IOException {
+        String[] pacientes = lerTextos(COLUNA_PACIENTE);
+        long[] referencias = lerLongs(COLUNA_REFERENCIA);
+        long limiteInferior = paraEpoch(inicio);
+        long limiteSuperior = paraEpoch(fim);
+
+        long[] ids = null;
+        List<Posicao> posicoes = new ArrayList<>();
+        for (int i = 0; i < linhas; i++) {
+            if (pacientes[i].equals(pacienteFhirId)
+                    && referencias[i] >= limiteInferior && referencias[i] <= limiteSuperior) {
+                if (ids == null) {
+                    ids = lerLongs(COLUNA_ID);
+                }
+                posicoes.add(new Posicao(i, referencias[i], ids[i]));
+            }
+        }
+        return posicoes;
+    }
+
+    /**
+     * Hemogramas das linhas informadas, na ordem das linhas no segmento.
+     */
+    public List<HemogramaDTO> montar(Collection<Integer> linhasSelecionadas) throws IOException {
+        BitSet selecionadas = new BitSet(linhas);
+        linhasSelecionadas.forEach(selecionadas::set);
+        return montar(selecionadas, null);
+    }
+
+    /**
+     * Hemogramas com o parâmetro na faixa [minimo, maximo] no período. Lê apenas
+     * a coluna do parâmetro e a de datas para selecionar as linhas.
+     */
+    public List<HemogramaDTO> buscarPorFaixa(TipoParametro tipo, double minimo, double maximo,
+                                             LocalDateTime inicio, LocalDateTime fim) throws IOException {
+        long[] referencias = lerLongs(COLUNA_REFERENCIA);
+        long limiteInferior = paraEpoch(inicio);
+        long limiteSuperior = paraEpoch(fim);
+
+        BitSet selecionadas = new BitSet(linhas);
+        double[] valores = lerParametro(tipo);
+        for (int i = 0; i < linhas; i++) {
+            if (!Double.isNaN(valores[i]) && valores[i] >= minimo && valores[i] <= maximo
+                    && referencias[i] >= limiteInferior && referencias[i] <= limiteSuperior) {
+                selecionadas.set(i);
+            }
+        }
+        return montar(selecionadas, null);
+    }
+
+    private List<HemogramaDTO> montar(BitSet selecionadas, String[] pacientes) throws IOException {
+        if (selecionadas.isEmpty()) {
+            return List.of();
+        }
+
+        if (pacientes == null) {
+            pacientes = lerTextos(COLUNA_PACIENTE);
+        }
+        long[] ids = lerLongs(COLUNA_ID);
+
+        // Coluna do hemograma: observação, coleta, cadastro e status
+        String[] observacoes = new String[linhas];
+        LocalDateTime[] coletas = new LocalDateTime[linhas];
+        String[] status = new String[linhas];
+        try (DataInputStream entrada = abrirColuna(COLUNA_HEMOGRAMA)) {
+            for (int i = 0; i < linhas; i++) {
+                observacoes[i] = entrada.readUTF();
+                coletas[i] = lerData(entrada);
+                lerData(entrada); // data de cadastro: preservada, não exposta pela API
+                status[i] = lerTexto(entrada);
+            }
+        }
+
+        Map<Integer, List<ParametroDTO>> parametros = new HashMap<>();
+        for (TipoParametro tipo : TIPOS) {
+            if (!colunas.containsKey(PREFIXO_COLUNA_PARAMETRO + tipo.name())) {
+                continue;
+            }
+            double[] valores = lerParametro(tipo);
+            for (int i = selecionadas.nextSetBit(0); i >= 0; i = selecionadas.nextSetBit(i + 1)) {
+                if (!Double.isNaN(valores[i])) {
+                    parametros.computeIfAbsent(i, k -> new ArrayList<>())
+                            .add(new ParametroDTO(tipo, valores[i], tipo.getUnidade()));
+                }
+            }
+        }
+
+        Map<Integer, List<DesvioDTO>> desvios = new HashMap<>();
+        try (DataInputStream entrada = abrirColuna(COLUNA_DESVIOS)) {
+            int total = entrada.readInt();
+            for (int k = 0; k < total; k++) {
+                int linha = entrada.readInt();
+                long id = entrada.readLong();
+                TipoParametro tipo = TIPOS[entrada.readByte()];
+                SeveridadeDesvio severidade = SEVERIDADES[entrada.readByte()];
+                Double valorEncontrado = lerNumero(entrada);
+                Double minimo = lerNumero(entrada);
+                Double maximo = lerNumero(entrada);
+                Double percentual = lerNumero(entrada);
+                LocalDateTime deteccao = lerData(entrada);
+                String descricao = lerTexto(entrada);
+
+                if (selecionadas.get(linha)) {
+                    desvios.computeIfAbsent(linha, l -> new ArrayList<>()).add(new DesvioDTO(
+                            id, tipo, valorEncontrado, minimo, maximo, percentual, severidade, descricao, deteccao));
+                }
+            }
+        }
+
+        Map<Integer, List<AchadoCompostoDTO>> achados = new HashMap<>();
+        if (colunas.containsKey(COLUNA_ACHADOS)) {
+            try (DataInputStream entrada = abrirColuna(COLUNA_ACHADOS)) {
+                int total = entrada.readInt();
+                for (int k = 0; k < total; k++) {
+                    int linha = entrada.readInt();
+                    long id = entrada.readLong();
+                    String codigo = entrada.readUTF();
+                    String nome = entrada.readUTF();
+                    SeveridadeDesvio severidade = SEVERIDADES[entrada.readByte()];
+                    LocalDateTime deteccao = lerData(entrada);
+                    String descricao = lerTexto(entrada);
+
+                    if (selecionadas.get(linha)) {
+                        achados.computeIfAbsent(linha, l -> new ArrayList<>()).add(new AchadoCompostoDTO(
+                                id, codigo, nome, severidade, descricao, deteccao));
+                    }
+                }
+            }
+        }
+
+        List<HemogramaDTO> resultado = new ArrayList<>(selecionadas.cardinality());
+        for (int i = selecionadas.nextSetBit(0); i >= 0; i = selecionadas.nextSetBit(i + 1)) {
+            resultado.add(new HemogramaDTO(ids[i], observacoes[i], pacientes[i], coletas[i], status[i],
+                    parametros.getOrDefault(i, List.of()), desvios.getOrDefault(i, List.of()),
+                    achados.getOrDefault(i, List.of())));
+        }
+        return resultado;
+    }
+
+    /**
+     * Observation de cada hemograma do segmento, por ID.
+     */
+    public Map<Long, String> lerObservacoes() throws IOException {
+        long[] ids = lerLongs(COLUNA_ID);
+        Map<Long, String> observacoes = new HashMap<>(ids.length * 2);
+        try (DataInputStream entrada = abrirColuna(COLUNA_HEMOGRAMA)) {
+            for (int i = 0; i < linhas; i++) {
+                observacoes.put(ids[i], entrada.readUTF());
+                lerData(entrada);
+                lerData(entrada);
+                lerTexto(entrada);
+            }
+        }
+        return observacoes;
+    }
+
+    /**
+     * Valores de um parâmetro por linha (NaN onde ausente).
+     */
+    private double[] lerParametro(TipoParametro tipo) throws IOException {
+        double[] valores = new double[linhas];
+        Arrays.fill(valores, Double.NaN);
+        if (!colunas.containsKey(PREFIXO_COLUNA_PARAMETRO + tipo.name())) {
+            return valores;
+        }
+
+        try (DataInputStream entrada = abrirColuna(PREFIXO_COLUNA_PARAMETRO + tipo.name())) {
+            long[] palavras = new long[entrada.readInt()];
+            for (int i = 0; i < palavras.length; i++) {
+                palavras[i] = entrada.readLong();
+            }
+            BitSet presenca = BitSet.valueOf(palavras);
+            for (int i = presenca.nextSetBit(0); i >= 0; i = presenca.nextSetBit(i + 1)) {
+                valores[i] = entrada.readDouble();
+            }
+        }
+        return valores;
+    }
+
+    private long[] lerLongs(String coluna) throws IOException {
+        long[] valores = new long[linhas];
+        try (DataInputStream entrada = abrirColuna(coluna)) {
+            for (int i = 0; i < linhas; i++) {
+                valores[i] = entrada.readLong();
+            }
+        }
+        return valores;
+    }
+
+    private String[] lerTextos(String coluna) throws IOException {
+        String[] valores = new String[linhas];
+        try (DataInputStream entrada = abrirColuna(coluna)) {
+            for (int i = 0; i < linhas; i++) {
+                valores[i] = entrada.readUTF();
+            }
+        }
+        return valores;
+    }
+
+    private DataInputStream abrirColuna(String coluna) throws IOException {
+        long[] posicao = colunas.get(coluna);
+        byte[] bloco = new byte[(int) posicao[1]];
+        try (FileChannel canal = FileChannel.open(arquivo, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bloco);
+            while (buffer.hasRemaining()) {
+                if (canal.read(buffer, posicao[0] + buffer.position()) < 0) {
+                    throw new EOFException("Segmento truncado: " + arquivo);
+                }
+            }
+        }
+        return new DataInputStream(new BufferedInputStream(new InflaterInputStream(new ByteArrayInputStream(bloco))));
+    }
+
+    // ------------------------------------------------------------------
+    // Utilitários
+    // ------------------------------------------------------------------
+
+    private interface EscritorColuna {
+        void escrever(DataOutputStream saida) throws IOException;
+    }
+
+    private static byte[] compactar(EscritorColuna escritor) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream saida = new DataOutputStream(
+                new BufferedOutputStream(new DeflaterOutputStream(bytes)))) {
+            escritor.escrever(saida);
+        }
+        return bytes.toByteArray();
+    }
+
+    private boolean sobrepoePeriodo(LocalDateTime inicio, LocalDateTime fim) {
+        return referenciaMaxima >= paraEpoch(inicio) && referenciaMinima <= paraEpoch(fim);
+    }
+
+    private static void adicionarBloom(long[] bloom, String valor) {
+        long bits = bloom.length * 64L;
+        int h1 = valor.hashCode();
+        int h2 = Integer.reverse(h1) * 0x9E3779B9 | 1;
+        for (int i = 0; i < FUNCOES_BLOOM; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bits);
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private static boolean contemBloom(long[] bloom, String valor) {
+        long bits = bloom.length * 64L;
+        int h1 = valor.hashCode();
+        int h2 = Integer.reverse(h1) * 0x9E3779B9 | 1;
+        for (int i = 0; i < FUNCOES_BLOOM; i++) {
+            long bit = Math.floorMod(h1 + (long) i * h2, bits);
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long paraEpoch(LocalDateTime data) {
+        return data.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static void escreverData(DataOutputStream saida, LocalDateTime data) throws IOException {
+        saida.writeLong(data != null ? paraEpoch(data) * 1_000_000_000L + data.getNano() : Long.MIN_VALUE);
+    }
+
+    private static LocalDateTime lerData(DataInputStream entrada) throws IOException {
+        long valor = entrada.readLong();
+        if (valor == Long.MIN_VALUE) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(valor, 1_000_000_000L),
+                (int) Math.floorMod(valor, 1_000_000_000L), ZoneOffset.UTC);
+    }
+
+    private static void escreverNumero(DataOutputStream saida, Double valor) throws IOException {
+        saida.writeDouble(valor != null ? valor : Double.NaN);
+    }
+
+    private static Double lerNumero(DataInputStream entrada) throws IOException {
+        double valor = entrada.readDouble();
+        return Double.isNaN(valor) ? null : valor;
+    }
+
+    private static void escreverTexto(DataOutputStream saida, String texto) throws IOException {
+        saida.writeBoolean(texto != null);
+        if (texto != null) {
+            // writeUTF limita a 64 KB; descrições e status são curtos
+            byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+            saida.writeInt(bytes.length);
+            saida.write(bytes);
+        }
+    }
+
+    private static String lerTexto(DataInputStream entrada) throws IOException {
+        if (!entrada.readBoolean()) {
+            return null;
+        }
+        byte[] bytes = new byte[entrada.readInt()];
+        entrada.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public Path getArquivo() {
+        return arquivo;
+    }
+
+    public int getLinhas() {
+        return linhas;
+    }
+
+    public LocalDateTime getReferenciaMaxima() {
+        return LocalDateTime.ofEpochSecond(referenciaMaxima, 0, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,249 @@
+package br.ufg.inf.hemograma.service;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Sketch de quantis com precisão relativa garantida e mesclável (no estilo
+ * do DDSketch).
+ *
+ * Cada valor positivo é contado no balde {@code ceil(log(v) / log(gama))},
+ * com {@code gama = (1 + a) / (1 - a)}: qualquer quantil é estimado com erro
+ * relativo de no máximo {@code a} (ex: 1%). Dois sketches com a mesma
+ * precisão são mesclados somando os baldes, de modo que estratos (sexo,
+ * faixa etária, região) podem ser combinados na consulta sem perda.
+ *
+ * A memória é limitada a {@code maximoBaldes} contadores; se a faixa de
+ * valores exceder esse limite, os baldes mais baixos são fundidos (a
+ * precisão dos quantis mais baixos é sacrificada primeiro).
+ */
+final class SketchQuantis {
+
+    /** Valores abaixo disso são contados como zero. */
+    private static final double MINIMO_INDEXAVEL = 1e-9;
+
+    private final double precisaoRelativa;
+    private final double logGama;
+    private final int maximoBaldes;
+
+    private long[] contagens = new long[0];
+    /** Índice de balde correspondente a contagens[0]. */
+    private int base;
+    private int indiceMinimo = Integer.MAX_VALUE;
+    private int indiceMaximo = Integer.MIN_VALUE;
+    private long zeros;
+    private long total;
+    private double minimo = Double.POSITIVE_INFINITY;
+    private double maximo = Double.NEGATIVE_INFINITY;
+
+    SketchQuantis(double precisaoRelativa, int maximoBaldes) {
+        this.precisaoRelativa = precisaoRelativa;
+        this.logGama = Math.log((1 + precisaoRelativa) / (1 - precisaoRelativa));
+        this.maximoBaldes = maximoBaldes;
+    }
+
+    /**
+     * Registra um valor. Valores negativos, infinitos e NaN são ignorados.
+     */
+    synchronized void adicionar(double valor) {
+        if (!(valor >= 0) || Double.isInfinite(valor)) {
+            return;
+        }
+        total++;
+        minimo = Math.min(minimo, valor);
+        maximo = Math.max(maximo, valor);
+        if (valor < MINIMO_INDEXAVEL) {
+            zeros++;
+            return;
+        }
+        incrementar((int) Math.ceil(Math.log(valor) / logGama), 1);
+    }
+
+    /**
+     * Retira um valor registrado antes (ex: substituído por uma correção). O
+     * mínimo e o máximo observados não são recalculados.
+     */
+    synchronized void remover(double valor) {
+        if (!(valor >= 0) || Double.isInfinite(valor) || total == 0) {
+            return;
+        }
+        if (valor < MINIMO_INDEXAVEL) {
+            if (zeros > 0) {
+                zeros--;
+                total--;
+            }
+            return;
+        }
+        // Baldes abaixo do mínimo mantido foram fundidos nele
+        int indice = Math.max((int) Math.ceil(Math.log(valor) / logGama), indiceMinimo);
+        if (indice <= indiceMaximo && contagens[indice - base] > 0) {
+            contagens[indice - base]--;
+            total--;
+        }
+    }
+
+    /**
+     * Soma ao sketch as contagens de outro com a mesma precisão.
+     */
+    void mesclar(SketchQuantis outro) {
+        if (outro.precisaoRelativa != precisaoRelativa) {
+            throw new IllegalArgumentException("Sketches com precisões diferentes não podem ser mesclados");
+        }
+
+        long[] contagensOutro;
+        int indiceMinimoOutro;
+        int indiceMaximoOutro;
+        int baseOutro;
+        long zerosOutro;
+        long totalOutro;
+        double minimoOutro;
+        double maximoOutro;
+        synchronized (outro) {
+            contagensOutro = outro.contagens.clone();
+            baseOutro = outro.base;
+            indiceMinimoOutro = outro.indiceMinimo;
+            indiceMaximoOutro = outro.indiceMaximo;
+            zerosOutro = outro.zeros;
+            totalOutro = outro.total;
+            minimoOutro = outro.minimo;
+            maximoOutro = outro.maximo;
+        }
+
+        synchronized (this) {
+            total += totalOutro;
+            zeros += zerosOutro;
+            minimo = Math.min(minimo, minimoOutro);
+            maximo = Math.max(maximo, maximoOutro);
+            for (int indice = indiceMinimoOutro; indice <= indiceMaximoOutro; indice++) {
+                long n = contagensOutro[indice - baseOutro];
+                if (n > 0) {
+                    incrementar(indice, n);
+                }
+            }
+        }
+    }
+
+    /**
+     * Estima o quantil {@code q} (0 a 1).
+     *
+     * @return Valor estimado, ou NaN se o sketch estiver vazio
+     */
+    synchronized double quantil(double q) {
+        if (total == 0) {
+            return Double.NaN;
+        }
+        if (q <= 0) {
+            return minimo;
+        }
+        if (q >= 1) {
+            return maximo;
+        }
+
+        double posicao = q * (total - 1);
+        if (posicao < zeros) {
+            return 0.0;
+        }
+        long acumulado = zeros;
+        for (int indice = indiceMinimo; indice <= indiceMaximo; indice++) {
+            acumulado += contagens[indice - base];
+            if (acumulado > posicao) {
+                // Ponto do balde (gama^(i-1), gama^i] com erro relativo <= a
+                double estimado = 2 * Math.exp(indice * logGama) / (1 + Math.exp(logGama));
+                return Math.max(minimo, Math.min(maximo, estimado));
+            }
+        }
+        return maximo;
+    }
+
+    synchronized long getTotal() {
+        return total;
+    }
+
+    synchronized void escrever(DataOutput saida) throws IOException {
+        saida.writeLong(total);
+        saida.writeLong(zeros);
+        saida.writeDouble(minimo);
+        saida.writeDouble(maximo);
+        int quantidade = indiceMaximo >= indiceMinimo ? indiceMaximo - indiceMinimo + 1 : 0;
+        saida.writeInt(indiceMinimo);
+        saida.writeInt(quantidade);
+        for (int i = 0; i < quantidade; i++) {
+            saida.writeLong(contagens[indiceMinimo - base + i]);
+        }
+    }
+
+    static SketchQuantis ler(DataInput entrada, double precisaoRelativa, int maximoBaldes) throws IOException {
+        SketchQuantis sketch = new SketchQuantis(precisaoRelativa, maximoBaldes);
+        sketch.total = entrada.readLong();
+        sketch.zeros = entrada.readLong();
+        sketch.minimo = entrada.readDouble();
+        sketch.maximo = entrada.readDouble();
+        int indiceMinimo = entrada.readInt();
+        int quantidade = entrada.readInt();
+        for (int i = 0; i < quantidade; i++) {
+            long n = entrada.readLong();
+            if (n > 0) {
+                sketch.incrementar(indiceMinimo + i, n);
+            }
+        }
+        return sketch;
+    }
+
+    private void incrementar(int indice, long n) {
+        int novoMinimo = Math.min(indiceMinimo, indice);
+        int novoMaximo = Math.max(indiceMaximo, indice);
+
+        if ((long) novoMaximo - novoMinimo + 1 > maximoBaldes) {
+            // Funde os baldes mais baixos no primeiro balde mantido
+            int limite = novoMaximo - maximoBaldes + 1;
+            long fundidos = 0;
+            for (int i = indiceMinimo; i < limite && i <= indiceMaximo; i++) {
+                fundidos += contagens[i - base];
+                contagens[i - base] = 0;
+            }
+            indice = Math.max(indice, limite);
+            novoMinimo = limite;
+            if (fundidos > 0) {
+                garantirCapacidade(novoMinimo, novoMaximo);
+                contagens[limite - base] += fundidos;
+            }
+        }
+
+        garantirCapacidade(novoMinimo, novoMaximo);
+        contagens[indice - base] += n;
+        indiceMinimo = novoMinimo;
+        indiceMaximo = novoMaximo;
+    }
+
+    /**
+     * Realoca o vetor (com folga) para cobrir [minimo, maximo].
+     */
+    private void garantirCapacidade(int minimo, int maximo) {
+        if (contagens.length > 0 && minimo >= base && maximo < base + contagens.length) {
+            return;
+        }
+
+        int necessario = maximo - minimo + 1;
+        int tamanho = Math.min(maximoBaldes, Math.max(necessario + necessario / 2, 16));
+        int folga = (tamanho - necessario) / 2;
+        int novaBase = minimo - folga;
+
+        long[] novas = new long[tamanho];
+        if (indiceMaximo >= indiceMinimo) {
+            int inicio = Math.max(indiceMinimo, novaBase);
+            int fim = Math.min(indiceMaximo, novaBase + tamanho - 1);
+            if (fim >= inicio) {
+                System.arraycopy(contagens, inicio - base, novas, inicio - novaBase, fim - inicio + 1);
+            }
+        }
+        contagens = novas;
+        base = novaBase;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SketchQuantis{total=" + total + ", baldes=" + Arrays.stream(contagens).filter(n -> n > 0).count() + '}';
+    }
+}
@@ -0,0 +1,199 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Triagem de valores críticos (pânico) no recebimento da notificação.
+ *
+ * Antes de a notificação entrar na fila, os bytes do JSON são varridos
+ * ({@link VarreduraJson}) à procura dos códigos LOINC de hemoglobina,
+ * plaquetas e leucócitos e do {@code valueQuantity} que os acompanha. Valores
+ * fora dos limites de pânico geram imediatamente um alerta (log, métrica e
+ * {@link AlertaCriticoEvent}), e a notificação segue pela parte prioritária
+ * da fila do paciente, de modo que o tempo até o alerta não depende do
+ * volume na fila comum.
+ *
+ * A varredura é conservadora: se o valor não puder ser associado com
+ * segurança ao código, a notificação segue sem prioridade e o valor é
+ * avaliado normalmente após o parse.
+ */
+@Service
+public class TriagemCriticaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TriagemCriticaService.class);
+
+    private static final byte[] CHAVE_VALUE_QUANTITY = "\"valueQuantity\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHAVE_VALUE = "\"value\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHAVE_CODE = "\"code\"".getBytes(StandardCharsets.US_ASCII);
+
+    /** Distância máxima, em bytes, entre o código e o seu valueQuantity. */
+    private static final int DISTANCIA_MAXIMA = 2048;
+
+    /**
+     * Valor fora dos limites de pânico.
+     *
+     * @param abaixo true se abaixo do limite mínimo
+     */
+    public record ValorCritico(TipoParametro tipo, double valor, boolean abaixo) {
+    }
+
+    private record Limite(TipoParametro tipo, byte[] codigo, double minimo, double maximo) {
+    }
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.hemograma.critico.habilitado:true}")
+    private boolean habilitado;
+
+    @Value("${app.hemograma.critico.hemoglobina.minimo:7.0}")
+    private double hemoglobinaMinima;
+
+    @Value("${app.hemograma.critico.hemoglobina.maximo:20.0}")
+    private double hemoglobinaMaxima;
+
+    @Value("${app.hemograma.critico.plaquetas.minimo:20000}")
+    private double plaquetasMinimas;
+
+    @Value("${app.hemograma.critico.plaquetas.maximo:1000000}")
+    private double plaquetasMaximas;
+
+    @Value("${app.hemograma.critico.leucocitos.minimo:2000}")
+    private double leucocitosMinimos;
+
+    @Value("${app.hemograma.critico.leucocitos.maximo:50000}")
+    private double leucocitosMaximos;
+
+    private Limite[] limites;
+    private final Map<TipoParametro, Counter> alertas = new EnumMap<>(TipoParametro.class);
+    private Timer tempoTriagem;
+
+    @PostConstruct
+    public void iniciar() {
+        limites = new Limite[] {
+                limite(TipoParametro.HEMOGLOBINA, hemoglobinaMinima, hemoglobinaMaxima),
+                limite(TipoParametro.PLAQUETAS, plaquetasMinimas, plaquetasMaximas),
+                limite(TipoParametro.LEUCOCITOS, leucocitosMinimos, leucocitosMaximos)
+        };
+        for (Limite limite : limites) {
+            alertas.put(limite.tipo(), Counter.builder("hemograma.critico.alertas")
+                    .description("Valores críticos detectados na triagem do recebimento")
+                    .tag("parametro", limite.tipo().name())
+                    .register(meterRegistry));
+        }
+        tempoTriagem = Timer.builder("hemograma.critico.tempo-triagem")
+                .description("Tempo da varredura de valores críticos, incluindo o alerta")
+                .register(meterRegistry);
+    }
+
+    public boolean isHabilitada() {
+        return habilitado;
+    }
+
+    /**
+     * Procura valores críticos no payload e, se houver, emite o alerta antecipado.
+     *
+     * @return Valores críticos encontrados (vazio se nenhum)
+     */
+    public List<ValorCritico> triar(byte[] payload) {
+        if (!habilitado || payload == null || payload.length == 0) {
+            return List.of();
+        }
+
+        long inicio = System.nanoTime();
+        List<ValorCritico> criticos = null;
+        for (Limite limite : limites) {
+            int posicao = 0;
+            while ((posicao = VarreduraJson.indiceDe(payload, limite.codigo(), posicao)) >= 0) {
+                posicao += limite.codigo().length;
+                double valor = valorAssociado(payload, posicao);
+                if (Double.isNaN(valor) || (valor >= limite.minimo() && valor <= limite.maximo())) {
+                    continue;
+                }
+                if (criticos == null) {
+                    criticos = new ArrayList<>();
+                }
+                criticos.add(new ValorCritico(limite.tipo(), valor, valor < limite.minimo()));
+            }
+        }
+
+        if (criticos != null) {
+            alertar(payload, criticos);
+        }
+        tempoTriagem.record(System.nanoTime() - inicio, TimeUnit.NANOSECONDS);
+        return criticos != null ? criticos : List.of();
+    }
+
+    private void alertar(byte[] payload, List<ValorCritico> criticos) {
+        String recurso = VarreduraJson.referenciaRecurso(payload);
+        String paciente = VarreduraJson.referenciaPaciente(payload);
+        String descricaoRecurso = recurso != null ? recurso : VarreduraJson.tipoRecurso(payload) + " sem id";
+        for (ValorCritico critico : criticos) {
+            alertas.get(critico.tipo()).increment();
+            logger.warn("🚨 VALOR CRÍTICO: {} {} ({}) em {} do paciente {}",
+                    critico.tipo().getNome(), critico.abaixo() ? "abaixo do limite" : "acima do limite",
+                    critico.valor(), descricaoRecurso, paciente);
+        }
+        eventPublisher.publishEvent(new AlertaCriticoEvent(this, recurso, paciente, List.copyOf(criticos)));
+    }
+
+    /**
+     * Valor do primeiro {@code valueQuantity} após o código, desde que não
+     * haja outro {@code "code"} no caminho (o valor seria de outro componente).
+     */
+    private static double valorAssociado(byte[] payload, int posicao) {
+        int quantidade = VarreduraJson.indiceDe(payload, CHAVE_VALUE_QUANTITY, posicao);
+        if (quantidade < 0 || quantidade - posicao > DISTANCIA_MAXIMA) {
+            return Double.NaN;
+        }
+        int proximoCodigo = VarreduraJson.indiceDe(payload, CHAVE_CODE, posicao);
+        if (proximoCodigo >= 0 && proximoCodigo < quantidade) {
+            return Double.NaN;
+        }
+
+        // "value" dentro do objeto valueQuantity (ordem dos campos varia)
+        int fimQuantidade = indiceFechamento(payload, quantidade + CHAVE_VALUE_QUANTITY.length);
+        int valor = VarreduraJson.indiceDe(payload, CHAVE_VALUE, quantidade + CHAVE_VALUE_QUANTITY.length);
+        if (valor < 0 || fimQuantidade < 0 || valor > fimQuantidade) {
+            return Double.NaN;
+        }
+        return VarreduraJson.valorNumero(payload, valor + CHAVE_VALUE.length);
+    }
+
+    /**
+     * Posição do primeiro '}' após a posição (objetos valueQuantity não têm objetos aninhados).
+     */
+    private static int indiceFechamento(byte[] payload, int posicao) {
+        for (int i = posicao; i < payload.length; i++) {
+            if (payload[i] == '}') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static Limite limite(TipoParametro tipo, double minimo, double maximo) {
+        byte[] codigo = ("\"" + tipo.getCodigoLOINC() + "\"").getBytes(StandardCharsets.US_ASCII);
+        return new Limite(tipo, codigo, minimo, maximo);
+    }
+}
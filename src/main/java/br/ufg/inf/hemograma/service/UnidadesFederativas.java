@@ -0,0 +1,77 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.RollupDesvioHora;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Normaliza o estado do paciente (sigla ou nome, com ou sem acento) para a
+ * sigla da unidade federativa, chave de região comum aos rollups, à
+ * exportação, à janela regional, aos quantis populacionais e aos detectores
+ * de mudança.
+ */
+final class UnidadesFederativas {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnidadesFederativas.class);
+
+    private static final Map<String, String> SIGLAS_POR_NOME = Map.ofEntries(
+            Map.entry("ACRE", "AC"), Map.entry("ALAGOAS", "AL"), Map.entry("AMAPA", "AP"),
+            Map.entry("AMAZONAS", "AM"), Map.entry("BAHIA", "BA"), Map.entry("CEARA", "CE"),
+            Map.entry("DISTRITO FEDERAL", "DF"), Map.entry("ESPIRITO SANTO", "ES"), Map.entry("GOIAS", "GO"),
+            Map.entry("MARANHAO", "MA"), Map.entry("MATO GROSSO", "MT"), Map.entry("MATO GROSSO DO SUL", "MS"),
+            Map.entry("MINAS GERAIS", "MG"), Map.entry("PARA", "PA"), Map.entry("PARAIBA", "PB"),
+            Map.entry("PARANA", "PR"), Map.entry("PERNAMBUCO", "PE"), Map.entry("PIAUI", "PI"),
+            Map.entry("RIO DE JANEIRO", "RJ"), Map.entry("RIO GRANDE DO NORTE", "RN"),
+            Map.entry("RIO GRANDE DO SUL", "RS"), Map.entry("RONDONIA", "RO"), Map.entry("RORAIMA", "RR"),
+            Map.entry("SANTA CATARINA", "SC"), Map.entry("SAO PAULO", "SP"), Map.entry("SERGIPE", "SE"),
+            Map.entry("TOCANTINS", "TO"));
+
+    private static final Set<String> SIGLAS = Set.copyOf(SIGLAS_POR_NOME.values());
+
+    /** Valores de região não reconhecidos já registrados no log (limitado). */
+    private static final Set<String> REGIOES_DESCONHECIDAS = ConcurrentHashMap.newKeySet();
+    private static final int MAXIMO_REGIOES_DESCONHECIDAS_LOG = 1000;
+
+    private UnidadesFederativas() {
+    }
+
+    /**
+     * Sigla da unidade federativa do estado informado, ou
+     * {@link RollupDesvioHora#REGIAO_DESCONHECIDA} se ausente ou não reconhecido.
+     */
+    static String normalizarRegiao(String estado) {
+        String sigla = sigla(estado);
+        return sigla != null ? sigla : RollupDesvioHora.REGIAO_DESCONHECIDA;
+    }
+
+    /**
+     * Sigla da unidade federativa do estado informado, ou null se ausente ou
+     * não reconhecido (o paciente conta apenas nos agregados nacionais).
+     */
+    static String sigla(String estado) {
+        if (estado == null || estado.isBlank()) {
+            return null;
+        }
+        String nome = Normalizer.normalize(estado.trim(), Normalizer.Form.NFD)
+                .replaceAll("\\p{M}", "")
+                .replaceAll("\\s+", " ")
+                .toUpperCase(Locale.ROOT);
+        if (SIGLAS.contains(nome)) {
+            return nome;
+        }
+        String sigla = SIGLAS_POR_NOME.get(nome);
+        if (sigla != null) {
+            return sigla;
+        }
+        if (REGIOES_DESCONHECIDAS.size() < MAXIMO_REGIOES_DESCONHECIDAS_LOG && REGIOES_DESCONHECIDAS.add(nome)) {
+            logger.warn("Estado não reconhecido, tratado como região desconhecida: {}", estado);
+        }
+        return null;
+    }
+}
@@ -1,5 +1,6 @@
 package br.ufg.inf.hemograma.service;
 
+import br.ufg.inf.hemograma.jfr.FaixaReferenciaResolvidaEvent;
 import br.ufg.inf.hemograma.model.Paciente;
 import br.ufg.inf.hemograma.model.enums.TipoParametro;
 import org.slf4j.Logger;
@@ -50,13 +51,28 @@ public class ValoresReferenciaService {
      * - Valores abaixo indicam "Baixa (Anemia)"
      */
     public FaixaReferencia obterFaixaReferencia(TipoParametro tipoParametro, Paciente paciente) {
+        FaixaReferenciaResolvidaEvent evento = new FaixaReferenciaResolvidaEvent();
+        evento.begin();
+
         String genero = paciente != null ? paciente.getGenero() : null;
         Integer idade = calcularIdade(paciente);
         
         logger.debug("Obtendo faixa de referência para {} - Gênero: {}, Idade: {}", 
                      tipoParametro, genero, idade);
         
-        return obterFaixaReferencia(tipoParametro, genero, idade);
+        FaixaReferencia faixa = obterFaixaReferencia(tipoParametro, genero, idade);
+
+        evento.end();
+        if (evento.shouldCommit()) {
+            evento.parametro = tipoParametro.name();
+            evento.genero = genero;
+            evento.idade = idade != null ? idade : -1;
+            evento.minimo = faixa.getMinimo();
+            evento.maximo = faixa.getMaximo();
+            evento.unidade = faixa.getUnidade();
+            evento.commit();
+        }
+        return faixa;
     }
     
     /**
@@ -74,6 +90,14 @@ public class ValoresReferenciaService {
                 return obterFaixaHematocrito(genero, idade);
             case ERITROCITOS:
                 return obterFaixaEritrocitos(genero);
+            case VCM:
+                return new FaixaReferencia(80.0, 100.0, "fL");
+            case HCM:
+                return new FaixaReferencia(27.0, 33.0, "pg");
+            case CHCM:
+                return new FaixaReferencia(32.0, 36.0, "g/dL");
+            case RDW:
+                return new FaixaReferencia(11.5, 14.5, "%");
             case NEUTROFILOS:
                 return new FaixaReferencia(1500.0, 7500.0, "/μL");
             case LINFOCITOS:
@@ -0,0 +1,241 @@
+package br.ufg.inf.hemograma.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Localiza campos de um recurso FHIR em JSON varrendo os bytes, sem parse.
+ *
+ * Usada antes do parse completo (roteamento, reenvios sem alteração e
+ * triagem de valores críticos). {@code resourceType} e {@code id} do recurso
+ * raiz são lidos apenas no primeiro nível do objeto, nunca nas entradas de
+ * um Bundle ou em recursos contidos; um resultado nulo apenas faz o chamador
+ * seguir pelo caminho com parse.
+ */
+final class VarreduraJson {
+
+    private static final byte[] CHAVE_SUBJECT = "\"subject\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHAVE_REFERENCE = "\"reference\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHAVE_RESOURCE_TYPE = "\"resourceType\"".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] CHAVE_ID = "\"id\"".getBytes(StandardCharsets.US_ASCII);
+    private static final String PREFIXO_PACIENTE = "Patient/";
+
+    private VarreduraJson() {
+    }
+
+    /**
+     * Referência do recurso raiz ("Observation/123", "Bundle/abc").
+     *
+     * @return Referência ou null se o recurso raiz não tiver tipo ou id
+     */
+    static String referenciaRecurso(byte[] payload) {
+        if (payload == null) {
+            return null;
+        }
+        String tipo = valorCampoRaiz(payload, CHAVE_RESOURCE_TYPE);
+        String id = tipo != null ? valorCampoRaiz(payload, CHAVE_ID) : null;
+        return id != null ? tipo + "/" + id : null;
+    }
+
+    /**
+     * Referência do paciente: o primeiro {@code "subject": {"reference": "..."}}
+     * ou, em um Patient, o {@code "id"}.
+     *
+     * @return Referência normalizada ("Patient/123") ou null
+     */
+    static String referenciaPaciente(byte[] payload) {
+        if (payload == null) {
+            return null;
+        }
+
+        int subject = indiceDe(payload, CHAVE_SUBJECT, 0);
+        if (subject >= 0) {
+            String valor = valorCampo(payload, CHAVE_REFERENCE, subject + CHAVE_SUBJECT.length);
+            if (valor != null) {
+                return normalizarReferencia(valor);
+            }
+        }
+
+        if ("Patient".equals(valorCampoRaiz(payload, CHAVE_RESOURCE_TYPE))) {
+            String valor = valorCampoRaiz(payload, CHAVE_ID);
+            return valor != null ? PREFIXO_PACIENTE + valor : null;
+        }
+        return null;
+    }
+
+    /**
+     * Referências de paciente distintas de todos os {@code "subject"} do
+     * payload (em um Bundle, os de todas as entradas), na ordem em que aparecem.
+     */
+    static Set<String> referenciasPacientes(byte[] payload) {
+        Set<String> referencias = new LinkedHashSet<>();
+        if (payload == null) {
+            return referencias;
+        }
+
+        int subject = indiceDe(payload, CHAVE_SUBJECT, 0);
+        while (subject >= 0) {
+            String valor = valorCampo(payload, CHAVE_REFERENCE, subject + CHAVE_SUBJECT.length);
+            if (valor != null) {
+                referencias.add(normalizarReferencia(valor));
+            }
+            subject = indiceDe(payload, CHAVE_SUBJECT, subject + CHAVE_SUBJECT.length);
+        }
+        return referencias;
+    }
+
+    /**
+     * Tipo do recurso raiz ("Bundle", "Observation"), ou null.
+     */
+    static String tipoRecurso(byte[] payload) {
+        return payload != null ? valorCampoRaiz(payload, CHAVE_RESOURCE_TYPE) : null;
+    }
+
+    /**
+     * Referência relativa do paciente: em referências absolutas
+     * (http://servidor/fhir/Patient/123), a partir de "Patient/".
+     */
+    static String normalizarReferencia(String referencia) {
+        int inicio = referencia.lastIndexOf(PREFIXO_PACIENTE);
+        return inicio > 0 ? referencia.substring(inicio) : referencia;
+    }
+
+    /**
+     * Valor string da primeira ocorrência da chave a partir de {@code inicio}.
+     *
+     * @param chave Nome da chave entre aspas, em ASCII
+     */
+    static String valorCampo(byte[] dados, byte[] chave, int inicio) {
+        int indice = indiceDe(dados, chave, inicio);
+        return indice >= 0 ? valorTexto(dados, indice + chave.length) : null;
+    }
+
+    /**
+     * Valor string da chave no objeto raiz, ignorando as ocorrências em
+     * objetos e listas aninhados e dentro de textos.
+     *
+     * @param chave Nome da chave entre aspas, em ASCII
+     */
+    static String valorCampoRaiz(byte[] dados, byte[] chave) {
+        int profundidade = 0;
+        for (int i = 0; i < dados.length; i++) {
+            byte b = dados[i];
+            if (b == '"') {
+                if (profundidade == 1 && comecaEm(dados, chave, i)) {
+                    String valor = valorTexto(dados, i + chave.length);
+                    if (valor != null) {
+                        return valor;
+                    }
+                }
+                i = fimTexto(dados, i);
+                if (i < 0) {
+                    return null;
+                }
+            } else if (b == '{' || b == '[') {
+                profundidade++;
+            } else if ((b == '}' || b == ']') && --profundidade <= 0) {
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static boolean comecaEm(byte[] dados, byte[] procurado, int posicao) {
+        if (posicao + procurado.length > dados.length) {
+            return false;
+        }
+        for (int j = 0; j < procurado.length; j++) {
+            if (dados[posicao + j] != procurado[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Posição das aspas que fecham o texto aberto em {@code inicio}, ou -1.
+     */
+    private static int fimTexto(byte[] dados, int inicio) {
+        for (int i = inicio + 1; i < dados.length; i++) {
+            if (dados[i] == '\\') {
+                i++;
+            } else if (dados[i] == '"') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    static int indiceDe(byte[] dados, byte[] procurado, int inicio) {
+        int limite = dados.length - procurado.length;
+        externo:
+        for (int i = inicio; i <= limite; i++) {
+            for (int j = 0; j < procurado.length; j++) {
+                if (dados[i + j] != procurado[j]) {
+                    continue externo;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Lê o valor string após uma chave JSON ({@code : "valor"}), sem escapes.
+     */
+    static String valorTexto(byte[] dados, int posicao) {
+        int i = pularEspacos(dados, posicao);
+        if (i >= dados.length || dados[i] != ':') {
+            return null;
+        }
+        i = pularEspacos(dados, i + 1);
+        if (i >= dados.length || dados[i] != '"') {
+            return null;
+        }
+
+        int inicio = ++i;
+        while (i < dados.length && dados[i] != '"' && dados[i] != '\\') {
+            i++;
+        }
+        if (i >= dados.length || dados[i] != '"' || i == inicio) {
+            return null;
+        }
+        return new String(dados, inicio, i - inicio, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lê o valor numérico após uma chave JSON ({@code : 12.5}).
+     *
+     * @return Valor, ou NaN se não houver um número na posição
+     */
+    static double valorNumero(byte[] dados, int posicao) {
+        int i = pularEspacos(dados, posicao);
+        if (i >= dados.length || dados[i] != ':') {
+            return Double.NaN;
+        }
+        i = pularEspacos(dados, i + 1);
+
+        int inicio = i;
+        while (i < dados.length && (Character.isDigit(dados[i]) || dados[i] == '-' || dados[i] == '+'
+                || dados[i] == '.' || dados[i] == 'e' || dados[i] == 'E')) {
+            i++;
+        }
+        if (i == inicio) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(new String(dados, inicio, i - inicio, StandardCharsets.US_ASCII));
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    private static int pularEspacos(byte[] dados, int posicao) {
+        int i = posicao;
+        while (i < dados.length && (dados[i] == ' ' || dados[i] == '\t' || dados[i] == '\r' || dados[i] == '\n')) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,31 @@
+-- =====================================================================
+-- Data de cadastro do hemograma nas tabelas filhas (parâmetros, desvios,
+-- achados e membros), chave das partições mensais no PostgreSQL.
+--
+-- Sem particionamento no H2; linhas sem hemograma correspondente são
+-- descartadas.
+-- =====================================================================
+
+ALTER TABLE parametros_hemograma ADD COLUMN data_cadastro_hemograma TIMESTAMP(6);
+UPDATE parametros_hemograma t SET data_cadastro_hemograma =
+    (SELECT h.data_cadastro FROM hemogramas h WHERE h.id = t.hemograma_id);
+DELETE FROM parametros_hemograma WHERE data_cadastro_hemograma IS NULL;
+ALTER TABLE parametros_hemograma ALTER COLUMN data_cadastro_hemograma SET NOT NULL;
+
+ALTER TABLE desvios ADD COLUMN data_cadastro_hemograma TIMESTAMP(6);
+UPDATE desvios t SET data_cadastro_hemograma =
+    (SELECT h.data_cadastro FROM hemogramas h WHERE h.id = t.hemograma_id);
+DELETE FROM desvios WHERE data_cadastro_hemograma IS NULL;
+ALTER TABLE desvios ALTER COLUMN data_cadastro_hemograma SET NOT NULL;
+
+ALTER TABLE achados_compostos ADD COLUMN data_cadastro_hemograma TIMESTAMP(6);
+UPDATE achados_compostos t SET data_cadastro_hemograma =
+    (SELECT h.data_cadastro FROM hemogramas h WHERE h.id = t.hemograma_id);
+DELETE FROM achados_compostos WHERE data_cadastro_hemograma IS NULL;
+ALTER TABLE achados_compostos ALTER COLUMN data_cadastro_hemograma SET NOT NULL;
+
+ALTER TABLE membros_hemograma ADD COLUMN data_cadastro_hemograma TIMESTAMP(6);
+UPDATE membros_hemograma t SET data_cadastro_hemograma =
+    (SELECT h.data_cadastro FROM hemogramas h WHERE h.id = t.hemograma_id);
+DELETE FROM membros_hemograma WHERE data_cadastro_hemograma IS NULL;
+ALTER TABLE membros_hemograma ALTER COLUMN data_cadastro_hemograma SET NOT NULL;
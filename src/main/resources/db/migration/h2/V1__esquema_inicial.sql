@@ -0,0 +1,85 @@
+-- =====================================================================
+-- Esquema inicial (H2, inclusive em modo de compatibilidade PostgreSQL)
+--
+-- Mesmas tabelas e colunas da versão PostgreSQL, para testes offline do
+-- perfil de produção. O H2 não suporta particionamento nem índices de
+-- expressão: as tabelas não são particionadas e a unicidade de
+-- fhir_observation_id é uma constraint comum.
+-- =====================================================================
+
+CREATE SEQUENCE hemogramas_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE parametros_hemograma_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE desvios_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE pacientes (
+    id                BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    fhir_id           VARCHAR(255) NOT NULL,
+    nome_completo     VARCHAR(255),
+    primeiro_nome     VARCHAR(255),
+    sobrenome         VARCHAR(255),
+    data_nascimento   DATE,
+    genero            VARCHAR(255),
+    telefone          VARCHAR(255),
+    endereco          VARCHAR(255),
+    cidade            VARCHAR(255),
+    estado            VARCHAR(255),
+    cep               VARCHAR(255),
+    hash_dados        VARCHAR(64),
+    data_cadastro     TIMESTAMP(6) NOT NULL,
+    data_atualizacao  TIMESTAMP(6),
+    CONSTRAINT uk_pacientes_fhir_id UNIQUE (fhir_id)
+);
+
+CREATE TABLE hemogramas (
+    id                   BIGINT       NOT NULL PRIMARY KEY,
+    fhir_observation_id  VARCHAR(255) NOT NULL,
+    paciente_id          BIGINT       NOT NULL REFERENCES pacientes (id),
+    data_coleta          TIMESTAMP(6),
+    data_cadastro        TIMESTAMP(6) NOT NULL,
+    status               VARCHAR(255),
+    parametros_presenca  INTEGER,
+    parametros_valores   VARBINARY(112),
+    CONSTRAINT uk_hemogramas_fhir_observation_id UNIQUE (fhir_observation_id)
+);
+
+CREATE INDEX idx_hemogramas_paciente_coleta ON hemogramas (paciente_id, data_coleta);
+CREATE INDEX idx_hemogramas_data_coleta ON hemogramas (data_coleta);
+
+CREATE TABLE parametros_hemograma (
+    id              BIGINT           PRIMARY KEY,
+    hemograma_id    BIGINT           NOT NULL,
+    tipo_parametro  VARCHAR(255)     NOT NULL,
+    valor           DOUBLE PRECISION NOT NULL,
+    unidade         VARCHAR(255),
+    codigo_loinc    VARCHAR(255)
+);
+
+CREATE INDEX idx_parametros_hemograma_hemograma ON parametros_hemograma (hemograma_id);
+
+CREATE TABLE desvios (
+    id                        BIGINT           NOT NULL PRIMARY KEY,
+    hemograma_id              BIGINT           NOT NULL,
+    tipo_parametro            VARCHAR(255)     NOT NULL,
+    valor_encontrado          DOUBLE PRECISION NOT NULL,
+    valor_referencia_minimo   DOUBLE PRECISION,
+    valor_referencia_maximo   DOUBLE PRECISION,
+    severidade                VARCHAR(255)     NOT NULL,
+    descricao                 VARCHAR(500),
+    percentual_desvio         DOUBLE PRECISION,
+    data_deteccao             TIMESTAMP(6)     NOT NULL,
+    notificacao_enviada       BOOLEAN
+);
+
+CREATE INDEX idx_desvios_hemograma ON desvios (hemograma_id);
+CREATE INDEX idx_desvios_severidade_deteccao ON desvios (severidade, data_deteccao);
+CREATE INDEX idx_desvios_data_deteccao ON desvios (data_deteccao);
+
+CREATE TABLE rollup_desvios_hora (
+    id              BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+    hora            TIMESTAMP(6) NOT NULL,
+    tipo_parametro  VARCHAR(255) NOT NULL,
+    severidade      VARCHAR(255) NOT NULL,
+    regiao          VARCHAR(10)  NOT NULL,
+    quantidade      BIGINT       NOT NULL,
+    CONSTRAINT uk_rollup_desvios_hora UNIQUE (hora, tipo_parametro, severidade, regiao)
+);
@@ -0,0 +1,22 @@
+-- =====================================================================
+-- Achados compostos (combinações de parâmetros, ex: pancitopenia)
+--
+-- Sem chave estrangeira para hemogramas, como desvios e parâmetros.
+-- =====================================================================
+
+CREATE SEQUENCE achados_compostos_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE achados_compostos (
+    id              BIGINT       NOT NULL PRIMARY KEY,
+    hemograma_id    BIGINT       NOT NULL,
+    codigo          VARCHAR(100) NOT NULL,
+    nome            VARCHAR(255) NOT NULL,
+    severidade      VARCHAR(255) NOT NULL,
+    descricao       VARCHAR(500),
+    data_deteccao   TIMESTAMP(6) NOT NULL
+);
+
+-- findByHemogramaIds
+CREATE INDEX idx_achados_compostos_hemograma ON achados_compostos (hemograma_id);
+-- Contagem de achados por tipo em um período
+CREATE INDEX idx_achados_compostos_codigo_deteccao ON achados_compostos (codigo, data_deteccao);
@@ -0,0 +1,18 @@
+-- =====================================================================
+-- Fila distribuída de notificações (app.hemograma.fila-distribuida)
+--
+-- Tabela de trabalho compartilhada entre instâncias: as linhas são
+-- reivindicadas com SELECT ... FOR UPDATE SKIP LOCKED e um lease com prazo,
+-- e removidas ao fim do processamento.
+-- =====================================================================
+
+CREATE SEQUENCE notificacoes_pendentes_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE notificacoes_pendentes (
+    id                BIGINT       NOT NULL PRIMARY KEY,
+    payload           BINARY LARGE OBJECT NOT NULL,
+    data_recebimento  TIMESTAMP(6) NOT NULL,
+    tentativas        INTEGER      NOT NULL,
+    lease_ate         TIMESTAMP(6),
+    trabalhador       VARCHAR(100)
+);
@@ -0,0 +1,8 @@
+-- =====================================================================
+-- Reingestão por versão: meta.versionId da Observation aplicada por
+-- último e hash do conteúdo extraído (reenvios sem alteração são
+-- descartados sem gravação)
+-- =====================================================================
+
+ALTER TABLE hemogramas ADD COLUMN versao_fhir VARCHAR(64);
+ALTER TABLE hemogramas ADD COLUMN hash_conteudo VARCHAR(64);
@@ -0,0 +1,8 @@
+-- =====================================================================
+-- Fila distribuída: prioridade da notificação (1 = valores críticos na
+-- triagem do recebimento), reivindicada antes das demais
+-- =====================================================================
+
+ALTER TABLE notificacoes_pendentes ADD COLUMN prioridade INTEGER DEFAULT 0 NOT NULL;
+
+CREATE INDEX idx_notificacoes_pendentes_prioridade ON notificacoes_pendentes (prioridade DESC, id);
@@ -0,0 +1,28 @@
+-- =====================================================================
+-- Fila distribuída: partições por paciente
+--
+-- Cada notificação grava a partição do seu paciente (hash da referência),
+-- e cada partição é reivindicada, com lease, por uma única instância. As
+-- notificações de um mesmo paciente não são processadas em duas instâncias
+-- ao mesmo tempo. As linhas das partições são criadas pela aplicação,
+-- conforme app.hemograma.fila-distribuida.particoes.
+-- =====================================================================
+
+ALTER TABLE notificacoes_pendentes ADD COLUMN particao INTEGER DEFAULT 0 NOT NULL;
+
+CREATE INDEX idx_notificacoes_pendentes_particao ON notificacoes_pendentes (particao, prioridade DESC, id);
+
+-- Linhas em processamento de uma instância (renovação e liberação por trabalhador)
+CREATE INDEX idx_notificacoes_pendentes_trabalhador ON notificacoes_pendentes (trabalhador);
+
+CREATE TABLE particoes_fila_distribuida (
+    particao   INTEGER      NOT NULL PRIMARY KEY,
+    instancia  VARCHAR(100),
+    lease_ate  TIMESTAMP(6)
+);
+
+-- Presença das instâncias, para dividir as partições entre elas
+CREATE TABLE instancias_fila_distribuida (
+    instancia  VARCHAR(100) NOT NULL PRIMARY KEY,
+    lease_ate  TIMESTAMP(6) NOT NULL
+);
@@ -0,0 +1,27 @@
+-- =====================================================================
+-- Layout compacto (app.hemograma.armazenamento.layout=COMPACTO): os valores
+-- passam do bitmap de presença com doubles em bytes, não consultáveis em
+-- SQL, a uma coluna anulável por tipo de parâmetro na linha do hemograma,
+-- consultável por valor como parametros_hemograma.
+--
+-- Sem conversão dos hemogramas já gravados no formato anterior (o H2 serve
+-- a testes offline; no PostgreSQL a migração converte os valores).
+-- =====================================================================
+
+ALTER TABLE hemogramas ADD COLUMN valor_leucocitos DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_hemoglobina DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_plaquetas DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_hematocrito DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_eritrocitos DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_vcm DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_hcm DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_chcm DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_rdw DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_neutrofilos DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_linfocitos DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_monocitos DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_eosinofilos DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_basofilos DOUBLE PRECISION;
+
+ALTER TABLE hemogramas DROP COLUMN parametros_presenca;
+ALTER TABLE hemogramas DROP COLUMN parametros_valores;
@@ -0,0 +1,208 @@
+-- =====================================================================
+-- Partições alinhadas com hemogramas
+--
+-- parametros_hemograma, desvios e achados_compostos passam a ser
+-- particionados por mês na mesma chave de hemogramas: a data de cadastro
+-- do hemograma, gravada em data_cadastro_hemograma. Assim as partições
+-- <tabela>_AAAA_MM de um mês podem ser desanexadas ou removidas juntas
+-- (remover_particoes_mensais), sem deixar parâmetros, desvios ou achados
+-- órfãos. desvios deixa de ser particionado por data_deteccao.
+--
+-- membros_hemograma recebe a coluna, mas não é particionada: a unicidade
+-- de fhir_observation_id exigiria a coluna de partição na chave. Os
+-- membros do mês são apagados pela rotina de remoção.
+--
+-- Linhas sem hemograma correspondente são descartadas.
+-- =====================================================================
+
+-- ---------------------------------------------------------------------
+-- Membros (não particionada)
+-- ---------------------------------------------------------------------
+ALTER TABLE membros_hemograma ADD COLUMN data_cadastro_hemograma TIMESTAMP(6);
+
+UPDATE membros_hemograma m
+   SET data_cadastro_hemograma = h.data_cadastro
+  FROM hemogramas h
+ WHERE h.id = m.hemograma_id;
+
+DELETE FROM membros_hemograma WHERE data_cadastro_hemograma IS NULL;
+
+ALTER TABLE membros_hemograma ALTER COLUMN data_cadastro_hemograma SET NOT NULL;
+
+-- remover_particoes_mensais
+CREATE INDEX idx_membros_hemograma_cadastro ON membros_hemograma (data_cadastro_hemograma);
+
+-- ---------------------------------------------------------------------
+-- Cópia das tabelas filhas com a data de cadastro do hemograma
+-- ---------------------------------------------------------------------
+CREATE TABLE parametros_hemograma_copia AS
+    SELECT p.*, h.data_cadastro AS data_cadastro_hemograma
+      FROM parametros_hemograma p JOIN hemogramas h ON h.id = p.hemograma_id;
+
+CREATE TABLE desvios_copia AS
+    SELECT d.*, h.data_cadastro AS data_cadastro_hemograma
+      FROM desvios d JOIN hemogramas h ON h.id = d.hemograma_id;
+
+CREATE TABLE achados_compostos_copia AS
+    SELECT a.*, h.data_cadastro AS data_cadastro_hemograma
+      FROM achados_compostos a JOIN hemogramas h ON h.id = a.hemograma_id;
+
+DROP TABLE parametros_hemograma;
+DROP TABLE desvios;
+DROP TABLE achados_compostos;
+
+-- ---------------------------------------------------------------------
+-- Parâmetros (particionado por data_cadastro_hemograma)
+-- ---------------------------------------------------------------------
+CREATE TABLE parametros_hemograma (
+    id                       BIGINT           NOT NULL,
+    hemograma_id             BIGINT           NOT NULL,
+    data_cadastro_hemograma  TIMESTAMP(6)     NOT NULL,
+    tipo_parametro           VARCHAR(255)     NOT NULL,
+    valor                    DOUBLE PRECISION NOT NULL,
+    unidade                  VARCHAR(255),
+    codigo_loinc             VARCHAR(255),
+    CONSTRAINT pk_parametros_hemograma PRIMARY KEY (id, data_cadastro_hemograma)
+) PARTITION BY RANGE (data_cadastro_hemograma);
+
+-- findByHemogramaIds
+CREATE INDEX idx_parametros_hemograma_hemograma ON parametros_hemograma (hemograma_id);
+
+-- ---------------------------------------------------------------------
+-- Desvios (particionado por data_cadastro_hemograma)
+-- ---------------------------------------------------------------------
+CREATE TABLE desvios (
+    id                        BIGINT           NOT NULL,
+    hemograma_id              BIGINT           NOT NULL,
+    data_cadastro_hemograma   TIMESTAMP(6)     NOT NULL,
+    tipo_parametro            VARCHAR(255)     NOT NULL,
+    valor_encontrado          DOUBLE PRECISION NOT NULL,
+    valor_referencia_minimo   DOUBLE PRECISION,
+    valor_referencia_maximo   DOUBLE PRECISION,
+    severidade                VARCHAR(255)     NOT NULL,
+    descricao                 VARCHAR(500),
+    percentual_desvio         DOUBLE PRECISION,
+    data_deteccao             TIMESTAMP(6)     NOT NULL,
+    notificacao_enviada       BOOLEAN,
+    CONSTRAINT pk_desvios PRIMARY KEY (id, data_cadastro_hemograma)
+) PARTITION BY RANGE (data_cadastro_hemograma);
+
+-- findByHemograma / findByHemogramaIds
+CREATE INDEX idx_desvios_hemograma ON desvios (hemograma_id);
+-- findBySeveridadeEDataDeteccaoApos / countBySeveridadeEDataDeteccaoApos
+CREATE INDEX idx_desvios_severidade_deteccao ON desvios (severidade, data_deteccao);
+-- findByNotificacaoEnviada(false): apenas os pendentes, uma fração pequena da tabela
+CREATE INDEX idx_desvios_pendentes ON desvios (data_deteccao) WHERE notificacao_enviada IS NOT TRUE;
+
+-- ---------------------------------------------------------------------
+-- Achados compostos (particionado por data_cadastro_hemograma)
+-- ---------------------------------------------------------------------
+CREATE TABLE achados_compostos (
+    id                       BIGINT       NOT NULL,
+    hemograma_id             BIGINT       NOT NULL,
+    data_cadastro_hemograma  TIMESTAMP(6) NOT NULL,
+    codigo                   VARCHAR(100) NOT NULL,
+    nome                     VARCHAR(255) NOT NULL,
+    severidade               VARCHAR(255) NOT NULL,
+    descricao                VARCHAR(500),
+    data_deteccao            TIMESTAMP(6) NOT NULL,
+    CONSTRAINT pk_achados_compostos PRIMARY KEY (id, data_cadastro_hemograma)
+) PARTITION BY RANGE (data_cadastro_hemograma);
+
+-- findByHemogramaIds
+CREATE INDEX idx_achados_compostos_hemograma ON achados_compostos (hemograma_id);
+-- Contagem de achados por tipo em um período
+CREATE INDEX idx_achados_compostos_codigo_deteccao ON achados_compostos (codigo, data_deteccao);
+
+-- ---------------------------------------------------------------------
+-- Partições: os mesmos meses de hemogramas, mais a partição padrão
+-- ---------------------------------------------------------------------
+CREATE TABLE parametros_hemograma_padrao PARTITION OF parametros_hemograma DEFAULT;
+CREATE TABLE desvios_padrao PARTITION OF desvios DEFAULT;
+CREATE TABLE achados_compostos_padrao PARTITION OF achados_compostos DEFAULT;
+
+DO $$
+DECLARE
+    mes     DATE;
+    tabela  TEXT;
+BEGIN
+    FOR mes IN
+        SELECT to_date(substring(c.relname FROM '(\d{4}_\d{2})$'), 'YYYY_MM')
+          FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+         WHERE i.inhparent = 'hemogramas'::regclass
+           AND c.relname ~ '^hemogramas_\d{4}_\d{2}$'
+    LOOP
+        FOREACH tabela IN ARRAY ARRAY['parametros_hemograma', 'desvios', 'achados_compostos'] LOOP
+            PERFORM criar_particoes_mensais(tabela, mes, 1);
+        END LOOP;
+    END LOOP;
+END;
+$$;
+
+INSERT INTO parametros_hemograma
+       (id, hemograma_id, data_cadastro_hemograma, tipo_parametro, valor, unidade, codigo_loinc)
+SELECT id, hemograma_id, data_cadastro_hemograma, tipo_parametro, valor, unidade, codigo_loinc
+  FROM parametros_hemograma_copia;
+
+INSERT INTO desvios
+       (id, hemograma_id, data_cadastro_hemograma, tipo_parametro, valor_encontrado,
+        valor_referencia_minimo, valor_referencia_maximo, severidade, descricao,
+        percentual_desvio, data_deteccao, notificacao_enviada)
+SELECT id, hemograma_id, data_cadastro_hemograma, tipo_parametro, valor_encontrado,
+       valor_referencia_minimo, valor_referencia_maximo, severidade, descricao,
+       percentual_desvio, data_deteccao, notificacao_enviada
+  FROM desvios_copia;
+
+INSERT INTO achados_compostos
+       (id, hemograma_id, data_cadastro_hemograma, codigo, nome, severidade, descricao, data_deteccao)
+SELECT id, hemograma_id, data_cadastro_hemograma, codigo, nome, severidade, descricao, data_deteccao
+  FROM achados_compostos_copia;
+
+DROP TABLE parametros_hemograma_copia;
+DROP TABLE desvios_copia;
+DROP TABLE achados_compostos_copia;
+
+-- ---------------------------------------------------------------------
+-- Remoção das partições de um mês
+-- ---------------------------------------------------------------------
+
+-- Desanexa (desanexar = true) ou remove as partições <tabela>_AAAA_MM do
+-- mês em hemogramas e nas tabelas filhas. DETACH/DROP não disparam os
+-- gatilhos por linha, então antes apaga as Observations do mês em
+-- hemogramas_observacoes (do contrário o reenvio delas violaria a
+-- unicidade) e os membros dos hemogramas combinados do mês. Retorna o
+-- número de Observations liberadas. Chamada pela aplicação, diariamente,
+-- quando app.hemograma.particoes.retencao-meses está configurado.
+CREATE FUNCTION remover_particoes_mensais(mes DATE, desanexar BOOLEAN) RETURNS INTEGER AS $$
+DECLARE
+    inicio     DATE := date_trunc('month', mes)::DATE;
+    sufixo     TEXT := to_char(date_trunc('month', mes), 'YYYY_MM');
+    tabela     TEXT;
+    nome       TEXT;
+    liberadas  INTEGER := 0;
+BEGIN
+    IF to_regclass('hemogramas_' || sufixo) IS NULL THEN
+        RETURN 0;
+    END IF;
+
+    EXECUTE format('DELETE FROM hemogramas_observacoes o USING %I h '
+                   'WHERE o.fhir_observation_id = h.fhir_observation_id', 'hemogramas_' || sufixo);
+    GET DIAGNOSTICS liberadas = ROW_COUNT;
+
+    DELETE FROM membros_hemograma
+     WHERE data_cadastro_hemograma >= inicio
+       AND data_cadastro_hemograma < (inicio + INTERVAL '1 month');
+
+    FOREACH tabela IN ARRAY ARRAY['hemogramas', 'parametros_hemograma', 'desvios', 'achados_compostos'] LOOP
+        nome := format('%s_%s', tabela, sufixo);
+        IF to_regclass(nome) IS NOT NULL THEN
+            EXECUTE format('ALTER TABLE %I DETACH PARTITION %I', tabela, nome);
+            IF NOT desanexar THEN
+                EXECUTE format('DROP TABLE %I', nome);
+            END IF;
+        END IF;
+    END LOOP;
+
+    RETURN liberadas;
+END;
+$$ LANGUAGE plpgsql;
@@ -0,0 +1,174 @@
+-- =====================================================================
+-- Esquema inicial (PostgreSQL 13+)
+--
+-- hemogramas e desvios são particionados por mês (RANGE), de modo que
+-- partições antigas possam ser desanexadas (DETACH) ou removidas (DROP)
+-- sem DELETE em massa. Consequências do particionamento:
+--   - a chave primária inclui a coluna de partição;
+--   - não há chaves estrangeiras apontando para hemogramas (exigiriam a
+--     coluna de partição nas tabelas filhas); a integridade é garantida
+--     pela aplicação, que grava hemograma, parâmetros e desvios na mesma
+--     transação;
+--   - a unicidade global de fhir_observation_id é garantida pela tabela
+--     hemogramas_observacoes, alimentada por trigger.
+-- =====================================================================
+
+CREATE SEQUENCE hemogramas_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE parametros_hemograma_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE desvios_seq START WITH 1 INCREMENT BY 50;
+
+-- ---------------------------------------------------------------------
+-- Pacientes
+-- ---------------------------------------------------------------------
+CREATE TABLE pacientes (
+    id                BIGSERIAL PRIMARY KEY,
+    fhir_id           VARCHAR(255) NOT NULL,
+    nome_completo     VARCHAR(255),
+    primeiro_nome     VARCHAR(255),
+    sobrenome         VARCHAR(255),
+    data_nascimento   DATE,
+    genero            VARCHAR(255),
+    telefone          VARCHAR(255),
+    endereco          VARCHAR(255),
+    cidade            VARCHAR(255),
+    estado            VARCHAR(255),
+    cep               VARCHAR(255),
+    hash_dados        VARCHAR(64),
+    data_cadastro     TIMESTAMP(6) NOT NULL,
+    data_atualizacao  TIMESTAMP(6),
+    CONSTRAINT uk_pacientes_fhir_id UNIQUE (fhir_id)
+);
+
+-- ---------------------------------------------------------------------
+-- Hemogramas (particionado por data_cadastro)
+-- ---------------------------------------------------------------------
+CREATE TABLE hemogramas (
+    id                   BIGINT       NOT NULL,
+    fhir_observation_id  VARCHAR(255) NOT NULL,
+    paciente_id          BIGINT       NOT NULL REFERENCES pacientes (id),
+    data_coleta          TIMESTAMP(6),
+    data_cadastro        TIMESTAMP(6) NOT NULL,
+    status               VARCHAR(255),
+    parametros_presenca  INTEGER,
+    parametros_valores   BYTEA,
+    CONSTRAINT pk_hemogramas PRIMARY KEY (id, data_cadastro)
+) PARTITION BY RANGE (data_cadastro);
+
+CREATE TABLE hemogramas_observacoes (
+    fhir_observation_id  VARCHAR(255) PRIMARY KEY
+);
+
+CREATE FUNCTION registrar_observacao_hemograma() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO hemogramas_observacoes (fhir_observation_id) VALUES (NEW.fhir_observation_id);
+        RETURN NEW;
+    END IF;
+    DELETE FROM hemogramas_observacoes WHERE fhir_observation_id = OLD.fhir_observation_id;
+    RETURN OLD;
+END;
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_hemogramas_observacao_unica
+    BEFORE INSERT ON hemogramas
+    FOR EACH ROW EXECUTE FUNCTION registrar_observacao_hemograma();
+
+CREATE TRIGGER trg_hemogramas_observacao_removida
+    AFTER DELETE ON hemogramas
+    FOR EACH ROW EXECUTE FUNCTION registrar_observacao_hemograma();
+
+-- findByFhirObservationId / existsByFhirObservationId
+CREATE INDEX idx_hemogramas_fhir_observation_id ON hemogramas (fhir_observation_id);
+-- findPaginaPorPacienteEPeriodo (filtro e ordenação), findByPaciente*
+CREATE INDEX idx_hemogramas_paciente_referencia
+    ON hemogramas (paciente_id, (COALESCE(data_coleta, data_cadastro)) DESC, id DESC);
+-- streamParaRollup (reconstrução de rollups por período)
+CREATE INDEX idx_hemogramas_referencia ON hemogramas ((COALESCE(data_coleta, data_cadastro)));
+-- findByPeriodo
+CREATE INDEX idx_hemogramas_data_coleta ON hemogramas (data_coleta);
+
+-- ---------------------------------------------------------------------
+-- Parâmetros (layout normalizado)
+-- ---------------------------------------------------------------------
+CREATE TABLE parametros_hemograma (
+    id              BIGINT           PRIMARY KEY,
+    hemograma_id    BIGINT           NOT NULL,
+    tipo_parametro  VARCHAR(255)     NOT NULL,
+    valor           DOUBLE PRECISION NOT NULL,
+    unidade         VARCHAR(255),
+    codigo_loinc    VARCHAR(255)
+);
+
+-- findByHemogramaIds
+CREATE INDEX idx_parametros_hemograma_hemograma ON parametros_hemograma (hemograma_id);
+
+-- ---------------------------------------------------------------------
+-- Desvios (particionado por data_deteccao)
+-- ---------------------------------------------------------------------
+CREATE TABLE desvios (
+    id                        BIGINT           NOT NULL,
+    hemograma_id              BIGINT           NOT NULL,
+    tipo_parametro            VARCHAR(255)     NOT NULL,
+    valor_encontrado          DOUBLE PRECISION NOT NULL,
+    valor_referencia_minimo   DOUBLE PRECISION,
+    valor_referencia_maximo   DOUBLE PRECISION,
+    severidade                VARCHAR(255)     NOT NULL,
+    descricao                 VARCHAR(500),
+    percentual_desvio         DOUBLE PRECISION,
+    data_deteccao             TIMESTAMP(6)     NOT NULL,
+    notificacao_enviada       BOOLEAN,
+    CONSTRAINT pk_desvios PRIMARY KEY (id, data_deteccao)
+) PARTITION BY RANGE (data_deteccao);
+
+-- findByHemograma / findByHemogramaIds
+CREATE INDEX idx_desvios_hemograma ON desvios (hemograma_id);
+-- findBySeveridadeEDataDeteccaoApos / countBySeveridadeEDataDeteccaoApos
+CREATE INDEX idx_desvios_severidade_deteccao ON desvios (severidade, data_deteccao);
+-- findByNotificacaoEnviada(false): apenas os pendentes, uma fração pequena da tabela
+CREATE INDEX idx_desvios_pendentes ON desvios (data_deteccao) WHERE notificacao_enviada IS NOT TRUE;
+
+-- ---------------------------------------------------------------------
+-- Rollups horários de desvios
+-- ---------------------------------------------------------------------
+CREATE TABLE rollup_desvios_hora (
+    id              BIGSERIAL    PRIMARY KEY,
+    hora            TIMESTAMP(6) NOT NULL,
+    tipo_parametro  VARCHAR(255) NOT NULL,
+    severidade      VARCHAR(255) NOT NULL,
+    regiao          VARCHAR(10)  NOT NULL,
+    quantidade      BIGINT       NOT NULL,
+    -- Atende incrementar (chave completa) e somarPorHora (intervalo de hora)
+    CONSTRAINT uk_rollup_desvios_hora UNIQUE (hora, tipo_parametro, severidade, regiao)
+);
+
+-- ---------------------------------------------------------------------
+-- Partições mensais
+-- ---------------------------------------------------------------------
+
+-- Cria (se ainda não existirem) as partições mensais <tabela>_AAAA_MM
+-- a partir do mês de "inicio". Chamada também pela aplicação, diariamente.
+CREATE FUNCTION criar_particoes_mensais(tabela TEXT, inicio DATE, meses INTEGER) RETURNS INTEGER AS $$
+DECLARE
+    mes     DATE := date_trunc('month', inicio)::DATE;
+    nome    TEXT;
+    criadas INTEGER := 0;
+BEGIN
+    FOR i IN 1..meses LOOP
+        nome := format('%s_%s', tabela, to_char(mes, 'YYYY_MM'));
+        IF to_regclass(nome) IS NULL THEN
+            EXECUTE format('CREATE TABLE %I PARTITION OF %I FOR VALUES FROM (%L) TO (%L)',
+                           nome, tabela, mes, (mes + INTERVAL '1 month')::DATE);
+            criadas := criadas + 1;
+        END IF;
+        mes := (mes + INTERVAL '1 month')::DATE;
+    END LOOP;
+    RETURN criadas;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Rede de segurança para linhas fora das partições criadas
+CREATE TABLE hemogramas_padrao PARTITION OF hemogramas DEFAULT;
+CREATE TABLE desvios_padrao PARTITION OF desvios DEFAULT;
+
+SELECT criar_particoes_mensais('hemogramas', CURRENT_DATE, 4);
+SELECT criar_particoes_mensais('desvios', CURRENT_DATE, 4);
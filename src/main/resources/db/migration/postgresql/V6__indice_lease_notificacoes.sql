@@ -0,0 +1,6 @@
+-- =====================================================================
+-- Fila distribuída: índice do predicado de reivindicação (linhas livres ou
+-- com lease expirado e tentativas abaixo do máximo)
+-- =====================================================================
+
+CREATE INDEX idx_notificacoes_pendentes_lease ON notificacoes_pendentes (lease_ate, tentativas);
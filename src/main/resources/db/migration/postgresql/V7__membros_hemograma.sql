@@ -0,0 +1,21 @@
+-- =====================================================================
+-- Membros dos hemogramas combinados: Observations de um único analito
+-- agrupadas pelo correlacionador, com a versão e o hash de cada uma, para
+-- que uma nova versão do membro seja aplicada ao hemograma combinado.
+--
+-- Sem chave estrangeira para hemogramas, como desvios e parâmetros.
+-- =====================================================================
+
+CREATE SEQUENCE membros_hemograma_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE membros_hemograma (
+    id                   BIGINT       NOT NULL PRIMARY KEY,
+    hemograma_id         BIGINT       NOT NULL,
+    fhir_observation_id  VARCHAR(255) NOT NULL UNIQUE,
+    tipo_parametro       VARCHAR(255) NOT NULL,
+    versao_fhir          VARCHAR(64),
+    hash_conteudo        VARCHAR(64)
+);
+
+-- Remoção dos membros no arquivamento (deleteByHemogramaIds)
+CREATE INDEX idx_membros_hemograma_hemograma ON membros_hemograma (hemograma_id);
@@ -0,0 +1,72 @@
+-- =====================================================================
+-- Layout compacto (app.hemograma.armazenamento.layout=COMPACTO): os valores
+-- passam do bitmap de presença com doubles em bytes, não consultáveis em
+-- SQL, a uma coluna anulável por tipo de parâmetro na linha do hemograma,
+-- consultável por valor como parametros_hemograma.
+--
+-- Os hemogramas já gravados no formato anterior são convertidos: o bit de
+-- cada tipo (posição = ordinal de TipoParametro) indica a presença, e o
+-- valor é o double (big-endian) na ordem dos bits presentes.
+-- =====================================================================
+
+ALTER TABLE hemogramas ADD COLUMN valor_leucocitos DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_hemoglobina DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_plaquetas DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_hematocrito DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_eritrocitos DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_vcm DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_hcm DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_chcm DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_rdw DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_neutrofilos DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_linfocitos DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_monocitos DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_eosinofilos DOUBLE PRECISION;
+ALTER TABLE hemogramas ADD COLUMN valor_basofilos DOUBLE PRECISION;
+
+CREATE FUNCTION valor_compactado(presenca INTEGER, valores BYTEA, ordinal INTEGER) RETURNS DOUBLE PRECISION AS $$
+DECLARE
+    posicao   INTEGER;
+    bits      BIGINT;
+    expoente  INTEGER;
+    valor     DOUBLE PRECISION;
+BEGIN
+    IF presenca IS NULL OR valores IS NULL OR (presenca & (1 << ordinal)) = 0 THEN
+        RETURN NULL;
+    END IF;
+    -- Bits presentes antes do tipo
+    posicao := length(replace((presenca & ((1 << ordinal) - 1))::BIT(32)::TEXT, '0', ''));
+    bits := ('x' || encode(substring(valores FROM posicao * 8 + 1 FOR 8), 'hex'))::BIT(64)::BIGINT;
+    expoente := ((bits >> 52) & 2047)::INTEGER;
+    IF expoente = 0 THEN
+        -- Zero (valores subnormais não ocorrem em exames)
+        valor := 0;
+    ELSE
+        valor := (1 + (bits & 4503599627370495) / 4503599627370496.0::DOUBLE PRECISION)
+                 * power(2::DOUBLE PRECISION, expoente - 1023);
+    END IF;
+    RETURN CASE WHEN bits < 0 THEN -valor ELSE valor END;
+END;
+$$ LANGUAGE plpgsql IMMUTABLE;
+
+UPDATE hemogramas SET
+    valor_leucocitos = valor_compactado(parametros_presenca, parametros_valores, 0),
+    valor_hemoglobina = valor_compactado(parametros_presenca, parametros_valores, 1),
+    valor_plaquetas = valor_compactado(parametros_presenca, parametros_valores, 2),
+    valor_hematocrito = valor_compactado(parametros_presenca, parametros_valores, 3),
+    valor_eritrocitos = valor_compactado(parametros_presenca, parametros_valores, 4),
+    valor_vcm = valor_compactado(parametros_presenca, parametros_valores, 5),
+    valor_hcm = valor_compactado(parametros_presenca, parametros_valores, 6),
+    valor_chcm = valor_compactado(parametros_presenca, parametros_valores, 7),
+    valor_rdw = valor_compactado(parametros_presenca, parametros_valores, 8),
+    valor_neutrofilos = valor_compactado(parametros_presenca, parametros_valores, 9),
+    valor_linfocitos = valor_compactado(parametros_presenca, parametros_valores, 10),
+    valor_monocitos = valor_compactado(parametros_presenca, parametros_valores, 11),
+    valor_eosinofilos = valor_compactado(parametros_presenca, parametros_valores, 12),
+    valor_basofilos = valor_compactado(parametros_presenca, parametros_valores, 13)
+WHERE parametros_presenca IS NOT NULL;
+
+DROP FUNCTION valor_compactado(INTEGER, BYTEA, INTEGER);
+
+ALTER TABLE hemogramas DROP COLUMN parametros_presenca;
+ALTER TABLE hemogramas DROP COLUMN parametros_valores;
@@ -0,0 +1,129 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.dto.HemogramaDTO;
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.Paciente;
+import br.ufg.inf.hemograma.model.ParametroHemograma;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import br.ufg.inf.hemograma.repository.HemogramaRepository;
+import br.ufg.inf.hemograma.repository.PacienteRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Listagem paginada que atravessa o banco e vários segmentos do arquivo,
+ * marcador de conclusão dos segmentos arquivados e nova versão de uma
+ * Observation já arquivada.
+ */
+@SpringBootTest(properties = "app.hemograma.arquivo.tamanho-segmento=4")
+@ActiveProfiles("teste")
+class ArquivamentoServiceTest {
+
+    private static final LocalDateTime COLETA_ANTIGA = LocalDateTime.of(2015, 6, 1, 12, 0);
+
+    @Autowired
+    private ArquivamentoService arquivamentoService;
+
+    @Autowired
+    private HemogramaConsultaService hemogramaConsultaService;
+
+    @Autowired
+    private HemogramaRepository hemogramaRepository;
+
+    @Autowired
+    private PacienteRepository pacienteRepository;
+
+    @Autowired
+    private HemogramaProcessingService hemogramaProcessingService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void paginasSeguemDoBancoParaOsSegmentosNaOrdemDeReferencia() throws Exception {
+        // Paciente novo a cada execução: o diretório do arquivo sobrevive entre execuções
+        String paciente = "Patient/arquivo-" + UUID.randomUUID();
+        List<String> esperados = new ArrayList<>();
+        transactionTemplate.executeWithoutResult(status -> {
+            Paciente entidade = pacienteRepository.save(new Paciente(paciente));
+            for (int i = 0; i < 3; i++) {
+                esperados.add(salvar(entidade, "recente-" + i, LocalDateTime.now().minusDays(1).minusHours(i)));
+            }
+            for (int i = 0; i < 10; i++) {
+                esperados.add(salvar(entidade, "antigo-" + i, COLETA_ANTIGA.minusHours(i)));
+            }
+        });
+
+        assertThat(arquivamentoService.arquivar(COLETA_ANTIGA.plusDays(1))).isEqualTo(10);
+        arquivamentoService.concluirArquivamentoPendente();
+
+        List<String> listados = new ArrayList<>();
+        for (int pagina = 0; pagina < 3; pagina++) {
+            Page<HemogramaDTO> resultado = hemogramaConsultaService.listarPorPaciente(paciente, null, null, pagina, 5);
+            assertThat(resultado.getTotalElements()).isEqualTo(13);
+            resultado.getContent().forEach(hemograma -> listados.add(hemograma.fhirObservationId()));
+        }
+        assertThat(listados).containsExactlyElementsOf(esperados);
+
+        try (Stream<Path> arquivos = Files.list(Paths.get("target/teste-dados/arquivo"))) {
+            assertThat(arquivos.map(arquivo -> arquivo.getFileName().toString()))
+                    .filteredOn(nome -> nome.endsWith(".hseg"))
+                    .allSatisfy(nome -> assertThat(Paths.get("target/teste-dados/arquivo", nome + ".concluido")).exists());
+        }
+    }
+
+    @Test
+    void novaVersaoDeObservationArquivadaNaoGravaOutroHemograma() {
+        String paciente = "Patient/arquivo-" + UUID.randomUUID();
+        String[] observacao = new String[1];
+        transactionTemplate.executeWithoutResult(status ->
+                observacao[0] = salvar(pacienteRepository.save(new Paciente(paciente)), "arquivado", COLETA_ANTIGA));
+
+        assertThat(arquivamentoService.arquivar(COLETA_ANTIGA.plusDays(1))).isPositive();
+        assertThat(arquivamentoService.contemObservacao(observacao[0])).isTrue();
+        assertThat(arquivamentoService.contemObservacao("Observation/nunca-recebida-" + UUID.randomUUID())).isFalse();
+
+        String json = String.format(Locale.ROOT,
+                "{\"resourceType\":\"Observation\",\"id\":\"%s\",\"meta\":{\"versionId\":\"2\"},"
+                        + "\"status\":\"final\",\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"58410-2\"}]},"
+                        + "\"subject\":{\"reference\":\"%s\"},\"effectiveDateTime\":\"2015-06-01T12:00:00Z\","
+                        + "\"component\":[{\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"718-7\"}]},"
+                        + "\"valueQuantity\":{\"value\":9.5,\"unit\":\"g/dL\"}}]}",
+                observacao[0].substring("Observation/".length()), paciente);
+        ConclusaoNotificacao conclusao = new ConclusaoNotificacao(1, () -> { });
+        assertThat(hemogramaProcessingService.processarNotificacaoFhir(
+                json.getBytes(StandardCharsets.UTF_8), Map.of(), conclusao)).isTrue();
+        conclusao.concluir();
+
+        assertThat(hemogramaRepository.existsByFhirObservationId(observacao[0])).isFalse();
+    }
+
+    private String salvar(Paciente paciente, String id, LocalDateTime coleta) {
+        Hemograma hemograma = new Hemograma();
+        hemograma.setFhirObservationId("Observation/" + id + "-" + paciente.getId());
+        hemograma.setPaciente(paciente);
+        hemograma.setDataColeta(coleta);
+        hemograma.setStatus("final");
+        hemograma.adicionarParametro(new ParametroHemograma(TipoParametro.HEMOGLOBINA, 14.0, "g/dL"));
+        hemogramaRepository.save(hemograma);
+        return hemograma.getFhirObservationId();
+    }
+}
@@ -0,0 +1,52 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.jfr.ContadorInstrucoes;
+
+/**
+ * Contagem das instruções SQL executadas pela thread corrente em um trecho
+ * de código, a partir do {@link ContadorInstrucoes} registrado no Hibernate.
+ *
+ * <pre>
+ * ContagemInstrucoes contagem = ContagemInstrucoes.contar();
+ * servico.operacao();
+ * contagem.verificarMaximo(3);
+ * </pre>
+ */
+public final class ContagemInstrucoes {
+
+    private final long inicio = ContadorInstrucoes.atual();
+
+    private ContagemInstrucoes() {
+    }
+
+    /**
+     * Inicia a contagem das instruções executadas pela thread corrente.
+     */
+    public static ContagemInstrucoes contar() {
+        return new ContagemInstrucoes();
+    }
+
+    public long getInstrucoes() {
+        return ContadorInstrucoes.atual() - inicio;
+    }
+
+    /**
+     * @throws AssertionError se mais instruções que o máximo foram executadas
+     */
+    public void verificarMaximo(long maximo) {
+        long executadas = getInstrucoes();
+        if (executadas > maximo) {
+            throw new AssertionError("Esperadas no máximo " + maximo + " instrução(ões), executadas " + executadas);
+        }
+    }
+
+    /**
+     * @throws AssertionError se a quantidade de instruções for diferente da esperada
+     */
+    public void verificar(long esperadas) {
+        long executadas = getInstrucoes();
+        if (executadas != esperadas) {
+            throw new AssertionError("Esperadas " + esperadas + " instrução(ões), executadas " + executadas);
+        }
+    }
+}
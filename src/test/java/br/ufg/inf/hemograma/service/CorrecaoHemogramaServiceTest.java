@@ -0,0 +1,104 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.enums.NivelRegional;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * Nova versão de uma Observation já gravada: a janela regional e as
+ * distribuições populacionais trocam a versão anterior pela nova; os
+ * detectores de mudança mantêm a primeira versão.
+ */
+@SpringBootTest
+@ActiveProfiles("teste")
+class CorrecaoHemogramaServiceTest {
+
+    /** Estado sem pacientes nos demais testes; as distribuições persistem entre execuções. */
+    private static final String ESTADO = "AC";
+    private static final String PACIENTE = "correcao-teste";
+    private static final double PLAQUETAS_ANTERIOR = 40000;
+    private static final double PLAQUETAS_CORRIGIDA = 250000;
+
+    @Autowired
+    private HemogramaProcessingService hemogramaProcessingService;
+
+    @Autowired
+    private AgregadorRegionalService agregadorRegionalService;
+
+    @Autowired
+    private QuantisPopulacionaisService quantisPopulacionaisService;
+
+    @Autowired
+    private DeteccaoMudancaService deteccaoMudancaService;
+
+    @Test
+    void correcaoSubstituiAVersaoAnteriorNaJanelaRegionalENosQuantis() {
+        processar("{\"resourceType\":\"Patient\",\"id\":\"" + PACIENTE + "\",\"gender\":\"female\","
+                + "\"birthDate\":\"1980-01-01\",\"address\":[{\"city\":\"Rio Branco\",\"state\":\"" + ESTADO + "\","
+                + "\"postalCode\":\"69900-000\"}]}");
+        long amostrasDeteccao = amostrasDeteccao();
+
+        String id = "correcao-" + UUID.randomUUID();
+        processar(hemograma(id, PLAQUETAS_ANTERIOR, 1));
+        assertThat(janelaRegional()).containsEntry("total", 1).containsEntry("desvios", 1);
+        assertThat(amostrasDeteccao()).isEqualTo(amostrasDeteccao + 1);
+
+        processar(hemograma(id, PLAQUETAS_CORRIGIDA, 2));
+        assertThat(janelaRegional()).containsEntry("total", 1).containsEntry("desvios", 0);
+
+        // Todas as amostras do estrato (desta e de execuções anteriores) são da versão corrigida
+        @SuppressWarnings("unchecked")
+        Map<String, Double> percentis = (Map<String, Double>) quantisPopulacionaisService
+                .consultar(TipoParametro.PLAQUETAS, "female", null, ESTADO).get("percentis");
+        assertThat(percentis.get("p1")).isCloseTo(PLAQUETAS_CORRIGIDA, within(PLAQUETAS_CORRIGIDA * 0.02));
+        assertThat(percentis.get("p99")).isCloseTo(PLAQUETAS_CORRIGIDA, within(PLAQUETAS_CORRIGIDA * 0.02));
+
+        // EWMA/CUSUM não permitem retirar a amostra: a correção não é registrada
+        assertThat(amostrasDeteccao()).isEqualTo(amostrasDeteccao + 1);
+    }
+
+    private Map<String, Object> janelaRegional() {
+        return agregadorRegionalService.mapaCalor(NivelRegional.ESTADO, false).stream()
+                .filter(item -> ESTADO.equals(item.get("regiao"))
+                        && item.get("tipoParametro") == TipoParametro.PLAQUETAS)
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private long amostrasDeteccao() {
+        List<Map<String, Object>> detectores = deteccaoMudancaService.consultar(ESTADO, TipoParametro.PLAQUETAS, false);
+        return detectores.isEmpty() ? 0 : (Long) detectores.get(0).get("amostras");
+    }
+
+    private void processar(String recurso) {
+        ConclusaoNotificacao conclusao = new ConclusaoNotificacao(1, () -> { });
+        hemogramaProcessingService.processarNotificacaoFhir(recurso.getBytes(StandardCharsets.UTF_8), Map.of(), conclusao);
+        conclusao.concluir();
+    }
+
+    private static String hemograma(String id, double plaquetas, int versao) {
+        return String.format(Locale.ROOT,
+                "{\"resourceType\":\"Observation\",\"id\":\"%s\",\"meta\":{\"versionId\":\"%d\"},\"status\":\"final\","
+                        + "\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"58410-2\"}]},"
+                        + "\"subject\":{\"reference\":\"Patient/%s\"},\"effectiveDateTime\":\"%s\",\"component\":["
+                        + "{\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"718-7\"}]},"
+                        + "\"valueQuantity\":{\"value\":13.0,\"unit\":\"g/dL\"}},"
+                        + "{\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"777-3\"}]},"
+                        + "\"valueQuantity\":{\"value\":%s,\"unit\":\"/uL\"}}]}",
+                id, versao, PACIENTE, Instant.now().truncatedTo(ChronoUnit.SECONDS), plaquetas);
+    }
+}
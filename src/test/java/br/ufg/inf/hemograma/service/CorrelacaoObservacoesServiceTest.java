@@ -0,0 +1,101 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.ParametroHemograma;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import br.ufg.inf.hemograma.repository.HemogramaRepository;
+import br.ufg.inf.hemograma.repository.MembroHemogramaRepository;
+import br.ufg.inf.hemograma.repository.ParametroHemogramaRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Correlação de Observations de um único analito: conclusão da notificação
+ * só após a gravação do hemograma combinado, e novas versões de um membro
+ * aplicadas ao hemograma combinado.
+ */
+@SpringBootTest
+@ActiveProfiles("teste")
+class CorrelacaoObservacoesServiceTest {
+
+    private static final String PACIENTE = "Patient/correlacao-teste";
+
+    @Autowired
+    private HemogramaProcessingService hemogramaProcessingService;
+
+    @Autowired
+    private HemogramaRepository hemogramaRepository;
+
+    @Autowired
+    private MembroHemogramaRepository membroHemogramaRepository;
+
+    @Autowired
+    private ParametroHemogramaRepository parametroHemogramaRepository;
+
+    @Test
+    void membrosSaoCombinadosENovaVersaoCorrigeOHemogramaCombinado() throws InterruptedException {
+        String bundle = "{\"resourceType\":\"Bundle\",\"type\":\"collection\",\"entry\":["
+                + "{\"resource\":" + membro("corr-hb", "718-7", 13.0, "g/dL", 1) + "},"
+                + "{\"resource\":" + membro("corr-plt", "777-3", 250000, "/uL", 1) + "},"
+                + "{\"resource\":" + membro("corr-leu", "6690-2", 7000, "/uL", 1) + "}]}";
+
+        CountDownLatch concluida = new CountDownLatch(1);
+        ConclusaoNotificacao conclusao = new ConclusaoNotificacao(1, concluida::countDown);
+        hemogramaProcessingService.processarNotificacaoFhir(bytes(bundle), Map.of(), conclusao);
+        conclusao.concluir();
+
+        // Membros na janela de correlação: a notificação ainda não pode ser confirmada
+        assertThat(concluida.getCount()).isEqualTo(1);
+        assertThat(concluida.await(20, TimeUnit.SECONDS)).isTrue();
+
+        Long hemogramaId = hemogramaRepository.findVersaoByFhirObservationId("Observation/corr-hb")
+                .orElseThrow().getId();
+        assertThat(valores(hemogramaId)).containsEntry(TipoParametro.PLAQUETAS, 250000.0).hasSize(3);
+        assertThat(membroHemogramaRepository.findVersaoByFhirObservationId("Observation/corr-plt"))
+                .hasValueSatisfying(membro -> assertThat(membro.getId()).isEqualTo(hemogramaId));
+
+        processar(membro("corr-plt", "777-3", 40000, "/uL", 2));
+        assertThat(valores(hemogramaId)).containsEntry(TipoParametro.PLAQUETAS, 40000.0).hasSize(3);
+
+        // Versão anterior à registrada para o membro: ignorada
+        processar(membro("corr-plt", "777-3", 250000, "/uL", 1));
+        assertThat(valores(hemogramaId)).containsEntry(TipoParametro.PLAQUETAS, 40000.0);
+        assertThat(hemogramaRepository.existsByFhirObservationId("Observation/corr-plt")).isFalse();
+    }
+
+    private void processar(String observation) {
+        ConclusaoNotificacao conclusao = new ConclusaoNotificacao(1, () -> { });
+        hemogramaProcessingService.processarNotificacaoFhir(bytes(observation), Map.of(), conclusao);
+        conclusao.concluir();
+    }
+
+    private Map<TipoParametro, Double> valores(Long hemogramaId) {
+        List<ParametroHemograma> parametros = parametroHemogramaRepository.findByHemogramaIds(List.of(hemogramaId));
+        return parametros.stream()
+                .collect(Collectors.toMap(ParametroHemograma::getTipoParametro, ParametroHemograma::getValor));
+    }
+
+    private static String membro(String id, String loinc, double valor, String unidade, int versao) {
+        return String.format(Locale.ROOT,
+                "{\"resourceType\":\"Observation\",\"id\":\"%s\",\"meta\":{\"versionId\":\"%d\"},\"status\":\"final\","
+                        + "\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"%s\"}]},"
+                        + "\"subject\":{\"reference\":\"%s\"},\"effectiveDateTime\":\"2026-10-18T10:00:00Z\","
+                        + "\"valueQuantity\":{\"value\":%s,\"unit\":\"%s\"}}",
+                id, versao, loinc, PACIENTE, valor, unidade);
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
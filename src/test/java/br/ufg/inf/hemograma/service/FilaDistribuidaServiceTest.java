@@ -0,0 +1,183 @@
+package br.ufg.inf.hemograma.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Reivindicação de notificações da fila distribuída por trabalhadores
+ * concorrentes no mesmo banco. O reivindicador da aplicação fica desligado
+ * (fila-distribuida.habilitado=false); os trabalhadores do teste chamam
+ * {@link FilaDistribuidaService#distribuirParticoes} e
+ * {@link FilaDistribuidaService#reivindicar} diretamente.
+ */
+@SpringBootTest
+@ActiveProfiles("teste")
+class FilaDistribuidaServiceTest {
+
+    private static final int NOTIFICACOES = 300;
+
+    @Autowired
+    private FilaDistribuidaService filaDistribuidaService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void enfileirar() {
+        limpar();
+        filaDistribuidaService.criarParticoes();
+        for (int i = 0; i < NOTIFICACOES; i++) {
+            filaDistribuidaService.enfileirar(("{\"resourceType\":\"Bundle\",\"id\":\"" + i + "\"}")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    @AfterEach
+    void limpar() {
+        jdbcTemplate.update("DELETE FROM notificacoes_pendentes");
+        jdbcTemplate.update("UPDATE particoes_fila_distribuida SET instancia = NULL, lease_ate = NULL");
+        jdbcTemplate.update("DELETE FROM instancias_fila_distribuida");
+    }
+
+    @Test
+    void trabalhadoresConcorrentesNuncaReivindicamAMesmaLinha() throws Exception {
+        // teste#1 começa sozinho com todas as partições e cede metade ao notar teste#2
+        assertThat(filaDistribuidaService.distribuirParticoes("teste#1")).isEqualTo(64);
+        assertThat(filaDistribuidaService.distribuirParticoes("teste#2")).isZero();
+        assertThat(filaDistribuidaService.distribuirParticoes("teste#1")).isEqualTo(32);
+        assertThat(filaDistribuidaService.distribuirParticoes("teste#2")).isEqualTo(32);
+
+        CountDownLatch largada = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<Long>> primeiro = executor.submit(reivindicarTudo("teste#1", largada));
+            Future<List<Long>> segundo = executor.submit(reivindicarTudo("teste#2", largada));
+            largada.countDown();
+
+            List<Long> idsPrimeiro = primeiro.get(60, TimeUnit.SECONDS);
+            List<Long> idsSegundo = segundo.get(60, TimeUnit.SECONDS);
+
+            assertThat(idsPrimeiro).doesNotHaveDuplicates().doesNotContainAnyElementsOf(idsSegundo);
+            assertThat(idsSegundo).doesNotHaveDuplicates();
+            Set<Long> todos = new HashSet<>(idsPrimeiro);
+            todos.addAll(idsSegundo);
+            assertThat(todos).hasSize(NOTIFICACOES);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void leaseExpiradoNoRelogioDoBancoEhReivindicadoNovamente() {
+        assertThat(filaDistribuidaService.distribuirParticoes("teste#1")).isEqualTo(64);
+        List<FilaDistribuidaService.Reivindicada> lote = filaDistribuidaService.reivindicar("teste#1");
+        assertThat(lote).isNotEmpty().noneMatch(FilaDistribuidaService.Reivindicada::leaseExpirado);
+        long id = lote.get(0).id();
+
+        // Partições detidas por teste#1: nenhuma outra instância recebe linhas delas
+        assertThat(filaDistribuidaService.distribuirParticoes("teste#2")).isZero();
+        assertThat(reivindicarTudo("teste#2")).isEmpty();
+
+        // teste#1 e teste#2 param de renovar; só a linha reivindicada tinha lease
+        jdbcTemplate.update("UPDATE instancias_fila_distribuida SET lease_ate = CURRENT_TIMESTAMP - INTERVAL '1' SECOND");
+        jdbcTemplate.update("UPDATE particoes_fila_distribuida SET lease_ate = CURRENT_TIMESTAMP - INTERVAL '1' SECOND");
+        jdbcTemplate.update("UPDATE notificacoes_pendentes SET lease_ate = CURRENT_TIMESTAMP - INTERVAL '1' SECOND " +
+                "WHERE id = ?", id);
+        assertThat(filaDistribuidaService.distribuirParticoes("teste#3")).isEqualTo(64);
+        List<FilaDistribuidaService.Reivindicada> reivindicadas = filaDistribuidaService.reivindicar("teste#3");
+        assertThat(reivindicadas).filteredOn(FilaDistribuidaService.Reivindicada::leaseExpirado)
+                .extracting(FilaDistribuidaService.Reivindicada::id)
+                .containsExactly(id);
+    }
+
+    @Test
+    void falhaMantemALinhaAteANovaTentativa() {
+        filaDistribuidaService.distribuirParticoes("teste#1");
+        List<FilaDistribuidaService.Reivindicada> lote = filaDistribuidaService.reivindicar("teste#1");
+        FilaDistribuidaService.Reivindicada notificacao = lote.get(0);
+
+        filaDistribuidaService.devolver(notificacao, "teste#1");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notificacoes_pendentes " +
+                "WHERE id = ? AND trabalhador IS NULL AND tentativas = 1 AND lease_ate > CURRENT_TIMESTAMP",
+                Integer.class, notificacao.id())).isEqualTo(1);
+        // Aguarda a espera da nova tentativa
+        assertThat(reivindicarTudo("teste#1")).hasSize(NOTIFICACOES - lote.size()).doesNotContain(notificacao.id());
+
+        jdbcTemplate.update("UPDATE notificacoes_pendentes SET lease_ate = CURRENT_TIMESTAMP - INTERVAL '1' SECOND " +
+                "WHERE id = ?", notificacao.id());
+        List<FilaDistribuidaService.Reivindicada> novaTentativa = filaDistribuidaService.reivindicar("teste#1");
+        assertThat(novaTentativa).hasSize(1);
+        assertThat(novaTentativa.get(0).id()).isEqualTo(notificacao.id());
+        assertThat(novaTentativa.get(0).tentativas()).isEqualTo(1);
+        assertThat(novaTentativa.get(0).leaseExpirado()).isFalse();
+
+        filaDistribuidaService.concluir(novaTentativa.get(0), "teste#1");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM notificacoes_pendentes WHERE id = ?",
+                Integer.class, notificacao.id())).isZero();
+    }
+
+    @Test
+    void notificacoesDoMesmoPacienteFicamNaMesmaParticao() {
+        jdbcTemplate.update("DELETE FROM notificacoes_pendentes");
+        String outro = "Patient/b";
+        for (int i = 0; FilasPorPacienteService.indicePaciente(outro, 64)
+                == FilasPorPacienteService.indicePaciente("Patient/a", 64); i++) {
+            outro = "Patient/b" + i;
+        }
+
+        filaDistribuidaService.enfileirar(observation("o1", "Patient/a"));
+        filaDistribuidaService.enfileirar(observation("o2", "Patient/a"));
+        // Bundle com pacientes de partições diferentes: uma linha por partição
+        filaDistribuidaService.enfileirar(("{\"resourceType\":\"Bundle\",\"type\":\"collection\",\"entry\":[" +
+                "{\"resource\":" + new String(observation("o3", "Patient/a"), StandardCharsets.UTF_8) + "}," +
+                "{\"resource\":" + new String(observation("o4", outro), StandardCharsets.UTF_8) + "}]}")
+                .getBytes(StandardCharsets.UTF_8));
+
+        List<Integer> particoes = jdbcTemplate.queryForList(
+                "SELECT particao FROM notificacoes_pendentes ORDER BY id", Integer.class);
+        int particaoA = FilasPorPacienteService.indicePaciente("Patient/a", 64);
+        assertThat(particoes).containsExactlyInAnyOrder(particaoA, particaoA, particaoA,
+                FilasPorPacienteService.indicePaciente(outro, 64));
+    }
+
+    private static byte[] observation(String id, String paciente) {
+        return ("{\"resourceType\":\"Observation\",\"id\":\"" + id + "\",\"status\":\"final\"," +
+                "\"code\":{\"text\":\"Hemoglobina\"},\"subject\":{\"reference\":\"" + paciente + "\"}}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private Callable<List<Long>> reivindicarTudo(String trabalhador, CountDownLatch largada) {
+        return () -> {
+            largada.await();
+            return reivindicarTudo(trabalhador);
+        };
+    }
+
+    private List<Long> reivindicarTudo(String trabalhador) {
+        List<Long> ids = new ArrayList<>();
+        List<FilaDistribuidaService.Reivindicada> lote;
+        while (!(lote = filaDistribuidaService.reivindicar(trabalhador)).isEmpty()) {
+            lote.forEach(notificacao -> ids.add(notificacao.id()));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,140 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.dto.HemogramaDTO;
+import br.ufg.inf.hemograma.model.Desvio;
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.Paciente;
+import br.ufg.inf.hemograma.model.ParametroHemograma;
+import br.ufg.inf.hemograma.model.enums.SeveridadeDesvio;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import br.ufg.inf.hemograma.repository.HemogramaRepository;
+import br.ufg.inf.hemograma.repository.PacienteRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Page;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Quantidade de instruções SQL da listagem paginada de hemogramas: fixa,
+ * independente do tamanho da página (sem N+1 nas coleções lazy). Consulta
+ * por faixa de valor nos dois layouts de armazenamento.
+ */
+@SpringBootTest
+@ActiveProfiles("teste")
+class HemogramaConsultaServiceTest {
+
+    private static final String PACIENTE = "Patient/consulta-paginada";
+    private static final int HEMOGRAMAS = 120;
+
+    /**
+     * Página de hemogramas, contagem, parâmetros, desvios e achados.
+     */
+    private static final int INSTRUCOES_POR_PAGINA = 5;
+
+    @Autowired
+    private HemogramaConsultaService hemogramaConsultaService;
+
+    @Autowired
+    private HemogramaRepository hemogramaRepository;
+
+    @Autowired
+    private PacienteRepository pacienteRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void criarHemogramas() {
+        if (pacienteRepository.findByFhirId(PACIENTE).isPresent()) {
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            Paciente paciente = pacienteRepository.save(new Paciente(PACIENTE));
+            LocalDateTime coleta = LocalDateTime.now().minusDays(1);
+            for (int i = 0; i < HEMOGRAMAS; i++) {
+                Hemograma hemograma = new Hemograma();
+                hemograma.setFhirObservationId("Observation/consulta-" + i);
+                hemograma.setPaciente(paciente);
+                hemograma.setDataColeta(coleta.minusHours(i));
+                hemograma.setStatus("final");
+                hemograma.adicionarParametro(new ParametroHemograma(TipoParametro.LEUCOCITOS, 12000.0, "/μL"));
+                hemograma.adicionarParametro(new ParametroHemograma(TipoParametro.HEMOGLOBINA, 14.0, "g/dL"));
+                hemograma.adicionarParametro(new ParametroHemograma(TipoParametro.PLAQUETAS, 250000.0, "/μL"));
+
+                Desvio desvio = new Desvio();
+                desvio.setTipoParametro(TipoParametro.LEUCOCITOS);
+                desvio.setValorEncontrado(12000.0);
+                desvio.setSeveridade(SeveridadeDesvio.LEVE);
+                hemograma.adicionarDesvio(desvio);
+
+                hemogramaRepository.save(hemograma);
+            }
+        });
+    }
+
+    @Test
+    void paginaDeCemHemogramasUsaQuantidadeFixaDeInstrucoes() {
+        ContagemInstrucoes contagem = ContagemInstrucoes.contar();
+        Page<HemogramaDTO> pagina = hemogramaConsultaService.listarPorPaciente(PACIENTE, null, null, 0, 100);
+
+        contagem.verificar(INSTRUCOES_POR_PAGINA);
+        assertThat(pagina.getContent()).hasSize(100);
+        assertThat(pagina.getTotalElements()).isEqualTo(HEMOGRAMAS);
+        assertThat(pagina.getContent()).allSatisfy(hemograma -> {
+            assertThat(hemograma.parametros()).hasSize(3);
+            assertThat(hemograma.desvios()).hasSize(1);
+        });
+    }
+
+    @Test
+    void ultimaPaginaDispensaAContagem() {
+        ContagemInstrucoes contagem = ContagemInstrucoes.contar();
+        Page<HemogramaDTO> pagina = hemogramaConsultaService.listarPorPaciente(PACIENTE, null, null, 1, 100);
+
+        // Página incompleta: o Spring Data deduz o total sem a consulta de contagem
+        contagem.verificar(INSTRUCOES_POR_PAGINA - 1);
+        assertThat(pagina.getContent()).hasSize(HEMOGRAMAS - 100);
+    }
+
+    @Test
+    void faixaDeValorIncluiOsLayoutsNormalizadoECompacto() {
+        LocalDateTime coleta = LocalDateTime.now().minusDays(2);
+        transactionTemplate.executeWithoutResult(status -> {
+            Paciente paciente = pacienteRepository.save(new Paciente("Patient/consulta-faixa"));
+            salvarHematocrito(paciente, "Observation/faixa-normalizado", 40.0, coleta, false);
+            salvarHematocrito(paciente, "Observation/faixa-normalizado-fora", 60.0, coleta, false);
+            salvarHematocrito(paciente, "Observation/faixa-compacto", 45.0, coleta.plusHours(1), true);
+            salvarHematocrito(paciente, "Observation/faixa-compacto-fora", 30.0, coleta.plusHours(1), true);
+        });
+
+        List<HemogramaDTO> hemogramas = hemogramaConsultaService.listarPorFaixaDeValor(
+                TipoParametro.HEMATOCRITO, 35.0, 50.0, null, null, 10);
+
+        assertThat(hemogramas).extracting(HemogramaDTO::fhirObservationId)
+                .containsExactly("Observation/faixa-compacto", "Observation/faixa-normalizado");
+        assertThat(hemogramas.get(0).parametros()).singleElement()
+                .satisfies(parametro -> assertThat(parametro.valor()).isEqualTo(45.0));
+    }
+
+    private void salvarHematocrito(Paciente paciente, String observacao, double valor, LocalDateTime coleta,
+                                   boolean compacto) {
+        Hemograma hemograma = new Hemograma();
+        hemograma.setFhirObservationId(observacao);
+        hemograma.setPaciente(paciente);
+        hemograma.setDataColeta(coleta);
+        hemograma.setStatus("final");
+        hemograma.adicionarParametro(new ParametroHemograma(TipoParametro.HEMATOCRITO, valor, "%"));
+        if (compacto) {
+            hemograma.compactarParametros();
+        }
+        hemogramaRepository.save(hemograma);
+    }
+}
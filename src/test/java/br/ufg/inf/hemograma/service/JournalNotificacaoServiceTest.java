@@ -0,0 +1,92 @@
+package br.ufg.inf.hemograma.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Recuperação do journal: uma notificação cujo processamento falha em todas
+ * as tentativas não é confirmada e volta na inicialização seguinte.
+ */
+@SpringBootTest(properties = {
+        "app.hemograma.ingestao.maximo-tentativas=2",
+        "app.hemograma.ingestao.espera-tentativa-ms=50"
+})
+@ActiveProfiles("teste")
+class JournalNotificacaoServiceTest {
+
+    /** Diretório próprio a cada execução: o journal sobrevive entre execuções. */
+    private static final String DIRETORIO = "target/teste-dados/journal-recuperacao-" + UUID.randomUUID();
+
+    private static final String OBSERVATION = "{\"resourceType\":\"Observation\",\"id\":\"journal-falha\","
+            + "\"status\":\"final\",\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"58410-2\"}]},"
+            + "\"subject\":{\"reference\":\"Patient/journal-falha\"},\"effectiveDateTime\":\"2026-10-18T10:00:00Z\","
+            + "\"component\":[{\"code\":{\"coding\":[{\"system\":\"http://loinc.org\",\"code\":\"718-7\"}]},"
+            + "\"valueQuantity\":{\"value\":13.5,\"unit\":\"g/dL\"}}]}";
+
+    @DynamicPropertySource
+    static void diretorioJournal(DynamicPropertyRegistry registro) {
+        registro.add("app.hemograma.journal.diretorio", () -> DIRETORIO);
+    }
+
+    @MockBean
+    private LoteGravacaoHemogramaService loteGravacaoHemogramaService;
+
+    @Autowired
+    private JournalNotificacaoService journalNotificacaoService;
+
+    @Autowired
+    private FilasPorPacienteService filasPorPacienteService;
+
+    @Autowired
+    private RastreamentoService rastreamentoService;
+
+    @Test
+    void notificacaoQueFalhaFicaPendenteEVoltaNaInicializacao() throws Exception {
+        when(loteGravacaoHemogramaService.gravar(any(), any(), any()))
+                .thenThrow(new IllegalStateException("banco indisponível"));
+
+        byte[] payload = OBSERVATION.getBytes(StandardCharsets.UTF_8);
+        long sequencia = journalNotificacaoService.registrar(payload);
+        filasPorPacienteService.submeter(payload, Map.of(), sequencia);
+
+        verify(loteGravacaoHemogramaService, timeout(10_000).times(2)).gravar(any(), any(), any());
+        // Margem para uma confirmação indevida após a última falha
+        Thread.sleep(500);
+
+        // Reinício: outra instância do journal lê o mesmo diretório
+        JournalNotificacaoService reiniciado = new JournalNotificacaoService();
+        ReflectionTestUtils.setField(reiniciado, "habilitado", true);
+        ReflectionTestUtils.setField(reiniciado, "diretorio", DIRETORIO);
+        ReflectionTestUtils.setField(reiniciado, "tamanhoSegmentoMb", 1);
+        ReflectionTestUtils.setField(reiniciado, "intervaloFsyncMicros", 200L);
+        ReflectionTestUtils.setField(reiniciado, "timeoutFsyncMs", 5000L);
+        ReflectionTestUtils.setField(reiniciado, "rastreamentoService", rastreamentoService);
+        reiniciado.iniciar();
+        try {
+            List<JournalNotificacaoService.EntradaJournal> recuperadas = reiniciado.consumirRecuperadas();
+            assertThat(recuperadas).extracting(JournalNotificacaoService.EntradaJournal::sequencia)
+                    .containsExactly(sequencia);
+            assertThat(recuperadas.get(0).payload()).isEqualTo(payload);
+        } finally {
+            reiniciado.parar();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.Paciente;
+import br.ufg.inf.hemograma.model.ParametroHemograma;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import br.ufg.inf.hemograma.repository.PacienteRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Fechamento do lote de gravação: sem esperar {@code espera-maxima-ms} quando
+ * todas as threads produtoras em processamento já têm um item no lote.
+ */
+@SpringBootTest(properties = "app.hemograma.persistencia.lote.espera-maxima-ms=5000")
+@ActiveProfiles("teste")
+class LoteGravacaoHemogramaServiceTest {
+
+    @Autowired
+    private LoteGravacaoHemogramaService loteGravacaoHemogramaService;
+
+    @Autowired
+    private PacienteRepository pacienteRepository;
+
+    @Test
+    void loteFechaQuandoTodasAsProdutorasTemItemNele() throws Exception {
+        Paciente paciente = pacienteRepository.save(new Paciente("Patient/lote-" + UUID.randomUUID()));
+
+        // Única produtora: o lote é gravado sem aguardar a espera máxima
+        long inicio = System.nanoTime();
+        gravarComoProdutora(paciente);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio)).isLessThan(2000);
+
+        // Outra produtora em processamento: o lote aguarda até ela terminar sem gravar
+        loteGravacaoHemogramaService.iniciarProducao();
+        inicio = System.nanoTime();
+        CompletableFuture<Void> gravacao = CompletableFuture.runAsync(() -> gravarComoProdutora(paciente));
+        Thread.sleep(300);
+        assertThat(gravacao).isNotDone();
+        loteGravacaoHemogramaService.encerrarProducao();
+        gravacao.get(2, TimeUnit.SECONDS);
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio)).isBetween(300L, 2300L);
+    }
+
+    private void gravarComoProdutora(Paciente paciente) {
+        Hemograma hemograma = new Hemograma();
+        hemograma.setFhirObservationId("Observation/lote-" + UUID.randomUUID());
+        hemograma.setPaciente(paciente);
+        hemograma.setDataColeta(LocalDateTime.now());
+        hemograma.setStatus("final");
+        hemograma.adicionarParametro(new ParametroHemograma(TipoParametro.HEMOGLOBINA, 14.0, "g/dL"));
+
+        loteGravacaoHemogramaService.iniciarProducao();
+        try {
+            assertThat(loteGravacaoHemogramaService.gravar(hemograma, List.of(), paciente).getId()).isNotNull();
+        } finally {
+            loteGravacaoHemogramaService.encerrarProducao();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package br.ufg.inf.hemograma.service;
+
+import br.ufg.inf.hemograma.model.Desvio;
+import br.ufg.inf.hemograma.model.Hemograma;
+import br.ufg.inf.hemograma.model.RollupDesvioHora;
+import br.ufg.inf.hemograma.model.enums.GranularidadeTemporal;
+import br.ufg.inf.hemograma.model.enums.SeveridadeDesvio;
+import br.ufg.inf.hemograma.model.enums.TipoParametro;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Contabilização de desvios nos rollups horários, incluindo a criação da
+ * linha da chave e a normalização da região.
+ */
+@SpringBootTest
+@ActiveProfiles("teste")
+class RollupDesvioServiceTest {
+
+    @Autowired
+    private RollupDesvioService rollupDesvioService;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void regiaoPorExtensoEhContabilizadaNaSigla() {
+        LocalDateTime coleta = LocalDateTime.of(2020, 3, 10, 14, 25);
+        Hemograma hemograma = new Hemograma();
+        hemograma.setDataColeta(coleta);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            rollupDesvioService.registrar(hemograma, List.of(desvio(), desvio()), "Rio Grande do Sul", 1);
+            rollupDesvioService.registrar(hemograma, List.of(desvio()), "RS", 1);
+        });
+
+        List<Map<String, Object>> serie = rollupDesvioService.consultar(coleta.minusHours(1), coleta.plusHours(1),
+                GranularidadeTemporal.HORA, TipoParametro.HEMOGLOBINA, SeveridadeDesvio.GRAVE, "rs");
+        assertThat(serie).singleElement()
+                .satisfies(item -> assertThat(item.get("quantidade")).isEqualTo(3L));
+    }
+
+    @Test
+    void normalizaNomesESiglasDeEstados() {
+        assertThat(UnidadesFederativas.normalizarRegiao("Goiás")).isEqualTo("GO");
+        assertThat(UnidadesFederativas.normalizarRegiao(" sao  paulo ")).isEqualTo("SP");
+        assertThat(UnidadesFederativas.normalizarRegiao("mg")).isEqualTo("MG");
+        assertThat(UnidadesFederativas.normalizarRegiao(null)).isEqualTo(RollupDesvioHora.REGIAO_DESCONHECIDA);
+        assertThat(UnidadesFederativas.normalizarRegiao("Provincia de Buenos Aires"))
+                .isEqualTo(RollupDesvioHora.REGIAO_DESCONHECIDA);
+    }
+
+    private static Desvio desvio() {
+        Desvio desvio = new Desvio();
+        desvio.setTipoParametro(TipoParametro.HEMOGLOBINA);
+        desvio.setValorEncontrado(6.0);
+        desvio.setSeveridade(SeveridadeDesvio.GRAVE);
+        return desvio;
+    }
+}